@@ -0,0 +1,90 @@
+package cn.featherfly.android.serialport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read one chunk from a pipe standing in for the serial fd through the receive handler of EasySerialPortImpl,
+ * dispatched by its ListenerRegistry to legacy int[] listeners or to buffer listeners.
+ * In the library package to attach the port to the pipe.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ReceiveDispatchBenchmark {
+
+    private static final String PORT = "/dev/ttyBENCH";
+
+    @Param({"1", "4", "16"})
+    public int listeners;
+
+    @Param({"16", "256"})
+    public int chunkSize;
+
+    private Pipe pipe;
+
+    private ByteBuffer chunk;
+
+    private SerialPortReactor.ReadHandler intArrayHandler;
+
+    private SerialPortReactor.ReadHandler byteBufferHandler;
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole blackhole) throws IOException {
+        pipe = Pipe.open();
+        chunk = ByteBuffer.allocateDirect(chunkSize);
+        for (int i = 0; i < chunkSize; i++) {
+            chunk.put((byte) i);
+        }
+        EasySerialPortImpl intArrayPort = EasySerialPortImpl.attach(new SerialPortDescriptor(PORT), 512,
+                Channels.newInputStream(pipe.source()));
+        EasySerialPortImpl byteBufferPort = EasySerialPortImpl.attach(new SerialPortDescriptor(PORT), 512,
+                Channels.newInputStream(pipe.source()));
+        for (int i = 0; i < listeners; i++) {
+            intArrayPort.addListener(event -> blackhole.consume(event.getBuffer()[0]));
+            byteBufferPort.addBufferListener(event -> blackhole.consume(event.getBuffer().get(event.getOffset())));
+        }
+        intArrayHandler = intArrayPort.newReceiveHandler();
+        byteBufferHandler = byteBufferPort.newReceiveHandler();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pipe.sink().close();
+        pipe.source().close();
+    }
+
+    private void feed() throws IOException {
+        chunk.clear();
+        while (chunk.hasRemaining()) {
+            pipe.sink().write(chunk);
+        }
+    }
+
+    @Benchmark
+    public void legacyIntArray() throws IOException {
+        feed();
+        intArrayHandler.onReadable();
+    }
+
+    @Benchmark
+    public void pooledByteBuffer() throws IOException {
+        feed();
+        byteBufferHandler.onReadable();
+    }
+}
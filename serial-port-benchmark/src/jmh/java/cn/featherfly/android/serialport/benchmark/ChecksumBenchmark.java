@@ -0,0 +1,109 @@
+package cn.featherfly.android.serialport.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cn.featherfly.android.serialport.checksum.Crc16Ccitt;
+import cn.featherfly.android.serialport.checksum.Crc16Modbus;
+import cn.featherfly.android.serialport.checksum.Crc32c;
+
+/**
+ * Bitwise crc loops as found in app code against the slicing-by-8 checksum package.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChecksumBenchmark {
+
+    @Param({"8", "256", "4096"})
+    public int size;
+
+    private byte[] bytes;
+
+    private int[] ints;
+
+    private ByteBuffer direct;
+
+    @Setup
+    public void setup() {
+        bytes = new byte[size];
+        new Random(1).nextBytes(bytes);
+        ints = new int[size];
+        for (int i = 0; i < size; i++) {
+            ints[i] = bytes[i] & 0xff;
+        }
+        direct = ByteBuffer.allocateDirect(size);
+        direct.put(bytes).flip();
+    }
+
+    @Benchmark
+    public int bitwiseCrc16ModbusIntArray() {
+        int crc = 0xFFFF;
+        for (int i = 0; i < size; i++) {
+            crc ^= ints[i];
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? crc >>> 1 ^ 0xA001 : crc >>> 1;
+            }
+        }
+        return crc;
+    }
+
+    @Benchmark
+    public int crc16Modbus() {
+        return Crc16Modbus.compute(bytes, 0, size);
+    }
+
+    @Benchmark
+    public int crc16ModbusDirect() {
+        return Crc16Modbus.compute(direct);
+    }
+
+    @Benchmark
+    public int bitwiseCrc16Ccitt() {
+        int crc = 0xFFFF;
+        for (int i = 0; i < size; i++) {
+            crc ^= (bytes[i] & 0xff) << 8;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1 ^ 0x1021) & 0xffff : crc << 1 & 0xffff;
+            }
+        }
+        return crc;
+    }
+
+    @Benchmark
+    public int crc16Ccitt() {
+        return Crc16Ccitt.compute(Crc16Ccitt.CCITT_FALSE, bytes, 0, size);
+    }
+
+    @Benchmark
+    public int bitwiseCrc32c() {
+        int crc = 0xFFFFFFFF;
+        for (int i = 0; i < size; i++) {
+            crc ^= bytes[i] & 0xff;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? crc >>> 1 ^ 0x82F63B78 : crc >>> 1;
+            }
+        }
+        return ~crc;
+    }
+
+    @Benchmark
+    public int crc32c() {
+        return Crc32c.compute(bytes, 0, size);
+    }
+
+    @Benchmark
+    public int crc32cDirect() {
+        return Crc32c.compute(direct);
+    }
+}
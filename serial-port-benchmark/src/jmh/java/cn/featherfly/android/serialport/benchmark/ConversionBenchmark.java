@@ -0,0 +1,59 @@
+package cn.featherfly.android.serialport.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consume a received chunk through the legacy byte to int[] widening against reading a read-only ByteBuffer view.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConversionBenchmark {
+
+    @Param({"16", "256"})
+    public int size;
+
+    private byte[] bytes;
+
+    private ByteBuffer view;
+
+    @Setup
+    public void setup() {
+        bytes = new byte[size];
+        new Random(1).nextBytes(bytes);
+        view = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    @Benchmark
+    public int widenToIntArray() {
+        int[] receive = new int[size];
+        for (int i = 0; i < size; i++) {
+            receive[i] = ((int) bytes[i]) & 0xff;
+        }
+        int sum = 0;
+        for (int value : receive) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int readOnlyView() {
+        int sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += view.get(i) & 0xff;
+        }
+        return sum;
+    }
+}
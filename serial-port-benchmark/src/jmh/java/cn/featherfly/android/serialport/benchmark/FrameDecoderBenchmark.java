@@ -0,0 +1,131 @@
+package cn.featherfly.android.serialport.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cn.featherfly.android.serialport.decoder.DelimiterFrameDecoder;
+import cn.featherfly.android.serialport.decoder.FixedLengthFrameDecoder;
+import cn.featherfly.android.serialport.decoder.FrameDecoder;
+import cn.featherfly.android.serialport.decoder.LengthFieldFrameDecoder;
+
+/**
+ * Decode a stream of 32 byte frames delivered in reads of random size, the frame decoders against
+ * the usual hand written reassembly on top of a ByteArrayOutputStream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FrameDecoderBenchmark {
+
+    private static final int FRAME_LENGTH = 32;
+
+    private static final int FRAMES = 256;
+
+    @Param({"8", "64", "512"})
+    public int maxReadSize;
+
+    private ByteBuffer[] delimiterReads;
+
+    private ByteBuffer[] lengthFieldReads;
+
+    private FrameDecoder delimiterDecoder;
+
+    private FrameDecoder lengthFieldDecoder;
+
+    private FrameDecoder fixedLengthDecoder;
+
+    private FrameDecoder.FrameSink sink;
+
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        Random random = new Random(1);
+        byte[] delimited = new byte[FRAME_LENGTH * FRAMES];
+        byte[] lengthField = new byte[FRAME_LENGTH * FRAMES];
+        for (int f = 0; f < FRAMES; f++) {
+            int offset = f * FRAME_LENGTH;
+            for (int i = 0; i < FRAME_LENGTH - 1; i++) {
+                delimited[offset + i] = (byte) ('a' + random.nextInt(26));
+            }
+            delimited[offset + FRAME_LENGTH - 1] = '\n';
+            lengthField[offset] = (byte) (FRAME_LENGTH - 1);
+            for (int i = 1; i < FRAME_LENGTH; i++) {
+                lengthField[offset + i] = (byte) random.nextInt();
+            }
+        }
+        delimiterReads = split(delimited, random);
+        lengthFieldReads = split(lengthField, random);
+        delimiterDecoder = new DelimiterFrameDecoder(256, (byte) '\n');
+        lengthFieldDecoder = new LengthFieldFrameDecoder(256, 0, 1);
+        fixedLengthDecoder = new FixedLengthFrameDecoder(FRAME_LENGTH);
+        sink = frame -> blackhole.consume(frame.get(frame.position()));
+    }
+
+    private ByteBuffer[] split(byte[] stream, Random random) {
+        ByteBuffer[] reads = new ByteBuffer[stream.length];
+        int count = 0;
+        for (int offset = 0; offset < stream.length; ) {
+            int length = Math.min(1 + random.nextInt(maxReadSize), stream.length - offset);
+            reads[count++] = ByteBuffer.wrap(stream, offset, length).slice().asReadOnlyBuffer();
+            offset += length;
+        }
+        ByteBuffer[] result = new ByteBuffer[count];
+        System.arraycopy(reads, 0, result, 0, count);
+        return result;
+    }
+
+    private void decode(FrameDecoder decoder, ByteBuffer[] reads) {
+        for (ByteBuffer read : reads) {
+            read.clear();
+            decoder.decode(read, 0, sink);
+        }
+    }
+
+    @Benchmark
+    public void delimiterDecoder() {
+        decode(delimiterDecoder, delimiterReads);
+    }
+
+    @Benchmark
+    public void lengthFieldDecoder() {
+        decode(lengthFieldDecoder, lengthFieldReads);
+    }
+
+    @Benchmark
+    public void fixedLengthDecoder() {
+        decode(fixedLengthDecoder, lengthFieldReads);
+    }
+
+    @Benchmark
+    public void naiveDelimiterReassembly() {
+        ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        for (ByteBuffer read : delimiterReads) {
+            read.clear();
+            byte[] chunk = new byte[read.remaining()];
+            read.get(chunk);
+            for (byte b : chunk) {
+                if (b == '\n') {
+                    byte[] frame = pending.toByteArray();
+                    blackhole.consume(frame[0]);
+                    pending.reset();
+                } else {
+                    pending.write(b);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package cn.featherfly.android.serialport.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cn.featherfly.android.serialport.trace.HexEncoder;
+
+/**
+ * The legacy toHexString of EasySerialPortImpl against the lookup table HexEncoder.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HexBenchmark {
+
+    @Param({"16", "256"})
+    public int size;
+
+    private byte[] bytes;
+
+    private StringBuilder sb;
+
+    @Setup
+    public void setup() {
+        bytes = new byte[size];
+        new Random(1).nextBytes(bytes);
+        sb = new StringBuilder(size * 3);
+    }
+
+    @Benchmark
+    public String legacyToHexString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            byte b = bytes[i];
+            sb.append(Integer.toHexString(b));
+            sb.append(" ");
+        }
+        return sb.toString();
+    }
+
+    @Benchmark
+    public StringBuilder hexEncoder() {
+        sb.setLength(0);
+        return HexEncoder.append(bytes, 0, size, sb);
+    }
+}
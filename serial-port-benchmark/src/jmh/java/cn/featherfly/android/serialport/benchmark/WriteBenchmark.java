@@ -0,0 +1,102 @@
+package cn.featherfly.android.serialport.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import cn.featherfly.android.serialport.AsyncWriter;
+
+/**
+ * Send a burst of small commands to a pipe standing in for the serial fd, one write per command
+ * against the coalescing {@link AsyncWriter}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WriteBenchmark {
+
+    @Param({"8"})
+    public int commandSize;
+
+    @Param({"16", "128"})
+    public int commands;
+
+    private Pipe pipe;
+
+    private Thread drainer;
+
+    private ByteBuffer command;
+
+    private ByteBuffer[] commandBuffers;
+
+    private AsyncWriter asyncWriter;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        pipe = Pipe.open();
+        drainer = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(65536);
+            try {
+                while (pipe.source().read(buffer) >= 0) {
+                    buffer.clear();
+                }
+            } catch (IOException e) {
+                // pipe closed
+            }
+        }, "pipe-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+        command = ByteBuffer.allocate(commandSize);
+        commandBuffers = new ByteBuffer[commands];
+        for (int i = 0; i < commands; i++) {
+            commandBuffers[i] = ByteBuffer.allocate(commandSize);
+        }
+        asyncWriter = new AsyncWriter("benchmark-writer", (b, off, len) -> {
+            ByteBuffer data = ByteBuffer.wrap(b, off, len);
+            while (data.hasRemaining()) {
+                pipe.sink().write(data);
+            }
+        }, 4096, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        asyncWriter.close();
+        pipe.sink().close();
+        pipe.source().close();
+    }
+
+    @Benchmark
+    public void perCallWrite() throws IOException {
+        for (int i = 0; i < commands; i++) {
+            command.clear();
+            while (command.hasRemaining()) {
+                pipe.sink().write(command);
+            }
+        }
+    }
+
+    @Benchmark
+    public void coalescedWrite() throws Exception {
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < commands; i++) {
+            ByteBuffer buffer = commandBuffers[i];
+            buffer.clear();
+            last = asyncWriter.write(buffer);
+        }
+        last.get();
+    }
+}
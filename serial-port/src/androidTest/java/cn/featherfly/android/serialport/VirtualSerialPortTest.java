@@ -0,0 +1,95 @@
+package cn.featherfly.android.serialport;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The type Virtual serial port test.
+ * <p>
+ * 在设备或模拟器上运行，需要native库打开伪终端.
+ */
+@RunWith(AndroidJUnit4.class)
+public class VirtualSerialPortTest {
+
+    private static byte[] data(int length) {
+        byte[] b = new byte[length];
+        new Random(length).nextBytes(b);
+        return b;
+    }
+
+    /**
+     * 一端异步写入，另一端同步读取，写入不会因对端还没读取而阻塞测试线程
+     */
+    private static byte[] transfer(EasySerialPort from, EasySerialPort to, byte[] data) throws Exception {
+        CompletableFuture<Void> written = from.writeAsync(ByteBuffer.wrap(data));
+        ByteBuffer dst = ByteBuffer.allocate(data.length);
+        to.readFully(dst, 10, TimeUnit.SECONDS);
+        written.get(10, TimeUnit.SECONDS);
+        return dst.array();
+    }
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Test
+    public void loopbackBothDirections() throws Exception {
+        try (VirtualSerialPort virtual = VirtualSerialPort.open()) {
+            byte[] ab = data(100000);
+            assertArrayEquals(ab, transfer(virtual.getPortA(), virtual.getPortB(), ab));
+            byte[] ba = data(50000);
+            assertArrayEquals(ba, transfer(virtual.getPortB(), virtual.getPortA(), ba));
+        }
+    }
+
+    @Test
+    public void pacedAtBaudrate() throws Exception {
+        try (VirtualSerialPort virtual = VirtualSerialPort.open(9600)) {
+            // 8N1每字符10位，1920字节需要2秒
+            byte[] data = data(1920);
+            long start = System.nanoTime();
+            assertArrayEquals(data, transfer(virtual.getPortA(), virtual.getPortB(), data));
+            long elapsed = millisSince(start);
+            assertTrue("received in " + elapsed + "ms", elapsed >= 1800);
+        }
+    }
+
+    @Test
+    public void writerSeesBackpressure() throws Exception {
+        try (VirtualSerialPort virtual = VirtualSerialPort.open(921600)) {
+            // 400K字节需要4.3秒，pty内核缓冲区满后写入要等模拟的线路发送
+            byte[] data = data(400 * 1024);
+            long start = System.nanoTime();
+            CompletableFuture<Long> written = virtual.getPortA().writeAsync(ByteBuffer.wrap(data))
+                    .thenApply(v -> millisSince(start));
+            ByteBuffer dst = ByteBuffer.allocate(data.length);
+            virtual.getPortB().readFully(dst, 10, TimeUnit.SECONDS);
+            assertArrayEquals(data, dst.array());
+            long writtenMillis = written.get(1, TimeUnit.SECONDS);
+            assertTrue("written in " + writtenMillis + "ms", writtenMillis >= 2000);
+        }
+    }
+
+    @Test
+    public void pacedAtBitsPerCharacterOfLineConfig() throws Exception {
+        LineConfig lineConfig = new LineConfig(8, LineConfig.Parity.EVEN, 2);
+        try (VirtualSerialPort virtual = VirtualSerialPort.open(9600, lineConfig, 0, 0, TimeUnit.MILLISECONDS, 0)) {
+            // 8E2每字符12位，960字节需要1.2秒，按10位计算只需要1秒
+            byte[] data = data(960);
+            long start = System.nanoTime();
+            assertArrayEquals(data, transfer(virtual.getPortA(), virtual.getPortB(), data));
+            long elapsed = millisSince(start);
+            assertTrue("received in " + elapsed + "ms", elapsed >= 1100);
+        }
+    }
+}
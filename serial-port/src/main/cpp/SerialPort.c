@@ -14,12 +14,25 @@
  * limitations under the License.
  */
 
+/* posix_openpt, ptsname_r on glibc hosts */
+#define _GNU_SOURCE
+
 #include <termios.h>
 #include <unistd.h>
 #include <sys/types.h>
 #include <sys/stat.h>
 #include <fcntl.h>
 #include <string.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <errno.h>
+#include <sys/epoll.h>
+#include <sys/eventfd.h>
+#include <sys/ioctl.h>
+#include <sys/uio.h>
+#include <poll.h>
+#include <time.h>
+#include <linux/serial.h>
 #include <jni.h>
 
 #include "SerialPort.h"
@@ -30,6 +43,33 @@ static const char *TAG="serial_port";
 #define LOGD(fmt, args...) __android_log_print(ANDROID_LOG_DEBUG, TAG, fmt, ##args)
 #define LOGE(fmt, args...) __android_log_print(ANDROID_LOG_ERROR, TAG, fmt, ##args)
 
+/* Keep in sync with SerialPortReactor.EVENT_* */
+#define REACTOR_EVENT_READABLE 1
+#define REACTOR_EVENT_ERROR    2
+#define REACTOR_MAX_EVENTS     64
+
+static void throwIOException(JNIEnv *env, const char *msg)
+{
+	jclass cIOException = (*env)->FindClass(env, "java/io/IOException");
+	if (cIOException != NULL) {
+		char buf[256];
+		snprintf(buf, sizeof(buf), "%s: %s", msg, strerror(errno));
+		(*env)->ThrowNew(env, cIOException, buf);
+	}
+}
+
+static jint getDescriptor(JNIEnv *env, jobject thiz)
+{
+	jclass SerialPortClass = (*env)->GetObjectClass(env, thiz);
+	jclass FileDescriptorClass = (*env)->FindClass(env, "java/io/FileDescriptor");
+
+	jfieldID mFdID = (*env)->GetFieldID(env, SerialPortClass, "mFd", "Ljava/io/FileDescriptor;");
+	jfieldID descriptorID = (*env)->GetFieldID(env, FileDescriptorClass, "descriptor", "I");
+
+	jobject mFd = (*env)->GetObjectField(env, thiz, mFdID);
+	return (*env)->GetIntField(env, mFd, descriptorID);
+}
+
 static speed_t getBaudrate(jint baudrate)
 {
 	switch(baudrate) {
@@ -68,6 +108,84 @@ static speed_t getBaudrate(jint baudrate)
 	}
 }
 
+/*
+ * termios2 of the kernel, declared here because <asm/termbits.h> conflicts with <termios.h>.
+ * With BOTHER in c_cflag the driver uses the integer rate in c_ispeed/c_ospeed.
+ */
+struct serial_termios2 {
+	tcflag_t c_iflag;
+	tcflag_t c_oflag;
+	tcflag_t c_cflag;
+	tcflag_t c_lflag;
+	cc_t c_line;
+	cc_t c_cc[19];
+	speed_t c_ispeed;
+	speed_t c_ospeed;
+};
+
+#define SERIAL_TCGETS2 _IOR('T', 0x2A, struct serial_termios2)
+#define SERIAL_TCSETS2 _IOW('T', 0x2B, struct serial_termios2)
+#define SERIAL_BOTHER 0010000
+#define SERIAL_CBAUD 0010017
+#define SERIAL_IBSHIFT 16
+
+/* set a rate without Bxxx constant, returns 0 on success */
+static int setBaudrateOther(int fd, jint baudrate)
+{
+	struct serial_termios2 tio;
+
+	if (ioctl(fd, SERIAL_TCGETS2, &tio) < 0) {
+		return -1;
+	}
+	/* input speed bits cleared, input uses the output rate */
+	tio.c_cflag &= ~(SERIAL_CBAUD | (SERIAL_CBAUD << SERIAL_IBSHIFT));
+	tio.c_cflag |= SERIAL_BOTHER;
+	tio.c_ispeed = (speed_t) baudrate;
+	tio.c_ospeed = (speed_t) baudrate;
+	if (ioctl(fd, SERIAL_TCSETS2, &tio) < 0) {
+		return -1;
+	}
+	if (ioctl(fd, SERIAL_TCGETS2, &tio) == 0 && tio.c_ospeed != (speed_t) baudrate) {
+		/* the driver rounds to the nearest rate its clock divider supports */
+		LOGI("baudrate %d requested, %u set by driver", baudrate, tio.c_ospeed);
+	}
+	return 0;
+}
+
+/* apply cfg keeping the BOTHER rate, tcsetattr of some libc rejects BOTHER, returns 0 on success */
+static int setTermiosOther(int fd, const struct termios *cfg)
+{
+	struct serial_termios2 tio;
+
+	if (ioctl(fd, SERIAL_TCGETS2, &tio) < 0) {
+		return -1;
+	}
+	tio.c_iflag = cfg->c_iflag;
+	tio.c_oflag = cfg->c_oflag;
+	tio.c_cflag = cfg->c_cflag;
+	tio.c_lflag = cfg->c_lflag;
+	memcpy(tio.c_cc, cfg->c_cc, sizeof(tio.c_cc) < sizeof(cfg->c_cc) ? sizeof(tio.c_cc) : sizeof(cfg->c_cc));
+	return ioctl(fd, SERIAL_TCSETS2, &tio) < 0 ? -1 : 0;
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPort
+ * Method:    getActualBaudrate
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_cn_featherfly_android_serialport_SerialPort_getActualBaudrate
+  (JNIEnv *env, jobject thiz)
+{
+	jint fd = getDescriptor(env, thiz);
+	struct serial_termios2 tio;
+
+	if (ioctl(fd, SERIAL_TCGETS2, &tio) < 0) {
+		throwIOException(env, "TCGETS2");
+		return 0;
+	}
+	return (jint) tio.c_ospeed;
+}
+
 /*
  * Class:     android_serialport_SerialPort
  * Method:    open
@@ -83,7 +201,7 @@ JNIEXPORT jobject JNICALL Java_cn_featherfly_android_serialport_SerialPort_open
 	/* Check arguments */
 	{
 		speed = getBaudrate(baudrate);
-		if (speed == -1) {
+		if (speed == -1 && baudrate <= 0) {
 			/* TODO: throw an exception */
 			LOGE("Invalid baudrate");
 			return NULL;
@@ -120,8 +238,10 @@ JNIEXPORT jobject JNICALL Java_cn_featherfly_android_serialport_SerialPort_open
 		}
 
 		cfmakeraw(&cfg);
-		cfsetispeed(&cfg, speed);
-		cfsetospeed(&cfg, speed);
+		if (speed != -1) {
+			cfsetispeed(&cfg, speed);
+			cfsetospeed(&cfg, speed);
+		}
 
 		if (tcsetattr(fd, TCSANOW, &cfg))
 		{
@@ -130,6 +250,15 @@ JNIEXPORT jobject JNICALL Java_cn_featherfly_android_serialport_SerialPort_open
 			/* TODO: throw an exception */
 			return NULL;
 		}
+
+		/* no Bxxx constant, e.g. 250000 for DMX or 6M/12M */
+		if (speed == -1 && setBaudrateOther(fd, baudrate))
+		{
+			LOGE("Cannot set baudrate %d: %s", baudrate, strerror(errno));
+			close(fd);
+			/* TODO: throw an exception */
+			return NULL;
+		}
 	}
 
 	/* Create a corresponding file descriptor */
@@ -152,16 +281,700 @@ JNIEXPORT jobject JNICALL Java_cn_featherfly_android_serialport_SerialPort_open
 JNIEXPORT void JNICALL Java_cn_featherfly_android_serialport_SerialPort_close
   (JNIEnv *env, jobject thiz)
 {
-	jclass SerialPortClass = (*env)->GetObjectClass(env, thiz);
-	jclass FileDescriptorClass = (*env)->FindClass(env, "java/io/FileDescriptor");
-
-	jfieldID mFdID = (*env)->GetFieldID(env, SerialPortClass, "mFd", "Ljava/io/FileDescriptor;");
-	jfieldID descriptorID = (*env)->GetFieldID(env, FileDescriptorClass, "descriptor", "I");
-
-	jobject mFd = (*env)->GetObjectField(env, thiz, mFdID);
-	jint descriptor = (*env)->GetIntField(env, mFd, descriptorID);
+	jint descriptor = getDescriptor(env, thiz);
 
 	LOGD("close(fd = %d)", descriptor);
 	close(descriptor);
 }
 
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPort
+ * Method:    getDescriptor
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_cn_featherfly_android_serialport_SerialPort_getDescriptor
+  (JNIEnv *env, jobject thiz)
+{
+	return getDescriptor(env, thiz);
+}
+
+#define READ_CHUNK 4096
+
+/* wait for input, returns 1 readable, 0 timeout, -1 exception thrown */
+static int waitReadable(JNIEnv *env, int fd, jint timeoutMillis)
+{
+	struct pollfd pfd;
+	struct timespec start, now;
+	int remaining = timeoutMillis;
+	int ret;
+
+	clock_gettime(CLOCK_MONOTONIC, &start);
+	for (;;) {
+		pfd.fd = fd;
+		pfd.events = POLLIN;
+		pfd.revents = 0;
+		ret = poll(&pfd, 1, remaining);
+		if (ret > 0) {
+			if (pfd.revents & POLLNVAL) {
+				errno = EBADF;
+				throwIOException(env, "poll");
+				return -1;
+			}
+			/* POLLIN, POLLHUP or POLLERR, read reports the state */
+			return 1;
+		}
+		if (ret == 0) {
+			return 0;
+		}
+		if (errno != EINTR) {
+			throwIOException(env, "poll");
+			return -1;
+		}
+		clock_gettime(CLOCK_MONOTONIC, &now);
+		remaining = timeoutMillis - (int) ((now.tv_sec - start.tv_sec) * 1000
+				+ (now.tv_nsec - start.tv_nsec) / 1000000);
+		if (remaining <= 0) {
+			return 0;
+		}
+	}
+}
+
+/* returns bytes read, 0 if nothing available, -1 end of stream */
+static jint readAvailable(JNIEnv *env, int fd, void *buf, size_t len)
+{
+	ssize_t n;
+
+	do {
+		n = read(fd, buf, len);
+	} while (n < 0 && errno == EINTR);
+	if (n < 0) {
+		if (errno == EAGAIN) {
+			return 0;
+		}
+		throwIOException(env, "read");
+		return 0;
+	}
+	return n == 0 ? -1 : (jint) n;
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPort
+ * Method:    read
+ * Signature: ([BIII)I
+ */
+JNIEXPORT jint JNICALL Java_cn_featherfly_android_serialport_SerialPort_read
+  (JNIEnv *env, jobject thiz, jbyteArray b, jint off, jint len, jint timeoutMillis)
+{
+	jint fd = getDescriptor(env, thiz);
+	jbyte buf[READ_CHUNK];
+	jint n;
+
+	if (waitReadable(env, fd, timeoutMillis) <= 0) {
+		return 0;
+	}
+	n = readAvailable(env, fd, buf, len < READ_CHUNK ? (size_t) len : READ_CHUNK);
+	if (n > 0) {
+		(*env)->SetByteArrayRegion(env, b, off, n, buf);
+	}
+	return n;
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPort
+ * Method:    readDirect
+ * Signature: (Ljava/nio/ByteBuffer;III)I
+ */
+JNIEXPORT jint JNICALL Java_cn_featherfly_android_serialport_SerialPort_readDirect
+  (JNIEnv *env, jobject thiz, jobject b, jint off, jint len, jint timeoutMillis)
+{
+	jint fd = getDescriptor(env, thiz);
+	jbyte *address = (*env)->GetDirectBufferAddress(env, b);
+
+	if (address == NULL) {
+		errno = EINVAL;
+		throwIOException(env, "GetDirectBufferAddress");
+		return 0;
+	}
+	if (waitReadable(env, fd, timeoutMillis) <= 0) {
+		return 0;
+	}
+	return readAvailable(env, fd, address + off, (size_t) len);
+}
+
+/* max buffers per readv/writev call, the rest is transferred by the next call */
+#define IOV_BATCH 64
+
+/* write all bytes, waits with poll() if the port is opened with O_NONBLOCK, returns -1 exception thrown */
+static int writeFully(JNIEnv *env, int fd, const jbyte *buf, size_t len)
+{
+	struct pollfd pfd;
+	ssize_t n;
+
+	while (len > 0) {
+		n = write(fd, buf, len);
+		if (n >= 0) {
+			buf += n;
+			len -= n;
+			continue;
+		}
+		if (errno == EINTR) {
+			continue;
+		}
+		if (errno != EAGAIN) {
+			throwIOException(env, "write");
+			return -1;
+		}
+		pfd.fd = fd;
+		pfd.events = POLLOUT;
+		pfd.revents = 0;
+		if (poll(&pfd, 1, -1) < 0 && errno != EINTR) {
+			throwIOException(env, "poll");
+			return -1;
+		}
+	}
+	return 0;
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPort
+ * Method:    writeDirect
+ * Signature: (Ljava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_cn_featherfly_android_serialport_SerialPort_writeDirect
+  (JNIEnv *env, jobject thiz, jobject b, jint off, jint len)
+{
+	jint fd = getDescriptor(env, thiz);
+	jbyte *address = (*env)->GetDirectBufferAddress(env, b);
+
+	if (address == NULL) {
+		errno = EINVAL;
+		throwIOException(env, "GetDirectBufferAddress");
+		return;
+	}
+	writeFully(env, fd, address + off, (size_t) len);
+}
+
+/* fill iov from direct buffers, returns count or -1 exception thrown */
+static int directBuffers(JNIEnv *env, jobjectArray bufs, jintArray offsets, jintArray lengths, jint count,
+		struct iovec *iov)
+{
+	jint off[IOV_BATCH];
+	jint len[IOV_BATCH];
+	jobject b;
+	jbyte *address;
+	int i;
+
+	if (count > IOV_BATCH) {
+		count = IOV_BATCH;
+	}
+	(*env)->GetIntArrayRegion(env, offsets, 0, count, off);
+	(*env)->GetIntArrayRegion(env, lengths, 0, count, len);
+	for (i = 0; i < count; i++) {
+		b = (*env)->GetObjectArrayElement(env, bufs, i);
+		address = (*env)->GetDirectBufferAddress(env, b);
+		(*env)->DeleteLocalRef(env, b);
+		if (address == NULL) {
+			errno = EINVAL;
+			throwIOException(env, "GetDirectBufferAddress");
+			return -1;
+		}
+		iov[i].iov_base = address + off[i];
+		iov[i].iov_len = (size_t) len[i];
+	}
+	return count;
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPort
+ * Method:    readv
+ * Signature: ([Ljava/nio/ByteBuffer;[I[III)I
+ */
+JNIEXPORT jint JNICALL Java_cn_featherfly_android_serialport_SerialPort_readv
+  (JNIEnv *env, jobject thiz, jobjectArray bufs, jintArray offsets, jintArray lengths, jint count,
+		jint timeoutMillis)
+{
+	jint fd = getDescriptor(env, thiz);
+	struct iovec iov[IOV_BATCH];
+	ssize_t n;
+
+	count = directBuffers(env, bufs, offsets, lengths, count, iov);
+	if (count < 0) {
+		return 0;
+	}
+	if (waitReadable(env, fd, timeoutMillis) <= 0) {
+		return 0;
+	}
+	do {
+		n = readv(fd, iov, count);
+	} while (n < 0 && errno == EINTR);
+	if (n < 0) {
+		if (errno == EAGAIN) {
+			return 0;
+		}
+		throwIOException(env, "readv");
+		return 0;
+	}
+	return n == 0 ? -1 : (jint) n;
+}
+
+/* write all iov, waits with poll() if the port is opened with O_NONBLOCK, returns -1 exception thrown */
+static int writevFully(JNIEnv *env, int fd, struct iovec *iov, int count)
+{
+	struct pollfd pfd;
+	ssize_t n;
+
+	while (count > 0) {
+		n = writev(fd, iov, count);
+		if (n < 0) {
+			if (errno == EINTR) {
+				continue;
+			}
+			if (errno != EAGAIN) {
+				throwIOException(env, "writev");
+				return -1;
+			}
+			pfd.fd = fd;
+			pfd.events = POLLOUT;
+			pfd.revents = 0;
+			if (poll(&pfd, 1, -1) < 0 && errno != EINTR) {
+				throwIOException(env, "poll");
+				return -1;
+			}
+			continue;
+		}
+		/* partial write, skip written buffers */
+		while (count > 0 && (size_t) n >= iov->iov_len) {
+			n -= iov->iov_len;
+			iov++;
+			count--;
+		}
+		if (count > 0) {
+			iov->iov_base = (jbyte *) iov->iov_base + n;
+			iov->iov_len -= n;
+		}
+	}
+	return 0;
+}
+
+static jclass byteArrayClass;
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPort
+ * Method:    writev
+ * Signature: ([Ljava/lang/Object;[I[II)V
+ *
+ * bufs are direct ByteBuffers or byte arrays
+ */
+JNIEXPORT void JNICALL Java_cn_featherfly_android_serialport_SerialPort_writev
+  (JNIEnv *env, jobject thiz, jobjectArray bufs, jintArray offsets, jintArray lengths, jint count)
+{
+	jint fd = getDescriptor(env, thiz);
+	struct iovec iov[IOV_BATCH];
+	jbyteArray arrays[IOV_BATCH];
+	jbyte *elements[IOV_BATCH];
+	jint off[IOV_BATCH];
+	jint len[IOV_BATCH];
+	jobject b;
+	jbyte *address;
+	int start, batch, i, ret;
+
+	if (byteArrayClass == NULL) {
+		jclass c = (*env)->FindClass(env, "[B");
+		byteArrayClass = (*env)->NewGlobalRef(env, c);
+		(*env)->DeleteLocalRef(env, c);
+	}
+	for (start = 0; start < count; start += batch) {
+		batch = count - start < IOV_BATCH ? count - start : IOV_BATCH;
+		(*env)->GetIntArrayRegion(env, offsets, start, batch, off);
+		(*env)->GetIntArrayRegion(env, lengths, start, batch, len);
+		ret = 0;
+		for (i = 0; i < batch; i++) {
+			b = (*env)->GetObjectArrayElement(env, bufs, start + i);
+			if ((*env)->IsInstanceOf(env, b, byteArrayClass)) {
+				arrays[i] = b;
+				elements[i] = (*env)->GetByteArrayElements(env, b, NULL);
+				address = elements[i];
+			} else {
+				arrays[i] = NULL;
+				elements[i] = NULL;
+				address = (*env)->GetDirectBufferAddress(env, b);
+				(*env)->DeleteLocalRef(env, b);
+			}
+			if (address == NULL) {
+				if (!(*env)->ExceptionCheck(env)) {
+					errno = EINVAL;
+					throwIOException(env, "GetDirectBufferAddress");
+				}
+				ret = -1;
+				batch = i + 1;
+				break;
+			}
+			iov[i].iov_base = address + off[i];
+			iov[i].iov_len = (size_t) len[i];
+		}
+		if (ret == 0) {
+			ret = writevFully(env, fd, iov, batch);
+		}
+		for (i = 0; i < batch; i++) {
+			if (arrays[i] != NULL) {
+				if (elements[i] != NULL) {
+					(*env)->ReleaseByteArrayElements(env, arrays[i], elements[i], JNI_ABORT);
+				}
+				(*env)->DeleteLocalRef(env, arrays[i]);
+			}
+		}
+		if (ret < 0) {
+			return;
+		}
+	}
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPort
+ * Method:    drain
+ * Signature: ()V
+ */
+JNIEXPORT void JNICALL Java_cn_featherfly_android_serialport_SerialPort_drain
+  (JNIEnv *env, jobject thiz)
+{
+	jint fd = getDescriptor(env, thiz);
+
+	/* wait until output written to the port is transmitted */
+	while (tcdrain(fd) < 0) {
+		if (errno != EINTR) {
+			throwIOException(env, "tcdrain");
+			return;
+		}
+	}
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPort
+ * Method:    getOutputQueueSize
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_cn_featherfly_android_serialport_SerialPort_getOutputQueueSize
+  (JNIEnv *env, jobject thiz)
+{
+	jint fd = getDescriptor(env, thiz);
+	int queued = 0;
+
+	if (ioctl(fd, TIOCOUTQ, &queued) < 0) {
+		throwIOException(env, "TIOCOUTQ");
+		return 0;
+	}
+	return queued;
+}
+
+#ifndef TIOCSER_TEMT
+#define TIOCSER_TEMT 0x01
+#endif
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPort
+ * Method:    getTransmitterState
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_cn_featherfly_android_serialport_SerialPort_getTransmitterState
+  (JNIEnv *env, jobject thiz)
+{
+	jint fd = getDescriptor(env, thiz);
+	unsigned int lsr = 0;
+
+	/* 1 shift register empty, 0 still sending, -1 driver does not report it */
+	if (ioctl(fd, TIOCSERGETLSR, &lsr) < 0) {
+		return -1;
+	}
+	return (lsr & TIOCSER_TEMT) ? 1 : 0;
+}
+
+/* LineConfig.Parity / LineConfig.FlowControl ordinals */
+#define LINE_PARITY_NONE 0
+#define LINE_PARITY_ODD 1
+#define LINE_PARITY_EVEN 2
+#define LINE_PARITY_MARK 3
+#define LINE_PARITY_SPACE 4
+#define LINE_FLOW_NONE 0
+#define LINE_FLOW_RTS_CTS 1
+#define LINE_FLOW_XON_XOFF 2
+
+#ifndef CMSPAR
+#define CMSPAR 010000000000
+#endif
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPort
+ * Method:    setLineConfig
+ * Signature: (IIIIIII)V
+ */
+JNIEXPORT void JNICALL Java_cn_featherfly_android_serialport_SerialPort_setLineConfig
+  (JNIEnv *env, jobject thiz, jint dataBits, jint parity, jint stopBits, jint flowControl,
+   jint vmin, jint vtime, jint lowLatency)
+{
+	jint fd = getDescriptor(env, thiz);
+	struct termios cfg;
+
+	if (tcgetattr(fd, &cfg))
+	{
+		LOGE("tcgetattr() failed");
+		throwIOException(env, "tcgetattr");
+		return;
+	}
+
+	cfg.c_cflag &= ~CSIZE;
+	switch (dataBits) {
+	case 5: cfg.c_cflag |= CS5; break;
+	case 6: cfg.c_cflag |= CS6; break;
+	case 7: cfg.c_cflag |= CS7; break;
+	default: cfg.c_cflag |= CS8; break;
+	}
+
+	cfg.c_cflag &= ~(PARENB | PARODD | CMSPAR);
+	cfg.c_iflag &= ~INPCK;
+	switch (parity) {
+	case LINE_PARITY_ODD: cfg.c_cflag |= PARENB | PARODD; break;
+	case LINE_PARITY_EVEN: cfg.c_cflag |= PARENB; break;
+	case LINE_PARITY_MARK: cfg.c_cflag |= PARENB | PARODD | CMSPAR; break;
+	case LINE_PARITY_SPACE: cfg.c_cflag |= PARENB | CMSPAR; break;
+	default: break;
+	}
+	if (cfg.c_cflag & PARENB) {
+		cfg.c_iflag |= INPCK;
+	}
+
+	if (stopBits == 2) {
+		cfg.c_cflag |= CSTOPB;
+	} else {
+		cfg.c_cflag &= ~CSTOPB;
+	}
+
+	cfg.c_cflag &= ~CRTSCTS;
+	cfg.c_iflag &= ~(IXON | IXOFF | IXANY);
+	if (flowControl == LINE_FLOW_RTS_CTS) {
+		cfg.c_cflag |= CRTSCTS;
+	} else if (flowControl == LINE_FLOW_XON_XOFF) {
+		cfg.c_iflag |= IXON | IXOFF;
+	}
+	cfg.c_cflag |= CLOCAL | CREAD;
+
+	cfg.c_cc[VMIN] = (cc_t) vmin;
+	cfg.c_cc[VTIME] = (cc_t) vtime;
+
+	if ((cfg.c_cflag & SERIAL_CBAUD) == SERIAL_BOTHER)
+	{
+		if (setTermiosOther(fd, &cfg))
+		{
+			LOGE("TCSETS2 failed");
+			throwIOException(env, "TCSETS2");
+			return;
+		}
+	}
+	else if (tcsetattr(fd, TCSANOW, &cfg))
+	{
+		LOGE("tcsetattr() failed");
+		throwIOException(env, "tcsetattr");
+		return;
+	}
+	LOGD("setLineConfig(fd = %d) %d data, parity %d, %d stop, flow %d, vmin %d, vtime %d",
+			fd, dataBits, parity, stopBits, flowControl, vmin, vtime);
+
+	/* ASYNC_LOW_LATENCY is driver specific, ptys and many USB CDC drivers reject it,
+	 * the serial flags are left as the driver or init scripts set them unless requested */
+	if (lowLatency >= 0) {
+		struct serial_struct serial;
+		if (ioctl(fd, TIOCGSERIAL, &serial) == 0) {
+			if (lowLatency > 0) {
+				serial.flags |= ASYNC_LOW_LATENCY;
+			} else {
+				serial.flags &= ~ASYNC_LOW_LATENCY;
+			}
+			if (ioctl(fd, TIOCSSERIAL, &serial)) {
+				LOGI("TIOCSSERIAL low latency not applied, errno %d", errno);
+			}
+		} else {
+			LOGI("TIOCGSERIAL not supported, low latency not applied, errno %d", errno);
+		}
+	}
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_VirtualSerialPort
+ * Method:    openPtyMaster
+ * Signature: ()Ljava/io/FileDescriptor;
+ */
+JNIEXPORT jobject JNICALL Java_cn_featherfly_android_serialport_VirtualSerialPort_openPtyMaster
+  (JNIEnv *env, jclass thiz)
+{
+	int fd;
+	jobject mFileDescriptor;
+
+	fd = posix_openpt(O_RDWR | O_NOCTTY);
+	if (fd == -1) {
+		LOGE("posix_openpt() failed");
+		throwIOException(env, "posix_openpt");
+		return NULL;
+	}
+	if (grantpt(fd) || unlockpt(fd)) {
+		LOGE("grantpt()/unlockpt() failed");
+		throwIOException(env, "unlockpt");
+		close(fd);
+		return NULL;
+	}
+	LOGD("openPtyMaster() fd = %d", fd);
+
+	{
+		jclass cFileDescriptor = (*env)->FindClass(env, "java/io/FileDescriptor");
+		jmethodID iFileDescriptor = (*env)->GetMethodID(env, cFileDescriptor, "<init>", "()V");
+		jfieldID descriptorID = (*env)->GetFieldID(env, cFileDescriptor, "descriptor", "I");
+		mFileDescriptor = (*env)->NewObject(env, cFileDescriptor, iFileDescriptor);
+		(*env)->SetIntField(env, mFileDescriptor, descriptorID, (jint)fd);
+	}
+	return mFileDescriptor;
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_VirtualSerialPort
+ * Method:    ptsName
+ * Signature: (Ljava/io/FileDescriptor;)Ljava/lang/String;
+ */
+JNIEXPORT jstring JNICALL Java_cn_featherfly_android_serialport_VirtualSerialPort_ptsName
+  (JNIEnv *env, jclass thiz, jobject fileDescriptor)
+{
+	char name[64];
+	jclass cFileDescriptor = (*env)->FindClass(env, "java/io/FileDescriptor");
+	jfieldID descriptorID = (*env)->GetFieldID(env, cFileDescriptor, "descriptor", "I");
+	jint fd = (*env)->GetIntField(env, fileDescriptor, descriptorID);
+
+	if (ptsname_r(fd, name, sizeof(name))) {
+		LOGE("ptsname_r(fd = %d) failed", fd);
+		throwIOException(env, "ptsname_r");
+		return NULL;
+	}
+	return (*env)->NewStringUTF(env, name);
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPortReactor
+ * Method:    create
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_cn_featherfly_android_serialport_SerialPortReactor_create
+  (JNIEnv *env, jclass thiz)
+{
+	int epfd = epoll_create1(EPOLL_CLOEXEC);
+	if (epfd == -1) {
+		LOGE("epoll_create1() failed");
+		throwIOException(env, "epoll_create1");
+	}
+	return epfd;
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPortReactor
+ * Method:    createWakeup
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_cn_featherfly_android_serialport_SerialPortReactor_createWakeup
+  (JNIEnv *env, jclass thiz)
+{
+	int wakefd = eventfd(0, EFD_CLOEXEC | EFD_NONBLOCK);
+	if (wakefd == -1) {
+		LOGE("eventfd() failed");
+		throwIOException(env, "eventfd");
+	}
+	return wakefd;
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPortReactor
+ * Method:    control
+ * Signature: (IIIZ)V
+ */
+JNIEXPORT void JNICALL Java_cn_featherfly_android_serialport_SerialPortReactor_control
+  (JNIEnv *env, jclass thiz, jint epfd, jint op, jint fd, jboolean readable)
+{
+	struct epoll_event ev;
+	memset(&ev, 0, sizeof(ev));
+	ev.events = readable ? EPOLLIN : 0;
+	ev.data.fd = fd;
+	if (epoll_ctl(epfd, op, fd, &ev) == -1) {
+		LOGE("epoll_ctl(op = %d, fd = %d) failed", op, fd);
+		throwIOException(env, "epoll_ctl");
+	}
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPortReactor
+ * Method:    await
+ * Signature: (I[I[II)I
+ */
+JNIEXPORT jint JNICALL Java_cn_featherfly_android_serialport_SerialPortReactor_await
+  (JNIEnv *env, jclass thiz, jint epfd, jintArray fds, jintArray events, jint timeout)
+{
+	struct epoll_event evs[REACTOR_MAX_EVENTS];
+	jint readyFds[REACTOR_MAX_EVENTS];
+	jint readyEvents[REACTOR_MAX_EVENTS];
+	int max = (*env)->GetArrayLength(env, fds);
+	int n, i;
+
+	if (max > REACTOR_MAX_EVENTS) {
+		max = REACTOR_MAX_EVENTS;
+	}
+	n = epoll_wait(epfd, evs, max, timeout);
+	if (n == -1) {
+		if (errno == EINTR) {
+			return 0;
+		}
+		LOGE("epoll_wait() failed");
+		throwIOException(env, "epoll_wait");
+		return -1;
+	}
+	for (i = 0; i < n; i++) {
+		readyFds[i] = evs[i].data.fd;
+		readyEvents[i] = 0;
+		if (evs[i].events & EPOLLIN) {
+			readyEvents[i] |= REACTOR_EVENT_READABLE;
+		}
+		if (evs[i].events & (EPOLLERR | EPOLLHUP)) {
+			readyEvents[i] |= REACTOR_EVENT_ERROR;
+		}
+	}
+	(*env)->SetIntArrayRegion(env, fds, 0, n, readyFds);
+	(*env)->SetIntArrayRegion(env, events, 0, n, readyEvents);
+	return n;
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPortReactor
+ * Method:    wakeup
+ * Signature: (I)V
+ */
+JNIEXPORT void JNICALL Java_cn_featherfly_android_serialport_SerialPortReactor_wakeup
+  (JNIEnv *env, jclass thiz, jint wakefd)
+{
+	eventfd_write(wakefd, 1);
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPortReactor
+ * Method:    clearWakeup
+ * Signature: (I)V
+ */
+JNIEXPORT void JNICALL Java_cn_featherfly_android_serialport_SerialPortReactor_clearWakeup
+  (JNIEnv *env, jclass thiz, jint wakefd)
+{
+	eventfd_t value;
+	eventfd_read(wakefd, &value);
+}
+
+/*
+ * Class:     cn_featherfly_android_serialport_SerialPortReactor
+ * Method:    closeDescriptor
+ * Signature: (I)V
+ */
+JNIEXPORT void JNICALL Java_cn_featherfly_android_serialport_SerialPortReactor_closeDescriptor
+  (JNIEnv *env, jclass thiz, jint fd)
+{
+	close(fd);
+}
+
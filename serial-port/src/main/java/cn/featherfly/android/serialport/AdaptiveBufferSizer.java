@@ -0,0 +1,268 @@
+package cn.featherfly.android.serialport;
+
+import cn.featherfly.android.serialport.metrics.Histogram;
+
+import java.util.Arrays;
+
+/**
+ * The type Adaptive buffer sizer.
+ * <p>
+ * 根据波特率和最近读取大小的直方图决定接收缓冲区大小. 初始大小为线路速率下{@link #getTargetMillis()}毫秒的数据量，
+ * 之后每{@link #WINDOW}次读取评估一次：读满缓冲区的次数超过四分之一时加倍，连续两个窗口p95都不到四分之一时减半，
+ * 大小始终是2的幂并限制在最小值和最大值之间. 直方图每个窗口衰减一半，反映最近的读取.
+ * <p>
+ * 只在接收线程上调用{@link #record(int, int)}，大小只在窗口结束时改变，缓冲区不会每次读取都重新分配.
+ */
+public class AdaptiveBufferSizer {
+
+    /**
+     * The default min size.
+     */
+    public static final int DEFAULT_MIN_SIZE = 64;
+
+    /**
+     * The default max size.
+     */
+    public static final int DEFAULT_MAX_SIZE = 16384;
+
+    /**
+     * The default target millis of data per read at line rate.
+     */
+    public static final int DEFAULT_TARGET_MILLIS = 10;
+
+    /**
+     * Reads per evaluation window.
+     */
+    public static final int WINDOW = 64;
+
+    private static final int BUCKETS = 32;
+
+    private final int minSize;
+
+    private final int maxSize;
+
+    private final int targetMillis;
+
+    private boolean adjustVmin;
+
+    private final int[] counts = new int[BUCKETS];
+
+    private int total;
+
+    private int full;
+
+    private int reads;
+
+    private int shrinkWindows;
+
+    private volatile int size;
+
+    private volatile int vmin = 1;
+
+    /**
+     * Instantiates a new Adaptive buffer sizer with default bounds.
+     */
+    public AdaptiveBufferSizer() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_TARGET_MILLIS);
+    }
+
+    /**
+     * Instantiates a new Adaptive buffer sizer.
+     *
+     * @param minSize      the min size
+     * @param maxSize      the max size
+     * @param targetMillis the millis of data a read holds at line rate, used for the initial size
+     */
+    public AdaptiveBufferSizer(int minSize, int maxSize, int targetMillis) {
+        if (minSize <= 0 || maxSize < minSize) {
+            throw new IllegalArgumentException(String.format("invalid bounds [%d, %d]", minSize, maxSize));
+        }
+        if (targetMillis <= 0) {
+            throw new IllegalArgumentException("targetMillis must be positive");
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetMillis = targetMillis;
+        this.size = minSize;
+    }
+
+    /**
+     * Set whether VMIN follows the typical read size, see {@link #getVmin()}. VTIME is set to 1 so a partial burst
+     * is returned 0.1s after its last byte, a read blocks the receive thread until then, use it with a dedicated
+     * {@link SerialPortReactor}.
+     *
+     * @param adjustVmin the adjust vmin
+     * @return this sizer
+     */
+    public AdaptiveBufferSizer setAdjustVmin(boolean adjustVmin) {
+        this.adjustVmin = adjustVmin;
+        return this;
+    }
+
+    /**
+     * Is adjust vmin.
+     *
+     * @return the boolean
+     */
+    public boolean isAdjustVmin() {
+        return adjustVmin;
+    }
+
+    /**
+     * Reset history and size the buffer from the line rate.
+     *
+     * @param baudrate        the baudrate
+     * @param bitsPerCharacter the bits per character
+     * @return the initial size
+     */
+    public int reset(int baudrate, int bitsPerCharacter) {
+        long bytes = (long) baudrate * targetMillis / bitsPerCharacter / 1000;
+        Arrays.fill(counts, 0);
+        total = 0;
+        full = 0;
+        reads = 0;
+        shrinkWindows = 0;
+        vmin = 1;
+        size = bound(bytes);
+        return size;
+    }
+
+    /**
+     * Record a read, called on the receive thread.
+     *
+     * @param readSize the bytes read
+     * @param capacity the length passed to the read
+     * @return true if the size or vmin changed
+     */
+    public boolean record(int readSize, int capacity) {
+        if (readSize <= 0) {
+            return false;
+        }
+        counts[Math.min(BUCKETS - 1, Histogram.bucket(readSize))]++;
+        total++;
+        if (readSize >= capacity) {
+            full++;
+        }
+        if (++reads < WINDOW) {
+            return false;
+        }
+        reads = 0;
+        return evaluate();
+    }
+
+    private boolean evaluate() {
+        int current = size;
+        int next = current;
+        if (full * 4 > total) {
+            // 经常读满，内核里还有数据
+            next = bound((long) current * 2);
+            shrinkWindows = 0;
+        } else if (upperBound(percentile(95)) * 4 <= current) {
+            if (++shrinkWindows >= 2) {
+                next = bound(Math.max(current / 2, upperBound(percentile(95)) * 2L));
+                shrinkWindows = 0;
+            }
+        } else {
+            shrinkWindows = 0;
+        }
+        boolean vminChanged = false;
+        if (adjustVmin) {
+            int typical = Math.max(1, Math.min(255, lowerBound(percentile(50))));
+            vminChanged = typical != vmin;
+            vmin = typical;
+        }
+        // 衰减，保留最近的趋势
+        total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] >>= 1;
+            total += counts[i];
+        }
+        full >>= 1;
+        size = next;
+        return next != current || vminChanged;
+    }
+
+    private int percentile(int p) {
+        long threshold = ((long) total * p + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= threshold) {
+                return i;
+            }
+        }
+        return BUCKETS - 1;
+    }
+
+    private static int upperBound(int bucket) {
+        return bucket == 0 ? 0 : 1 << Math.min(30, bucket);
+    }
+
+    private static int lowerBound(int bucket) {
+        return bucket == 0 ? 0 : 1 << Math.min(30, bucket - 1);
+    }
+
+    private int bound(long bytes) {
+        long pow = Long.highestOneBit(Math.max(1, bytes));
+        if (pow < bytes) {
+            pow <<= 1;
+        }
+        return (int) Math.max(minSize, Math.min(maxSize, pow));
+    }
+
+    /**
+     * Gets current size.
+     *
+     * @return the size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets VMIN for the typical read size, 1 unless {@link #isAdjustVmin()}.
+     *
+     * @return the vmin
+     */
+    public int getVmin() {
+        return vmin;
+    }
+
+    /**
+     * Gets min size.
+     *
+     * @return the min size
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Gets max size.
+     *
+     * @return the max size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gets target millis.
+     *
+     * @return the target millis
+     */
+    public int getTargetMillis() {
+        return targetMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveBufferSizer{" +
+                "size=" + size +
+                ", minSize=" + minSize +
+                ", maxSize=" + maxSize +
+                ", targetMillis=" + targetMillis +
+                ", vmin=" + vmin +
+                '}';
+    }
+}
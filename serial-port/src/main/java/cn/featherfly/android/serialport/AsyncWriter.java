@@ -0,0 +1,479 @@
+package cn.featherfly.android.serialport;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The type Async writer.
+ * <p>
+ * 每个串口一个写线程，把排队的小数据合并成一次write系统调用，合并上限为批大小或等待时间.
+ * 请求按{@link WritePriority}分通道排队，总是先写高优先级通道，只合并同一通道的请求.
+ * 批量通道按块写入，每块之后重新选择通道；设置了发送速率时，内核发送队列超过一块就等待，
+ * 紧急命令最多排在一次合并写入和两块批量数据之后，与批量积压的多少无关.
+ */
+public class AsyncWriter {
+
+    private static final String TAG = "AsyncWriter";
+
+    /**
+     * The constant DEFAULT_BATCH_SIZE.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    /**
+     * The constant DEFAULT_BULK_CHUNK_SIZE.
+     */
+    public static final int DEFAULT_BULK_CHUNK_SIZE = 64;
+
+    private static final WritePriority[] PRIORITIES = WritePriority.values();
+
+    private final String name;
+
+    private final Sink sink;
+
+    private final byte[] batch;
+
+    private final long lingerNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * 每个优先级一个队列，guarded by lock
+     */
+    private final List<ArrayDeque<WriteRequest>> lanes = new ArrayList<>();
+
+    private volatile int queued;
+
+    private final List<WriteRequest> batchRequests = new ArrayList<>();
+
+    private volatile int bulkChunkSize = DEFAULT_BULK_CHUNK_SIZE;
+
+    private volatile long nanosPerByte;
+
+    private volatile WaitRecorder waitRecorder;
+
+    private volatile boolean closed;
+
+    private volatile Thread thread;
+
+    /**
+     * Instantiates a new Async writer.
+     *
+     * @param name      the writer thread name
+     * @param sink      the sink
+     * @param batchSize the max bytes per write
+     * @param linger    the max time waiting for more data after first queued write
+     * @param unit      the unit
+     */
+    public AsyncWriter(String name, Sink sink, int batchSize, long linger, TimeUnit unit) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.name = name;
+        this.sink = sink;
+        this.batch = new byte[batchSize];
+        this.lingerNanos = unit.toNanos(linger);
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            lanes.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Set bulk chunk size, set before first write.
+     *
+     * @param bulkChunkSize the bytes written per bulk chunk
+     * @return this writer
+     */
+    public AsyncWriter setBulkChunkSize(int bulkChunkSize) {
+        if (bulkChunkSize <= 0 || bulkChunkSize > batch.length) {
+            throw new IllegalArgumentException("bulkChunkSize must be in [1, " + batch.length + "]: " + bulkChunkSize);
+        }
+        this.bulkChunkSize = bulkChunkSize;
+        return this;
+    }
+
+    /**
+     * Set transmit time of a byte, bulk chunks wait while the sink output queue holds more than a chunk.
+     *
+     * @param nanosPerByte the nanos per byte, 0 to write bulk chunks without waiting
+     * @return this writer
+     */
+    public AsyncWriter setNanosPerByte(long nanosPerByte) {
+        this.nanosPerByte = nanosPerByte;
+        return this;
+    }
+
+    /**
+     * Set wait recorder, called with the time each request waited before its first byte was written.
+     *
+     * @param waitRecorder the wait recorder
+     * @return this writer
+     */
+    public AsyncWriter setWaitRecorder(WaitRecorder waitRecorder) {
+        this.waitRecorder = waitRecorder;
+        return this;
+    }
+
+
+    /**
+     * Queue bytes between position and limit of src with normal priority. src must not be modified until the
+     * future completes.
+     *
+     * @param src the src
+     * @return the completable future
+     */
+    public CompletableFuture<Void> write(ByteBuffer src) {
+        return write(src, WritePriority.NORMAL);
+    }
+
+    /**
+     * Queue bytes between position and limit of src. src must not be modified until the future completes.
+     *
+     * @param src      the src
+     * @param priority the priority
+     * @return the completable future
+     */
+    public CompletableFuture<Void> write(ByteBuffer src, WritePriority priority) {
+        WriteRequest request = new WriteRequest(src, priority);
+        if (thread == null) {
+            start();
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                // 与close并发时，确保请求不会永远挂起
+                request.future.completeExceptionally(new IOException("writer closed"));
+                return request.future;
+            }
+            lanes.get(priority.ordinal()).add(request);
+            queued++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        return request.future;
+    }
+
+    private synchronized void start() {
+        if (thread == null && !closed) {
+            thread = new Thread(this::loop, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop writer thread, pending writes fail with IOException.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+        failPending(new IOException("writer closed"));
+    }
+
+    /**
+     * Gets queued request count.
+     *
+     * @return the queued count
+     */
+    public int getQueuedCount() {
+        return queued;
+    }
+
+    private void loop() {
+        while (!closed) {
+            try {
+                WriteRequest first = take();
+                if (first.priority == WritePriority.BULK) {
+                    writeBulk(first);
+                } else if (first.length > batch.length) {
+                    writeLarge(first);
+                } else {
+                    writeBatch(first);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        failPending(new IOException("writer closed"));
+    }
+
+    private WriteRequest take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                for (ArrayDeque<WriteRequest> lane : lanes) {
+                    WriteRequest request = lane.poll();
+                    if (request != null) {
+                        queued--;
+                        return request;
+                    }
+                }
+                notEmpty.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * guarded by lock
+     */
+    private boolean hasHigher(WritePriority priority) {
+        for (int i = 0; i < priority.ordinal(); i++) {
+            if (!lanes.get(i).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeBatch(WriteRequest first) throws InterruptedException {
+        int length = first.copyTo(batch, 0);
+        batchRequests.add(first);
+        ArrayDeque<WriteRequest> lane = lanes.get(first.priority.ordinal());
+        long deadline = System.nanoTime() + lingerNanos;
+        lock.lock();
+        try {
+            // 只合并同一通道的请求，高优先级请求到达时立即写出
+            while (length < batch.length && !hasHigher(first.priority)) {
+                WriteRequest next = lane.peek();
+                if (next == null) {
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) {
+                        break;
+                    }
+                    notEmpty.awaitNanos(wait);
+                    continue;
+                }
+                if (length + next.length > batch.length) {
+                    break;
+                }
+                lane.poll();
+                queued--;
+                length += next.copyTo(batch, length);
+                batchRequests.add(next);
+            }
+        } catch (InterruptedException e) {
+            // close时中断，已取出的请求不在通道中，failPending不会完成它们
+            IOException failure = new IOException("writer closed");
+            for (WriteRequest request : batchRequests) {
+                request.future.completeExceptionally(failure);
+            }
+            batchRequests.clear();
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            recordWait(batchRequests);
+            sink.write(batch, 0, length);
+            for (WriteRequest request : batchRequests) {
+                request.future.complete(null);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, e.getMessage());
+            for (WriteRequest request : batchRequests) {
+                request.future.completeExceptionally(e);
+            }
+        } finally {
+            batchRequests.clear();
+        }
+    }
+
+    private void writeLarge(WriteRequest request) {
+        try {
+            recordWait(request);
+            ByteBuffer src = request.src;
+            if (src.hasArray()) {
+                sink.write(src.array(), src.arrayOffset() + src.position(), request.length);
+            } else {
+                ByteBuffer data = src.duplicate();
+                while (data.hasRemaining()) {
+                    int n = Math.min(data.remaining(), batch.length);
+                    data.get(batch, 0, n);
+                    sink.write(batch, 0, n);
+                }
+            }
+            request.future.complete(null);
+        } catch (IOException e) {
+            Log.e(TAG, e.getMessage());
+            request.future.completeExceptionally(e);
+        }
+    }
+
+    private void writeBulk(WriteRequest request) throws InterruptedException {
+        int chunk = bulkChunkSize;
+        try {
+            long backlog = getBacklogNanos(chunk);
+            if (backlog > 0) {
+                // 内核队列里还有超过一块的数据，放回队首等待，期间到达的高优先级请求先写，
+                // 等待被close中断时请求已在通道中，由failPending完成
+                lock.lock();
+                try {
+                    lanes.get(WritePriority.BULK.ordinal()).addFirst(request);
+                    queued++;
+                    if (!hasHigher(WritePriority.BULK)) {
+                        notEmpty.awaitNanos(backlog);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            recordWait(request);
+            int n = Math.min(chunk, request.length - request.written);
+            ByteBuffer src = request.src;
+            if (src.hasArray()) {
+                sink.write(src.array(), src.arrayOffset() + src.position() + request.written, n);
+            } else {
+                ByteBuffer data = src.duplicate();
+                data.position(data.position() + request.written);
+                data.get(batch, 0, n);
+                sink.write(batch, 0, n);
+            }
+            request.written += n;
+        } catch (IOException e) {
+            Log.e(TAG, e.getMessage());
+            request.future.completeExceptionally(e);
+            return;
+        }
+        if (request.written >= request.length) {
+            request.future.complete(null);
+            return;
+        }
+        lock.lock();
+        try {
+            lanes.get(WritePriority.BULK.ordinal()).addFirst(request);
+            queued++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long getBacklogNanos(int chunk) throws IOException {
+        long perByte = nanosPerByte;
+        if (perByte <= 0) {
+            return 0;
+        }
+        return (long) (sink.getOutputQueueSize() - chunk) * perByte;
+    }
+
+    private void recordWait(List<WriteRequest> requests) {
+        for (WriteRequest request : requests) {
+            recordWait(request);
+        }
+    }
+
+    private void recordWait(WriteRequest request) {
+        WaitRecorder recorder = waitRecorder;
+        if (recorder != null && !request.started) {
+            request.started = true;
+            recorder.record(request.priority, System.nanoTime() - request.enqueuedNanos);
+        }
+    }
+
+    private void failPending(IOException e) {
+        List<WriteRequest> pending = new ArrayList<>();
+        lock.lock();
+        try {
+            for (ArrayDeque<WriteRequest> lane : lanes) {
+                pending.addAll(lane);
+                lane.clear();
+            }
+            queued = 0;
+        } finally {
+            lock.unlock();
+        }
+        for (WriteRequest request : pending) {
+            request.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * The interface Sink.
+     */
+    public interface Sink {
+        /**
+         * Write bytes with a single system call when possible.
+         *
+         * @param b   the b
+         * @param off the off
+         * @param len the len
+         * @throws IOException the io exception
+         */
+        void write(byte[] b, int off, int len) throws IOException;
+
+        /**
+         * Gets bytes written but not transmitted yet, used to pace bulk chunks.
+         *
+         * @return the output queue size
+         * @throws IOException the io exception
+         */
+        default int getOutputQueueSize() throws IOException {
+            return 0;
+        }
+    }
+
+    /**
+     * The interface Wait recorder.
+     */
+    public interface WaitRecorder {
+        /**
+         * Record time a request waited in its lane before its first byte was written.
+         *
+         * @param priority the priority
+         * @param nanos    the nanos
+         */
+        void record(WritePriority priority, long nanos);
+    }
+
+    private static class WriteRequest {
+
+        private final ByteBuffer src;
+
+        private final int length;
+
+        private final WritePriority priority;
+
+        private final long enqueuedNanos = System.nanoTime();
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        /**
+         * 批量请求已写入的字节数
+         */
+        private int written;
+
+        private boolean started;
+
+        private WriteRequest(ByteBuffer src, WritePriority priority) {
+            this.src = src;
+            this.length = src.remaining();
+            this.priority = priority;
+        }
+
+        private int copyTo(byte[] dst, int offset) {
+            if (src.hasArray()) {
+                System.arraycopy(src.array(), src.arrayOffset() + src.position(), dst, offset, length);
+            } else {
+                src.duplicate().get(dst, offset, length);
+            }
+            return length;
+        }
+    }
+}
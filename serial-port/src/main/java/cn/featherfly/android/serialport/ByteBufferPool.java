@@ -0,0 +1,143 @@
+package cn.featherfly.android.serialport;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The type Byte buffer pool.
+ * <p>
+ * 固定大小的缓冲池，读取线程从池中取出缓冲区，分发完成后归还，避免每次读取都分配新的数组.
+ */
+public class ByteBufferPool {
+
+    private final int bufferSize;
+
+    private final boolean direct;
+
+    private final PooledByteBuffer[] pooled;
+
+    private int size;
+
+    /**
+     * Instantiates a new Byte buffer pool.
+     *
+     * @param bufferSize the buffer size
+     * @param maxPooled  the max pooled buffer count
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled) {
+        this(bufferSize, maxPooled, false);
+    }
+
+    /**
+     * Instantiates a new Byte buffer pool.
+     *
+     * @param bufferSize the buffer size
+     * @param maxPooled  the max pooled buffer count
+     * @param direct     allocate direct buffer or not
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled, boolean direct) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        if (maxPooled <= 0) {
+            throw new IllegalArgumentException("maxPooled must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        pooled = new PooledByteBuffer[maxPooled];
+    }
+
+    /**
+     * Acquire pooled byte buffer, allocate a new one when pool is empty.
+     *
+     * @return the pooled byte buffer
+     */
+    public PooledByteBuffer acquire() {
+        synchronized (pooled) {
+            if (size > 0) {
+                PooledByteBuffer buffer = pooled[--size];
+                pooled[size] = null;
+                buffer.buffer().clear();
+                return buffer;
+            }
+        }
+        return new PooledByteBuffer(this, direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize));
+    }
+
+    /**
+     * Release pooled byte buffer, discard it when pool is full.
+     *
+     * @param buffer the buffer
+     */
+    void release(PooledByteBuffer buffer) {
+        synchronized (pooled) {
+            if (size < pooled.length) {
+                pooled[size++] = buffer;
+            }
+        }
+    }
+
+    /**
+     * Gets buffer size.
+     *
+     * @return the buffer size
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Is direct boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * The type Pooled byte buffer.
+     */
+    public static class PooledByteBuffer {
+
+        private final ByteBufferPool pool;
+
+        private final ByteBuffer buffer;
+
+        private final ByteBuffer readOnly;
+
+        private PooledByteBuffer(ByteBufferPool pool, ByteBuffer buffer) {
+            this.pool = pool;
+            this.buffer = buffer;
+            this.readOnly = buffer.asReadOnlyBuffer();
+        }
+
+        /**
+         * Gets the writable buffer.
+         *
+         * @return the byte buffer
+         */
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        /**
+         * Gets read only view of buffer, position set to offset and limit set to offset + length.
+         *
+         * @param offset the offset
+         * @param length the length
+         * @return the read only byte buffer
+         */
+        public ByteBuffer readOnly(int offset, int length) {
+            readOnly.limit(offset + length);
+            readOnly.position(offset);
+            return readOnly;
+        }
+
+        /**
+         * Release to pool.
+         */
+        public void release() {
+            pool.release(this);
+        }
+    }
+}
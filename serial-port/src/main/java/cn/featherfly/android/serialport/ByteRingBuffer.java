@@ -0,0 +1,474 @@
+package cn.featherfly.android.serialport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The type Byte ring buffer.
+ * <p>
+ * 单生产者单消费者的无锁字节环形缓冲区，用于把串口读取和监听器分发解耦.
+ * 生产者(读取线程)直接从串口读入环形缓冲区，消费者(分发线程)以缓冲区视图的方式分发，不做额外拷贝.
+ * {@link OverflowPolicy#DROP_OLDEST}时生产者会移动读指针，消费者需要先拷贝再校验.
+ * <p>
+ * 每次读取记录读取时间，消费者按读取边界分发并带上读取时间，分发线程落后时字符间隔超时解码器看到的仍是实际的到达间隔.
+ */
+public class ByteRingBuffer {
+
+    /**
+     * The enum Overflow policy.
+     */
+    public enum OverflowPolicy {
+        /**
+         * 缓冲区满时停止读取，由内核缓冲区和串口流控反压.
+         */
+        BLOCK,
+        /**
+         * 缓冲区满时丢弃最旧的数据.
+         */
+        DROP_OLDEST,
+        /**
+         * 缓冲区满时丢弃新读取的数据.
+         */
+        DROP_NEWEST,
+        /**
+         * 缓冲区满时增加一个同样大小的分段，直到总容量达到上限，之后丢弃新读取的数据.
+         */
+        GROW_TO_LIMIT
+    }
+
+    /**
+     * Returned by {@link #writeFrom(ByteSource, int)} when policy is {@link OverflowPolicy#BLOCK} and buffer is full,
+     * nothing is read from the source.
+     */
+    public static final int FULL = -2;
+
+    private static final int MAX_MARKS = 1024;
+
+    /**
+     * The interface Byte sink.
+     */
+    public interface ByteSink {
+        /**
+         * Called with bytes read from the source at the same time.
+         *
+         * @param data     the data between position and limit, valid only during the call
+         * @param nanoTime the {@link System#nanoTime()} when the bytes were read from the source
+         */
+        void onBytes(ByteBuffer data, long nanoTime);
+    }
+
+    /**
+     * The interface Byte source.
+     */
+    public interface ByteSource {
+        /**
+         * Read bytes into b.
+         *
+         * @param b   the b
+         * @param off the off
+         * @param len the len
+         * @return the bytes read, -1 if end of stream
+         * @throws IOException the io exception
+         */
+        int read(byte[] b, int off, int len) throws IOException;
+    }
+
+    private final int segmentCapacity;
+
+    private final int mask;
+
+    private final int limit;
+
+    private final OverflowPolicy policy;
+
+    private final AtomicInteger totalCapacity = new AtomicInteger();
+
+    // 每次读取的结束位置和读取时间，位置为流中的绝对位置，生产者写入markTail，消费者移动markHead
+
+    private final int markMask;
+
+    private final AtomicLongArray markEnds;
+
+    private final long[] markNanos;
+
+    private final AtomicLong markHead = new AtomicLong();
+
+    private final AtomicLong markTail = new AtomicLong();
+
+    // producer
+    private Segment tailSegment;
+
+    private byte[] discard;
+
+    private volatile long overflowCount;
+
+    private volatile long droppedBytes;
+
+    private volatile long growCount;
+
+    // consumer
+    private volatile Segment headSegment;
+
+    private byte[] copy;
+
+    private ByteBuffer copyView;
+
+    private volatile Thread consumerThread;
+
+    private volatile boolean consumerParked;
+
+    /**
+     * Instantiates a new Byte ring buffer.
+     *
+     * @param capacity the capacity, rounded up to power of 2
+     * @param policy   the overflow policy
+     */
+    public ByteRingBuffer(int capacity, OverflowPolicy policy) {
+        this(capacity, policy, capacity);
+    }
+
+    /**
+     * Instantiates a new Byte ring buffer.
+     *
+     * @param capacity the capacity, rounded up to power of 2
+     * @param policy   the overflow policy
+     * @param limit    the max total capacity for {@link OverflowPolicy#GROW_TO_LIMIT}
+     */
+    public ByteRingBuffer(int capacity, OverflowPolicy policy, int limit) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        this.segmentCapacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = segmentCapacity - 1;
+        this.limit = Math.max(limit, segmentCapacity);
+        this.policy = policy;
+        headSegment = tailSegment = new Segment(segmentCapacity, 0);
+        totalCapacity.set(segmentCapacity);
+        // 每次读取至少一个字节，记录数不需要超过缓冲的字节数
+        int marks = Math.min(MAX_MARKS, Integer.highestOneBit(this.limit));
+        markMask = marks - 1;
+        markEnds = new AtomicLongArray(marks);
+        markNanos = new long[marks];
+    }
+
+    // ------------------------------------------------------------------------------------------------------
+    // producer
+    // ------------------------------------------------------------------------------------------------------
+
+    /**
+     * Read from source into this ring buffer, called by producer thread only.
+     *
+     * @param source    the source
+     * @param maxLength the max bytes to read
+     * @return the bytes read from source (including dropped), -1 if end of stream,
+     * {@link #FULL} if policy is {@link OverflowPolicy#BLOCK} and buffer is full
+     * @throws IOException the io exception
+     */
+    public int writeFrom(ByteSource source, int maxLength) throws IOException {
+        Segment segment = tailSegment;
+        long tail = segment.tail.get();
+        int free = segmentCapacity - (int) (tail - segment.head.get());
+        if (free == 0) {
+            switch (policy) {
+                case BLOCK:
+                    return FULL;
+                case DROP_OLDEST:
+                    free = dropOldest(segment, Math.min(maxLength, segmentCapacity));
+                    break;
+                case GROW_TO_LIMIT:
+                    if (totalCapacity.get() + segmentCapacity <= limit) {
+                        segment = grow(segment);
+                        tail = segment.tail.get();
+                        free = segmentCapacity;
+                        break;
+                    }
+                    return dropNewest(source, maxLength);
+                default:
+                    return dropNewest(source, maxLength);
+            }
+        }
+        int index = (int) (tail & mask);
+        int length = Math.min(Math.min(free, maxLength), segmentCapacity - index);
+        int n = source.read(segment.data, index, length);
+        if (n > 0) {
+            // 先记录读取时间再发布数据，消费者看到数据时一定能看到记录
+            mark(tail + n, System.nanoTime());
+            segment.tail.set(tail + n);
+            if (consumerParked) {
+                LockSupport.unpark(consumerThread);
+            }
+        }
+        return n;
+    }
+
+    private void mark(long end, long nanoTime) {
+        long t = markTail.get();
+        if (t - markHead.get() <= markMask) {
+            int i = (int) (t & markMask);
+            markNanos[i] = nanoTime;
+            markEnds.set(i, end);
+            markTail.set(t + 1);
+        } else {
+            // 记录满了说明分发线程落后很多，并入最新的记录，这次读取的字节使用该记录的时间.
+            // 消费者不会移除最新的记录，这里修改是安全的
+            markEnds.set((int) ((t - 1) & markMask), end);
+        }
+    }
+
+    private int dropOldest(Segment segment, int length) {
+        long head;
+        long tail = segment.tail.get();
+        int dropped;
+        do {
+            head = segment.head.get();
+            dropped = (int) Math.min(length, tail - head);
+        } while (!segment.head.compareAndSet(head, head + dropped));
+        overflowCount++;
+        droppedBytes += dropped;
+        return segmentCapacity - (int) (tail - head - dropped);
+    }
+
+    private int dropNewest(ByteSource source, int maxLength) throws IOException {
+        if (discard == null) {
+            discard = new byte[Math.min(segmentCapacity, 4096)];
+        }
+        int n = source.read(discard, 0, Math.min(maxLength, discard.length));
+        if (n > 0) {
+            overflowCount++;
+            droppedBytes += n;
+        }
+        return n;
+    }
+
+    private Segment grow(Segment segment) {
+        // 新分段从当前位置开始，位置在分段之间连续
+        Segment next = new Segment(segmentCapacity, segment.tail.get());
+        totalCapacity.addAndGet(segmentCapacity);
+        growCount++;
+        tailSegment = next;
+        segment.next = next;
+        return next;
+    }
+
+    /**
+     * Is writable, false if policy is {@link OverflowPolicy#BLOCK} and buffer is full.
+     *
+     * @return the boolean
+     */
+    public boolean isWritable() {
+        if (policy != OverflowPolicy.BLOCK) {
+            return true;
+        }
+        Segment segment = tailSegment;
+        return segment.tail.get() - segment.head.get() < segmentCapacity;
+    }
+
+    // ------------------------------------------------------------------------------------------------------
+    // consumer
+    // ------------------------------------------------------------------------------------------------------
+
+    /**
+     * Dispatch buffered bytes to sink with the time they were read, called by consumer thread only.
+     * Bytes are dispatched in contiguous chunks, split when wrapped around and between reads.
+     *
+     * @param sink      the sink
+     * @param maxLength the max bytes to dispatch
+     * @return the bytes dispatched, 0 if empty
+     */
+    public int readTo(ByteSink sink, int maxLength) {
+        Segment segment = headSegment;
+        for (; ; ) {
+            long head = segment.head.get();
+            long tail = segment.tail.get();
+            if (head == tail) {
+                Segment next = segment.next;
+                // 生产者先写完当前分段再链接下一个分段，看到next后需要再检查一次
+                if (next == null) {
+                    return 0;
+                }
+                if (segment.tail.get() != tail) {
+                    continue;
+                }
+                headSegment = segment = next;
+                totalCapacity.addAndGet(-segmentCapacity);
+                continue;
+            }
+            int index = (int) (head & mask);
+            int length = (int) Math.min(Math.min(tail - head, maxLength), segmentCapacity - index);
+            int mark = markAt(head);
+            long end = markEnds.get(mark);
+            if (end > head) {
+                length = (int) Math.min(length, end - head);
+            }
+            long nanoTime = markNanos[mark];
+            if (policy == OverflowPolicy.DROP_OLDEST) {
+                if (copy == null) {
+                    copy = new byte[segmentCapacity];
+                    copyView = ByteBuffer.wrap(copy).asReadOnlyBuffer();
+                }
+                System.arraycopy(segment.data, index, copy, 0, length);
+                if (!segment.head.compareAndSet(head, head + length)) {
+                    // 拷贝期间生产者丢弃了最旧的数据，重新读取
+                    continue;
+                }
+                copyView.limit(length).position(0);
+                sink.onBytes(copyView, nanoTime);
+            } else {
+                segment.view.limit(index + length).position(index);
+                sink.onBytes(segment.view, nanoTime);
+                segment.head.set(head + length);
+            }
+            return length;
+        }
+    }
+
+    /**
+     * 找到包含position的读取记录，之前的记录已分发完，最新的记录保留给生产者合并
+     */
+    private int markAt(long position) {
+        long h = markHead.get();
+        long t = markTail.get();
+        while (t - h > 1 && markEnds.get((int) (h & markMask)) <= position) {
+            h++;
+        }
+        markHead.set(h);
+        return (int) (h & markMask);
+    }
+
+    /**
+     * Wait until buffer is not empty, called by consumer thread only.
+     *
+     * @param timeoutNanos the timeout nanos, negative to wait forever
+     * @return true if buffer is not empty
+     */
+    public boolean awaitReadable(long timeoutNanos) {
+        if (!isEmpty()) {
+            return true;
+        }
+        consumerThread = Thread.currentThread();
+        consumerParked = true;
+        try {
+            if (!isEmpty()) {
+                return true;
+            }
+            if (timeoutNanos < 0) {
+                LockSupport.park(this);
+            } else if (timeoutNanos > 0) {
+                LockSupport.parkNanos(this, timeoutNanos);
+            }
+        } finally {
+            consumerParked = false;
+        }
+        return !isEmpty();
+    }
+
+    /**
+     * Wake up consumer waiting in {@link #awaitReadable(long)}.
+     */
+    public void wakeup() {
+        Thread thread = consumerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Is empty.
+     *
+     * @return the boolean
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Gets buffered bytes.
+     *
+     * @return the size
+     */
+    public int size() {
+        long size = 0;
+        for (Segment segment = headSegment; segment != null; segment = segment.next) {
+            size += segment.tail.get() - segment.head.get();
+        }
+        return (int) size;
+    }
+
+    /**
+     * Gets current total capacity.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return totalCapacity.get();
+    }
+
+    /**
+     * Gets max total capacity.
+     *
+     * @return the limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Gets overflow policy.
+     *
+     * @return the policy
+     */
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gets overflow event count.
+     *
+     * @return the overflow count
+     */
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+
+    /**
+     * Gets dropped bytes count.
+     *
+     * @return the dropped bytes
+     */
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    /**
+     * Gets grow count.
+     *
+     * @return the grow count
+     */
+    public long getGrowCount() {
+        return growCount;
+    }
+
+    private static class Segment {
+
+        private final byte[] data;
+
+        private final ByteBuffer view;
+
+        private final AtomicLong head = new AtomicLong();
+
+        private final AtomicLong tail = new AtomicLong();
+
+        private volatile Segment next;
+
+        private Segment(int capacity, long position) {
+            data = new byte[capacity];
+            view = ByteBuffer.wrap(data).asReadOnlyBuffer();
+            head.set(position);
+            tail.set(position);
+        }
+    }
+}
@@ -1,6 +1,16 @@
 package cn.featherfly.android.serialport;
 
+import cn.featherfly.android.serialport.decoder.FrameDecoder;
+import cn.featherfly.android.serialport.metrics.SerialPortMetrics;
+import cn.featherfly.android.serialport.trace.TrafficTracer;
+
+import org.reactivestreams.Publisher;
+
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The interface EasySerialPort.
@@ -38,6 +48,13 @@ public interface EasySerialPort {
     int getBaudrate();
 
 
+    /**
+     * Gets metrics of the port.
+     *
+     * @return the metrics
+     */
+    SerialPortMetrics getMetrics();
+
     /**
      * Write byte.
      *
@@ -65,12 +82,92 @@ public interface EasySerialPort {
     public void write(byte[] b) throws IOException;
 
     /**
-     * Flush.
+     * Write bytes between position and limit of each part with a single gather write, e.g. header, payload and
+     * checksum of a frame, so the frame is not interleaved with other writes and no combined array is built.
+     *
+     * @param parts the parts
+     * @throws IOException the io exception
+     */
+    public void write(ByteBuffer... parts) throws IOException;
+
+    /**
+     * Write bytes between position and limit of src asynchronously, small writes queued together are sent with a
+     * single system call. src must not be modified until the future completes.
+     *
+     * @param src the src
+     * @return the completable future, completed when bytes are written to the port
+     */
+    public CompletableFuture<Void> writeAsync(ByteBuffer src);
+
+    /**
+     * Write asynchronously in the lane of priority. Higher lanes are written first, {@link WritePriority#BULK}
+     * writes are split into chunks so urgent commands are sent between chunks.
+     *
+     * @param src      the src
+     * @param priority the priority
+     * @return the completable future, completed when bytes are written to the port
+     */
+    public CompletableFuture<Void> writeAsync(ByteBuffer src, WritePriority priority);
+
+    /**
+     * Flush. Bytes are written to the port without user space buffering, use {@link #drain()} to wait until they
+     * are transmitted.
      *
      * @throws IOException the io exception
      */
     public void flush() throws IOException;
 
+    /**
+     * Wait until queued async writes and the bytes written to the port are transmitted.
+     *
+     * @throws IOException the io exception
+     */
+    public void drain() throws IOException;
+
+    /**
+     * Drain asynchronously, the output queue and the transmitter are polled at the time it takes to transmit at
+     * the baud rate. Ports whose driver reports neither are drained with a blocking tcdrain on a cached thread.
+     *
+     * @return the completable future, completed when the bytes are transmitted
+     */
+    public CompletableFuture<Void> drainAsync();
+
+    /**
+     * Read available bytes into dst, wait up to timeout if nothing is available.
+     * Synchronous reads are not allowed while receiving by listeners.
+     *
+     * @param dst     the dst
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return bytes read, 0 if timeout
+     * @throws IOException the io exception, {@link java.io.EOFException} at end of stream
+     */
+    public int read(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException;
+
+    /**
+     * Read until dst is full.
+     *
+     * @param dst     the dst
+     * @param timeout the timeout of the whole read
+     * @param unit    the unit
+     * @return bytes read
+     * @throws IOException the io exception, {@link java.io.InterruptedIOException} with bytesTransferred if timeout
+     */
+    public int readFully(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException;
+
+    /**
+     * Read until delimiter is read or dst is full, the delimiter is included. Bytes after the delimiter are kept
+     * for the next synchronous read.
+     *
+     * @param dst       the dst
+     * @param delimiter the delimiter
+     * @param timeout   the timeout of the whole read
+     * @param unit      the unit
+     * @return bytes read
+     * @throws IOException the io exception, {@link java.io.InterruptedIOException} with bytesTransferred if timeout
+     */
+    public int readUntil(ByteBuffer dst, byte delimiter, long timeout, TimeUnit unit) throws IOException;
+
     /**
      * Add listener easy serial port.
      *
@@ -79,6 +176,73 @@ public interface EasySerialPort {
      */
     public EasySerialPort addListener(SerialReadListener serialReadListener);
 
+    /**
+     * Add listener called on executor, the event is shared by all listeners of the same read.
+     *
+     * @param serialReadListener the serial read listener
+     * @param executor           the executor
+     * @return the easy serial port
+     */
+    public EasySerialPort addListener(SerialReadListener serialReadListener, Executor executor);
+
+    /**
+     * Remove listener.
+     *
+     * @param serialReadListener the serial read listener
+     * @return true if removed
+     */
+    public boolean removeListener(SerialReadListener serialReadListener);
+
+    /**
+     * Add buffer listener easy serial port.
+     *
+     * @param serialBufferReadListener the serial buffer read listener
+     * @return the easy serial port
+     */
+    public EasySerialPort addBufferListener(SerialBufferReadListener serialBufferReadListener);
+
+    /**
+     * Add buffer listener called on executor, the event holds a copy of the bytes and can be kept after the call.
+     *
+     * @param serialBufferReadListener the serial buffer read listener
+     * @param executor                 the executor
+     * @return the easy serial port
+     */
+    public EasySerialPort addBufferListener(SerialBufferReadListener serialBufferReadListener, Executor executor);
+
+    /**
+     * Remove buffer listener.
+     *
+     * @param serialBufferReadListener the serial buffer read listener
+     * @return true if removed
+     */
+    public boolean removeBufferListener(SerialBufferReadListener serialBufferReadListener);
+
+    /**
+     * Gets publisher of received data, frames when a frame decoder is set. Reading the port pauses when a
+     * subscriber does not request fast enough. The publisher terminates when the port is closed or receiving
+     * fails, a new publisher is returned after the port is opened again.
+     *
+     * @return the publisher
+     */
+    public Publisher<ByteBuffer> getPublisher();
+
+    /**
+     * Set frame decoder, listeners receive complete frames instead of raw reads.
+     *
+     * @param frameDecoder the frame decoder, null for raw reads
+     * @return the easy serial port
+     */
+    public EasySerialPort setFrameDecoder(FrameDecoder frameDecoder);
+
+    /**
+     * Set traffic tracer, tracing is disabled by default.
+     *
+     * @param tracer the tracer, null to disable tracing
+     * @return the easy serial port
+     */
+    public EasySerialPort setTracer(TrafficTracer tracer);
+
 
     // ------------------------------------------------------------------------------------------------------
     // ------------------------------------------------------------------------------------------------------
@@ -115,6 +279,20 @@ public interface EasySerialPort {
 //        }
     }
 
+    /**
+     * The interface Serial buffer read listener.
+     * <p>
+     * 直接接收池化缓冲区的只读视图，不做int[]转换，回调返回后缓冲区会被回收复用.
+     */
+    public interface SerialBufferReadListener {
+        /**
+         * 读取完成, event及其buffer仅在回调期间有效
+         *
+         * @param event the event
+         */
+        public void onReadComplete(SerialPortBufferEvent event);
+    }
+
     /**
      * The type Serial port event.
      */
@@ -143,10 +321,12 @@ public interface EasySerialPort {
 
     /**
      * The type Serial port read event.
+     * <p>
+     * 一次读取只创建一个事件，所有监听器共享，不要修改buffer.
      */
     public class SerialPortReadEvent extends SerialPortEvent {
 
-        private int[] buffer;
+        private final int[] buffer;
 
         /**
          * Instantiates a new Serial port read event.
@@ -168,4 +348,109 @@ public interface EasySerialPort {
             return buffer;
         }
     }
+
+    /**
+     * The type Serial port buffer read event.
+     * <p>
+     * 在接收线程中回调时同一端口的读取共用一个事件实例，不能在回调之外持有.
+     * 通过Executor回调的事件持有数据副本，可以在回调之外持有.
+     */
+    public class SerialPortBufferEvent extends SerialPortEvent {
+
+        private ByteBuffer buffer;
+
+        private int offset;
+
+        private int length;
+
+        private boolean detached;
+
+        /**
+         * Instantiates a new Serial port buffer event.
+         *
+         * @param port the port
+         */
+        public SerialPortBufferEvent(String port) {
+            super(port);
+        }
+
+        /**
+         * Instantiates a new Serial port buffer event over bytes between offset and offset + length of buffer,
+         * e.g. the payload of a frame. getBuffer returns an independent view on each call.
+         *
+         * @param port   the port
+         * @param buffer the buffer
+         * @param offset the offset
+         * @param length the length
+         */
+        public SerialPortBufferEvent(String port, ByteBuffer buffer, int offset, int length) {
+            super(port);
+            ByteBuffer view = buffer.duplicate();
+            view.limit(offset + length).position(offset);
+            reset(view, offset, length);
+            this.detached = true;
+        }
+
+        /**
+         * Detach a copy of the current bytes, shared by listeners called on executors.
+         *
+         * @return the detached event
+         */
+        SerialPortBufferEvent detach() {
+            ByteBuffer copy = ByteBuffer.allocate(length);
+            int position = buffer.position();
+            int limit = buffer.limit();
+            buffer.limit(offset + length).position(offset);
+            copy.put(buffer);
+            buffer.limit(limit).position(position);
+            copy.flip();
+            SerialPortBufferEvent event = new SerialPortBufferEvent(getPort());
+            event.reset(copy.asReadOnlyBuffer(), 0, length);
+            event.detached = true;
+            return event;
+        }
+
+        /**
+         * Reset event for next dispatch.
+         *
+         * @param buffer the buffer
+         * @param offset the offset
+         * @param length the length
+         * @return this event
+         */
+        SerialPortBufferEvent reset(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
+        /**
+         * Gets read only buffer, position is offset and limit is offset + length.
+         * Detached events return an independent view on each call.
+         *
+         * @return the buffer
+         */
+        public ByteBuffer getBuffer() {
+            return detached ? buffer.duplicate() : buffer;
+        }
+
+        /**
+         * Gets offset.
+         *
+         * @return the offset
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Gets length.
+         *
+         * @return the length
+         */
+        public int getLength() {
+            return length;
+        }
+    }
 }
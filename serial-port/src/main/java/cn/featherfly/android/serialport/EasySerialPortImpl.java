@@ -2,45 +2,149 @@ package cn.featherfly.android.serialport;
 
 import android.util.Log;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import cn.featherfly.android.serialport.ByteBufferPool.PooledByteBuffer;
+import cn.featherfly.android.serialport.decoder.FrameDecoder;
+import cn.featherfly.android.serialport.metrics.SerialPortMetrics;
+import cn.featherfly.android.serialport.trace.TraceSink.Direction;
+import cn.featherfly.android.serialport.trace.TrafficTracer;
 
 /**
  * The type Easy serial port.
  */
 public class EasySerialPortImpl implements EasySerialPort {
 
-    private ExecutorService executorService;
-
     private static final String TAG_FORMAT = "SerialPort[%s]";
 
+    private static final long MIN_DRAIN_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private static final ScheduledExecutorService DRAIN_TIMER;
+
+    static {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "serial-port-drain-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        DRAIN_TIMER = timer;
+    }
+
+    /**
+     * 驱动不报告发送状态时在这里阻塞tcdrain，流控停顿不会卡住其他端口的drainAsync
+     */
+    private static final ExecutorService DRAIN_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "serial-port-drain");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private SerialPortDescriptor descriptor;
 
     private SerialPort serialPort;
 
-    private InputStream in;
+    private volatile InputStream in;
 
-    private OutputStream out;
+    private volatile OutputStream out;
 
 //    private DataInputStream in;
 //    private DataOutputStream out;
 
     private String tag;
 
-    private boolean connected;
+    private volatile boolean connected;
+
+    private volatile SerialPortReactor reactor;
+
+    private volatile int receiveFd = -1;
+
+    private volatile ByteRingBuffer ringBuffer;
+
+    private DispatchThread dispatchThread;
+
+    private DispatchThread stoppedDispatchThread;
+
+    private final Object pauseLock = new Object();
+
+    private static final int PAUSED_BY_RING = 1;
+
+    private static final int PAUSED_BY_PUBLISHER = 2;
+
+    /**
+     * 暂停读取串口的原因，任一原因存在时都不读取
+     */
+    private volatile int pauseReasons;
+
+    private volatile SerialPortPublisher publisher;
+
+    private SerialBufferReadListener publisherListener;
+
+    private volatile Consumer<IOException> receiveErrorListener;
+
+    private final ListenerRegistry<SerialReadListener> serialReadListeners = new ListenerRegistry<>();
 
-    private List<SerialReadListener> serialReadListeners = new ArrayList<>();
+    private final ListenerRegistry<SerialBufferReadListener> serialBufferReadListeners = new ListenerRegistry<>();
 
-    private byte[] buffer;
+    private volatile ByteBufferPool bufferPool;
 
-    private int bufferSize = 512;
+    private SerialPortBufferEvent bufferEvent;
+
+    private volatile int bufferSize = 512;
+
+    private volatile AdaptiveBufferSizer bufferSizer;
+
+    private volatile FrameDecoder frameDecoder;
+
+    private final FrameDecoder.FrameSink frameSink = this::dispatch;
+
+    /**
+     * 环形缓冲区带上读取时间，解码器的字符间隔和分发延迟都从读取时算起
+     */
+    private final ByteRingBuffer.ByteSink receiveSink = this::receive;
+
+    private volatile TrafficTracer tracer;
+
+    /**
+     * write(int)跟踪单个字节时复用，避免每个字节分配数组
+     */
+    private final ByteBuffer traceScratch = ByteBuffer.allocate(1);
+
+    private final SerialPortMetrics metrics;
+
+    private int writeBatchSize = AsyncWriter.DEFAULT_BATCH_SIZE;
+
+    private long writeLingerNanos;
+
+    private int bulkChunkSize = AsyncWriter.DEFAULT_BULK_CHUNK_SIZE;
+
+    private volatile AsyncWriter asyncWriter;
+
+    private volatile TransmitPacer transmitPacer;
+
+    private final ByteRingBuffer.ByteSource byteSource = (b, off, len) -> in.read(b, off, len);
+
+    private final Object readLock = new Object();
+
+    /**
+     * readUntil多读到的字节，读模式，后续同步读取先从这里取
+     */
+    private ByteBuffer readAhead;
 
 
     private EasySerialPortImpl(SerialPortDescriptor descriptor) {
@@ -51,7 +155,16 @@ public class EasySerialPortImpl implements EasySerialPort {
         this.descriptor = descriptor;
         this.bufferSize = bufferSize;
 
-        buffer = new byte[bufferSize];
+        bufferPool = new ByteBufferPool(bufferSize, 2);
+        bufferEvent = new SerialPortBufferEvent(descriptor.getName());
+        metrics = new SerialPortMetrics(descriptor.getName());
+        metrics.setQueueDepth(() -> {
+            ByteRingBuffer ring = ringBuffer;
+            return ring != null ? ring.size() : 0;
+        }, () -> {
+            AsyncWriter writer = asyncWriter;
+            return writer != null ? writer.getQueuedCount() : 0;
+        });
 
         tag = String.format(TAG_FORMAT, descriptor.getName());
     }
@@ -115,6 +228,31 @@ public class EasySerialPortImpl implements EasySerialPort {
         return new EasySerialPortImpl(descriptor, bufferSize).open();
     }
 
+    /**
+     * Attach a port receiving from in instead of a device, e.g. a pipe in benchmarks and tests. Received bytes are
+     * read by {@link #newReceiveHandler()}, writing is not supported.
+     *
+     * @param descriptor the descriptor
+     * @param bufferSize the buffer size
+     * @param in         the in
+     * @return the easy serial port
+     */
+    static EasySerialPortImpl attach(SerialPortDescriptor descriptor, int bufferSize, InputStream in) {
+        EasySerialPortImpl port = new EasySerialPortImpl(descriptor, bufferSize);
+        port.in = in;
+        port.connected = true;
+        return port;
+    }
+
+    /**
+     * New handler reading and dispatching received bytes, the one registered with the reactor.
+     *
+     * @return the read handler
+     */
+    SerialPortReactor.ReadHandler newReceiveHandler() {
+        return new ReceiveHandler();
+    }
+
     /**
      * Is connected boolean.
      *
@@ -127,7 +265,8 @@ public class EasySerialPortImpl implements EasySerialPort {
     @Override
     public EasySerialPortImpl open() throws SecurityException, IOException {
         Log.i(tag, "open");
-        serialPort = new SerialPort(new File(descriptor.getName()), descriptor.getBaudrate(), descriptor.getFlags());
+        serialPort = new SerialPort(new File(descriptor.getName()), descriptor.getBaudrate(), descriptor.getFlags(),
+                descriptor.getLineConfig());
         in = serialPort.getInputStream();
         out = serialPort.getOutputStream();
 //        in = new DataInputStream(serialPort.getInputStream());
@@ -148,15 +287,62 @@ public class EasySerialPortImpl implements EasySerialPort {
 //    }
 
     /**
-     * Start receive easy serial port.
+     * Start receive easy serial port with default reactor.
+     * <p>
+     * The default reactor is one thread shared by all ports, listeners added without an executor run on it and a
+     * slow listener delays reading of every port. Add slow listeners with an executor, see
+     * {@link #addListener(SerialReadListener, Executor)}, or use {@link #startReceive(SerialPortReactor)} with a
+     * reactor of this port.
      *
      * @return the easy serial port
+     * @throws IOException the io exception, the port can not be registered with the reactor
      */
-    public synchronized EasySerialPortImpl startReceive() {
-        if (executorService == null) {
-            executorService = Executors.newCachedThreadPool();
-//            receiveThread = new ReceiveThread();
-            executorService.execute(new ReceiveThread());
+    public EasySerialPortImpl startReceive() throws IOException {
+        return startReceive(SerialPortReactor.getDefault());
+    }
+
+    /**
+     * Start receive easy serial port, e.g. with a reactor of its own
+     * {@code new SerialPortReactor("serial-port-reactor[ttyS1]")} so its listeners do not delay other ports.
+     *
+     * @param reactor the reactor
+     * @return the easy serial port
+     * @throws IOException the io exception, the port can not be registered with the reactor
+     */
+    public EasySerialPortImpl startReceive(SerialPortReactor reactor) throws IOException {
+        // 环形缓冲区只有一个消费者，等停止的分发线程退出后再启动新的
+        for (; ; ) {
+            DispatchThread stopped;
+            synchronized (this) {
+                stopped = stoppedDispatchThread;
+                if (stopped == null || !stopped.isAlive()) {
+                    stoppedDispatchThread = null;
+                    return doStartReceive(reactor);
+                }
+            }
+            if (stopped == Thread.currentThread()) {
+                throw new IllegalStateException("receive can not be restarted on its dispatch thread");
+            }
+            stopped.awaitTermination();
+        }
+    }
+
+    private synchronized EasySerialPortImpl doStartReceive(SerialPortReactor reactor) throws IOException {
+        if (this.reactor == null) {
+            int fd = serialPort.getDescriptor();
+            if (ringBuffer != null) {
+                dispatchThread = new DispatchThread(ringBuffer);
+                dispatchThread.start();
+            }
+            reactor.register(fd, newReceiveHandler());
+            this.reactor = reactor;
+            receiveFd = fd;
+            synchronized (pauseLock) {
+                pauseReasons &= ~PAUSED_BY_RING;
+                if (pauseReasons != 0) {
+                    reactor.setReadable(fd, false);
+                }
+            }
         }
         return this;
     }
@@ -166,10 +352,24 @@ public class EasySerialPortImpl implements EasySerialPort {
      *
      * @return the easy serial port
      */
-    public synchronized EasySerialPortImpl stopReceive() {
-        if (!executorService.isShutdown()) {
-            executorService.shutdown();
-            executorService = null;
+    public EasySerialPortImpl stopReceive() {
+        DispatchThread stopped;
+        synchronized (this) {
+            if (reactor != null) {
+                reactor.unregister(receiveFd);
+                reactor = null;
+                receiveFd = -1;
+            }
+            stopped = dispatchThread;
+            if (stopped != null) {
+                stopped.shutdown();
+                dispatchThread = null;
+                stoppedDispatchThread = stopped;
+            }
+        }
+        // 不持有锁等待，分发线程上的监听器可能在等待这个锁
+        if (stopped != null && stopped != Thread.currentThread()) {
+            stopped.awaitTermination();
         }
         return this;
     }
@@ -181,14 +381,24 @@ public class EasySerialPortImpl implements EasySerialPort {
      */
     public EasySerialPortImpl close() {
         Log.i(tag, "close");
+        stopReceive();
+        closeWriter();
         closeInput();
         closeOutput();
         serialPort.close();
         serialPort = null;
         connected = false;
+        terminatePublisher(null);
         return this;
     }
 
+    private synchronized void closeWriter() {
+        if (asyncWriter != null) {
+            asyncWriter.close();
+            asyncWriter = null;
+        }
+    }
+
     private void closeInput() {
         try {
             if (in != null) {
@@ -218,10 +428,126 @@ public class EasySerialPortImpl implements EasySerialPort {
      * @return the easy serial port
      */
     public EasySerialPortImpl addListener(SerialReadListener serialReadListener) {
-        serialReadListeners.add(serialReadListener);
+        serialReadListeners.add(serialReadListener, null);
+        return this;
+    }
+
+    @Override
+    public EasySerialPortImpl addListener(SerialReadListener serialReadListener, Executor executor) {
+        serialReadListeners.add(serialReadListener, executor);
+        return this;
+    }
+
+    @Override
+    public boolean removeListener(SerialReadListener serialReadListener) {
+        return serialReadListeners.remove(serialReadListener);
+    }
+
+    /**
+     * Add buffer listener easy serial port.
+     *
+     * @param serialBufferReadListener the serial buffer read listener
+     * @return the easy serial port
+     */
+    public EasySerialPortImpl addBufferListener(SerialBufferReadListener serialBufferReadListener) {
+        serialBufferReadListeners.add(serialBufferReadListener, null);
         return this;
     }
 
+    @Override
+    public SerialPortPublisher getPublisher() {
+        SerialPortPublisher p = publisher;
+        if (p == null) {
+            synchronized (this) {
+                p = publisher;
+                if (p == null) {
+                    p = new SerialPortPublisher(paused -> setReceivePaused(PAUSED_BY_PUBLISHER, paused),
+                            SerialPortPublisher.DEFAULT_HIGH_WATERMARK);
+                    SerialPortPublisher created = p;
+                    publisherListener = event -> created.publish(event.getBuffer());
+                    serialBufferReadListeners.add(publisherListener, null);
+                    publisher = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * 结束当前发布者，重新打开端口后getPublisher返回新的发布者
+     */
+    private void terminatePublisher(Throwable e) {
+        SerialPortPublisher p;
+        synchronized (this) {
+            p = publisher;
+            if (p == null) {
+                return;
+            }
+            publisher = null;
+            serialBufferReadListeners.remove(publisherListener);
+            publisherListener = null;
+        }
+        setReceivePaused(PAUSED_BY_PUBLISHER, false);
+        if (e != null) {
+            p.error(e);
+        } else {
+            p.complete();
+        }
+    }
+
+    @Override
+    public EasySerialPortImpl addBufferListener(SerialBufferReadListener serialBufferReadListener,
+                                                Executor executor) {
+        serialBufferReadListeners.add(serialBufferReadListener, executor);
+        return this;
+    }
+
+    @Override
+    public boolean removeBufferListener(SerialBufferReadListener serialBufferReadListener) {
+        return serialBufferReadListeners.remove(serialBufferReadListener);
+    }
+
+    /**
+     * Set frame decoder, listeners receive complete frames instead of raw reads. Set before {@link #startReceive()}.
+     *
+     * @param frameDecoder the frame decoder, null for raw reads
+     * @return the easy serial port
+     */
+    public EasySerialPortImpl setFrameDecoder(FrameDecoder frameDecoder) {
+        this.frameDecoder = frameDecoder;
+        return this;
+    }
+
+    /**
+     * Gets frame decoder.
+     *
+     * @return the frame decoder
+     */
+    public FrameDecoder getFrameDecoder() {
+        return frameDecoder;
+    }
+
+    /**
+     * Set ring buffer between reader and listeners, listeners are called on a dedicated dispatch thread
+     * so that slow listeners do not stall reading. Set before {@link #startReceive()}.
+     *
+     * @param ringBuffer the ring buffer, null to dispatch on the reader thread
+     * @return the easy serial port
+     */
+    public EasySerialPortImpl setRingBuffer(ByteRingBuffer ringBuffer) {
+        this.ringBuffer = ringBuffer;
+        return this;
+    }
+
+    /**
+     * Gets ring buffer.
+     *
+     * @return the ring buffer
+     */
+    public ByteRingBuffer getRingBuffer() {
+        return ringBuffer;
+    }
+
     /**
      * Write.
      *
@@ -229,8 +555,19 @@ public class EasySerialPortImpl implements EasySerialPort {
      * @throws IOException the io exception
      */
     public void write(int b) throws IOException {
-        Log.i(tag, "write -> " + Integer.toHexString(b));
-        out.write(b);
+        TrafficTracer t = tracer;
+        if (t != null) {
+            t.trace(descriptor.getName(), Direction.TX, b, traceScratch);
+        }
+        pace(1);
+        long start = System.nanoTime();
+        try {
+            out.write(b);
+        } catch (IOException e) {
+            traceError(e);
+            throw e;
+        }
+        metrics.recordWrite(1, System.nanoTime() - start);
     }
 
     /**
@@ -242,8 +579,7 @@ public class EasySerialPortImpl implements EasySerialPort {
      * @throws IOException the io exception
      */
     public void write(byte[] b, int off, int len) throws IOException {
-        Log.i(tag, "write -> " + toHexString(Arrays.copyOfRange(b, off, len), len - off));
-        out.write(b, off, len);
+        writeOut(b, off, len);
     }
 
     /**
@@ -253,8 +589,164 @@ public class EasySerialPortImpl implements EasySerialPort {
      * @throws IOException the io exception
      */
     public void write(byte[] b) throws IOException {
-        Log.i(tag, "write -> " + toHexString(b, b.length));
-        out.write(b);
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(ByteBuffer... parts) throws IOException {
+        int length = 0;
+        for (ByteBuffer part : parts) {
+            length += part.remaining();
+        }
+        TrafficTracer t = tracer;
+        if (t != null) {
+            // 按一帧记录
+            ByteBuffer frame = ByteBuffer.allocate(length);
+            for (ByteBuffer part : parts) {
+                frame.put(part.duplicate());
+            }
+            frame.flip();
+            t.trace(descriptor.getName(), Direction.TX, frame);
+        }
+        pace(length);
+        long start = System.nanoTime();
+        try {
+            serialPort.write(parts);
+        } catch (IOException e) {
+            traceError(e);
+            throw e;
+        }
+        metrics.recordWrite(length, System.nanoTime() - start);
+    }
+
+    /**
+     * Set write coalescing of {@link #writeAsync(ByteBuffer)}. Set before first async write.
+     *
+     * @param batchSize the max bytes gathered into a single write
+     * @param linger    the max time waiting for more writes after the first queued one
+     * @param unit      the unit
+     * @return the easy serial port
+     */
+    public EasySerialPortImpl setWriteCoalescing(int batchSize, long linger, TimeUnit unit) {
+        this.writeBatchSize = batchSize;
+        this.writeLingerNanos = unit.toNanos(linger);
+        return this;
+    }
+
+    /**
+     * Set bytes per chunk of {@link WritePriority#BULK} writes. Set before first async write.
+     *
+     * @param bulkChunkSize the bulk chunk size
+     * @return the easy serial port
+     */
+    public EasySerialPortImpl setBulkChunkSize(int bulkChunkSize) {
+        this.bulkChunkSize = bulkChunkSize;
+        return this;
+    }
+
+    @Override
+    public CompletableFuture<Void> writeAsync(ByteBuffer src) {
+        return writeAsync(src, WritePriority.NORMAL);
+    }
+
+    @Override
+    public CompletableFuture<Void> writeAsync(ByteBuffer src, WritePriority priority) {
+        AsyncWriter writer;
+        synchronized (this) {
+            if (!connected) {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                future.completeExceptionally(new IOException("port closed"));
+                return future;
+            }
+            if (asyncWriter == null) {
+                asyncWriter = new AsyncWriter("serial-port-writer[" + descriptor.getName() + "]",
+                        new WriterSink(), writeBatchSize, writeLingerNanos, TimeUnit.NANOSECONDS)
+                        .setBulkChunkSize(Math.min(bulkChunkSize, writeBatchSize))
+                        .setNanosPerByte(getNanosPerCharacter())
+                        .setWaitRecorder((p, nanos) -> metrics.recordLaneWait(p.ordinal(), nanos));
+            }
+            writer = asyncWriter;
+        }
+        return writer.write(src, priority);
+    }
+
+    /**
+     * 异步写线程的输出，批量写入根据内核发送队列的长度等待
+     */
+    private class WriterSink implements AsyncWriter.Sink {
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writeOut(b, off, len);
+        }
+
+        @Override
+        public int getOutputQueueSize() throws IOException {
+            SerialPort port = serialPort;
+            if (port == null) {
+                throw new IOException("port closed");
+            }
+            try {
+                return port.getOutputQueueSize();
+            } catch (IOException e) {
+                // 不支持TIOCOUTQ时不等待
+                return 0;
+            }
+        }
+    }
+
+    private void writeOut(byte[] b, int off, int len) throws IOException {
+        TrafficTracer t = tracer;
+        if (t != null) {
+            t.trace(descriptor.getName(), Direction.TX, b, off, len);
+        }
+        pace(len);
+        long start = System.nanoTime();
+        try {
+            out.write(b, off, len);
+        } catch (IOException e) {
+            traceError(e);
+            throw e;
+        }
+        metrics.recordWrite(len, System.nanoTime() - start);
+    }
+
+    /**
+     * Set traffic tracer, tracing is disabled by default.
+     *
+     * @param tracer the tracer, null to disable tracing
+     * @return the easy serial port
+     */
+    public EasySerialPortImpl setTracer(TrafficTracer tracer) {
+        this.tracer = tracer;
+        return this;
+    }
+
+    /**
+     * Gets tracer.
+     *
+     * @return the tracer
+     */
+    public TrafficTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Set listener called on the receive thread when receiving stops because of an error, e.g. the device is
+     * unplugged.
+     *
+     * @param receiveErrorListener the receive error listener
+     * @return the easy serial port
+     */
+    public EasySerialPortImpl setReceiveErrorListener(Consumer<IOException> receiveErrorListener) {
+        this.receiveErrorListener = receiveErrorListener;
+        return this;
+    }
+
+    private void traceError(Exception e) {
+        TrafficTracer t = tracer;
+        if (t != null) {
+            t.onError(descriptor.getName(), e);
+        }
     }
 
     /**
@@ -266,8 +758,244 @@ public class EasySerialPortImpl implements EasySerialPort {
         out.flush();
     }
 
+    @Override
+    public void drain() throws IOException {
+        AsyncWriter writer = asyncWriter;
+        if (writer != null) {
+            // 批量通道的空写入在之前排队的所有写入之后完成
+            try {
+                writer.write(ByteBuffer.allocate(0), WritePriority.BULK).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while draining");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+        SerialPort port = serialPort;
+        if (port == null) {
+            throw new IOException("port closed");
+        }
+        port.drain();
+    }
+
+    @Override
+    public CompletableFuture<Void> drainAsync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        AsyncWriter writer = asyncWriter;
+        CompletableFuture<Void> written = writer != null ? writer.write(ByteBuffer.allocate(0), WritePriority.BULK)
+                : CompletableFuture.completedFuture(null);
+        written.whenCompleteAsync((v, e) -> {
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else {
+                pollOutputQueue(future);
+            }
+        }, DRAIN_TIMER);
+        return future;
+    }
+
+    private void pollOutputQueue(CompletableFuture<Void> future) {
+        SerialPort port = serialPort;
+        if (port == null) {
+            future.completeExceptionally(new IOException("port closed"));
+            return;
+        }
+        try {
+            int queued;
+            try {
+                queued = port.getOutputQueueSize();
+            } catch (IOException e) {
+                // 不支持TIOCOUTQ，在阻塞线程上tcdrain
+                drainBlocking(port, future);
+                return;
+            }
+            if (queued > 0) {
+                // 按波特率估算发送完队列的时间后再检查
+                long delay = Math.max(MIN_DRAIN_POLL_NANOS, queued * getNanosPerCharacter());
+                DRAIN_TIMER.schedule(() -> pollOutputQueue(future), delay, TimeUnit.NANOSECONDS);
+                return;
+            }
+            // 内核队列已空，等待UART的移位寄存器发送完
+            int transmitter = port.getTransmitterState();
+            if (transmitter == 0) {
+                DRAIN_TIMER.schedule(() -> pollOutputQueue(future),
+                        Math.max(MIN_DRAIN_POLL_NANOS, getNanosPerCharacter()), TimeUnit.NANOSECONDS);
+            } else if (transmitter > 0) {
+                future.complete(null);
+            } else {
+                drainBlocking(port, future);
+            }
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private void drainBlocking(SerialPort port, CompletableFuture<Void> future) {
+        DRAIN_EXECUTOR.execute(() -> {
+            try {
+                port.drain();
+                future.complete(null);
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    private int getBitsPerCharacter() {
+        LineConfig lineConfig = descriptor.getLineConfig();
+        return lineConfig != null ? lineConfig.getBitsPerCharacter() : new LineConfig().getBitsPerCharacter();
+    }
+
+    private long getNanosPerCharacter() {
+        return TimeUnit.SECONDS.toNanos(getBitsPerCharacter()) / Math.max(1, descriptor.getBaudrate());
+    }
+
+    /**
+     * Set transmit pacer, writes wait when they exceed its rate. Pacing is disabled by default.
+     *
+     * @param transmitPacer the transmit pacer, null to disable pacing
+     * @return the easy serial port
+     */
+    public EasySerialPortImpl setTransmitPacer(TransmitPacer transmitPacer) {
+        this.transmitPacer = transmitPacer;
+        return this;
+    }
+
+    /**
+     * Gets transmit pacer.
+     *
+     * @return the transmit pacer
+     */
+    public TransmitPacer getTransmitPacer() {
+        return transmitPacer;
+    }
+
+    private void pace(int length) throws IOException {
+        TransmitPacer pacer = transmitPacer;
+        if (pacer != null) {
+            pacer.acquire(length);
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException {
+        synchronized (readLock) {
+            checkSynchronousRead();
+            if (readAhead != null && readAhead.hasRemaining()) {
+                return transfer(readAhead, dst, Math.min(readAhead.remaining(), dst.remaining()));
+            }
+            return readPort(dst, unit.toNanos(timeout));
+        }
+    }
+
+    @Override
+    public int readFully(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int total = 0;
+        synchronized (readLock) {
+            checkSynchronousRead();
+            while (dst.hasRemaining()) {
+                if (readAhead != null && readAhead.hasRemaining()) {
+                    total += transfer(readAhead, dst, Math.min(readAhead.remaining(), dst.remaining()));
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw readTimeout(total);
+                }
+                total += readPort(dst, remaining);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public int readUntil(ByteBuffer dst, byte delimiter, long timeout, TimeUnit unit) throws IOException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int total = 0;
+        synchronized (readLock) {
+            checkSynchronousRead();
+            if (readAhead == null) {
+                readAhead = ByteBuffer.allocate(bufferSize);
+                readAhead.flip();
+            }
+            while (dst.hasRemaining()) {
+                if (!readAhead.hasRemaining()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw readTimeout(total);
+                    }
+                    readAhead.clear();
+                    try {
+                        readPort(readAhead, remaining);
+                    } finally {
+                        readAhead.flip();
+                    }
+                    continue;
+                }
+                int start = readAhead.position();
+                int length = Math.min(readAhead.remaining(), dst.remaining());
+                for (int i = 0; i < length; i++) {
+                    if (readAhead.get(start + i) == delimiter) {
+                        return total + transfer(readAhead, dst, i + 1);
+                    }
+                }
+                total += transfer(readAhead, dst, length);
+            }
+        }
+        return total;
+    }
+
+    private void checkSynchronousRead() throws IOException {
+        if (!connected) {
+            throw new IOException("port closed");
+        }
+        if (reactor != null) {
+            throw new IllegalStateException("port is receiving by listeners, stop receive before synchronous read");
+        }
+    }
+
+    private int readPort(ByteBuffer dst, long timeoutNanos) throws IOException {
+        int size = serialPort.read(dst, timeoutNanos, TimeUnit.NANOSECONDS);
+        if (size < 0) {
+            throw new EOFException("end of stream");
+        }
+        if (size > 0) {
+            metrics.recordRead(size);
+            TrafficTracer t = tracer;
+            if (t != null) {
+                int end = dst.position();
+                int limit = dst.limit();
+                dst.limit(end).position(end - size);
+                t.trace(descriptor.getName(), Direction.RX, dst);
+                dst.limit(limit).position(end);
+            }
+        }
+        return size;
+    }
+
+    private static int transfer(ByteBuffer src, ByteBuffer dst, int length) {
+        int limit = src.limit();
+        src.limit(src.position() + length);
+        dst.put(src);
+        src.limit(limit);
+        return length;
+    }
+
+    private static InterruptedIOException readTimeout(int bytesTransferred) {
+        InterruptedIOException e = new InterruptedIOException("read timeout");
+        e.bytesTransferred = bytesTransferred;
+        return e;
+    }
+
+    @Override
+    public SerialPortMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
-     * Gets buffer size.
+     * Gets buffer size, the current adaptive size when adaptive sizing is enabled.
      *
      * @return the buffer size
      */
@@ -275,62 +1003,271 @@ public class EasySerialPortImpl implements EasySerialPort {
         return bufferSize;
     }
 
+    /**
+     * Enable adaptive receive buffer sizing, the size starts from the baud rate and follows recent read sizes.
+     *
+     * @param bufferSizer the buffer sizer, null to keep the current size fixed
+     * @return the easy serial port
+     */
+    public synchronized EasySerialPortImpl setAdaptiveBufferSize(AdaptiveBufferSizer bufferSizer) {
+        if (bufferSizer != null) {
+            resizeBuffer(bufferSizer.reset(descriptor.getBaudrate(), getBitsPerCharacter()));
+        }
+        this.bufferSizer = bufferSizer;
+        return this;
+    }
+
+    /**
+     * Gets adaptive buffer sizer.
+     *
+     * @return the buffer sizer, null if adaptive sizing is disabled
+     */
+    public AdaptiveBufferSizer getAdaptiveBufferSize() {
+        return bufferSizer;
+    }
+
+    private void resizeBuffer(int size) {
+        bufferSize = size;
+        if (bufferPool.getBufferSize() != size) {
+            // 只在大小变化时替换缓冲池，旧的缓冲区归还后丢弃
+            bufferPool = new ByteBufferPool(size, 2);
+        }
+    }
+
+    private void recordReadSize(int size, int capacity) {
+        AdaptiveBufferSizer sizer = bufferSizer;
+        if (sizer == null || !sizer.record(size, capacity)) {
+            return;
+        }
+        resizeBuffer(sizer.getSize());
+        Log.d(tag, "adapt receive buffer: " + sizer);
+        SerialPort port = serialPort;
+        if (sizer.isAdjustVmin() && port != null) {
+            LineConfig lineConfig = descriptor.getLineConfig();
+            lineConfig = lineConfig != null ? new LineConfig(lineConfig) : new LineConfig();
+            // 串口标志在打开时已经设置过，只改VMIN/VTIME
+            lineConfig.setLowLatency(null);
+            int vmin = sizer.getVmin();
+            try {
+                port.setLineConfig(lineConfig.setVmin(vmin).setVtime(vmin > 1 ? 1 : lineConfig.getVtime()));
+            } catch (IOException e) {
+                Log.e(tag, "set vmin failed: " + e.getMessage());
+            }
+        }
+    }
+
     @Override
     public String getName() {
         return descriptor.getName();
     }
 
+    /**
+     * Gets actual baudrate set by the driver, may differ from {@link #getBaudrate()} when the driver rounds a custom
+     * baudrate to its clock divider.
+     *
+     * @return the actual baudrate
+     * @throws IOException the io exception
+     */
+    public int getActualBaudrate() throws IOException {
+        SerialPort port = serialPort;
+        if (port == null) {
+            throw new IOException("port closed");
+        }
+        return port.getActualBaudrate();
+    }
+
     @Override
     public int getBaudrate() {
         return descriptor.getBaudrate();
     }
 
     /**
-     * 接收串口数据的线程
+     * 接收串口数据，由reactor在串口可读时回调
+     */
+    private class ReceiveHandler implements SerialPortReactor.ReadHandler {
+        @Override
+        public void onReadable() throws IOException {
+            InputStream in = EasySerialPortImpl.this.in;
+            if (!connected || in == null) {
+                return;
+            }
+            ByteRingBuffer ring = ringBuffer;
+            if (ring != null) {
+                int length = bufferSize;
+                int size = ring.writeFrom(byteSource, length);
+                if (size == -1) {
+                    throw new IOException("end of stream");
+                }
+                if (size > 0) {
+                    metrics.recordRead(size);
+                    recordReadSize(size, length);
+                }
+                // 满了不是流结束，暂停读取直到分发线程腾出空间
+                if (size == ByteRingBuffer.FULL || !ring.isWritable()) {
+                    pauseReceive(ring);
+                }
+                return;
+            }
+            PooledByteBuffer pooledBuffer = bufferPool.acquire();
+            try {
+                ByteBuffer buffer = pooledBuffer.buffer();
+                int size = in.read(buffer.array(), buffer.arrayOffset(), buffer.capacity());
+                if (size > 0) {
+                    metrics.recordRead(size);
+                    recordReadSize(size, buffer.capacity());
+                    receive(pooledBuffer.readOnly(0, size), System.nanoTime());
+                } else {
+                    throw new IOException("end of stream");
+                }
+            } finally {
+                pooledBuffer.release();
+            }
+        }
+
+        @Override
+        public void onError(IOException e) {
+            Log.e(tag, "receive stopped: " + e.getMessage());
+            traceError(e);
+            terminatePublisher(e);
+            synchronized (EasySerialPortImpl.this) {
+                reactor = null;
+                receiveFd = -1;
+            }
+            Consumer<IOException> listener = receiveErrorListener;
+            if (listener != null) {
+                listener.accept(e);
+            }
+        }
+
+        @Override
+        public long getDeadline() {
+            // 使用环形缓冲区时解码器在分发线程上运行
+            FrameDecoder decoder = frameDecoder;
+            return decoder != null && ringBuffer == null ? decoder.getDeadline() : Long.MAX_VALUE;
+        }
+
+        @Override
+        public void onTimeout(long nanoTime) {
+            FrameDecoder decoder = frameDecoder;
+            if (decoder != null && ringBuffer == null) {
+                decoder.onTimeout(nanoTime, frameSink);
+            }
+        }
+    }
+
+    /**
+     * 从环形缓冲区取数据分发给监听器的线程
      */
-    private class ReceiveThread implements Runnable {
+    private class DispatchThread extends Thread {
+
+        private final ByteRingBuffer ring;
+
+        private volatile boolean running = true;
+
+        private DispatchThread(ByteRingBuffer ring) {
+            super("serial-port-dispatch[" + descriptor.getName() + "]");
+            this.ring = ring;
+            setDaemon(true);
+        }
+
         @Override
         public void run() {
-            while (connected) {
-                if (in != null) {
-                    try {
-//                        while (in.available() > 0) {
-//                        try {
-//                            Thread.sleep(500);
-//                        } catch (InterruptedException e) {
-//
-//                        }
-                        int size = in.read(buffer);
-                        if (size > 0) {
-                            Log.i(tag, "read -> " + toHexString(buffer, size));
-                            int[] receive = new int[size];
-                            for (int i = 0; i < size; i++) {
-                                receive[i] = toUnsignedInt(buffer[i]);
-                            }
-                            for (SerialReadListener serialReadListener : serialReadListeners) {
-                                serialReadListener.onReadComplete(new SerialPortReadEvent(descriptor.getName(), receive));
+            while (running) {
+                FrameDecoder decoder = frameDecoder;
+                long deadline = decoder != null ? decoder.getDeadline() : Long.MAX_VALUE;
+                long timeout = deadline == Long.MAX_VALUE ? -1 : Math.max(0, deadline - System.nanoTime());
+                try {
+                    if (ring.awaitReadable(timeout)) {
+                        while (running && ring.readTo(receiveSink, bufferSize) > 0) {
+                            if ((pauseReasons & PAUSED_BY_RING) != 0) {
+                                resumeReceive(ring);
                             }
                         }
-//                        }
-                    } catch (IOException e) {
-                        Log.e(tag, e.getMessage());
                     }
+                    if (decoder != null) {
+                        long now = System.nanoTime();
+                        if (decoder.getDeadline() - now <= 0) {
+                            decoder.onTimeout(now, frameSink);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(tag, "dispatch throw exception", e);
+                }
+            }
+        }
+
+        private void shutdown() {
+            running = false;
+            ring.wakeup();
+        }
+
+        private void awaitTermination() {
+            boolean interrupted = false;
+            while (isAlive()) {
+                try {
+                    join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
                 }
             }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
-    private int toUnsignedInt(byte x) {
-        return ((int) x) & 0xff;
+    private void pauseReceive(ByteRingBuffer ring) {
+        setReceivePaused(PAUSED_BY_RING, true);
+        // 暂停前分发线程可能已经腾出空间
+        resumeReceive(ring);
     }
 
-    private String toHexString(byte[] bytes, int length) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < length; i++) {
-            byte b = bytes[i];
-            sb.append(Integer.toHexString(b));
-            sb.append(" ");
+    private void resumeReceive(ByteRingBuffer ring) {
+        synchronized (pauseLock) {
+            if ((pauseReasons & PAUSED_BY_RING) != 0 && ring.isWritable()) {
+                setReceivePaused(PAUSED_BY_RING, false);
+            }
         }
-        return sb.toString();
+    }
+
+    private void setReceivePaused(int reason, boolean paused) {
+        synchronized (pauseLock) {
+            int reasons = paused ? pauseReasons | reason : pauseReasons & ~reason;
+            SerialPortReactor r = reactor;
+            if (r != null && (reasons == 0) != (pauseReasons == 0)) {
+                try {
+                    // 停止读取，由内核缓冲区和流控反压
+                    r.setReadable(receiveFd, reasons == 0);
+                } catch (IOException e) {
+                    Log.e(tag, e.getMessage());
+                    return;
+                }
+            }
+            pauseReasons = reasons;
+        }
+    }
+
+    private void receive(ByteBuffer data, long nanoTime) {
+        TrafficTracer t = tracer;
+        if (t != null) {
+            t.trace(descriptor.getName(), Direction.RX, data);
+        }
+        FrameDecoder decoder = frameDecoder;
+        if (decoder != null) {
+            decoder.decode(data, nanoTime, frameSink);
+        } else {
+            dispatch(data);
+        }
+        metrics.recordDispatch(System.nanoTime() - nanoTime);
+    }
+
+    /**
+     * 分发数据到监听器，data的position到limit之间为本次数据
+     */
+    private void dispatch(ByteBuffer data) {
+        int offset = data.position();
+        int size = data.remaining();
+        ListenerRegistry.dispatchBuffer(serialBufferReadListeners, bufferEvent, data, offset, size);
+        ListenerRegistry.dispatchRead(serialReadListeners, descriptor.getName(), data, offset, size);
     }
 }
@@ -0,0 +1,289 @@
+package cn.featherfly.android.serialport;
+
+/**
+ * The type Line config.
+ * <p>
+ * 串口线路参数，默认8N1、无流控、VMIN=1、VTIME=0(与cfmakeraw一致).
+ * <p>
+ * VMIN/VTIME用于在延迟和唤醒次数之间取舍: 交互设备使用小VMIN；批量遥测数据使用大VMIN，
+ * 串口只在至少收到VMIN个字节后才变为可读. VTIME大于0时read会在字符间隔内阻塞，
+ * 与其它串口共用{@link SerialPortReactor}时会延迟其它串口的读取.
+ */
+public class LineConfig {
+
+    /**
+     * The enum Parity.
+     */
+    public enum Parity {
+        /**
+         * None parity.
+         */
+        NONE,
+        /**
+         * Odd parity.
+         */
+        ODD,
+        /**
+         * Even parity.
+         */
+        EVEN,
+        /**
+         * Mark parity.
+         */
+        MARK,
+        /**
+         * Space parity.
+         */
+        SPACE
+    }
+
+    /**
+     * The enum Flow control.
+     */
+    public enum FlowControl {
+        /**
+         * None flow control.
+         */
+        NONE,
+        /**
+         * Hardware RTS/CTS flow control.
+         */
+        RTS_CTS,
+        /**
+         * Software XON/XOFF flow control.
+         */
+        XON_XOFF
+    }
+
+    private int dataBits = 8;
+
+    private Parity parity = Parity.NONE;
+
+    private int stopBits = 1;
+
+    private FlowControl flowControl = FlowControl.NONE;
+
+    private int vmin = 1;
+
+    private int vtime = 0;
+
+    private Boolean lowLatency;
+
+    /**
+     * Instantiates a new Line config with 8N1.
+     */
+    public LineConfig() {
+    }
+
+    /**
+     * Instantiates a new Line config.
+     *
+     * @param dataBits the data bits
+     * @param parity   the parity
+     * @param stopBits the stop bits
+     */
+    public LineConfig(int dataBits, Parity parity, int stopBits) {
+        setDataBits(dataBits);
+        setParity(parity);
+        setStopBits(stopBits);
+    }
+
+    /**
+     * Instantiates a new Line config copied from another.
+     *
+     * @param lineConfig the line config
+     */
+    public LineConfig(LineConfig lineConfig) {
+        this.dataBits = lineConfig.dataBits;
+        this.parity = lineConfig.parity;
+        this.stopBits = lineConfig.stopBits;
+        this.flowControl = lineConfig.flowControl;
+        this.vmin = lineConfig.vmin;
+        this.vtime = lineConfig.vtime;
+        this.lowLatency = lineConfig.lowLatency;
+    }
+
+    /**
+     * Gets data bits.
+     *
+     * @return the data bits
+     */
+    public int getDataBits() {
+        return dataBits;
+    }
+
+    /**
+     * Sets data bits, 5 - 8.
+     *
+     * @param dataBits the data bits
+     * @return this line config
+     */
+    public LineConfig setDataBits(int dataBits) {
+        if (dataBits < 5 || dataBits > 8) {
+            throw new IllegalArgumentException("dataBits must be 5 - 8: " + dataBits);
+        }
+        this.dataBits = dataBits;
+        return this;
+    }
+
+    /**
+     * Gets parity.
+     *
+     * @return the parity
+     */
+    public Parity getParity() {
+        return parity;
+    }
+
+    /**
+     * Sets parity.
+     *
+     * @param parity the parity
+     * @return this line config
+     */
+    public LineConfig setParity(Parity parity) {
+        this.parity = parity != null ? parity : Parity.NONE;
+        return this;
+    }
+
+    /**
+     * Gets stop bits.
+     *
+     * @return the stop bits
+     */
+    public int getStopBits() {
+        return stopBits;
+    }
+
+    /**
+     * Sets stop bits, 1 or 2.
+     *
+     * @param stopBits the stop bits
+     * @return this line config
+     */
+    public LineConfig setStopBits(int stopBits) {
+        if (stopBits != 1 && stopBits != 2) {
+            throw new IllegalArgumentException("stopBits must be 1 or 2: " + stopBits);
+        }
+        this.stopBits = stopBits;
+        return this;
+    }
+
+    /**
+     * Gets flow control.
+     *
+     * @return the flow control
+     */
+    public FlowControl getFlowControl() {
+        return flowControl;
+    }
+
+    /**
+     * Sets flow control.
+     *
+     * @param flowControl the flow control
+     * @return this line config
+     */
+    public LineConfig setFlowControl(FlowControl flowControl) {
+        this.flowControl = flowControl != null ? flowControl : FlowControl.NONE;
+        return this;
+    }
+
+    /**
+     * Gets VMIN.
+     *
+     * @return the vmin
+     */
+    public int getVmin() {
+        return vmin;
+    }
+
+    /**
+     * Sets VMIN, min bytes of a read, 0 - 255.
+     *
+     * @param vmin the vmin
+     * @return this line config
+     */
+    public LineConfig setVmin(int vmin) {
+        if (vmin < 0 || vmin > 255) {
+            throw new IllegalArgumentException("vmin must be 0 - 255: " + vmin);
+        }
+        this.vmin = vmin;
+        return this;
+    }
+
+    /**
+     * Gets VTIME.
+     *
+     * @return the vtime
+     */
+    public int getVtime() {
+        return vtime;
+    }
+
+    /**
+     * Sets VTIME, read timeout in deciseconds, 0 - 255.
+     *
+     * @param vtime the vtime
+     * @return this line config
+     */
+    public LineConfig setVtime(int vtime) {
+        if (vtime < 0 || vtime > 255) {
+            throw new IllegalArgumentException("vtime must be 0 - 255: " + vtime);
+        }
+        this.vtime = vtime;
+        return this;
+    }
+
+    /**
+     * Is low latency.
+     *
+     * @return the boolean
+     */
+    public boolean isLowLatency() {
+        return lowLatency != null && lowLatency;
+    }
+
+    /**
+     * Gets low latency.
+     *
+     * @return the low latency, null if not set and the driver setting is kept
+     */
+    public Boolean getLowLatency() {
+        return lowLatency;
+    }
+
+    /**
+     * Sets ASYNC_LOW_LATENCY, drivers such as FTDI push received bytes immediately instead of batching.
+     * Ignored with a warning when the driver does not support it. The serial flags are only changed when it is set.
+     *
+     * @param lowLatency the low latency, null to keep the driver setting
+     * @return this line config
+     */
+    public LineConfig setLowLatency(Boolean lowLatency) {
+        this.lowLatency = lowLatency;
+        return this;
+    }
+
+    /**
+     * Gets bits on the wire per character, start bit + data bits + parity bit + stop bits.
+     *
+     * @return the bits per character
+     */
+    public int getBitsPerCharacter() {
+        return 1 + dataBits + (parity == Parity.NONE ? 0 : 1) + stopBits;
+    }
+
+    @Override
+    public String toString() {
+        return "LineConfig{" +
+                "dataBits=" + dataBits +
+                ", parity=" + parity +
+                ", stopBits=" + stopBits +
+                ", flowControl=" + flowControl +
+                ", vmin=" + vmin +
+                ", vtime=" + vtime +
+                ", lowLatency=" + lowLatency +
+                '}';
+    }
+}
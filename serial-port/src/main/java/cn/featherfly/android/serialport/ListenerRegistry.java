@@ -0,0 +1,151 @@
+package cn.featherfly.android.serialport;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+import cn.featherfly.android.serialport.EasySerialPort.SerialBufferReadListener;
+import cn.featherfly.android.serialport.EasySerialPort.SerialPortBufferEvent;
+import cn.featherfly.android.serialport.EasySerialPort.SerialPortReadEvent;
+import cn.featherfly.android.serialport.EasySerialPort.SerialReadListener;
+
+/**
+ * The type Listener registry.
+ * <p>
+ * 写时复制的监听器数组，注册和移除时复制，接收线程直接遍历当前数组快照，不加锁也不分配对象.
+ * 端口和逻辑通道共用，监听器的回调线程和事件的有效期一致.
+ *
+ * @param <L> the listener type
+ */
+public final class ListenerRegistry<L> {
+
+    private volatile Registration<L>[] registrations = newArray(0);
+
+    /**
+     * Add listener.
+     *
+     * @param listener the listener
+     * @param executor the executor, null to call on the receive thread
+     */
+    public synchronized void add(L listener, Executor executor) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener is null");
+        }
+        Registration<L>[] current = registrations;
+        Registration<L>[] next = newArray(current.length + 1);
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = new Registration<>(listener, executor);
+        registrations = next;
+    }
+
+    /**
+     * Remove the first registration of listener.
+     *
+     * @param listener the listener
+     * @return true if removed
+     */
+    public synchronized boolean remove(L listener) {
+        Registration<L>[] current = registrations;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].listener == listener) {
+                Registration<L>[] next = newArray(current.length - 1);
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                registrations = next;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Is empty.
+     *
+     * @return the boolean
+     */
+    public boolean isEmpty() {
+        return registrations.length == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <L> Registration<L>[] newArray(int length) {
+        // 泛型数组只能通过原始类型创建，元素都是Registration<L>
+        return (Registration<L>[]) new Registration<?>[length];
+    }
+
+    /**
+     * Dispatch bytes between offset and offset + length of data to buffer listeners. Listeners on the receive
+     * thread share event, which is only valid during the call, listeners called on executors share a detached copy.
+     *
+     * @param listeners the listeners
+     * @param event     the event reused by the receive thread
+     * @param data      the data
+     * @param offset    the offset
+     * @param length    the length
+     */
+    public static void dispatchBuffer(ListenerRegistry<SerialBufferReadListener> listeners,
+                                      SerialPortBufferEvent event, ByteBuffer data, int offset, int length) {
+        Registration<SerialBufferReadListener>[] current = listeners.registrations;
+        SerialPortBufferEvent detached = null;
+        for (Registration<SerialBufferReadListener> registration : current) {
+            if (registration.executor == null) {
+                registration.listener.onReadComplete(event.reset(data, offset, length));
+                data.limit(offset + length).position(offset);
+            } else {
+                if (detached == null) {
+                    detached = event.reset(data, offset, length).detach();
+                }
+                SerialPortBufferEvent e = detached;
+                SerialBufferReadListener listener = registration.listener;
+                registration.executor.execute(() -> listener.onReadComplete(e));
+            }
+        }
+    }
+
+    /**
+     * Dispatch bytes between offset and offset + length of data to int[] listeners, all listeners share one event.
+     *
+     * @param listeners the listeners
+     * @param port      the port of the event
+     * @param data      the data
+     * @param offset    the offset
+     * @param length    the length
+     */
+    public static void dispatchRead(ListenerRegistry<SerialReadListener> listeners, String port, ByteBuffer data,
+                                    int offset, int length) {
+        Registration<SerialReadListener>[] current = listeners.registrations;
+        if (current.length == 0) {
+            return;
+        }
+        // 兼容旧的int[]监听器，只有注册了旧监听器才做转换
+        int[] receive = new int[length];
+        for (int i = 0; i < length; i++) {
+            receive[i] = data.get(offset + i) & 0xff;
+        }
+        SerialPortReadEvent event = new SerialPortReadEvent(port, receive);
+        for (Registration<SerialReadListener> registration : current) {
+            if (registration.executor == null) {
+                registration.listener.onReadComplete(event);
+            } else {
+                SerialReadListener listener = registration.listener;
+                registration.executor.execute(() -> listener.onReadComplete(event));
+            }
+        }
+    }
+
+    /**
+     * The type Registration.
+     *
+     * @param <L> the listener type
+     */
+    static final class Registration<L> {
+
+        final L listener;
+
+        final Executor executor;
+
+        private Registration(L listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+}
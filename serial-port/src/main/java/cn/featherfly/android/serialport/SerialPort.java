@@ -19,6 +19,8 @@ package cn.featherfly.android.serialport;
 import android.util.Log;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 
 public class SerialPort {
 
@@ -32,6 +34,10 @@ public class SerialPort {
 	private FileOutputStream mFileOutputStream;
 
 	public SerialPort(File device, int baudrate, int flags) throws SecurityException, IOException {
+		this(device, baudrate, flags, null);
+	}
+
+	public SerialPort(File device, int baudrate, int flags, LineConfig lineConfig) throws SecurityException, IOException {
 		/* Check access permission */
 		if (!device.canRead() || !device.canWrite()) {
 			try {
@@ -56,6 +62,14 @@ public class SerialPort {
 			Log.e(TAG, "native open returns null");
 			throw new IOException();
 		}
+		if (lineConfig != null) {
+			try {
+				setLineConfig(lineConfig);
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
 		mFileInputStream = new FileInputStream(mFd);
 		mFileOutputStream = new FileOutputStream(mFd);
 	}
@@ -69,10 +83,161 @@ public class SerialPort {
 		return mFileOutputStream;
 	}
 
+	public void setLineConfig(LineConfig lineConfig) throws IOException {
+		setLineConfig(lineConfig.getDataBits(), lineConfig.getParity().ordinal(), lineConfig.getStopBits(),
+				lineConfig.getFlowControl().ordinal(), lineConfig.getVmin(), lineConfig.getVtime(),
+				lineConfig.getLowLatency() == null ? -1 : lineConfig.getLowLatency() ? 1 : 0);
+	}
+
+	/**
+	 * Wait up to timeout for data with poll(), then read what is available into dst.
+	 *
+	 * @return bytes read, 0 if timeout, -1 if end of stream
+	 */
+	public int read(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException {
+		if (!dst.hasRemaining()) {
+			return 0;
+		}
+		int timeoutMillis = toTimeoutMillis(timeout, unit);
+		int size;
+		if (dst.hasArray()) {
+			size = read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining(), timeoutMillis);
+		} else {
+			size = readDirect(dst, dst.position(), dst.remaining(), timeoutMillis);
+		}
+		if (size > 0) {
+			dst.position(dst.position() + size);
+		}
+		return size;
+	}
+
+	/**
+	 * Read available bytes into several buffers with one readv(), waiting up to timeout with poll().
+	 * Buffers are filled in order. Heap buffers fall back to a single read into the first buffer with room.
+	 *
+	 * @return bytes read, 0 if timeout, -1 if end of stream
+	 */
+	public int read(ByteBuffer[] dsts, long timeout, TimeUnit unit) throws IOException {
+		int count = 0;
+		boolean direct = true;
+		ByteBuffer first = null;
+		for (ByteBuffer dst : dsts) {
+			if (dst.hasRemaining()) {
+				if (first == null) {
+					first = dst;
+				}
+				direct &= dst.isDirect();
+				count++;
+			}
+		}
+		if (first == null) {
+			return 0;
+		}
+		if (count == 1 || !direct) {
+			return read(first, timeout, unit);
+		}
+		ByteBuffer[] bufs = new ByteBuffer[count];
+		int[] offsets = new int[count];
+		int[] lengths = new int[count];
+		int i = 0;
+		for (ByteBuffer dst : dsts) {
+			if (dst.hasRemaining()) {
+				bufs[i] = dst;
+				offsets[i] = dst.position();
+				lengths[i] = dst.remaining();
+				i++;
+			}
+		}
+		int size = readv(bufs, offsets, lengths, count, toTimeoutMillis(timeout, unit));
+		for (i = 0, count = size; i < bufs.length && count > 0; i++) {
+			int n = Math.min(count, lengths[i]);
+			bufs[i].position(offsets[i] + n);
+			count -= n;
+		}
+		return size;
+	}
+
+	/**
+	 * Write bytes between position and limit of src, direct buffers are written from native memory without a copy.
+	 */
+	public void write(ByteBuffer src) throws IOException {
+		int length = src.remaining();
+		if (src.isDirect()) {
+			writeDirect(src, src.position(), length);
+		} else if (src.hasArray()) {
+			mFileOutputStream.write(src.array(), src.arrayOffset() + src.position(), length);
+		} else {
+			byte[] b = new byte[length];
+			src.duplicate().get(b);
+			mFileOutputStream.write(b);
+		}
+		src.position(src.limit());
+	}
+
+	/**
+	 * Write bytes between position and limit of each src with writev(), without concatenating them.
+	 * On a blocking port all parts are written by a single system call. Heap buffers are passed by their arrays.
+	 */
+	public void write(ByteBuffer[] srcs) throws IOException {
+		int count = srcs.length;
+		Object[] bufs = new Object[count];
+		int[] offsets = new int[count];
+		int[] lengths = new int[count];
+		for (int i = 0; i < count; i++) {
+			ByteBuffer src = srcs[i];
+			lengths[i] = src.remaining();
+			if (src.isDirect()) {
+				bufs[i] = src;
+				offsets[i] = src.position();
+			} else if (src.hasArray()) {
+				bufs[i] = src.array();
+				offsets[i] = src.arrayOffset() + src.position();
+			} else {
+				// 只读的堆缓冲区无法访问数组
+				byte[] b = new byte[lengths[i]];
+				src.duplicate().get(b);
+				bufs[i] = b;
+			}
+		}
+		writev(bufs, offsets, lengths, count);
+		for (ByteBuffer src : srcs) {
+			src.position(src.limit());
+		}
+	}
+
+	private static int toTimeoutMillis(long timeout, TimeUnit unit) {
+		return (int) Math.min(Integer.MAX_VALUE, (unit.toNanos(timeout) + 999999) / 1000000);
+	}
+
 	// JNI
 	private native static FileDescriptor open(String path, int baudrate, int flags);
 	// JNI
 	public native void close();
+	// JNI
+	public native int getDescriptor();
+	// JNI
+	public native int getActualBaudrate() throws IOException;
+	// JNI
+	public native void drain() throws IOException;
+	// JNI
+	public native int getOutputQueueSize() throws IOException;
+	// JNI, 1 transmitter empty, 0 sending, -1 not supported by the driver
+	public native int getTransmitterState();
+	// JNI
+	// lowLatency -1 keeps the driver setting, 0 clears and 1 sets ASYNC_LOW_LATENCY
+	private native void setLineConfig(int dataBits, int parity, int stopBits, int flowControl, int vmin, int vtime,
+			int lowLatency) throws IOException;
+	// JNI
+	private native int read(byte[] b, int off, int len, int timeoutMillis) throws IOException;
+	// JNI
+	private native int readDirect(ByteBuffer b, int off, int len, int timeoutMillis) throws IOException;
+	// JNI
+	private native int readv(ByteBuffer[] bufs, int[] offsets, int[] lengths, int count, int timeoutMillis)
+			throws IOException;
+	// JNI
+	private native void writeDirect(ByteBuffer b, int off, int len) throws IOException;
+	// JNI
+	private native void writev(Object[] bufs, int[] offsets, int[] lengths, int count) throws IOException;
 	static {
 		System.loadLibrary("serial_port");
 	}
@@ -1,7 +1,12 @@
 package cn.featherfly.android.serialport;
 
+import java.util.Arrays;
+
 /**
  * The type Serial port descriptor.
+ * <p>
+ * 波特率可以是任意正整数，没有对应Bxxx常量的波特率(如DMX的250000，6M，12M)通过termios2/BOTHER设置，
+ * 驱动可能取最接近的可用速率，实际速率见{@link EasySerialPortImpl#getActualBaudrate()}.
  */
 public class SerialPortDescriptor {
 
@@ -10,12 +15,18 @@ public class SerialPortDescriptor {
      */
     public static final int DEFAULT_BAUD = 9600;
 
+    private static final int[] STANDARD_BAUDRATES = {0, 50, 75, 110, 134, 150, 200, 300, 600, 1200, 1800, 2400, 4800,
+            9600, 19200, 38400, 57600, 115200, 230400, 460800, 500000, 576000, 921600, 1000000, 1152000, 1500000,
+            2000000, 2500000, 3000000, 3500000, 4000000};
+
     private String name;
 
     private int baudrate = DEFAULT_BAUD;
 
     private int flags = 0;
 
+    private LineConfig lineConfig;
+
     /**
      * Instantiates a new Serial port descriptor.
      *
@@ -43,9 +54,36 @@ public class SerialPortDescriptor {
      * @param flags    the flags
      */
     public SerialPortDescriptor(String name, int baudrate, int flags) {
+        this(name, baudrate, flags, new LineConfig());
+    }
+
+    /**
+     * Instantiates a new Serial port descriptor.
+     *
+     * @param name       the name
+     * @param baudrate   the baudrate
+     * @param lineConfig the line config
+     */
+    public SerialPortDescriptor(String name, int baudrate, LineConfig lineConfig) {
+        this(name, baudrate, 0, lineConfig);
+    }
+
+    /**
+     * Instantiates a new Serial port descriptor.
+     *
+     * @param name       the name
+     * @param baudrate   the baudrate
+     * @param flags      the flags
+     * @param lineConfig the line config
+     */
+    public SerialPortDescriptor(String name, int baudrate, int flags, LineConfig lineConfig) {
+        if (baudrate < 0) {
+            throw new IllegalArgumentException("invalid baudrate: " + baudrate);
+        }
         this.name = name;
         this.baudrate = baudrate;
         this.flags = flags;
+        this.lineConfig = lineConfig != null ? lineConfig : new LineConfig();
     }
 
     /**
@@ -66,6 +104,25 @@ public class SerialPortDescriptor {
         return baudrate;
     }
 
+    /**
+     * Is custom baudrate, set through termios2 with BOTHER.
+     *
+     * @return true if the baudrate has no Bxxx constant
+     */
+    public boolean isCustomBaudrate() {
+        return !isStandardBaudrate(baudrate);
+    }
+
+    /**
+     * Is standard baudrate with a Bxxx constant.
+     *
+     * @param baudrate the baudrate
+     * @return the boolean
+     */
+    public static boolean isStandardBaudrate(int baudrate) {
+        return Arrays.binarySearch(STANDARD_BAUDRATES, baudrate) >= 0;
+    }
+
     /**
      * Gets flags.
      *
@@ -75,12 +132,22 @@ public class SerialPortDescriptor {
         return flags;
     }
 
+    /**
+     * Gets line config.
+     *
+     * @return the line config
+     */
+    public LineConfig getLineConfig() {
+        return lineConfig;
+    }
+
     @Override
     public String toString() {
         return "SerialPortDescriptor{" +
                 "name='" + name + '\'' +
                 ", baudrate=" + baudrate +
                 ", flags=" + flags +
+                ", lineConfig=" + lineConfig +
                 '}';
     }
 }
@@ -16,15 +16,29 @@
 
 package cn.featherfly.android.serialport;
 
+import android.os.FileObserver;
 import android.util.Log;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.LineNumberReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * The type Serial port finder.
+ * <p>
+ * /dev只扫描一次，按驱动的设备前缀建立索引，{@link #refresh()}重新扫描.
+ * {@link #startWatching()}之后通过FileObserver监听/dev的设备增减，实时更新索引并通知{@link DeviceListener}.
+ */
 public class SerialPortFinder {
 
 	public class Driver {
@@ -34,47 +48,65 @@ public class SerialPortFinder {
 		}
 		private String mDriverName;
 		private String mDeviceRoot;
-		Vector<File> mDevices = null;
+		/* guarded by SerialPortFinder.this */
+		Vector<File> mDevices = new Vector<File>();
 		public Vector<File> getDevices() {
-			if (mDevices == null) {
-				mDevices = new Vector<File>();
-				File dev = new File("/dev");
-				File[] files = dev.listFiles();
-				int i;
-				for (i=0; i<files.length; i++) {
-					if (files[i].getAbsolutePath().startsWith(mDeviceRoot)) {
-						Log.d(TAG, "Found new device: " + files[i]);
-						mDevices.add(files[i]);
-					}
-				}
+			synchronized (SerialPortFinder.this) {
+				scanIfNeeded();
+				return new Vector<File>(mDevices);
 			}
-			return mDevices;
 		}
 		public String getName() {
 			return mDriverName;
 		}
 	}
 
+	/**
+	 * The interface Device listener, called on the FileObserver thread or the thread calling refresh.
+	 */
+	public interface DeviceListener {
+		/**
+		 * Device added.
+		 *
+		 * @param device     the device
+		 * @param driverName the driver name
+		 */
+		void onDeviceAdded(File device, String driverName);
+
+		/**
+		 * Device removed.
+		 *
+		 * @param device     the device
+		 * @param driverName the driver name
+		 */
+		void onDeviceRemoved(File device, String driverName);
+	}
+
 	private static final String TAG = "SerialPort";
 
+	private static final String DEV = "/dev";
+
+	private static final int WATCH_ADDED = FileObserver.CREATE | FileObserver.MOVED_TO;
+
+	private static final int WATCH_REMOVED = FileObserver.DELETE | FileObserver.MOVED_FROM;
+
 	private Vector<Driver> mDrivers = null;
 
-	Vector<Driver> getDrivers() throws IOException {
+	/* device root -> driver, guarded by this */
+	private Map<String, Driver> mDriversByRoot = new HashMap<String, Driver>();
+
+	/* distinct device root lengths in descending order, a path is matched by looking up its prefixes of these lengths */
+	private int[] mRootLengths = new int[0];
+
+	private boolean mScanned;
+
+	private FileObserver mObserver;
+
+	private final CopyOnWriteArrayList<DeviceListener> mListeners = new CopyOnWriteArrayList<DeviceListener>();
+
+	synchronized Vector<Driver> getDrivers() throws IOException {
 		if (mDrivers == null) {
-			mDrivers = new Vector<Driver>();
-			LineNumberReader r = new LineNumberReader(new FileReader("/proc/tty/drivers"));
-			String l;
-			while((l = r.readLine()) != null) {
-				// Issue 3:
-				// Since driver name may contain spaces, we do not extract driver name with split()
-				String drivername = l.substring(0, 0x15).trim();
-				String[] w = l.split(" +");
-				if ((w.length >= 5) && (w[w.length-1].equals("serial"))) {
-					Log.d(TAG, "Found new driver " + drivername + " on " + w[w.length-4]);
-					mDrivers.add(new Driver(drivername, w[w.length-4]));
-				}
-			}
-			r.close();
+			loadDrivers();
 		}
 		return mDrivers;
 	}
@@ -119,4 +151,246 @@ public class SerialPortFinder {
 		}
 		return devices.toArray(new String[devices.size()]);
 	}
+
+	/**
+	 * Reload drivers and rescan /dev, listeners are notified of the difference to the last scan.
+	 *
+	 * @throws IOException the io exception
+	 */
+	public void refresh() throws IOException {
+		List<Object[]> added = new ArrayList<Object[]>();
+		List<Object[]> removed = new ArrayList<Object[]>();
+		synchronized (this) {
+			boolean scanned = mScanned;
+			Map<Driver, Vector<File>> previous = new HashMap<Driver, Vector<File>>();
+			if (mDrivers != null) {
+				for (Driver driver : mDrivers) {
+					previous.put(driver, new Vector<File>(driver.mDevices));
+				}
+			}
+			loadDrivers();
+			scan();
+			if (scanned) {
+				for (Driver driver : mDrivers) {
+					Vector<File> before = previous.remove(driver);
+					for (File device : driver.mDevices) {
+						if (before == null || !before.remove(device)) {
+							added.add(new Object[]{device, driver.mDriverName});
+						}
+					}
+					if (before != null) {
+						for (File device : before) {
+							removed.add(new Object[]{device, driver.mDriverName});
+						}
+					}
+				}
+				// 驱动已卸载
+				for (Map.Entry<Driver, Vector<File>> entry : previous.entrySet()) {
+					for (File device : entry.getValue()) {
+						removed.add(new Object[]{device, entry.getKey().mDriverName});
+					}
+				}
+			}
+		}
+		for (Object[] device : removed) {
+			fireRemoved((File) device[0], (String) device[1]);
+		}
+		for (Object[] device : added) {
+			fireAdded((File) device[0], (String) device[1]);
+		}
+	}
+
+	/**
+	 * Start watching /dev for added and removed devices.
+	 */
+	public synchronized void startWatching() {
+		if (mObserver != null) {
+			return;
+		}
+		mObserver = new DevObserver();
+		mObserver.startWatching();
+	}
+
+	/**
+	 * Stop watching /dev.
+	 */
+	public synchronized void stopWatching() {
+		if (mObserver != null) {
+			mObserver.stopWatching();
+			mObserver = null;
+		}
+	}
+
+	public void addDeviceListener(DeviceListener listener) {
+		mListeners.add(listener);
+	}
+
+	public boolean removeDeviceListener(DeviceListener listener) {
+		return mListeners.remove(listener);
+	}
+
+	private void loadDrivers() throws IOException {
+		loadDrivers(new FileReader("/proc/tty/drivers"));
+	}
+
+	/* 解析/proc/tty/drivers格式的驱动列表 */
+	void loadDrivers(Reader reader) throws IOException {
+		Vector<Driver> drivers = new Vector<Driver>();
+		Map<String, Driver> driversByRoot = new HashMap<String, Driver>();
+		TreeSet<Integer> rootLengths = new TreeSet<Integer>();
+		LineNumberReader r = new LineNumberReader(reader);
+		try {
+			String l;
+			while((l = r.readLine()) != null) {
+				// Issue 3:
+				// Since driver name may contain spaces, we do not extract driver name with split()
+				String drivername = l.substring(0, 0x15).trim();
+				String[] w = l.split(" +");
+				if ((w.length >= 5) && (w[w.length-1].equals("serial"))) {
+					String root = w[w.length-4];
+					if (driversByRoot.containsKey(root)) {
+						continue;
+					}
+					Driver driver = mDriversByRoot.get(root);
+					if (driver == null || !driver.mDriverName.equals(drivername)) {
+						Log.d(TAG, "Found new driver " + drivername + " on " + root);
+						driver = new Driver(drivername, root);
+					}
+					drivers.add(driver);
+					driversByRoot.put(root, driver);
+					rootLengths.add(root.length());
+				}
+			}
+		} finally {
+			r.close();
+		}
+		// 从长到短，/dev/ttySAC0匹配/dev/ttySAC而不是/dev/ttyS
+		int[] lengths = new int[rootLengths.size()];
+		int i = 0;
+		for (Integer length : rootLengths.descendingSet()) {
+			lengths[i++] = length;
+		}
+		mDrivers = drivers;
+		mDriversByRoot = driversByRoot;
+		mRootLengths = lengths;
+	}
+
+	private void scanIfNeeded() {
+		if (!mScanned) {
+			try {
+				if (mDrivers == null) {
+					loadDrivers();
+				}
+			} catch (IOException e) {
+				Log.e(TAG, "load drivers failed", e);
+			}
+			scan();
+		}
+	}
+
+	/* 单次遍历/dev，按前缀查找驱动 */
+	private void scan() {
+		for (Driver driver : mDriversByRoot.values()) {
+			driver.mDevices.clear();
+		}
+		File[] files = new File(DEV).listFiles();
+		if (files != null) {
+			for (File file : files) {
+				Driver driver = match(file.getAbsolutePath());
+				if (driver != null) {
+					Log.d(TAG, "Found new device: " + file);
+					driver.mDevices.add(file);
+				}
+			}
+		}
+		mScanned = true;
+	}
+
+	/* 最长前缀匹配 */
+	Driver match(String path) {
+		for (int length : mRootLengths) {
+			if (length > path.length()) {
+				continue;
+			}
+			Driver driver = mDriversByRoot.get(path.substring(0, length));
+			if (driver != null) {
+				return driver;
+			}
+		}
+		return null;
+	}
+
+	private void deviceAdded(File device) {
+		Driver driver;
+		synchronized (this) {
+			if (!mScanned) {
+				// 还没有扫描过，下次查询时扫描
+				return;
+			}
+			driver = match(device.getAbsolutePath());
+			if (driver != null && driver.mDevices.contains(device)) {
+				return;
+			}
+			if (driver != null) {
+				driver.mDevices.add(device);
+			}
+		}
+		if (driver == null) {
+			// USB转串口的驱动可能在插入时才加载，重新加载驱动并扫描
+			try {
+				refresh();
+			} catch (IOException e) {
+				Log.e(TAG, "refresh failed: " + e.getMessage());
+			}
+			return;
+		}
+		Log.d(TAG, "Device added: " + device);
+		fireAdded(device, driver.mDriverName);
+	}
+
+	private void deviceRemoved(File device) {
+		Driver driver;
+		synchronized (this) {
+			driver = match(device.getAbsolutePath());
+			if (driver == null || !driver.mDevices.remove(device)) {
+				return;
+			}
+		}
+		Log.d(TAG, "Device removed: " + device);
+		fireRemoved(device, driver.mDriverName);
+	}
+
+	private void fireAdded(File device, String driverName) {
+		for (DeviceListener listener : mListeners) {
+			listener.onDeviceAdded(device, driverName);
+		}
+	}
+
+	private void fireRemoved(File device, String driverName) {
+		for (DeviceListener listener : mListeners) {
+			listener.onDeviceRemoved(device, driverName);
+		}
+	}
+
+	private class DevObserver extends FileObserver {
+
+		@SuppressWarnings("deprecation")
+		DevObserver() {
+			// FileObserver(File, int)需要API 29
+			super(DEV, WATCH_ADDED | WATCH_REMOVED);
+		}
+
+		@Override
+		public void onEvent(int event, String path) {
+			if (path == null) {
+				return;
+			}
+			File device = new File(DEV, path);
+			if ((event & WATCH_ADDED) != 0) {
+				deviceAdded(device);
+			} else if ((event & WATCH_REMOVED) != 0) {
+				deviceRemoved(device);
+			}
+		}
+	}
 }
@@ -0,0 +1,277 @@
+package cn.featherfly.android.serialport;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The type Serial port publisher.
+ * <p>
+ * 以Reactive Streams发布串口数据，设置了解码器时每个元素是一个完整的帧，否则是一次读取的数据.
+ * 每个订阅者独立请求，元素在订阅者的队列中等待请求. 任一订阅者积压达到highWatermark时暂停读取串口，
+ * 由内核缓冲区和设备流控反压，所有订阅者积压降到highWatermark的一半以下时恢复读取.
+ * 暂停前已经读取的数据仍会进入队列，所以积压可能略超过highWatermark.
+ * <p>
+ * 元素是只读的数据副本，订阅者可以持有. 端口关闭时发送onComplete，接收出错时发送onError.
+ * java.util.concurrent.Flow可以使用org.reactivestreams.FlowAdapters转换.
+ */
+public class SerialPortPublisher implements Publisher<ByteBuffer> {
+
+    /**
+     * The default high watermark.
+     */
+    public static final int DEFAULT_HIGH_WATERMARK = 16;
+
+    /**
+     * The interface Receive control.
+     */
+    interface ReceiveControl {
+        /**
+         * Pause or resume reading the port.
+         *
+         * @param paused the paused
+         */
+        void setPaused(boolean paused);
+    }
+
+    private final ReceiveControl receiveControl;
+
+    private final int highWatermark;
+
+    private final int lowWatermark;
+
+    private final CopyOnWriteArrayList<PortSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final Object pauseLock = new Object();
+
+    private boolean paused;
+
+    private volatile boolean terminated;
+
+    private volatile Throwable error;
+
+    /**
+     * Instantiates a new Serial port publisher.
+     *
+     * @param receiveControl the receive control
+     * @param highWatermark  the max elements queued for a subscriber before reading pauses
+     */
+    SerialPortPublisher(ReceiveControl receiveControl, int highWatermark) {
+        if (highWatermark < 1) {
+            throw new IllegalArgumentException("highWatermark must be positive: " + highWatermark);
+        }
+        this.receiveControl = receiveControl;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = highWatermark / 2;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber is null");
+        }
+        PortSubscription subscription = new PortSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscriptions.add(subscription);
+        if (terminated) {
+            subscription.terminate();
+        }
+    }
+
+    /**
+     * Gets subscriber count.
+     *
+     * @return the subscriber count
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Gets high watermark.
+     *
+     * @return the high watermark
+     */
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+
+    /**
+     * Publish bytes between position and limit, called on the receive thread.
+     *
+     * @param data the data
+     */
+    void publish(ByteBuffer data) {
+        if (subscriptions.isEmpty() || terminated) {
+            return;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data.duplicate()).flip();
+        ByteBuffer element = copy.asReadOnlyBuffer();
+        for (PortSubscription subscription : subscriptions) {
+            subscription.offer(element.duplicate());
+        }
+        updatePaused();
+    }
+
+    /**
+     * Complete all subscribers.
+     */
+    void complete() {
+        terminate(null);
+    }
+
+    /**
+     * Fail all subscribers.
+     *
+     * @param e the e
+     */
+    void error(Throwable e) {
+        terminate(e);
+    }
+
+    private void terminate(Throwable e) {
+        if (terminated) {
+            return;
+        }
+        error = e;
+        terminated = true;
+        for (PortSubscription subscription : subscriptions) {
+            subscription.terminate();
+        }
+    }
+
+    private void updatePaused() {
+        synchronized (pauseLock) {
+            // 在锁内统计，最后一个更新者总能看到最新的积压
+            int backlog = 0;
+            for (PortSubscription subscription : subscriptions) {
+                backlog = Math.max(backlog, subscription.size.get());
+            }
+            if (!paused && backlog >= highWatermark) {
+                paused = true;
+                receiveControl.setPaused(true);
+            } else if (paused && backlog <= lowWatermark) {
+                paused = false;
+                receiveControl.setPaused(false);
+            }
+        }
+    }
+
+    private class PortSubscription implements Subscription {
+
+        private final Subscriber<? super ByteBuffer> subscriber;
+
+        private final ConcurrentLinkedQueue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final AtomicLong requested = new AtomicLong();
+
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private volatile boolean cancelled;
+
+        private volatile boolean done;
+
+        private volatile Throwable invalidRequest;
+
+        private boolean signalled;
+
+        private PortSubscription(Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                // 错误也通过drain发出，不与onNext并发
+                invalidRequest = new IllegalArgumentException("request must be positive: " + n);
+                drain();
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!requested.compareAndSet(current, next));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                subscriptions.remove(this);
+                queue.clear();
+                size.set(0);
+                updatePaused();
+            }
+        }
+
+        private void offer(ByteBuffer element) {
+            queue.offer(element);
+            size.incrementAndGet();
+            drain();
+        }
+
+        private void terminate() {
+            done = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            boolean emitted = false;
+            do {
+                Throwable invalid = invalidRequest;
+                if (invalid != null && !signalled) {
+                    signalled = true;
+                    cancel();
+                    subscriber.onError(invalid);
+                }
+                long r = requested.get();
+                long e = 0;
+                while (e != r && !cancelled) {
+                    ByteBuffer element = queue.poll();
+                    if (element == null) {
+                        break;
+                    }
+                    size.decrementAndGet();
+                    subscriber.onNext(element);
+                    e++;
+                }
+                if (e != 0) {
+                    emitted = true;
+                    if (r != Long.MAX_VALUE) {
+                        requested.addAndGet(-e);
+                    }
+                }
+                if (done && !cancelled && !signalled && queue.isEmpty()) {
+                    signalled = true;
+                    subscriptions.remove(this);
+                    Throwable t = error;
+                    if (t != null) {
+                        subscriber.onError(t);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+            if (emitted) {
+                updatePaused();
+            }
+        }
+    }
+}
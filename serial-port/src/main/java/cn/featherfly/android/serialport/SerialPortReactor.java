@@ -0,0 +1,304 @@
+package cn.featherfly.android.serialport;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The type Serial port reactor.
+ * <p>
+ * 单线程epoll事件循环，所有打开的串口共用一个线程，只有可读时才读取，空闲串口不占用CPU.
+ * <p>
+ * 没有设置Executor的监听器直接在事件循环线程上回调，一个端口的监听器耗时会推迟所有共用该reactor的端口的读取.
+ * 耗时的监听器请通过{@link EasySerialPort#addListener(EasySerialPort.SerialReadListener, java.util.concurrent.Executor)}
+ * 在自己的线程上回调，或者为该端口创建单独的reactor.
+ */
+public class SerialPortReactor {
+
+    private static final String TAG = "SerialPortReactor";
+
+    /**
+     * The constant EVENT_READABLE.
+     */
+    static final int EVENT_READABLE = 1;
+
+    /**
+     * The constant EVENT_ERROR.
+     */
+    static final int EVENT_ERROR = 2;
+
+    private static final int EPOLL_CTL_ADD = 1;
+
+    private static final int EPOLL_CTL_DEL = 2;
+
+    private static final int EPOLL_CTL_MOD = 3;
+
+    private static final int MAX_EVENTS = 64;
+
+    private static volatile SerialPortReactor defaultReactor;
+
+    private final Map<Integer, ReadHandler> handlers = new ConcurrentHashMap<>();
+
+    private final String name;
+
+    private int epfd = -1;
+
+    private int wakefd = -1;
+
+    private volatile boolean running;
+
+    private Thread thread;
+
+    /**
+     * Instantiates a new Serial port reactor.
+     *
+     * @param name the event loop thread name
+     */
+    public SerialPortReactor(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets default reactor shared by all ports.
+     *
+     * @return the default reactor
+     */
+    public static SerialPortReactor getDefault() {
+        if (defaultReactor == null) {
+            synchronized (SerialPortReactor.class) {
+                if (defaultReactor == null) {
+                    defaultReactor = new SerialPortReactor("serial-port-reactor");
+                }
+            }
+        }
+        return defaultReactor;
+    }
+
+    /**
+     * Register fd, handler is called on the event loop thread when fd is readable.
+     *
+     * @param fd      the fd
+     * @param handler the handler
+     * @throws IOException the io exception
+     */
+    public synchronized void register(int fd, ReadHandler handler) throws IOException {
+        start();
+        if (handlers.putIfAbsent(fd, handler) != null) {
+            throw new IllegalStateException("fd " + fd + " already registered");
+        }
+        try {
+            control(epfd, EPOLL_CTL_ADD, fd, true);
+        } catch (IOException e) {
+            handlers.remove(fd);
+            throw e;
+        }
+        Log.d(TAG, "register fd " + fd);
+    }
+
+    /**
+     * Enable or disable read interest of registered fd.
+     *
+     * @param fd       the fd
+     * @param readable the readable
+     * @throws IOException the io exception
+     */
+    public synchronized void setReadable(int fd, boolean readable) throws IOException {
+        if (handlers.containsKey(fd)) {
+            control(epfd, EPOLL_CTL_MOD, fd, readable);
+        }
+    }
+
+    /**
+     * Unregister fd.
+     *
+     * @param fd the fd
+     */
+    public synchronized void unregister(int fd) {
+        if (handlers.remove(fd) != null) {
+            try {
+                control(epfd, EPOLL_CTL_DEL, fd, false);
+            } catch (IOException e) {
+                // fd already closed, removed from epoll by kernel
+                Log.d(TAG, e.getMessage());
+            }
+            Log.d(TAG, "unregister fd " + fd);
+        }
+    }
+
+    /**
+     * Gets registered fd count.
+     *
+     * @return the registered count
+     */
+    public int getRegisteredCount() {
+        return handlers.size();
+    }
+
+    /**
+     * Stop event loop thread, all handlers are unregistered.
+     */
+    public void shutdown() {
+        Thread loopThread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            wakeup(wakefd);
+            loopThread = thread;
+        }
+        // 事件循环线程可能在等待本对象锁(unregister)，不能持锁join
+        try {
+            loopThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            handlers.clear();
+            closeDescriptor(wakefd);
+            closeDescriptor(epfd);
+            epfd = -1;
+            wakefd = -1;
+            thread = null;
+        }
+    }
+
+    private void start() throws IOException {
+        if (running) {
+            return;
+        }
+        epfd = create();
+        wakefd = createWakeup();
+        control(epfd, EPOLL_CTL_ADD, wakefd, true);
+        running = true;
+        thread = new Thread(this::loop, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void loop() {
+        int[] fds = new int[MAX_EVENTS];
+        int[] events = new int[MAX_EVENTS];
+        while (running) {
+            int n;
+            try {
+                n = await(epfd, fds, events, nextTimeout());
+            } catch (IOException e) {
+                Log.e(TAG, e.getMessage());
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                int fd = fds[i];
+                if (fd == wakefd) {
+                    clearWakeup(wakefd);
+                    continue;
+                }
+                ReadHandler handler = handlers.get(fd);
+                if (handler == null) {
+                    continue;
+                }
+                try {
+                    if ((events[i] & EVENT_READABLE) != 0) {
+                        handler.onReadable();
+                    } else if ((events[i] & EVENT_ERROR) != 0) {
+                        // 挂断或出错且没有数据可读，移除避免epoll持续触发
+                        unregister(fd);
+                        handler.onError(new IOException("fd " + fd + " hang up or error"));
+                    }
+                } catch (IOException e) {
+                    unregister(fd);
+                    handler.onError(e);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "handler of fd " + fd + " throw exception", e);
+                }
+            }
+            fireTimeouts();
+        }
+    }
+
+    private int nextTimeout() {
+        long deadline = Long.MAX_VALUE;
+        for (ReadHandler handler : handlers.values()) {
+            deadline = Math.min(deadline, handler.getDeadline());
+        }
+        if (deadline == Long.MAX_VALUE) {
+            return -1;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return 0;
+        }
+        // epoll只支持毫秒，向上取整避免提前唤醒
+        return (int) Math.min(Integer.MAX_VALUE, (remaining + 999999) / 1000000);
+    }
+
+    private void fireTimeouts() {
+        long now = System.nanoTime();
+        for (ReadHandler handler : handlers.values()) {
+            if (handler.getDeadline() - now <= 0) {
+                try {
+                    handler.onTimeout(now);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "handler timeout throw exception", e);
+                }
+            }
+        }
+    }
+
+    // JNI
+    private native static int create() throws IOException;
+
+    private native static int createWakeup() throws IOException;
+
+    private native static void control(int epfd, int op, int fd, boolean readable) throws IOException;
+
+    private native static int await(int epfd, int[] fds, int[] events, int timeout) throws IOException;
+
+    private native static void wakeup(int wakefd);
+
+    private native static void clearWakeup(int wakefd);
+
+    private native static void closeDescriptor(int fd);
+
+    static {
+        System.loadLibrary("serial_port");
+    }
+
+    /**
+     * The interface Read handler.
+     */
+    public interface ReadHandler {
+        /**
+         * Called on event loop thread when fd is readable.
+         *
+         * @throws IOException the io exception
+         */
+        void onReadable() throws IOException;
+
+        /**
+         * Called on event loop thread when fd hang up or read failed, fd is already unregistered.
+         *
+         * @param e the exception
+         */
+        void onError(IOException e);
+
+        /**
+         * Gets next deadline ({@link System#nanoTime()} based) of the handler.
+         *
+         * @return the deadline, Long.MAX_VALUE if no timeout pending
+         */
+        default long getDeadline() {
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * Called on event loop thread when deadline reached.
+         *
+         * @param nanoTime the nano time
+         */
+        default void onTimeout(long nanoTime) {
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package cn.featherfly.android.serialport;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The type Transmit pacer.
+ * <p>
+ * 限制发送速率，写入前按字节数预约线路时间，线路上的积压超过burst字节时在写线程上等待.
+ * 发送速率不超过线路速率时内核发送队列不会堆积，之后的写入和{@link EasySerialPort#drain()}的等待时间可预期.
+ */
+public class TransmitPacer {
+
+    private final long nanosPerByte;
+
+    private final long burstNanos;
+
+    private final int burstBytes;
+
+    private long nextFree;
+
+    /**
+     * Instantiates a new Transmit pacer.
+     *
+     * @param bytesPerSecond the bytes per second
+     * @param burstBytes     the bytes allowed to be sent at once
+     */
+    public TransmitPacer(long bytesPerSecond, int burstBytes) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("bytesPerSecond must be positive: " + bytesPerSecond);
+        }
+        if (burstBytes <= 0) {
+            throw new IllegalArgumentException("burstBytes must be positive: " + burstBytes);
+        }
+        this.nanosPerByte = Math.max(1, TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+        this.burstBytes = burstBytes;
+        this.burstNanos = nanosPerByte * burstBytes;
+        this.nextFree = System.nanoTime();
+    }
+
+    /**
+     * Create pacer limited to a fraction of the line rate.
+     *
+     * @param baudrate         the baudrate
+     * @param bitsPerCharacter the bits per character, see {@link LineConfig#getBitsPerCharacter()}
+     * @param utilization      the fraction of the line rate, (0, 1]
+     * @param burstBytes       the bytes allowed to be sent at once
+     * @return the transmit pacer
+     */
+    public static TransmitPacer forBaud(int baudrate, int bitsPerCharacter, double utilization, int burstBytes) {
+        if (utilization <= 0 || utilization > 1) {
+            throw new IllegalArgumentException("utilization must be in (0, 1]: " + utilization);
+        }
+        return new TransmitPacer(Math.max(1, (long) (baudrate * utilization / bitsPerCharacter)), burstBytes);
+    }
+
+    /**
+     * Wait until bytes are allowed to be sent.
+     *
+     * @param bytes the bytes
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquire(int bytes) throws InterruptedIOException {
+        long wait = reserve(bytes);
+        if (wait <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + wait;
+        while (wait > 0) {
+            LockSupport.parkNanos(this, wait);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while pacing");
+            }
+            wait = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Reserve send time for bytes.
+     *
+     * @param bytes the bytes
+     * @return nanos to wait before sending
+     */
+    synchronized long reserve(int bytes) {
+        long now = System.nanoTime();
+        long cost = bytes * nanosPerByte;
+        long start = Math.max(nextFree, now);
+        nextFree = start + cost;
+        // 写入后线路上积压不超过burst，超过burst的写入等线路空闲后整体发送
+        return start + Math.min(cost, burstNanos) - burstNanos - now;
+    }
+
+    /**
+     * Gets bytes per second.
+     *
+     * @return the bytes per second
+     */
+    public long getBytesPerSecond() {
+        return TimeUnit.SECONDS.toNanos(1) / nanosPerByte;
+    }
+
+    /**
+     * Gets burst bytes.
+     *
+     * @return the burst bytes
+     */
+    public int getBurstBytes() {
+        return burstBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "TransmitPacer{" +
+                "bytesPerSecond=" + getBytesPerSecond() +
+                ", burstBytes=" + burstBytes +
+                '}';
+    }
+}
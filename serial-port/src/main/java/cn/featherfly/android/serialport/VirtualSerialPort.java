@@ -0,0 +1,358 @@
+package cn.featherfly.android.serialport;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The type Virtual serial port.
+ * <p>
+ * 基于伪终端(pty)的虚拟串口对，相当于一根null-modem线连接的两个串口，不需要硬件即可测试吞吐和延迟.
+ * 两端都是打开/dev/pts/N得到的普通{@link EasySerialPortImpl}，中间的转发线程按波特率限速并注入延迟和抖动.
+ * 模拟的线路忙时不读取pty，数据留在内核的pty缓冲区中，缓冲区满后发送方的write与真实串口一样阻塞;
+ * pty不报告输出队列，drain不等待模拟的线路.
+ * <pre>
+ * portA &lt;-&gt; pts A | ptmx A &lt;-&gt; link &lt;-&gt; ptmx B | pts B &lt;-&gt; portB
+ * </pre>
+ */
+public class VirtualSerialPort implements Closeable {
+
+    private static final String TAG = "VirtualSerialPort";
+
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * 不限速时转发队列的块数
+     */
+    private static final int UNPACED_CHUNKS = 64;
+
+    /**
+     * 延迟期间在途的最大块数
+     */
+    private static final int MAX_CHUNKS = 4096;
+
+    private final FileDescriptor masterA;
+
+    private final FileDescriptor masterB;
+
+    private final String pathA;
+
+    private final String pathB;
+
+    private final FileInputStream inA;
+
+    private final FileOutputStream outA;
+
+    private final FileInputStream inB;
+
+    private final FileOutputStream outB;
+
+    private final Link linkAB;
+
+    private final Link linkBA;
+
+    private EasySerialPortImpl portA;
+
+    private EasySerialPortImpl portB;
+
+    private VirtualSerialPort(int baudrate, int bitsPerChar, long latencyNanos, long jitterNanos, long seed)
+            throws IOException {
+        masterA = openPtyMaster();
+        masterB = openPtyMaster();
+        pathA = ptsName(masterA);
+        pathB = ptsName(masterB);
+        inA = new FileInputStream(masterA);
+        outA = new FileOutputStream(masterA);
+        inB = new FileInputStream(masterB);
+        outB = new FileOutputStream(masterB);
+        linkAB = new Link(pathA + "->" + pathB, inA, outB, baudrate, bitsPerChar, latencyNanos, jitterNanos,
+                new Random(seed));
+        linkBA = new Link(pathB + "->" + pathA, inB, outA, baudrate, bitsPerChar, latencyNanos, jitterNanos,
+                new Random(seed + 1));
+    }
+
+    /**
+     * Open virtual serial port pair without pacing and latency.
+     *
+     * @return the virtual serial port
+     * @throws IOException the io exception
+     */
+    public static VirtualSerialPort open() throws IOException {
+        return open(0, 0, 0, TimeUnit.NANOSECONDS, 0);
+    }
+
+    /**
+     * Open virtual serial port pair paced at baudrate.
+     *
+     * @param baudrate the simulated baudrate, 0 for no pacing
+     * @return the virtual serial port
+     * @throws IOException the io exception
+     */
+    public static VirtualSerialPort open(int baudrate) throws IOException {
+        return open(baudrate, 0, 0, TimeUnit.NANOSECONDS, 0);
+    }
+
+    /**
+     * Open virtual serial port pair.
+     *
+     * @param baudrate the simulated baudrate, 0 for no pacing
+     * @param latency  the latency added to every chunk
+     * @param jitter   the max random latency added to every chunk
+     * @param unit     the unit of latency and jitter
+     * @param seed     the random seed of jitter, same seed gives same jitter sequence
+     * @return the virtual serial port
+     * @throws IOException the io exception
+     */
+    public static VirtualSerialPort open(int baudrate, long latency, long jitter, TimeUnit unit, long seed)
+            throws IOException {
+        return open(baudrate, new LineConfig(), latency, jitter, unit, seed);
+    }
+
+    /**
+     * Open virtual serial port pair, both ports use the line config and characters are paced at its bits per
+     * character.
+     *
+     * @param baudrate   the simulated baudrate, 0 for no pacing
+     * @param lineConfig the line config of both ports
+     * @param latency    the latency added to every chunk
+     * @param jitter     the max random latency added to every chunk
+     * @param unit       the unit of latency and jitter
+     * @param seed       the random seed of jitter, same seed gives same jitter sequence
+     * @return the virtual serial port
+     * @throws IOException the io exception
+     */
+    public static VirtualSerialPort open(int baudrate, LineConfig lineConfig, long latency, long jitter,
+                                         TimeUnit unit, long seed) throws IOException {
+        VirtualSerialPort virtualSerialPort = new VirtualSerialPort(baudrate, lineConfig.getBitsPerCharacter(),
+                unit.toNanos(latency), unit.toNanos(jitter), seed);
+        int portBaud = baudrate > 0 ? baudrate : SerialPortDescriptor.DEFAULT_BAUD;
+        try {
+            virtualSerialPort.portA = EasySerialPortImpl.open(new SerialPortDescriptor(virtualSerialPort.pathA,
+                    portBaud, new LineConfig(lineConfig)));
+            virtualSerialPort.portB = EasySerialPortImpl.open(new SerialPortDescriptor(virtualSerialPort.pathB,
+                    portBaud, new LineConfig(lineConfig)));
+        } catch (IOException | RuntimeException e) {
+            virtualSerialPort.close();
+            throw e;
+        }
+        virtualSerialPort.linkAB.start();
+        virtualSerialPort.linkBA.start();
+        return virtualSerialPort;
+    }
+
+    /**
+     * Gets port a.
+     *
+     * @return the port a
+     */
+    public EasySerialPortImpl getPortA() {
+        return portA;
+    }
+
+    /**
+     * Gets port b.
+     *
+     * @return the port b
+     */
+    public EasySerialPortImpl getPortB() {
+        return portB;
+    }
+
+    /**
+     * Gets device path of port a.
+     *
+     * @return the path a
+     */
+    public String getPathA() {
+        return pathA;
+    }
+
+    /**
+     * Gets device path of port b.
+     *
+     * @return the path b
+     */
+    public String getPathB() {
+        return pathB;
+    }
+
+    @Override
+    public void close() {
+        if (portA != null && portA.isConnected()) {
+            portA.close();
+        }
+        if (portB != null && portB.isConnected()) {
+            portB.close();
+        }
+        linkAB.stop();
+        linkBA.stop();
+        closeQuietly(inA);
+        closeQuietly(outA);
+        closeQuietly(inB);
+        closeQuietly(outB);
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.e(TAG, e.getMessage());
+        }
+    }
+
+    /**
+     * 单向转发，读取线程每次最多读取一个切片并计算发送完成时间，线路上还有超过一个切片未发完时停止读取，
+     * 投递线程到期后写入另一端
+     */
+    private static class Link {
+
+        private final String name;
+
+        private final FileInputStream in;
+
+        private final FileOutputStream out;
+
+        private final long charNanos;
+
+        private final int sliceLength;
+
+        private final long sliceNanos;
+
+        private final long latencyNanos;
+
+        private final long jitterNanos;
+
+        private final Random random;
+
+        private final BlockingQueue<Chunk> queue;
+
+        private volatile boolean running = true;
+
+        private Thread reader;
+
+        private Thread deliverer;
+
+        private long transmitEnd;
+
+        private long lastDeliverAt;
+
+        private Link(String name, FileInputStream in, FileOutputStream out, int baudrate, int bitsPerChar,
+                     long latencyNanos, long jitterNanos, Random random) {
+            this.name = name;
+            this.in = in;
+            this.out = out;
+            this.charNanos = baudrate > 0 ? TimeUnit.SECONDS.toNanos(bitsPerChar) / baudrate : 0;
+            // 按1ms切分，限速更平滑
+            this.sliceLength = baudrate > 0 ? Math.min(BUFFER_SIZE, Math.max(1, baudrate / bitsPerChar / 1000))
+                    : BUFFER_SIZE;
+            this.sliceNanos = sliceLength * charNanos;
+            this.latencyNanos = latencyNanos;
+            this.jitterNanos = jitterNanos;
+            this.random = random;
+            // 队列只容纳线路上的一个切片和延迟期间在途的块
+            int capacity = sliceNanos > 0
+                    ? (int) Math.min(MAX_CHUNKS, (latencyNanos + jitterNanos) / sliceNanos + 2) : UNPACED_CHUNKS;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        private void start() {
+            transmitEnd = lastDeliverAt = System.nanoTime();
+            reader = new Thread(this::read, "virtual-serial-read[" + name + "]");
+            deliverer = new Thread(this::deliver, "virtual-serial-deliver[" + name + "]");
+            reader.setDaemon(true);
+            deliverer.setDaemon(true);
+            reader.start();
+            deliverer.start();
+        }
+
+        private void stop() {
+            running = false;
+            if (reader != null) {
+                reader.interrupt();
+                deliverer.interrupt();
+            }
+        }
+
+        private void read() {
+            byte[] buffer = new byte[sliceLength];
+            try {
+                while (running) {
+                    // 线路忙时数据留在pty中，发送方看到的是模拟波特率下的反压
+                    long wait;
+                    while ((wait = transmitEnd - sliceNanos - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(this, wait);
+                        if (!running) {
+                            return;
+                        }
+                    }
+                    int n = in.read(buffer);
+                    if (n <= 0) {
+                        break;
+                    }
+                    transmitEnd = Math.max(transmitEnd, System.nanoTime()) + n * charNanos;
+                    long jitter = jitterNanos > 0 ? (long) (random.nextDouble() * jitterNanos) : 0;
+                    // 保证不乱序
+                    lastDeliverAt = Math.max(lastDeliverAt, transmitEnd + latencyNanos + jitter);
+                    queue.put(new Chunk(Arrays.copyOf(buffer, n), lastDeliverAt));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // pty另一端关闭时read返回EIO
+                Log.d(TAG, name + " read stopped: " + e.getMessage());
+            }
+        }
+
+        private void deliver() {
+            try {
+                while (running) {
+                    Chunk chunk = queue.take();
+                    long wait;
+                    while ((wait = chunk.deliverAt - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(this, wait);
+                        if (Thread.interrupted()) {
+                            return;
+                        }
+                    }
+                    out.write(chunk.data);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                Log.d(TAG, name + " deliver stopped: " + e.getMessage());
+            }
+        }
+    }
+
+    private static class Chunk {
+
+        private final byte[] data;
+
+        private final long deliverAt;
+
+        private Chunk(byte[] data, long deliverAt) {
+            this.data = data;
+            this.deliverAt = deliverAt;
+        }
+    }
+
+    // JNI
+    private native static FileDescriptor openPtyMaster() throws IOException;
+
+    // JNI
+    private native static String ptsName(FileDescriptor fd) throws IOException;
+
+    static {
+        System.loadLibrary("serial_port");
+    }
+}
@@ -0,0 +1,21 @@
+package cn.featherfly.android.serialport;
+
+/**
+ * The enum Write priority.
+ * <p>
+ * 异步写入的优先级通道，写线程总是先写高优先级通道中的数据.
+ */
+public enum WritePriority {
+    /**
+     * 紧急命令，如停止、中止，插在批量传输的分块之间发送.
+     */
+    URGENT,
+    /**
+     * 普通请求.
+     */
+    NORMAL,
+    /**
+     * 批量传输，分块写入，内核发送队列积压时等待，保证高优先级的写入不被堵住.
+     */
+    BULK
+}
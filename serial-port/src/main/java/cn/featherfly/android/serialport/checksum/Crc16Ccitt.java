@@ -0,0 +1,99 @@
+package cn.featherfly.android.serialport.checksum;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The type Crc16 ccitt.
+ * <p>
+ * 多项式0x1021不反射，高字节先发送. 初始值0xFFFF为CRC-16/CCITT-FALSE，初始值0为XMODEM使用的CRC-16/XMODEM.
+ */
+public class Crc16Ccitt implements FrameChecksum {
+
+    /**
+     * The initial value of CRC-16/CCITT-FALSE.
+     */
+    public static final int CCITT_FALSE = 0xFFFF;
+
+    /**
+     * The initial value of CRC-16/XMODEM.
+     */
+    public static final int XMODEM = 0;
+
+    private static final int[] TABLE = SlicingTables.normal16(0x1021);
+
+    private final int initial;
+
+    private int crc;
+
+    /**
+     * Instantiates a new CRC-16/CCITT-FALSE.
+     */
+    public Crc16Ccitt() {
+        this(CCITT_FALSE);
+    }
+
+    /**
+     * Instantiates a new Crc16 ccitt.
+     *
+     * @param initial the initial value
+     */
+    public Crc16Ccitt(int initial) {
+        this.initial = initial & 0xffff;
+        this.crc = this.initial;
+    }
+
+    /**
+     * Compute crc.
+     *
+     * @param initial the initial value
+     * @param b       the bytes
+     * @param off     the offset
+     * @param len     the length
+     * @return the crc
+     */
+    public static int compute(int initial, byte[] b, int off, int len) {
+        return SlicingTables.updateNormal16(TABLE, initial & 0xffff, b, off, len);
+    }
+
+    /**
+     * Compute crc of bytes between position and limit, position is not changed.
+     *
+     * @param initial the initial value
+     * @param buffer  the buffer
+     * @return the crc
+     */
+    public static int compute(int initial, ByteBuffer buffer) {
+        return SlicingTables.updateNormal16(TABLE, initial & 0xffff, buffer, buffer.position(), buffer.limit());
+    }
+
+    @Override
+    public void update(int b) {
+        crc = (crc << 8 ^ TABLE[(crc >>> 8 ^ b) & 0xff]) & 0xffff;
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        crc = SlicingTables.updateNormal16(TABLE, crc, b, off, len);
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        crc = SlicingTables.updateNormal16(TABLE, crc, buffer, buffer.position(), buffer.limit());
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    public long getValue() {
+        return crc;
+    }
+
+    @Override
+    public void reset() {
+        crc = initial;
+    }
+
+    @Override
+    public int getSize() {
+        return 2;
+    }
+}
@@ -0,0 +1,70 @@
+package cn.featherfly.android.serialport.checksum;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The type Crc16 modbus.
+ * <p>
+ * CRC-16/MODBUS，多项式0x8005反射(0xA001)，初始值0xFFFF，低字节先发送.
+ */
+public class Crc16Modbus implements FrameChecksum {
+
+    private static final int[] TABLE = SlicingTables.reflected(0xA001);
+
+    private static final int INITIAL = 0xFFFF;
+
+    private int crc = INITIAL;
+
+    /**
+     * Compute crc.
+     *
+     * @param b   the bytes
+     * @param off the offset
+     * @param len the length
+     * @return the crc
+     */
+    public static int compute(byte[] b, int off, int len) {
+        return SlicingTables.updateReflected(TABLE, INITIAL, b, off, len);
+    }
+
+    /**
+     * Compute crc of bytes between position and limit, position is not changed.
+     *
+     * @param buffer the buffer
+     * @return the crc
+     */
+    public static int compute(ByteBuffer buffer) {
+        return SlicingTables.updateReflected(TABLE, INITIAL, buffer, buffer.position(), buffer.limit());
+    }
+
+    @Override
+    public void update(int b) {
+        crc = crc >>> 8 ^ TABLE[(crc ^ b) & 0xff];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        crc = SlicingTables.updateReflected(TABLE, crc, b, off, len);
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        crc = SlicingTables.updateReflected(TABLE, crc, buffer, buffer.position(), buffer.limit());
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    public long getValue() {
+        return crc;
+    }
+
+    @Override
+    public void reset() {
+        crc = INITIAL;
+    }
+
+    @Override
+    public int getSize() {
+        return 2;
+    }
+}
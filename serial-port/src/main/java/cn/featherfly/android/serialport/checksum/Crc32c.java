@@ -0,0 +1,68 @@
+package cn.featherfly.android.serialport.checksum;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The type Crc32c.
+ * <p>
+ * CRC-32C(Castagnoli)，多项式0x1EDC6F41反射(0x82F63B78)，初始值和结果异或值都是0xFFFFFFFF.
+ */
+public class Crc32c implements FrameChecksum {
+
+    private static final int[] TABLE = SlicingTables.reflected(0x82F63B78);
+
+    private int crc = 0xFFFFFFFF;
+
+    /**
+     * Compute crc.
+     *
+     * @param b   the bytes
+     * @param off the offset
+     * @param len the length
+     * @return the crc
+     */
+    public static int compute(byte[] b, int off, int len) {
+        return ~SlicingTables.updateReflected(TABLE, 0xFFFFFFFF, b, off, len);
+    }
+
+    /**
+     * Compute crc of bytes between position and limit, position is not changed.
+     *
+     * @param buffer the buffer
+     * @return the crc
+     */
+    public static int compute(ByteBuffer buffer) {
+        return ~SlicingTables.updateReflected(TABLE, 0xFFFFFFFF, buffer, buffer.position(), buffer.limit());
+    }
+
+    @Override
+    public void update(int b) {
+        crc = crc >>> 8 ^ TABLE[(crc ^ b) & 0xff];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        crc = SlicingTables.updateReflected(TABLE, crc, b, off, len);
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        crc = SlicingTables.updateReflected(TABLE, crc, buffer, buffer.position(), buffer.limit());
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+
+    @Override
+    public int getSize() {
+        return 4;
+    }
+}
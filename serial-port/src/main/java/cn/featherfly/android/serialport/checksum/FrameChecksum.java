@@ -0,0 +1,35 @@
+package cn.featherfly.android.serialport.checksum;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * The interface Frame checksum.
+ * <p>
+ * 可增量计算的校验和，分多次读取到的数据依次update，结果与一次计算相同. 实现不是线程安全的.
+ */
+public interface FrameChecksum extends Checksum {
+
+    /**
+     * Update with bytes between position and limit, position is advanced to limit.
+     *
+     * @param buffer the heap or direct buffer
+     */
+    void update(ByteBuffer buffer);
+
+    /**
+     * Update with all bytes.
+     *
+     * @param b the bytes
+     */
+    default void update(byte[] b) {
+        update(b, 0, b.length);
+    }
+
+    /**
+     * Gets checksum size in bytes.
+     *
+     * @return the size
+     */
+    int getSize();
+}
@@ -0,0 +1,83 @@
+package cn.featherfly.android.serialport.checksum;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The type Lrc.
+ * <p>
+ * 纵向冗余校验(Modbus ASCII)，所有字节求和后取二进制补码的低8位.
+ */
+public class Lrc implements FrameChecksum {
+
+    private int sum;
+
+    /**
+     * Compute lrc.
+     *
+     * @param b   the bytes
+     * @param off the offset
+     * @param len the length
+     * @return the lrc
+     */
+    public static int compute(byte[] b, int off, int len) {
+        return -sum(0, b, off, len) & 0xff;
+    }
+
+    /**
+     * Compute lrc of bytes between position and limit, position is not changed.
+     *
+     * @param buffer the buffer
+     * @return the lrc
+     */
+    public static int compute(ByteBuffer buffer) {
+        return -sum(0, buffer) & 0xff;
+    }
+
+    private static int sum(int sum, byte[] b, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            sum += b[i];
+        }
+        return sum;
+    }
+
+    private static int sum(int sum, ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return sum(sum, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        for (int i = buffer.position(), end = buffer.limit(); i < end; i++) {
+            sum += buffer.get(i);
+        }
+        return sum;
+    }
+
+    @Override
+    public void update(int b) {
+        sum += b;
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        sum = sum(sum, b, off, len);
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        sum = sum(sum, buffer);
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    public long getValue() {
+        return -sum & 0xff;
+    }
+
+    @Override
+    public void reset() {
+        sum = 0;
+    }
+
+    @Override
+    public int getSize() {
+        return 1;
+    }
+}
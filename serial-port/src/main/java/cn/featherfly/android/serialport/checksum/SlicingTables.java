@@ -0,0 +1,138 @@
+package cn.featherfly.android.serialport.checksum;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Slicing-by-8 crc tables and update loops.
+ * <p>
+ * 表k(k=0..7)是一个字节后面跟k个零字节的crc，每次处理8个字节只需8次查表，而不是8次逐字节查表的串行依赖.
+ * 8个表连续存放在一个数组中.
+ */
+final class SlicingTables {
+
+    private SlicingTables() {
+    }
+
+    /**
+     * Tables of reflected crc, width 16 or 32.
+     *
+     * @param poly the reflected polynomial
+     * @return the tables
+     */
+    static int[] reflected(int poly) {
+        int[] t = new int[8 * 256];
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? crc >>> 1 ^ poly : crc >>> 1;
+            }
+            t[i] = crc;
+        }
+        for (int k = 1; k < 8; k++) {
+            for (int i = 0; i < 256; i++) {
+                int prev = t[(k - 1) * 256 + i];
+                t[k * 256 + i] = prev >>> 8 ^ t[prev & 0xff];
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Tables of not reflected 16 bit crc.
+     *
+     * @param poly the polynomial
+     * @return the tables
+     */
+    static int[] normal16(int poly) {
+        int[] t = new int[8 * 256];
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x8000) != 0 ? crc << 1 ^ poly : crc << 1;
+            }
+            t[i] = crc & 0xffff;
+        }
+        for (int k = 1; k < 8; k++) {
+            for (int i = 0; i < 256; i++) {
+                int prev = t[(k - 1) * 256 + i];
+                t[k * 256 + i] = (prev << 8 & 0xffff) ^ t[prev >>> 8];
+            }
+        }
+        return t;
+    }
+
+    static int updateReflected(int[] t, int crc, byte[] b, int off, int len) {
+        int i = off;
+        int end = off + len;
+        for (; end - i >= 8; i += 8) {
+            int c = crc ^ (b[i] & 0xff | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | b[i + 3] << 24);
+            crc = t[7 * 256 + (c & 0xff)] ^ t[6 * 256 + (c >>> 8 & 0xff)]
+                    ^ t[5 * 256 + (c >>> 16 & 0xff)] ^ t[4 * 256 + (c >>> 24)]
+                    ^ t[3 * 256 + (b[i + 4] & 0xff)] ^ t[2 * 256 + (b[i + 5] & 0xff)]
+                    ^ t[256 + (b[i + 6] & 0xff)] ^ t[b[i + 7] & 0xff];
+        }
+        for (; i < end; i++) {
+            crc = crc >>> 8 ^ t[(crc ^ b[i]) & 0xff];
+        }
+        return crc;
+    }
+
+    static int updateReflected(int[] t, int crc, ByteBuffer buffer, int from, int to) {
+        if (buffer.hasArray()) {
+            return updateReflected(t, crc, buffer.array(), buffer.arrayOffset() + from, to - from);
+        }
+        // 直接缓冲区按小端一次取8个字节，避免逐字节的边界检查
+        ByteBuffer le = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int i = from;
+        for (; to - i >= 8; i += 8) {
+            long v = le.getLong(i);
+            int c = crc ^ (int) v;
+            int h = (int) (v >>> 32);
+            crc = t[7 * 256 + (c & 0xff)] ^ t[6 * 256 + (c >>> 8 & 0xff)]
+                    ^ t[5 * 256 + (c >>> 16 & 0xff)] ^ t[4 * 256 + (c >>> 24)]
+                    ^ t[3 * 256 + (h & 0xff)] ^ t[2 * 256 + (h >>> 8 & 0xff)]
+                    ^ t[256 + (h >>> 16 & 0xff)] ^ t[h >>> 24];
+        }
+        for (; i < to; i++) {
+            crc = crc >>> 8 ^ t[(crc ^ le.get(i)) & 0xff];
+        }
+        return crc;
+    }
+
+    static int updateNormal16(int[] t, int crc, byte[] b, int off, int len) {
+        int i = off;
+        int end = off + len;
+        for (; end - i >= 8; i += 8) {
+            crc = t[7 * 256 + ((crc >>> 8 ^ b[i]) & 0xff)] ^ t[6 * 256 + ((crc ^ b[i + 1]) & 0xff)]
+                    ^ t[5 * 256 + (b[i + 2] & 0xff)] ^ t[4 * 256 + (b[i + 3] & 0xff)]
+                    ^ t[3 * 256 + (b[i + 4] & 0xff)] ^ t[2 * 256 + (b[i + 5] & 0xff)]
+                    ^ t[256 + (b[i + 6] & 0xff)] ^ t[b[i + 7] & 0xff];
+        }
+        for (; i < end; i++) {
+            crc = (crc << 8 ^ t[(crc >>> 8 ^ b[i]) & 0xff]) & 0xffff;
+        }
+        return crc;
+    }
+
+    static int updateNormal16(int[] t, int crc, ByteBuffer buffer, int from, int to) {
+        if (buffer.hasArray()) {
+            return updateNormal16(t, crc, buffer.array(), buffer.arrayOffset() + from, to - from);
+        }
+        ByteBuffer be = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int i = from;
+        for (; to - i >= 8; i += 8) {
+            long v = be.getLong(i);
+            int h = (int) (v >>> 32);
+            int l = (int) v;
+            crc = t[7 * 256 + ((crc >>> 8 ^ h >>> 24) & 0xff)] ^ t[6 * 256 + ((crc ^ h >>> 16) & 0xff)]
+                    ^ t[5 * 256 + (h >>> 8 & 0xff)] ^ t[4 * 256 + (h & 0xff)]
+                    ^ t[3 * 256 + (l >>> 24)] ^ t[2 * 256 + (l >>> 16 & 0xff)]
+                    ^ t[256 + (l >>> 8 & 0xff)] ^ t[l & 0xff];
+        }
+        for (; i < to; i++) {
+            crc = (crc << 8 ^ t[(crc >>> 8 ^ be.get(i)) & 0xff]) & 0xffff;
+        }
+        return crc;
+    }
+}
@@ -0,0 +1,93 @@
+package cn.featherfly.android.serialport.checksum;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The type Xor checksum.
+ * <p>
+ * 所有字节异或(BCC). 直接缓冲区一次异或8个字节，最后把8个字节折叠成1个.
+ */
+public class XorChecksum implements FrameChecksum {
+
+    private int value;
+
+    /**
+     * Compute xor.
+     *
+     * @param b   the bytes
+     * @param off the offset
+     * @param len the length
+     * @return the xor
+     */
+    public static int compute(byte[] b, int off, int len) {
+        return xor(0, b, off, len);
+    }
+
+    /**
+     * Compute xor of bytes between position and limit, position is not changed.
+     *
+     * @param buffer the buffer
+     * @return the xor
+     */
+    public static int compute(ByteBuffer buffer) {
+        return xor(0, buffer);
+    }
+
+    private static int xor(int value, byte[] b, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            value ^= b[i];
+        }
+        return value & 0xff;
+    }
+
+    private static int xor(int value, ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return xor(value, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        int i = buffer.position();
+        int end = buffer.limit();
+        long wide = 0;
+        for (; end - i >= 8; i += 8) {
+            wide ^= buffer.getLong(i);
+        }
+        wide ^= wide >>> 32;
+        wide ^= wide >>> 16;
+        wide ^= wide >>> 8;
+        value ^= (int) wide;
+        for (; i < end; i++) {
+            value ^= buffer.get(i);
+        }
+        return value & 0xff;
+    }
+
+    @Override
+    public void update(int b) {
+        value = (value ^ b) & 0xff;
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        value = xor(value, b, off, len);
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        value = xor(value, buffer);
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    public long getValue() {
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        value = 0;
+    }
+
+    @Override
+    public int getSize() {
+        return 1;
+    }
+}
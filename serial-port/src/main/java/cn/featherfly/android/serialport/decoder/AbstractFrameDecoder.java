@@ -0,0 +1,142 @@
+package cn.featherfly.android.serialport.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The type Abstract frame decoder.
+ * <p>
+ * 完整的帧直接以输入缓冲区的视图发出，不做拷贝；只有跨越多次读取的帧才拷贝一次到预分配的累积缓冲区.
+ */
+public abstract class AbstractFrameDecoder implements FrameDecoder {
+
+    private final ByteBuffer cumulation;
+
+    private final ByteBuffer cumulationView;
+
+    private int scanned;
+
+    private long discardedBytes;
+
+    /**
+     * Instantiates a new Abstract frame decoder.
+     *
+     * @param maxFrameLength the max frame length
+     */
+    protected AbstractFrameDecoder(int maxFrameLength) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength must be positive");
+        }
+        cumulation = ByteBuffer.allocate(maxFrameLength);
+        cumulationView = cumulation.asReadOnlyBuffer();
+    }
+
+    /**
+     * Find frame starts at start.
+     *
+     * @param buf      the buf
+     * @param start    the frame start index
+     * @param end      the end index (exclusive) of available bytes
+     * @param scanFrom the first index not examined by previous call for the same frame
+     * @return frame length if complete frame found, 0 if more bytes needed, -1 if the byte at start can not start a frame
+     */
+    protected abstract int frameLength(ByteBuffer buf, int start, int end, int scanFrom);
+
+    /**
+     * Gets the length of frame content emitted to sink.
+     *
+     * @param frameLength the frame length
+     * @return the content length
+     */
+    protected int contentLength(int frameLength) {
+        return frameLength;
+    }
+
+    @Override
+    public void decode(ByteBuffer in, long nanoTime, FrameSink sink) {
+        while (in.hasRemaining()) {
+            if (cumulation.position() == 0) {
+                int start = in.position();
+                int length = frameLength(in, start, in.limit(), start);
+                if (length > 0) {
+                    emit(in, start, length, sink);
+                    continue;
+                } else if (length < 0) {
+                    discard(in, start);
+                    continue;
+                }
+            }
+            cumulate(in, sink);
+        }
+    }
+
+    private void cumulate(ByteBuffer in, FrameSink sink) {
+        int cumulated = cumulation.position();
+        int inStart = in.position();
+        int inLimit = in.limit();
+        in.limit(inStart + Math.min(in.remaining(), cumulation.remaining()));
+        cumulation.put(in);
+        in.limit(inLimit);
+        int end = cumulation.position();
+        int length = frameLength(cumulation, 0, end, scanned);
+        if (length > 0) {
+            // 只消费当前帧需要的输入，多拷贝的部分退回输入
+            in.position(inStart + length - cumulated);
+            emit(cumulationView, 0, length, sink);
+            cumulation.clear();
+            scanned = 0;
+        } else if (length < 0 || end == cumulation.capacity()) {
+            // 帧错误或超过最大长度，丢弃一个字节后重新同步
+            in.position(inStart);
+            if (cumulated == 0) {
+                cumulation.clear();
+                discard(in, inStart);
+            } else {
+                cumulation.limit(cumulated).position(1);
+                cumulation.compact();
+                discardedBytes++;
+            }
+            scanned = 0;
+        } else {
+            scanned = end;
+        }
+    }
+
+    private void emit(ByteBuffer buf, int start, int length, FrameSink sink) {
+        int limit = buf.limit();
+        buf.limit(start + contentLength(length)).position(start);
+        try {
+            sink.onFrame(buf);
+        } finally {
+            buf.limit(limit).position(start + length);
+        }
+    }
+
+    private void discard(ByteBuffer in, int start) {
+        in.position(start + 1);
+        discardedBytes++;
+    }
+
+    @Override
+    public void reset() {
+        cumulation.clear();
+        scanned = 0;
+    }
+
+    /**
+     * Gets discarded bytes count.
+     *
+     * @return the discarded bytes
+     */
+    public long getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    /**
+     * Gets max frame length.
+     *
+     * @return the max frame length
+     */
+    public int getMaxFrameLength() {
+        return cumulation.capacity();
+    }
+}
@@ -0,0 +1,80 @@
+package cn.featherfly.android.serialport.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The type Delimiter frame decoder.
+ */
+public class DelimiterFrameDecoder extends AbstractFrameDecoder {
+
+    private final byte[] delimiter;
+
+    private final boolean stripDelimiter;
+
+    /**
+     * Instantiates a new Delimiter frame decoder, delimiter is stripped.
+     *
+     * @param maxFrameLength the max frame length include delimiter
+     * @param delimiter      the delimiter
+     */
+    public DelimiterFrameDecoder(int maxFrameLength, byte... delimiter) {
+        this(maxFrameLength, true, delimiter);
+    }
+
+    /**
+     * Instantiates a new Delimiter frame decoder.
+     *
+     * @param maxFrameLength the max frame length include delimiter
+     * @param stripDelimiter strip delimiter or not
+     * @param delimiter      the delimiter
+     */
+    public DelimiterFrameDecoder(int maxFrameLength, boolean stripDelimiter, byte... delimiter) {
+        super(maxFrameLength);
+        if (delimiter == null || delimiter.length == 0) {
+            throw new IllegalArgumentException("delimiter must not be empty");
+        }
+        if (delimiter.length > maxFrameLength) {
+            throw new IllegalArgumentException("delimiter is longer than maxFrameLength");
+        }
+        this.delimiter = delimiter.clone();
+        this.stripDelimiter = stripDelimiter;
+    }
+
+    /**
+     * Line delimiter frame decoder, frames end with \n.
+     *
+     * @param maxFrameLength the max frame length
+     * @return the delimiter frame decoder
+     */
+    public static DelimiterFrameDecoder lines(int maxFrameLength) {
+        return new DelimiterFrameDecoder(maxFrameLength, (byte) '\n');
+    }
+
+    @Override
+    protected int frameLength(ByteBuffer buf, int start, int end, int scanFrom) {
+        int max = start + getMaxFrameLength();
+        int last = Math.min(end, max) - delimiter.length;
+        // 分隔符可能跨越上次扫描的边界
+        int i = Math.max(start, scanFrom - delimiter.length + 1);
+        for (; i <= last; i++) {
+            if (matches(buf, i)) {
+                return i - start + delimiter.length;
+            }
+        }
+        return end >= max ? -1 : 0;
+    }
+
+    private boolean matches(ByteBuffer buf, int index) {
+        for (int j = 0; j < delimiter.length; j++) {
+            if (buf.get(index + j) != delimiter[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected int contentLength(int frameLength) {
+        return stripDelimiter ? frameLength - delimiter.length : frameLength;
+    }
+}
@@ -0,0 +1,26 @@
+package cn.featherfly.android.serialport.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The type Fixed length frame decoder.
+ */
+public class FixedLengthFrameDecoder extends AbstractFrameDecoder {
+
+    private final int frameLength;
+
+    /**
+     * Instantiates a new Fixed length frame decoder.
+     *
+     * @param frameLength the frame length
+     */
+    public FixedLengthFrameDecoder(int frameLength) {
+        super(frameLength);
+        this.frameLength = frameLength;
+    }
+
+    @Override
+    protected int frameLength(ByteBuffer buf, int start, int end, int scanFrom) {
+        return end - start >= frameLength ? frameLength : 0;
+    }
+}
@@ -0,0 +1,56 @@
+package cn.featherfly.android.serialport.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The interface Frame decoder.
+ * <p>
+ * 解码器在多次读取之间保持状态，把读取到的数据切分成完整的帧. 解码器只在接收线程中调用，不需要线程安全.
+ */
+public interface FrameDecoder {
+
+    /**
+     * Decode bytes from position to limit of in, complete frames are emitted to sink.
+     * in is fully consumed when return.
+     *
+     * @param in       the input buffer, only valid during the call
+     * @param nanoTime the {@link System#nanoTime()} when the bytes were read
+     * @param sink     the sink
+     */
+    void decode(ByteBuffer in, long nanoTime, FrameSink sink);
+
+    /**
+     * Gets deadline ({@link System#nanoTime()} based) which {@link #onTimeout(long, FrameSink)} should be called at.
+     *
+     * @return the deadline, Long.MAX_VALUE if no timeout pending
+     */
+    default long getDeadline() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Called when deadline reached.
+     *
+     * @param nanoTime the nano time
+     * @param sink     the sink
+     */
+    default void onTimeout(long nanoTime, FrameSink sink) {
+    }
+
+    /**
+     * Discard buffered partial frame.
+     */
+    void reset();
+
+    /**
+     * The interface Frame sink.
+     */
+    interface FrameSink {
+        /**
+         * On frame, the frame is between position and limit and only valid during the call.
+         *
+         * @param frame the frame
+         */
+        void onFrame(ByteBuffer frame);
+    }
+}
@@ -0,0 +1,126 @@
+package cn.featherfly.android.serialport.decoder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type Inter character timeout frame decoder.
+ * <p>
+ * 以字符间的静默时间分帧，例如Modbus RTU的3.5个字符时间. 帧的结束只能由超时确定，所以数据总是累积到预分配的缓冲区.
+ */
+public class InterCharTimeoutFrameDecoder implements FrameDecoder {
+
+    private final ByteBuffer cumulation;
+
+    private final ByteBuffer cumulationView;
+
+    private final long timeoutNanos;
+
+    private long lastReadNanos;
+
+    private long discardedBytes;
+
+    /**
+     * Instantiates a new Inter character timeout frame decoder.
+     *
+     * @param maxFrameLength the max frame length
+     * @param timeout        the silent interval between frames
+     * @param unit           the unit
+     */
+    public InterCharTimeoutFrameDecoder(int maxFrameLength, long timeout, TimeUnit unit) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength must be positive");
+        }
+        cumulation = ByteBuffer.allocate(maxFrameLength);
+        cumulationView = cumulation.asReadOnlyBuffer();
+        timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Modbus RTU frame decoder, 3.5 character times (11 bits per character) silent interval,
+     * fixed 1750us when baudrate greater than 19200.
+     *
+     * @param baudrate the baudrate
+     * @return the inter char timeout frame decoder
+     */
+    public static InterCharTimeoutFrameDecoder modbusRtu(int baudrate) {
+        return new InterCharTimeoutFrameDecoder(256, characterTimes(baudrate, 3.5), TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Gets duration in microseconds of character times, 11 bits per character.
+     *
+     * @param baudrate the baudrate
+     * @param chars    the character count
+     * @return the microseconds
+     */
+    public static long characterTimes(int baudrate, double chars) {
+        if (baudrate > 19200) {
+            return (long) (chars * 500);
+        }
+        return (long) Math.ceil(chars * 11 * 1000000D / baudrate);
+    }
+
+    @Override
+    public void decode(ByteBuffer in, long nanoTime, FrameSink sink) {
+        if (cumulation.position() > 0 && nanoTime - lastReadNanos >= timeoutNanos) {
+            flush(sink);
+        }
+        while (in.hasRemaining()) {
+            if (!cumulation.hasRemaining()) {
+                // 超过最大帧长度，丢弃已累积的数据
+                discardedBytes += cumulation.position();
+                cumulation.clear();
+            }
+            int limit = in.limit();
+            in.limit(in.position() + Math.min(in.remaining(), cumulation.remaining()));
+            cumulation.put(in);
+            in.limit(limit);
+        }
+        lastReadNanos = nanoTime;
+    }
+
+    @Override
+    public long getDeadline() {
+        return cumulation.position() > 0 ? lastReadNanos + timeoutNanos : Long.MAX_VALUE;
+    }
+
+    @Override
+    public void onTimeout(long nanoTime, FrameSink sink) {
+        if (cumulation.position() > 0 && nanoTime - lastReadNanos >= timeoutNanos) {
+            flush(sink);
+        }
+    }
+
+    private void flush(FrameSink sink) {
+        cumulationView.limit(cumulation.position()).position(0);
+        try {
+            sink.onFrame(cumulationView);
+        } finally {
+            cumulation.clear();
+        }
+    }
+
+    @Override
+    public void reset() {
+        cumulation.clear();
+    }
+
+    /**
+     * Gets discarded bytes count.
+     *
+     * @return the discarded bytes
+     */
+    public long getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    /**
+     * Gets timeout nanos.
+     *
+     * @return the timeout nanos
+     */
+    public long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+}
@@ -0,0 +1,76 @@
+package cn.featherfly.android.serialport.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The type Length field frame decoder.
+ * <p>
+ * 帧长度 = lengthFieldOffset + lengthFieldLength + 长度字段的值 + lengthAdjustment.
+ */
+public class LengthFieldFrameDecoder extends AbstractFrameDecoder {
+
+    private final int lengthFieldOffset;
+
+    private final int lengthFieldLength;
+
+    private final int lengthAdjustment;
+
+    private final boolean bigEndian;
+
+    /**
+     * Instantiates a new big endian Length field frame decoder.
+     *
+     * @param maxFrameLength    the max frame length
+     * @param lengthFieldOffset the length field offset
+     * @param lengthFieldLength the length field length, 1, 2, 3 or 4
+     */
+    public LengthFieldFrameDecoder(int maxFrameLength, int lengthFieldOffset, int lengthFieldLength) {
+        this(maxFrameLength, lengthFieldOffset, lengthFieldLength, 0, true);
+    }
+
+    /**
+     * Instantiates a new Length field frame decoder.
+     *
+     * @param maxFrameLength    the max frame length
+     * @param lengthFieldOffset the length field offset
+     * @param lengthFieldLength the length field length, 1, 2, 3 or 4
+     * @param lengthAdjustment  the value added to length field, e.g. checksum length
+     * @param bigEndian         the length field is big endian or not
+     */
+    public LengthFieldFrameDecoder(int maxFrameLength, int lengthFieldOffset, int lengthFieldLength, int lengthAdjustment,
+                                   boolean bigEndian) {
+        super(maxFrameLength);
+        if (lengthFieldLength < 1 || lengthFieldLength > 4) {
+            throw new IllegalArgumentException("lengthFieldLength must be 1, 2, 3 or 4: " + lengthFieldLength);
+        }
+        if (lengthFieldOffset < 0 || lengthFieldOffset + lengthFieldLength > maxFrameLength) {
+            throw new IllegalArgumentException("lengthFieldOffset out of maxFrameLength: " + lengthFieldOffset);
+        }
+        this.lengthFieldOffset = lengthFieldOffset;
+        this.lengthFieldLength = lengthFieldLength;
+        this.lengthAdjustment = lengthAdjustment;
+        this.bigEndian = bigEndian;
+    }
+
+    @Override
+    protected int frameLength(ByteBuffer buf, int start, int end, int scanFrom) {
+        int headerLength = lengthFieldOffset + lengthFieldLength;
+        if (end - start < headerLength) {
+            return 0;
+        }
+        long length = headerLength + readLength(buf, start + lengthFieldOffset) + lengthAdjustment;
+        if (length <= 0 || length > getMaxFrameLength()) {
+            return -1;
+        }
+        return end - start >= length ? (int) length : 0;
+    }
+
+    private long readLength(ByteBuffer buf, int index) {
+        long value = 0;
+        for (int i = 0; i < lengthFieldLength; i++) {
+            int b = buf.get(bigEndian ? index + i : index + lengthFieldLength - 1 - i) & 0xff;
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+}
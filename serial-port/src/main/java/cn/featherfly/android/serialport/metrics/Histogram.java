@@ -0,0 +1,161 @@
+package cn.featherfly.android.serialport.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The type Histogram.
+ * <p>
+ * 以2的幂为桶的直方图，记录只做两次原子加，快照不加锁.
+ * 桶i记录[2^(i-1), 2^i)之间的值，桶0记录0和负数.
+ */
+public class Histogram {
+
+    /**
+     * The constant BUCKETS.
+     */
+    public static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Record value.
+     *
+     * @param value the value
+     */
+    public void record(long value) {
+        buckets.incrementAndGet(bucket(value));
+        sum.add(value);
+    }
+
+    /**
+     * Gets bucket index of value.
+     *
+     * @param value the value
+     * @return the bucket index
+     */
+    public static int bucket(long value) {
+        return value <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * Snapshot.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return new Snapshot(counts, sum.sum());
+    }
+
+    /**
+     * The type Histogram snapshot.
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+
+        private final long count;
+
+        private final long sum;
+
+        /**
+         * Instantiates a new Snapshot.
+         *
+         * @param counts the bucket counts
+         * @param sum    the sum
+         */
+        public Snapshot(long[] counts, long sum) {
+            this.counts = counts;
+            this.sum = sum;
+            long c = 0;
+            for (long bucket : counts) {
+                c += bucket;
+            }
+            this.count = c;
+        }
+
+        /**
+         * Merge snapshot.
+         *
+         * @param other the other
+         * @return the merged snapshot
+         */
+        public Snapshot merge(Snapshot other) {
+            long[] merged = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                merged[i] = counts[i] + other.counts[i];
+            }
+            return new Snapshot(merged, sum + other.sum);
+        }
+
+        /**
+         * Gets count of bucket.
+         *
+         * @param bucket the bucket
+         * @return the count
+         */
+        public long getCount(int bucket) {
+            return counts[bucket];
+        }
+
+        /**
+         * Gets count.
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets sum.
+         *
+         * @return the sum
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Gets mean.
+         *
+         * @return the mean
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Gets upper bound of the bucket containing the percentile.
+         *
+         * @param percentile the percentile, 0 - 100
+         * @return the value
+         */
+        public long getPercentile(double percentile) {
+            long target = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target && seen > 0) {
+                    return i == 0 ? 0 : (1L << i) - 1;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count +
+                    ", mean=" + String.format("%.1f", getMean()) +
+                    ", p50=" + getPercentile(50) +
+                    ", p99=" + getPercentile(99) +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package cn.featherfly.android.serialport.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * The type Serial port metrics.
+ * <p>
+ * 每个串口的运行指标，计数器使用{@link LongAdder}分段累加，快照不会阻塞读写线程.
+ */
+public class SerialPortMetrics {
+
+    private static final IntSupplier ZERO = () -> 0;
+
+    /**
+     * The number of write lanes, one per WritePriority.
+     */
+    public static final int LANES = 3;
+
+    private final String port;
+
+    private final LongAdder bytesIn = new LongAdder();
+
+    private final LongAdder bytesOut = new LongAdder();
+
+    private final LongAdder readCalls = new LongAdder();
+
+    private final LongAdder writeCalls = new LongAdder();
+
+    private final LongAdder writeBlockedNanos = new LongAdder();
+
+    private final Histogram readSizes = new Histogram();
+
+    private final Histogram dispatchLatency = new Histogram();
+
+    private final Histogram writeLatency = new Histogram();
+
+    private final Histogram[] laneWait = new Histogram[LANES];
+
+    private volatile IntSupplier receiveQueueDepth = ZERO;
+
+    private volatile IntSupplier writeQueueDepth = ZERO;
+
+    /**
+     * Instantiates a new Serial port metrics.
+     *
+     * @param port the port
+     */
+    public SerialPortMetrics(String port) {
+        this.port = port;
+        for (int i = 0; i < LANES; i++) {
+            laneWait[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Record a read system call.
+     *
+     * @param bytes the bytes read
+     */
+    public void recordRead(int bytes) {
+        readCalls.increment();
+        if (bytes > 0) {
+            bytesIn.add(bytes);
+        }
+        readSizes.record(bytes);
+    }
+
+    /**
+     * Record listener dispatch latency.
+     *
+     * @param nanos the nanos
+     */
+    public void recordDispatch(long nanos) {
+        dispatchLatency.record(nanos);
+    }
+
+    /**
+     * Record a write system call.
+     *
+     * @param bytes the bytes
+     * @param nanos the nanos blocked in write
+     */
+    public void recordWrite(int bytes, long nanos) {
+        writeCalls.increment();
+        bytesOut.add(bytes);
+        writeBlockedNanos.add(nanos);
+        writeLatency.record(nanos);
+    }
+
+    /**
+     * Record time an async write waited in its lane before its first byte was written.
+     *
+     * @param lane  the lane, WritePriority ordinal
+     * @param nanos the nanos
+     */
+    public void recordLaneWait(int lane, long nanos) {
+        laneWait[lane].record(nanos);
+    }
+
+    /**
+     * Set queue depth gauges.
+     *
+     * @param receiveQueueDepth the receive queue depth in bytes
+     * @param writeQueueDepth   the write queue depth in requests
+     */
+    public void setQueueDepth(IntSupplier receiveQueueDepth, IntSupplier writeQueueDepth) {
+        this.receiveQueueDepth = receiveQueueDepth != null ? receiveQueueDepth : ZERO;
+        this.writeQueueDepth = writeQueueDepth != null ? writeQueueDepth : ZERO;
+    }
+
+    /**
+     * Snapshot.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        Histogram.Snapshot[] laneWaitSnapshots = new Histogram.Snapshot[LANES];
+        for (int i = 0; i < LANES; i++) {
+            laneWaitSnapshots[i] = laneWait[i].snapshot();
+        }
+        return new Snapshot(port, bytesIn.sum(), bytesOut.sum(), readCalls.sum(), writeCalls.sum(),
+                writeBlockedNanos.sum(), readSizes.snapshot(), dispatchLatency.snapshot(), writeLatency.snapshot(),
+                receiveQueueDepth.getAsInt(), writeQueueDepth.getAsInt(), laneWaitSnapshots);
+    }
+
+    /**
+     * The type Metrics snapshot.
+     */
+    public static class Snapshot {
+
+        private final String port;
+
+        private final long bytesIn;
+
+        private final long bytesOut;
+
+        private final long readCalls;
+
+        private final long writeCalls;
+
+        private final long writeBlockedNanos;
+
+        private final Histogram.Snapshot readSizes;
+
+        private final Histogram.Snapshot dispatchLatency;
+
+        private final Histogram.Snapshot writeLatency;
+
+        private final int receiveQueueDepth;
+
+        private final int writeQueueDepth;
+
+        private final Histogram.Snapshot[] laneWait;
+
+        /**
+         * Instantiates a new Snapshot.
+         *
+         * @param port              the port
+         * @param bytesIn           the bytes in
+         * @param bytesOut          the bytes out
+         * @param readCalls         the read calls
+         * @param writeCalls        the write calls
+         * @param writeBlockedNanos the write blocked nanos
+         * @param readSizes         the read sizes
+         * @param dispatchLatency   the dispatch latency
+         * @param writeLatency      the write latency
+         * @param receiveQueueDepth the receive queue depth
+         * @param writeQueueDepth   the write queue depth
+         * @param laneWait          the wait histograms of write lanes
+         */
+        public Snapshot(String port, long bytesIn, long bytesOut, long readCalls, long writeCalls, long writeBlockedNanos,
+                        Histogram.Snapshot readSizes, Histogram.Snapshot dispatchLatency, Histogram.Snapshot writeLatency,
+                        int receiveQueueDepth, int writeQueueDepth, Histogram.Snapshot[] laneWait) {
+            this.port = port;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.readCalls = readCalls;
+            this.writeCalls = writeCalls;
+            this.writeBlockedNanos = writeBlockedNanos;
+            this.readSizes = readSizes;
+            this.dispatchLatency = dispatchLatency;
+            this.writeLatency = writeLatency;
+            this.receiveQueueDepth = receiveQueueDepth;
+            this.writeQueueDepth = writeQueueDepth;
+            this.laneWait = laneWait;
+        }
+
+        /**
+         * Merge snapshot of another port.
+         *
+         * @param port  the port name of merged snapshot
+         * @param other the other
+         * @return the merged snapshot
+         */
+        public Snapshot merge(String port, Snapshot other) {
+            return new Snapshot(port, bytesIn + other.bytesIn, bytesOut + other.bytesOut, readCalls + other.readCalls,
+                    writeCalls + other.writeCalls, writeBlockedNanos + other.writeBlockedNanos,
+                    readSizes.merge(other.readSizes), dispatchLatency.merge(other.dispatchLatency),
+                    writeLatency.merge(other.writeLatency), receiveQueueDepth + other.receiveQueueDepth,
+                    writeQueueDepth + other.writeQueueDepth, mergeLaneWait(other));
+        }
+
+        private Histogram.Snapshot[] mergeLaneWait(Snapshot other) {
+            Histogram.Snapshot[] merged = new Histogram.Snapshot[LANES];
+            for (int i = 0; i < LANES; i++) {
+                merged[i] = laneWait[i].merge(other.laneWait[i]);
+            }
+            return merged;
+        }
+
+        /**
+         * Gets port.
+         *
+         * @return the port
+         */
+        public String getPort() {
+            return port;
+        }
+
+        /**
+         * Gets bytes in.
+         *
+         * @return the bytes in
+         */
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        /**
+         * Gets bytes out.
+         *
+         * @return the bytes out
+         */
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        /**
+         * Gets read system call count.
+         *
+         * @return the read calls
+         */
+        public long getReadCalls() {
+            return readCalls;
+        }
+
+        /**
+         * Gets write system call count.
+         *
+         * @return the write calls
+         */
+        public long getWriteCalls() {
+            return writeCalls;
+        }
+
+        /**
+         * Gets total nanos blocked in write.
+         *
+         * @return the write blocked nanos
+         */
+        public long getWriteBlockedNanos() {
+            return writeBlockedNanos;
+        }
+
+        /**
+         * Gets histogram of bytes per read.
+         *
+         * @return the read sizes
+         */
+        public Histogram.Snapshot getReadSizes() {
+            return readSizes;
+        }
+
+        /**
+         * Gets histogram of listener dispatch latency in nanos.
+         *
+         * @return the dispatch latency
+         */
+        public Histogram.Snapshot getDispatchLatency() {
+            return dispatchLatency;
+        }
+
+        /**
+         * Gets histogram of write latency in nanos.
+         *
+         * @return the write latency
+         */
+        public Histogram.Snapshot getWriteLatency() {
+            return writeLatency;
+        }
+
+        /**
+         * Gets histogram of nanos async writes waited in a lane.
+         *
+         * @param lane the lane, WritePriority ordinal
+         * @return the lane wait
+         */
+        public Histogram.Snapshot getLaneWait(int lane) {
+            return laneWait[lane];
+        }
+
+        /**
+         * Gets receive queue depth in bytes.
+         *
+         * @return the receive queue depth
+         */
+        public int getReceiveQueueDepth() {
+            return receiveQueueDepth;
+        }
+
+        /**
+         * Gets write queue depth in requests.
+         *
+         * @return the write queue depth
+         */
+        public int getWriteQueueDepth() {
+            return writeQueueDepth;
+        }
+
+        @Override
+        public String toString() {
+            return "SerialPortMetrics{" +
+                    "port='" + port + '\'' +
+                    ", bytesIn=" + bytesIn +
+                    ", bytesOut=" + bytesOut +
+                    ", readCalls=" + readCalls +
+                    ", writeCalls=" + writeCalls +
+                    ", writeBlockedNanos=" + writeBlockedNanos +
+                    ", readSizes=" + readSizes +
+                    ", dispatchLatency=" + dispatchLatency +
+                    ", writeLatency=" + writeLatency +
+                    ", receiveQueueDepth=" + receiveQueueDepth +
+                    ", writeQueueDepth=" + writeQueueDepth +
+                    ", laneWait=" + Arrays.toString(laneWait) +
+                    '}';
+        }
+    }
+}
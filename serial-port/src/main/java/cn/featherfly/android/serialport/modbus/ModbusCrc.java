@@ -0,0 +1,56 @@
+package cn.featherfly.android.serialport.modbus;
+
+import java.nio.ByteBuffer;
+
+import cn.featherfly.android.serialport.checksum.Crc16Modbus;
+
+/**
+ * The type Modbus crc.
+ * <p>
+ * Modbus RTU帧的CRC16，计算由{@link Crc16Modbus}完成.
+ */
+public final class ModbusCrc {
+
+    private ModbusCrc() {
+    }
+
+    /**
+     * Compute crc.
+     *
+     * @param data   the data
+     * @param offset the offset
+     * @param length the length
+     * @return the crc, low byte is sent first
+     */
+    public static int compute(byte[] data, int offset, int length) {
+        return Crc16Modbus.compute(data, offset, length);
+    }
+
+    /**
+     * Compute crc of bytes between position and limit, position is not changed.
+     *
+     * @param data the data
+     * @return the crc, low byte is sent first
+     */
+    public static int compute(ByteBuffer data) {
+        return Crc16Modbus.compute(data);
+    }
+
+    /**
+     * Check frame whose last two bytes are crc.
+     *
+     * @param frame the frame between position and limit
+     * @return true if crc matches
+     */
+    public static boolean check(ByteBuffer frame) {
+        int length = frame.remaining();
+        if (length < 3) {
+            return false;
+        }
+        ByteBuffer content = frame.duplicate();
+        content.limit(frame.limit() - 2);
+        int crc = compute(content);
+        return (frame.get(frame.limit() - 2) & 0xff) == (crc & 0xff)
+                && (frame.get(frame.limit() - 1) & 0xff) == crc >>> 8;
+    }
+}
@@ -0,0 +1,75 @@
+package cn.featherfly.android.serialport.modbus;
+
+import java.io.IOException;
+
+/**
+ * The type Modbus exception, the slave answered with an exception response.
+ */
+public class ModbusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Illegal function.
+     */
+    public static final int ILLEGAL_FUNCTION = 0x01;
+    /**
+     * Illegal data address.
+     */
+    public static final int ILLEGAL_DATA_ADDRESS = 0x02;
+    /**
+     * Illegal data value.
+     */
+    public static final int ILLEGAL_DATA_VALUE = 0x03;
+    /**
+     * Slave device failure.
+     */
+    public static final int SLAVE_DEVICE_FAILURE = 0x04;
+
+    private final int unit;
+
+    private final int function;
+
+    private final int exceptionCode;
+
+    /**
+     * Instantiates a new Modbus exception.
+     *
+     * @param unit          the unit
+     * @param function      the function
+     * @param exceptionCode the exception code
+     */
+    public ModbusException(int unit, int function, int exceptionCode) {
+        super("modbus exception " + exceptionCode + " unit " + unit + " function " + function);
+        this.unit = unit;
+        this.function = function;
+        this.exceptionCode = exceptionCode;
+    }
+
+    /**
+     * Gets unit.
+     *
+     * @return the unit
+     */
+    public int getUnit() {
+        return unit;
+    }
+
+    /**
+     * Gets function.
+     *
+     * @return the function
+     */
+    public int getFunction() {
+        return function;
+    }
+
+    /**
+     * Gets exception code.
+     *
+     * @return the exception code
+     */
+    public int getExceptionCode() {
+        return exceptionCode;
+    }
+}
@@ -0,0 +1,409 @@
+package cn.featherfly.android.serialport.modbus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import cn.featherfly.android.serialport.EasySerialPort;
+import cn.featherfly.android.serialport.decoder.InterCharTimeoutFrameDecoder;
+import cn.featherfly.android.serialport.modbus.RegisterReadPlanner.Block;
+import cn.featherfly.android.serialport.modbus.RegisterReadPlanner.RegisterRead;
+import cn.featherfly.android.serialport.transaction.ResponseMatcher;
+import cn.featherfly.android.serialport.transaction.TransactionManager;
+
+/**
+ * The type Modbus rtu master.
+ * <p>
+ * Modbus RTU主站，以3.5个字符的静默时间分帧，总线上同时只有一个请求.
+ * 总线忙时提交的寄存器读取会排队，总线空闲后由{@link RegisterReadPlanner}合并成尽量少的请求.
+ * 写请求是屏障，写之前提交的读取不会与写之后提交的读取合并.
+ * <p>
+ * 构造时会设置端口的帧解码器，需要在{@link cn.featherfly.android.serialport.EasySerialPortImpl#startReceive()}之前创建.
+ */
+public class ModbusRtuMaster implements Closeable {
+
+    /**
+     * Function read holding registers.
+     */
+    public static final int READ_HOLDING_REGISTERS = 0x03;
+    /**
+     * Function read input registers.
+     */
+    public static final int READ_INPUT_REGISTERS = 0x04;
+    /**
+     * Function write single register.
+     */
+    public static final int WRITE_SINGLE_REGISTER = 0x06;
+    /**
+     * Function write multiple registers.
+     */
+    public static final int WRITE_MULTIPLE_REGISTERS = 0x10;
+
+    /**
+     * The default response timeout in milliseconds.
+     */
+    public static final long DEFAULT_TIMEOUT = 1000;
+
+    private static final int MAX_WRITE_REGISTERS = 123;
+
+    private final TransactionManager transactions;
+
+    private final RegisterReadPlanner planner;
+
+    private final long timeoutNanos;
+
+    private final Object lock = new Object();
+
+    private final ArrayDeque<Operation> queue = new ArrayDeque<>();
+
+    private boolean busy;
+
+    private boolean closed;
+
+    /**
+     * Instantiates a new Modbus rtu master.
+     *
+     * @param port     the port
+     * @param baudrate the baudrate
+     */
+    public ModbusRtuMaster(EasySerialPort port, int baudrate) {
+        this(port, baudrate, new RegisterReadPlanner(), DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Instantiates a new Modbus rtu master.
+     *
+     * @param port     the port
+     * @param baudrate the baudrate
+     * @param planner  the planner
+     * @param timeout  the response timeout
+     * @param unit     the unit
+     */
+    public ModbusRtuMaster(EasySerialPort port, int baudrate, RegisterReadPlanner planner, long timeout,
+                           TimeUnit unit) {
+        port.setFrameDecoder(InterCharTimeoutFrameDecoder.modbusRtu(baudrate));
+        this.transactions = new TransactionManager(port);
+        this.planner = planner;
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Read holding registers, function 03.
+     *
+     * @param unit     the unit
+     * @param address  the address
+     * @param quantity the quantity
+     * @return the future of unsigned 16 bit register values
+     */
+    public CompletableFuture<int[]> readHoldingRegisters(int unit, int address, int quantity) {
+        return read(new RegisterRead(unit, READ_HOLDING_REGISTERS, address, quantity));
+    }
+
+    /**
+     * Read input registers, function 04.
+     *
+     * @param unit     the unit
+     * @param address  the address
+     * @param quantity the quantity
+     * @return the future of unsigned 16 bit register values
+     */
+    public CompletableFuture<int[]> readInputRegisters(int unit, int address, int quantity) {
+        return read(new RegisterRead(unit, READ_INPUT_REGISTERS, address, quantity));
+    }
+
+    /**
+     * Read registers.
+     *
+     * @param read the read
+     * @return the future of unsigned 16 bit register values
+     */
+    public CompletableFuture<int[]> read(RegisterRead read) {
+        PendingRead pending = toPending(read);
+        enqueue(pending);
+        return pending.future;
+    }
+
+    /**
+     * Read registers as one batch, all reads are planned together. Used by polling loops which read the same
+     * points every cycle.
+     *
+     * @param reads the reads
+     * @return the future of register values in the order of reads
+     */
+    public CompletableFuture<List<int[]>> read(Collection<? extends RegisterRead> reads) {
+        List<PendingRead> batch = new ArrayList<>(reads.size());
+        for (RegisterRead read : reads) {
+            batch.add(toPending(read));
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[batch.size()];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = batch.get(i).future;
+        }
+        enqueue(batch.toArray(new Operation[0]));
+        return CompletableFuture.allOf(futures).thenApply(v -> {
+            List<int[]> values = new ArrayList<>(batch.size());
+            for (PendingRead read : batch) {
+                values.add(read.future.join());
+            }
+            return values;
+        });
+    }
+
+    /**
+     * Write single register, function 06.
+     *
+     * @param unit    the unit
+     * @param address the address
+     * @param value   the value
+     * @return the future
+     */
+    public CompletableFuture<Void> writeSingleRegister(int unit, int address, int value) {
+        checkUnit(unit);
+        byte[] frame = new byte[8];
+        frame[0] = (byte) unit;
+        frame[1] = WRITE_SINGLE_REGISTER;
+        putShort(frame, 2, address);
+        putShort(frame, 4, value);
+        PendingWrite write = new PendingWrite(unit, WRITE_SINGLE_REGISTER, frame);
+        enqueue(write);
+        return write.future;
+    }
+
+    /**
+     * Write multiple registers, function 16.
+     *
+     * @param unit    the unit
+     * @param address the address
+     * @param values  the values, at most 123
+     * @return the future
+     */
+    public CompletableFuture<Void> writeMultipleRegisters(int unit, int address, int[] values) {
+        checkUnit(unit);
+        if (values.length < 1 || values.length > MAX_WRITE_REGISTERS) {
+            throw new IllegalArgumentException("quantity must be 1 - " + MAX_WRITE_REGISTERS + ": " + values.length);
+        }
+        byte[] frame = new byte[9 + values.length * 2];
+        frame[0] = (byte) unit;
+        frame[1] = WRITE_MULTIPLE_REGISTERS;
+        putShort(frame, 2, address);
+        putShort(frame, 4, values.length);
+        frame[6] = (byte) (values.length * 2);
+        for (int i = 0; i < values.length; i++) {
+            putShort(frame, 7 + i * 2, values[i]);
+        }
+        PendingWrite write = new PendingWrite(unit, WRITE_MULTIPLE_REGISTERS, frame);
+        enqueue(write);
+        return write.future;
+    }
+
+    /**
+     * Gets planner.
+     *
+     * @return the planner
+     */
+    public RegisterReadPlanner getPlanner() {
+        return planner;
+    }
+
+    /**
+     * Fail queued and pending requests.
+     */
+    @Override
+    public void close() {
+        List<Operation> pending;
+        synchronized (lock) {
+            closed = true;
+            pending = new ArrayList<>(queue);
+            queue.clear();
+        }
+        transactions.close();
+        IOException e = new IOException("modbus master closed");
+        for (Operation operation : pending) {
+            operation.fail(e);
+        }
+    }
+
+    private PendingRead toPending(RegisterRead read) {
+        checkUnit(read.getUnit());
+        if (read.getQuantity() > planner.getMaxRegisters()) {
+            throw new IllegalArgumentException("quantity " + read.getQuantity() + " exceeds "
+                    + planner.getMaxRegisters());
+        }
+        return new PendingRead(read);
+    }
+
+    private void enqueue(Operation... operations) {
+        synchronized (lock) {
+            if (!closed) {
+                queue.addAll(Arrays.asList(operations));
+                operations = null;
+            }
+        }
+        if (operations != null) {
+            IOException e = new IOException("modbus master closed");
+            for (Operation operation : operations) {
+                operation.fail(e);
+            }
+            return;
+        }
+        next();
+    }
+
+    private void next() {
+        PendingWrite write = null;
+        List<PendingRead> reads = null;
+        synchronized (lock) {
+            if (busy || queue.isEmpty()) {
+                return;
+            }
+            busy = true;
+            if (queue.peek() instanceof PendingWrite) {
+                write = (PendingWrite) queue.poll();
+            } else {
+                reads = new ArrayList<>();
+                while (queue.peek() instanceof PendingRead) {
+                    reads.add((PendingRead) queue.poll());
+                }
+            }
+        }
+        CompletableFuture<?> done;
+        if (write != null) {
+            done = execute(write);
+        } else {
+            List<Block<PendingRead>> blocks = planner.plan(reads);
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[blocks.size()];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = execute(blocks.get(i));
+            }
+            done = CompletableFuture.allOf(futures);
+        }
+        done.whenComplete((v, e) -> {
+            synchronized (lock) {
+                busy = false;
+            }
+            next();
+        });
+    }
+
+    private CompletableFuture<?> execute(PendingWrite write) {
+        return send(write.unit, write.function, write.frame).whenComplete((response, e) -> {
+            if (e != null) {
+                write.fail(e);
+            } else if (response.remaining() != 8) {
+                write.fail(new IOException("malformed response length " + response.remaining()));
+            } else {
+                write.future.complete(null);
+            }
+        });
+    }
+
+    private CompletableFuture<?> execute(Block<PendingRead> block) {
+        byte[] frame = new byte[8];
+        frame[0] = (byte) block.getUnit();
+        frame[1] = (byte) block.getFunction();
+        putShort(frame, 2, block.getAddress());
+        putShort(frame, 4, block.getQuantity());
+        return send(block.getUnit(), block.getFunction(), frame).whenComplete((response, e) -> {
+            if (e == null) {
+                int byteCount = response.get(response.position() + 2) & 0xff;
+                if (byteCount != block.getQuantity() * 2 || response.remaining() != byteCount + 5) {
+                    e = new IOException("malformed response length " + response.remaining());
+                }
+            }
+            for (PendingRead read : block.getReads()) {
+                if (e != null) {
+                    read.fail(e);
+                    continue;
+                }
+                int[] values = new int[read.getQuantity()];
+                int index = response.position() + 3 + (read.getAddress() - block.getAddress()) * 2;
+                for (int i = 0; i < values.length; i++, index += 2) {
+                    values[i] = (response.get(index) & 0xff) << 8 | response.get(index + 1) & 0xff;
+                }
+                read.future.complete(values);
+            }
+        });
+    }
+
+    private CompletableFuture<ByteBuffer> send(int unit, int function, byte[] frame) {
+        int crc = ModbusCrc.compute(frame, 0, frame.length - 2);
+        frame[frame.length - 2] = (byte) crc;
+        frame[frame.length - 1] = (byte) (crc >>> 8);
+        ResponseMatcher matcher = response -> response.remaining() >= 5
+                && (response.get(response.position()) & 0xff) == unit
+                && (response.get(response.position() + 1) & 0x7f) == function;
+        CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+        transactions.request(ByteBuffer.wrap(frame), matcher, timeoutNanos, TimeUnit.NANOSECONDS)
+                .whenComplete((response, e) -> {
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                    } else if (!ModbusCrc.check(response)) {
+                        result.completeExceptionally(new IOException("crc error"));
+                    } else if ((response.get(response.position() + 1) & 0x80) != 0) {
+                        result.completeExceptionally(new ModbusException(unit, function,
+                                response.get(response.position() + 2) & 0xff));
+                    } else {
+                        result.complete(response);
+                    }
+                });
+        return result;
+    }
+
+    private static void checkUnit(int unit) {
+        if (unit < 1 || unit > 247) {
+            throw new IllegalArgumentException("unit must be 1 - 247: " + unit);
+        }
+    }
+
+    private static void putShort(byte[] frame, int index, int value) {
+        frame[index] = (byte) (value >>> 8);
+        frame[index + 1] = (byte) value;
+    }
+
+    private interface Operation {
+        void fail(Throwable e);
+    }
+
+    private static class PendingRead extends RegisterRead implements Operation {
+
+        private final CompletableFuture<int[]> future = new CompletableFuture<>();
+
+        private PendingRead(RegisterRead read) {
+            super(read.getUnit(), read.getFunction(), read.getAddress(), read.getQuantity());
+        }
+
+        @Override
+        public void fail(Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static class PendingWrite implements Operation {
+
+        private final int unit;
+
+        private final int function;
+
+        private final byte[] frame;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingWrite(int unit, int function, byte[] frame) {
+            this.unit = unit;
+            this.function = function;
+            this.frame = frame;
+        }
+
+        @Override
+        public void fail(Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package cn.featherfly.android.serialport.modbus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The type Register read planner.
+ * <p>
+ * 把多个寄存器读取合并成尽量少的功能码03/04请求. 同一从站、同一功能码的读取按地址排序，
+ * 相邻或间隔不超过maxGap个寄存器、且合并后不超过maxRegisters的读取合并为一个块.
+ * <p>
+ * 每多一次请求约多出20个字符时间(请求8字节、响应头和CRC 5字节、两个3.5字符的帧间隔)加上从站响应时间，
+ * 而多读一个寄存器只多2个字符时间，所以默认间隔为10. 读取未定义地址会返回异常的设备应把maxGap设为0.
+ */
+public class RegisterReadPlanner {
+
+    /**
+     * The max registers of a function 03/04 request limited by the 256 bytes RTU frame.
+     */
+    public static final int MAX_REGISTERS = 125;
+
+    /**
+     * The default max gap.
+     */
+    public static final int DEFAULT_MAX_GAP = 10;
+
+    private static final Comparator<RegisterRead> ORDER = (a, b) -> {
+        if (a.unit != b.unit) {
+            return a.unit - b.unit;
+        }
+        if (a.function != b.function) {
+            return a.function - b.function;
+        }
+        return a.address - b.address;
+    };
+
+    private final int maxRegisters;
+
+    private final int maxGap;
+
+    /**
+     * Instantiates a new Register read planner.
+     */
+    public RegisterReadPlanner() {
+        this(MAX_REGISTERS, DEFAULT_MAX_GAP);
+    }
+
+    /**
+     * Instantiates a new Register read planner.
+     *
+     * @param maxRegisters the max registers of a request, 1 - 125
+     * @param maxGap       the max unrequested registers read between two reads
+     */
+    public RegisterReadPlanner(int maxRegisters, int maxGap) {
+        if (maxRegisters < 1 || maxRegisters > MAX_REGISTERS) {
+            throw new IllegalArgumentException("maxRegisters must be 1 - " + MAX_REGISTERS + ": " + maxRegisters);
+        }
+        if (maxGap < 0) {
+            throw new IllegalArgumentException("maxGap must not be negative: " + maxGap);
+        }
+        this.maxRegisters = maxRegisters;
+        this.maxGap = maxGap;
+    }
+
+    /**
+     * Plan blocks covering all reads.
+     *
+     * @param <R>   the read type
+     * @param reads the reads
+     * @return the blocks
+     */
+    public <R extends RegisterRead> List<Block<R>> plan(Collection<R> reads) {
+        List<R> sorted = new ArrayList<>(reads);
+        Collections.sort(sorted, ORDER);
+        List<Block<R>> blocks = new ArrayList<>();
+        Block<R> block = null;
+        for (R read : sorted) {
+            if (read.getQuantity() > maxRegisters) {
+                throw new IllegalArgumentException("quantity " + read.getQuantity() + " exceeds " + maxRegisters);
+            }
+            int end = read.getAddress() + read.getQuantity();
+            if (block != null && block.unit == read.getUnit() && block.function == read.getFunction()
+                    && read.getAddress() <= block.getEnd() + maxGap
+                    && Math.max(block.getEnd(), end) - block.address <= maxRegisters) {
+                block.quantity = Math.max(block.getEnd(), end) - block.address;
+                block.reads.add(read);
+            } else {
+                block = new Block<>(read.getUnit(), read.getFunction(), read.getAddress(), read.getQuantity());
+                block.reads.add(read);
+                blocks.add(block);
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Gets max registers.
+     *
+     * @return the max registers
+     */
+    public int getMaxRegisters() {
+        return maxRegisters;
+    }
+
+    /**
+     * Gets max gap.
+     *
+     * @return the max gap
+     */
+    public int getMaxGap() {
+        return maxGap;
+    }
+
+    /**
+     * The type Register read.
+     */
+    public static class RegisterRead {
+
+        private final int unit;
+
+        private final int function;
+
+        private final int address;
+
+        private final int quantity;
+
+        /**
+         * Instantiates a new Register read.
+         *
+         * @param unit     the unit
+         * @param function the function, 03 or 04
+         * @param address  the start address
+         * @param quantity the quantity
+         */
+        public RegisterRead(int unit, int function, int address, int quantity) {
+            if (function != ModbusRtuMaster.READ_HOLDING_REGISTERS && function != ModbusRtuMaster.READ_INPUT_REGISTERS) {
+                throw new IllegalArgumentException("function must be 03 or 04: " + function);
+            }
+            if (address < 0 || quantity < 1 || address + quantity > 0x10000) {
+                throw new IllegalArgumentException("illegal address " + address + " quantity " + quantity);
+            }
+            this.unit = unit;
+            this.function = function;
+            this.address = address;
+            this.quantity = quantity;
+        }
+
+        /**
+         * Gets unit.
+         *
+         * @return the unit
+         */
+        public int getUnit() {
+            return unit;
+        }
+
+        /**
+         * Gets function.
+         *
+         * @return the function
+         */
+        public int getFunction() {
+            return function;
+        }
+
+        /**
+         * Gets address.
+         *
+         * @return the address
+         */
+        public int getAddress() {
+            return address;
+        }
+
+        /**
+         * Gets quantity.
+         *
+         * @return the quantity
+         */
+        public int getQuantity() {
+            return quantity;
+        }
+    }
+
+    /**
+     * The type Block, a single request covering several reads.
+     *
+     * @param <R> the read type
+     */
+    public static class Block<R extends RegisterRead> {
+
+        private final int unit;
+
+        private final int function;
+
+        private final int address;
+
+        private int quantity;
+
+        private final List<R> reads = new ArrayList<>();
+
+        private Block(int unit, int function, int address, int quantity) {
+            this.unit = unit;
+            this.function = function;
+            this.address = address;
+            this.quantity = quantity;
+        }
+
+        /**
+         * Gets unit.
+         *
+         * @return the unit
+         */
+        public int getUnit() {
+            return unit;
+        }
+
+        /**
+         * Gets function.
+         *
+         * @return the function
+         */
+        public int getFunction() {
+            return function;
+        }
+
+        /**
+         * Gets address.
+         *
+         * @return the address
+         */
+        public int getAddress() {
+            return address;
+        }
+
+        /**
+         * Gets quantity.
+         *
+         * @return the quantity
+         */
+        public int getQuantity() {
+            return quantity;
+        }
+
+        /**
+         * Gets reads covered by this block.
+         *
+         * @return the reads
+         */
+        public List<R> getReads() {
+            return reads;
+        }
+
+        private int getEnd() {
+            return address + quantity;
+        }
+    }
+}
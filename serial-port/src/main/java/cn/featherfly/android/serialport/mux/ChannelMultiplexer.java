@@ -0,0 +1,415 @@
+package cn.featherfly.android.serialport.mux;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import cn.featherfly.android.serialport.EasySerialPort;
+import cn.featherfly.android.serialport.EasySerialPort.SerialBufferReadListener;
+import cn.featherfly.android.serialport.EasySerialPort.SerialPortBufferEvent;
+import cn.featherfly.android.serialport.WritePriority;
+import cn.featherfly.android.serialport.checksum.Crc16Ccitt;
+import cn.featherfly.android.serialport.decoder.LengthFieldFrameDecoder;
+
+/**
+ * The type Channel multiplexer.
+ * <p>
+ * 在一个物理端口上复用多个逻辑通道，例如控制、遥测和调试控制台. 每个通道有自己的监听器、写队列和基于信用的流控，
+ * 通道只能发送对端授予的信用字节数，一个通道的数据洪泛不会占满对端的接收缓冲，也不会饿死其他通道.
+ * 有信用的通道轮流发送，每帧最多maxPayload字节，同时最多两帧交给端口的写线程.
+ * <p>
+ * 帧格式，多字节字段为大端:
+ * <pre>
+ * channel(1) type(1) length(2) offset(2) payload(length) crc(2)
+ * </pre>
+ * type为DATA时offset是payload第一个字节在通道字节流中的偏移的低16位；type为CREDIT时offset是对端可以发送到的偏移上限，
+ * 接收方在监听器返回后累计消费的字节超过半个窗口时授予新的信用；发送方没有信用超过stallTimeout时发送CREDIT_REQUEST，
+ * 对端重新授予信用，信用帧丢失不会使通道永久停止. crc是之前所有字节的CRC-16/XMODEM，校验失败的帧被丢弃.
+ * <p>
+ * 两端必须使用相同的maxPayload并打开相同的通道. 构造时会设置端口的帧解码器，需要在
+ * {@link cn.featherfly.android.serialport.EasySerialPortImpl#startReceive()}之前创建，端口的其他写入会破坏帧.
+ */
+public class ChannelMultiplexer implements Closeable {
+
+    /**
+     * The default max payload of a frame.
+     */
+    public static final int DEFAULT_MAX_PAYLOAD = 256;
+
+    /**
+     * The default receive window of a channel.
+     */
+    public static final int DEFAULT_WINDOW = 4096;
+
+    /**
+     * The max receive window, offsets in the window are not ambiguous.
+     */
+    public static final int MAX_WINDOW = 0x7fff;
+
+    /**
+     * The default timeout without credit before credit is requested, in milliseconds.
+     */
+    public static final long DEFAULT_STALL_TIMEOUT = 500;
+
+    /**
+     * Frame type of channel data.
+     */
+    public static final int TYPE_DATA = 0;
+    /**
+     * Frame type of credit grant.
+     */
+    public static final int TYPE_CREDIT = 1;
+    /**
+     * Frame type of credit request.
+     */
+    public static final int TYPE_CREDIT_REQUEST = 2;
+
+    static final int HEADER_LENGTH = 6;
+
+    static final int CRC_LENGTH = 2;
+
+    private static final int MAX_FRAMES_IN_FLIGHT = 2;
+
+    private static final ScheduledExecutorService TIMER;
+
+    static {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "serial-port-mux-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        TIMER = timer;
+    }
+
+    final Object lock = new Object();
+
+    private final EasySerialPort port;
+
+    private final int maxPayload;
+
+    private final long stallTimeoutNanos;
+
+    private final LogicalChannel[] channels = new LogicalChannel[256];
+
+    private final List<LogicalChannel> open = new ArrayList<>();
+
+    private final SerialBufferReadListener frameListener = this::onFrame;
+
+    private final ScheduledFuture<?> stallCheck;
+
+    private int cursor;
+
+    private int inFlight;
+
+    private boolean dispatching;
+
+    private boolean redispatch;
+
+    private boolean closed;
+
+    private volatile long crcErrors;
+
+    private volatile long droppedFrames;
+
+    /**
+     * Instantiates a new Channel multiplexer.
+     *
+     * @param port the port
+     */
+    public ChannelMultiplexer(EasySerialPort port) {
+        this(port, DEFAULT_MAX_PAYLOAD, DEFAULT_STALL_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Instantiates a new Channel multiplexer.
+     *
+     * @param port         the port
+     * @param maxPayload   the max payload of a frame, the same on both ends
+     * @param stallTimeout the time without credit before credit is requested
+     * @param unit         the unit
+     */
+    public ChannelMultiplexer(EasySerialPort port, int maxPayload, long stallTimeout, TimeUnit unit) {
+        if (maxPayload < 1 || maxPayload > MAX_WINDOW) {
+            throw new IllegalArgumentException("maxPayload must be in [1, " + MAX_WINDOW + "]: " + maxPayload);
+        }
+        this.port = port;
+        this.maxPayload = maxPayload;
+        this.stallTimeoutNanos = unit.toNanos(stallTimeout);
+        port.setFrameDecoder(new LengthFieldFrameDecoder(HEADER_LENGTH + maxPayload + CRC_LENGTH, 2, 2,
+                HEADER_LENGTH - 4 + CRC_LENGTH, true));
+        port.addBufferListener(frameListener);
+        long period = Math.max(1, stallTimeoutNanos / 2);
+        stallCheck = TIMER.scheduleWithFixedDelay(this::checkStalled, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Open channel with {@link #DEFAULT_WINDOW}.
+     *
+     * @param id the channel id, [0, 255]
+     * @return the logical channel
+     */
+    public LogicalChannel openChannel(int id) {
+        return openChannel(id, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Open channel, the receive window is granted to the peer at once.
+     *
+     * @param id     the channel id, [0, 255]
+     * @param window the bytes the peer can send before they are consumed, [1, {@link #MAX_WINDOW}]
+     * @return the logical channel
+     */
+    public LogicalChannel openChannel(int id, int window) {
+        if (id < 0 || id >= channels.length) {
+            throw new IllegalArgumentException("id must be in [0, 255]: " + id);
+        }
+        if (window < 1 || window > MAX_WINDOW) {
+            throw new IllegalArgumentException("window must be in [1, " + MAX_WINDOW + "]: " + window);
+        }
+        LogicalChannel channel;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("multiplexer closed");
+            }
+            if (channels[id] != null) {
+                throw new IllegalStateException("channel " + id + " already open");
+            }
+            channel = new LogicalChannel(this, port.getName() + "#" + id, id, window);
+            channels[id] = channel;
+            open.add(channel);
+        }
+        channel.grant();
+        return channel;
+    }
+
+    /**
+     * Gets open channel.
+     *
+     * @param id the channel id
+     * @return the channel, null if not open
+     */
+    public LogicalChannel getChannel(int id) {
+        synchronized (lock) {
+            return id < 0 || id >= channels.length ? null : channels[id];
+        }
+    }
+
+    /**
+     * Gets max payload.
+     *
+     * @return the max payload
+     */
+    public int getMaxPayload() {
+        return maxPayload;
+    }
+
+    /**
+     * Gets frames dropped for crc errors.
+     *
+     * @return the crc errors
+     */
+    public long getCrcErrors() {
+        return crcErrors;
+    }
+
+    /**
+     * Gets frames dropped for channels not open or unknown types.
+     *
+     * @return the dropped frames
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Close all channels, queued writes complete exceptionally. The frame decoder of the port is removed.
+     */
+    @Override
+    public void close() {
+        List<LogicalChannel> closing;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closing = new ArrayList<>(open);
+        }
+        stallCheck.cancel(false);
+        port.removeBufferListener(frameListener);
+        port.setFrameDecoder(null);
+        for (LogicalChannel channel : closing) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Remove closed channel.
+     *
+     * @param channel the channel
+     */
+    void remove(LogicalChannel channel) {
+        synchronized (lock) {
+            if (channels[channel.getId()] == channel) {
+                channels[channel.getId()] = null;
+                open.remove(channel);
+            }
+        }
+    }
+
+    /**
+     * Is closed.
+     *
+     * @return the boolean
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Send credit or credit request, control frames are sent in the urgent lane ahead of queued data.
+     *
+     * @param id    the channel id
+     * @param type  the type
+     * @param value the offset value
+     */
+    void sendControl(int id, int type, int value) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + CRC_LENGTH);
+        frame.put((byte) id).put((byte) type).putShort((short) 0).putShort((short) value);
+        putCrc(frame);
+        frame.flip();
+        port.writeAsync(frame, WritePriority.URGENT);
+    }
+
+    /**
+     * Write queued data of channels with credit, frames are taken from the channels in turn.
+     */
+    void dispatch() {
+        synchronized (lock) {
+            if (dispatching) {
+                redispatch = true;
+                return;
+            }
+            dispatching = true;
+        }
+        // 只有一个线程提交帧，提交顺序就是通道字节流的顺序
+        for (; ; ) {
+            LogicalChannel.Frame frame;
+            synchronized (lock) {
+                frame = closed || inFlight >= MAX_FRAMES_IN_FLIGHT ? null : nextFrame();
+                if (frame == null) {
+                    if (!redispatch) {
+                        dispatching = false;
+                        return;
+                    }
+                    redispatch = false;
+                    continue;
+                }
+                inFlight++;
+            }
+            LogicalChannel.Frame written = frame;
+            port.writeAsync(frame.buffer).whenComplete((v, e) -> onWritten(written, e));
+        }
+    }
+
+    private LogicalChannel.Frame nextFrame() {
+        int size = open.size();
+        for (int i = 0; i < size; i++) {
+            int index = (cursor + i) % size;
+            LogicalChannel.Frame frame = open.get(index).poll(maxPayload);
+            if (frame != null) {
+                cursor = index + 1;
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    private void onWritten(LogicalChannel.Frame frame, Throwable e) {
+        synchronized (lock) {
+            inFlight--;
+        }
+        frame.complete(e);
+        dispatch();
+    }
+
+    /**
+     * Append crc of bytes before position.
+     *
+     * @param frame the frame
+     */
+    static void putCrc(ByteBuffer frame) {
+        frame.putShort((short) Crc16Ccitt.compute(Crc16Ccitt.XMODEM, frame.array(), frame.arrayOffset(),
+                frame.position()));
+    }
+
+    private void onFrame(SerialPortBufferEvent event) {
+        ByteBuffer frame = event.getBuffer();
+        int start = frame.position();
+        int end = frame.limit();
+        if (end - start < HEADER_LENGTH + CRC_LENGTH) {
+            crcErrors++;
+            return;
+        }
+        frame.limit(end - CRC_LENGTH);
+        int crc = Crc16Ccitt.compute(Crc16Ccitt.XMODEM, frame);
+        frame.limit(end);
+        if (crc != (frame.getShort(end - CRC_LENGTH) & 0xffff)) {
+            crcErrors++;
+            return;
+        }
+        int id = frame.get(start) & 0xff;
+        int type = frame.get(start + 1);
+        int length = frame.getShort(start + 2) & 0xffff;
+        int value = frame.getShort(start + 4) & 0xffff;
+        LogicalChannel channel = getChannel(id);
+        if (channel == null) {
+            droppedFrames++;
+            return;
+        }
+        switch (type) {
+            case TYPE_DATA:
+                frame.limit(start + HEADER_LENGTH + length).position(start + HEADER_LENGTH);
+                try {
+                    channel.onData(value, frame);
+                } finally {
+                    frame.limit(end).position(start);
+                }
+                break;
+            case TYPE_CREDIT:
+                channel.onCredit(value);
+                dispatch();
+                break;
+            case TYPE_CREDIT_REQUEST:
+                channel.grant();
+                break;
+            default:
+                droppedFrames++;
+        }
+    }
+
+    private void checkStalled() {
+        List<LogicalChannel> stalled = null;
+        long now = System.nanoTime();
+        synchronized (lock) {
+            for (LogicalChannel channel : open) {
+                if (channel.isStalled(now, stallTimeoutNanos)) {
+                    if (stalled == null) {
+                        stalled = new ArrayList<>();
+                    }
+                    stalled.add(channel);
+                }
+            }
+        }
+        if (stalled != null) {
+            for (LogicalChannel channel : stalled) {
+                sendControl(channel.getId(), TYPE_CREDIT_REQUEST, 0);
+            }
+        }
+    }
+}
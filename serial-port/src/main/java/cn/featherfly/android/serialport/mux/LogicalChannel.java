@@ -0,0 +1,437 @@
+package cn.featherfly.android.serialport.mux;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import cn.featherfly.android.serialport.EasySerialPort.SerialBufferReadListener;
+import cn.featherfly.android.serialport.EasySerialPort.SerialPortBufferEvent;
+import cn.featherfly.android.serialport.EasySerialPort.SerialReadListener;
+import cn.featherfly.android.serialport.ListenerRegistry;
+
+/**
+ * The type Logical channel.
+ * <p>
+ * {@link ChannelMultiplexer}上的一个逻辑通道，用法与{@link cn.featherfly.android.serialport.EasySerialPort}
+ * 的读写相同. 写入先进入通道自己的队列，有信用时按帧发出；接收的数据在接收线程上回调监听器，
+ * 接收线程上的监听器返回后数据才算被消费并归还信用，通过Executor回调的监听器不受流控限制.
+ */
+public class LogicalChannel implements Closeable {
+
+    private final ChannelMultiplexer multiplexer;
+
+    private final String name;
+
+    private final int id;
+
+    private final int window;
+
+    private final ListenerRegistry<SerialReadListener> readListeners = new ListenerRegistry<>();
+
+    private final ListenerRegistry<SerialBufferReadListener> bufferListeners = new ListenerRegistry<>();
+
+    private final SerialPortBufferEvent bufferEvent;
+
+    // 发送状态，由multiplexer.lock保护
+
+    private final ArrayDeque<PendingWrite> queue = new ArrayDeque<>();
+
+    private long queuedBytes;
+
+    private int sentOffset;
+
+    private int sendLimit;
+
+    private long lastCreditNanos = System.nanoTime();
+
+    private boolean closed;
+
+    // 接收状态
+
+    private int received;
+
+    private int granted;
+
+    /**
+     * Instantiates a new Logical channel.
+     *
+     * @param multiplexer the multiplexer
+     * @param name        the name
+     * @param id          the id
+     * @param window      the receive window
+     */
+    LogicalChannel(ChannelMultiplexer multiplexer, String name, int id, int window) {
+        this.multiplexer = multiplexer;
+        this.name = name;
+        this.id = id;
+        this.window = window;
+        this.bufferEvent = new SerialPortBufferEvent(name);
+    }
+
+    /**
+     * Gets id.
+     *
+     * @return the id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Gets name, port name and channel id, used as port of events.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets receive window.
+     *
+     * @return the window
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Gets bytes the peer allows to send now.
+     *
+     * @return the send credit
+     */
+    public int getSendCredit() {
+        synchronized (multiplexer.lock) {
+            return credit();
+        }
+    }
+
+    /**
+     * Gets bytes queued and not yet framed.
+     *
+     * @return the queued bytes
+     */
+    public long getQueuedBytes() {
+        synchronized (multiplexer.lock) {
+            return queuedBytes;
+        }
+    }
+
+    /**
+     * Write byte.
+     *
+     * @param b the b
+     * @throws IOException the io exception
+     */
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b});
+    }
+
+    /**
+     * Write byte array.
+     *
+     * @param b the b
+     * @throws IOException the io exception
+     */
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    /**
+     * Write byte array, waits until the bytes are written to the port, blocks while the peer grants no credit.
+     *
+     * @param b   the b
+     * @param off the off
+     * @param len the len
+     * @throws IOException the io exception
+     */
+    public void write(byte[] b, int off, int len) throws IOException {
+        await(writeAsync(ByteBuffer.wrap(b, off, len)));
+    }
+
+    /**
+     * Write bytes between position and limit of src asynchronously. src must not be modified until the future
+     * completes.
+     *
+     * @param src the src
+     * @return the completable future, completed when bytes are written to the port
+     */
+    public CompletableFuture<Void> writeAsync(ByteBuffer src) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (!src.hasRemaining()) {
+            future.complete(null);
+            return future;
+        }
+        synchronized (multiplexer.lock) {
+            if (closed) {
+                future.completeExceptionally(new IOException("channel closed"));
+                return future;
+            }
+            queue.add(new PendingWrite(src.duplicate(), future));
+            queuedBytes += src.remaining();
+        }
+        multiplexer.dispatch();
+        return future;
+    }
+
+    /**
+     * Add listener.
+     *
+     * @param serialReadListener the serial read listener
+     * @return this channel
+     */
+    public LogicalChannel addListener(SerialReadListener serialReadListener) {
+        return addListener(serialReadListener, null);
+    }
+
+    /**
+     * Add listener called on executor.
+     *
+     * @param serialReadListener the serial read listener
+     * @param executor           the executor, null to call on the receive thread
+     * @return this channel
+     */
+    public LogicalChannel addListener(SerialReadListener serialReadListener, Executor executor) {
+        readListeners.add(serialReadListener, executor);
+        return this;
+    }
+
+    /**
+     * Remove listener.
+     *
+     * @param serialReadListener the serial read listener
+     * @return true if removed
+     */
+    public boolean removeListener(SerialReadListener serialReadListener) {
+        return readListeners.remove(serialReadListener);
+    }
+
+    /**
+     * Add buffer listener, the event is only valid during the call.
+     *
+     * @param serialBufferReadListener the serial buffer read listener
+     * @return this channel
+     */
+    public LogicalChannel addBufferListener(SerialBufferReadListener serialBufferReadListener) {
+        return addBufferListener(serialBufferReadListener, null);
+    }
+
+    /**
+     * Add buffer listener called on executor, the event holds a copy of the bytes.
+     *
+     * @param serialBufferReadListener the serial buffer read listener
+     * @param executor                 the executor, null to call on the receive thread
+     * @return this channel
+     */
+    public LogicalChannel addBufferListener(SerialBufferReadListener serialBufferReadListener, Executor executor) {
+        bufferListeners.add(serialBufferReadListener, executor);
+        return this;
+    }
+
+    /**
+     * Remove buffer listener.
+     *
+     * @param serialBufferReadListener the serial buffer read listener
+     * @return true if removed
+     */
+    public boolean removeBufferListener(SerialBufferReadListener serialBufferReadListener) {
+        return bufferListeners.remove(serialBufferReadListener);
+    }
+
+    /**
+     * Close channel, queued writes complete exceptionally and frames of the channel are dropped.
+     */
+    @Override
+    public void close() {
+        List<PendingWrite> pending;
+        synchronized (multiplexer.lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending = new ArrayList<>(queue);
+            queue.clear();
+            queuedBytes = 0;
+        }
+        multiplexer.remove(this);
+        IOException e = new IOException("channel closed");
+        for (PendingWrite write : pending) {
+            write.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Grant the receive window from the consumed offset.
+     */
+    void grant() {
+        int limit;
+        synchronized (this) {
+            granted = received;
+            limit = (received + window) & 0xffff;
+        }
+        multiplexer.sendControl(id, ChannelMultiplexer.TYPE_CREDIT, limit);
+    }
+
+    /**
+     * Credit granted by the peer, called on the receive thread.
+     *
+     * @param limit the offset limit
+     */
+    void onCredit(int limit) {
+        synchronized (multiplexer.lock) {
+            sendLimit = limit;
+            lastCreditNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Data received, called on the receive thread.
+     *
+     * @param offset  the offset of the first byte
+     * @param payload the payload between position and limit
+     */
+    void onData(int offset, ByteBuffer payload) {
+        int start = payload.position();
+        int length = payload.remaining();
+        try {
+            dispatch(payload, start, length);
+        } finally {
+            boolean grant;
+            synchronized (this) {
+                // 偏移来自发送方，丢失的帧也计入消费，信用不会因丢帧而减少
+                received = (offset + length) & 0xffff;
+                grant = ((received - granted) & 0xffff) >= Math.max(1, window / 2);
+            }
+            if (grant) {
+                grant();
+            }
+        }
+    }
+
+    private void dispatch(ByteBuffer payload, int start, int length) {
+        ListenerRegistry.dispatchBuffer(bufferListeners, bufferEvent, payload, start, length);
+        ListenerRegistry.dispatchRead(readListeners, name, payload, start, length);
+    }
+
+    /**
+     * Take up to maxPayload queued bytes the peer allows as a data frame, called holding multiplexer.lock.
+     *
+     * @param maxPayload the max payload
+     * @return the frame, null if nothing to send or no credit
+     */
+    Frame poll(int maxPayload) {
+        int length = (int) Math.min(Math.min(credit(), maxPayload), queuedBytes);
+        if (length <= 0) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(ChannelMultiplexer.HEADER_LENGTH + length
+                + ChannelMultiplexer.CRC_LENGTH);
+        buffer.put((byte) id).put((byte) ChannelMultiplexer.TYPE_DATA).putShort((short) length)
+                .putShort((short) sentOffset);
+        Frame frame = new Frame(buffer);
+        // 小的写入合并到一帧
+        int remaining = length;
+        while (remaining > 0) {
+            PendingWrite write = queue.peek();
+            int n = Math.min(remaining, write.src.remaining());
+            ByteBuffer part = write.src.duplicate();
+            part.limit(part.position() + n);
+            buffer.put(part);
+            write.src.position(write.src.position() + n);
+            remaining -= n;
+            if (!write.src.hasRemaining()) {
+                queue.poll();
+                frame.completions.add(write.future);
+            }
+        }
+        ChannelMultiplexer.putCrc(buffer);
+        buffer.flip();
+        sentOffset = (sentOffset + length) & 0xffff;
+        queuedBytes -= length;
+        return frame;
+    }
+
+    /**
+     * Is waiting for credit longer than timeout, called holding multiplexer.lock.
+     *
+     * @param now     the now
+     * @param timeout the timeout
+     * @return true if credit should be requested
+     */
+    boolean isStalled(long now, long timeout) {
+        if (closed || queuedBytes == 0 || credit() > 0 || now - lastCreditNanos < timeout) {
+            return false;
+        }
+        lastCreditNanos = now;
+        return true;
+    }
+
+    private int credit() {
+        int credit = (sendLimit - sentOffset) & 0xffff;
+        // 超过最大窗口说明上限落后于已发送的偏移
+        return credit > ChannelMultiplexer.MAX_WINDOW ? 0 : credit;
+    }
+
+    private static void await(CompletableFuture<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while writing");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LogicalChannel{" +
+                "name='" + name + '\'' +
+                ", window=" + window +
+                '}';
+    }
+
+    private static final class PendingWrite {
+
+        private final ByteBuffer src;
+
+        private final CompletableFuture<Void> future;
+
+        private PendingWrite(ByteBuffer src, CompletableFuture<Void> future) {
+            this.src = src;
+            this.future = future;
+        }
+    }
+
+    /**
+     * The type Frame, a data frame and the writes completed by it.
+     */
+    static final class Frame {
+
+        final ByteBuffer buffer;
+
+        final List<CompletableFuture<Void>> completions = new ArrayList<>(1);
+
+        Frame(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void complete(Throwable e) {
+            for (CompletableFuture<Void> future : completions) {
+                if (e == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+}
@@ -1,8 +1,18 @@
 package cn.featherfly.android.serialport.service;
 
 import cn.featherfly.android.serialport.EasySerialPort;
+import cn.featherfly.android.serialport.WritePriority;
+import cn.featherfly.android.serialport.decoder.FrameDecoder;
+import cn.featherfly.android.serialport.metrics.SerialPortMetrics;
+import cn.featherfly.android.serialport.trace.TrafficTracer;
+
+import org.reactivestreams.Publisher;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 public class EasySerialPortServiceProxy implements EasySerialPort {
 
@@ -36,6 +46,11 @@ public class EasySerialPortServiceProxy implements EasySerialPort {
         return easySerialPort.getBaudrate();
     }
 
+    @Override
+    public SerialPortMetrics getMetrics() {
+        return easySerialPort.getMetrics();
+    }
+
     @Override
     public void write(int b) throws IOException {
         easySerialPort.write(b);
@@ -51,13 +66,93 @@ public class EasySerialPortServiceProxy implements EasySerialPort {
         easySerialPort.write(b);
     }
 
+    @Override
+    public void write(ByteBuffer... parts) throws IOException {
+        easySerialPort.write(parts);
+    }
+
+    @Override
+    public CompletableFuture<Void> writeAsync(ByteBuffer src) {
+        return easySerialPort.writeAsync(src);
+    }
+
+    @Override
+    public CompletableFuture<Void> writeAsync(ByteBuffer src, WritePriority priority) {
+        return easySerialPort.writeAsync(src, priority);
+    }
+
     @Override
     public void flush() throws IOException {
         easySerialPort.flush();
     }
 
+    @Override
+    public void drain() throws IOException {
+        easySerialPort.drain();
+    }
+
+    @Override
+    public CompletableFuture<Void> drainAsync() {
+        return easySerialPort.drainAsync();
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException {
+        return easySerialPort.read(dst, timeout, unit);
+    }
+
+    @Override
+    public int readFully(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException {
+        return easySerialPort.readFully(dst, timeout, unit);
+    }
+
+    @Override
+    public int readUntil(ByteBuffer dst, byte delimiter, long timeout, TimeUnit unit) throws IOException {
+        return easySerialPort.readUntil(dst, delimiter, timeout, unit);
+    }
+
     @Override
     public EasySerialPort addListener(SerialReadListener serialReadListener) {
         return easySerialPort.addListener(serialReadListener);
     }
+
+    @Override
+    public EasySerialPort addListener(SerialReadListener serialReadListener, Executor executor) {
+        return easySerialPort.addListener(serialReadListener, executor);
+    }
+
+    @Override
+    public boolean removeListener(SerialReadListener serialReadListener) {
+        return easySerialPort.removeListener(serialReadListener);
+    }
+
+    @Override
+    public Publisher<ByteBuffer> getPublisher() {
+        return easySerialPort.getPublisher();
+    }
+
+    @Override
+    public EasySerialPort addBufferListener(SerialBufferReadListener serialBufferReadListener) {
+        return easySerialPort.addBufferListener(serialBufferReadListener);
+    }
+
+    @Override
+    public EasySerialPort addBufferListener(SerialBufferReadListener serialBufferReadListener, Executor executor) {
+        return easySerialPort.addBufferListener(serialBufferReadListener, executor);
+    }
+
+    @Override
+    public boolean removeBufferListener(SerialBufferReadListener serialBufferReadListener) {
+        return easySerialPort.removeBufferListener(serialBufferReadListener);
+    }
+
+    @Override
+    public EasySerialPort setFrameDecoder(FrameDecoder frameDecoder) {
+        return easySerialPort.setFrameDecoder(frameDecoder);
+    }
+
+    @Override
+    public EasySerialPort setTracer(TrafficTracer tracer) {
+        return easySerialPort.setTracer(tracer);
+    }
 }
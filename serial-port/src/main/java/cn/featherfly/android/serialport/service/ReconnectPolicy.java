@@ -0,0 +1,97 @@
+package cn.featherfly.android.serialport.service;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type Reconnect policy.
+ * <p>
+ * 指数退避重连: 第n次重试的延迟为initialDelay * multiplier^n，不超过maxDelay，
+ * 再乘以[1 - jitter, 1 + jitter]之间的随机数，避免多个串口同时重试.
+ */
+public class ReconnectPolicy {
+
+    /**
+     * The default policy, 1 second doubling up to 1 minute with 20% jitter, retry forever.
+     */
+    public static final ReconnectPolicy DEFAULT = new ReconnectPolicy(1, 60, TimeUnit.SECONDS, 2, 0.2, -1);
+
+    /**
+     * Never reconnect.
+     */
+    public static final ReconnectPolicy NONE = new ReconnectPolicy(0, 0, TimeUnit.SECONDS, 1, 0, 0);
+
+    private final long initialDelayNanos;
+
+    private final long maxDelayNanos;
+
+    private final double multiplier;
+
+    private final double jitter;
+
+    private final int maxAttempts;
+
+    private final Random random = new Random();
+
+    /**
+     * Instantiates a new Reconnect policy.
+     *
+     * @param initialDelay the delay of the first retry
+     * @param maxDelay     the max delay
+     * @param unit         the unit
+     * @param multiplier   the multiplier, at least 1
+     * @param jitter       the jitter, 0 - 1
+     * @param maxAttempts  the max retries, negative for unlimited
+     */
+    public ReconnectPolicy(long initialDelay, long maxDelay, TimeUnit unit, double multiplier, double jitter,
+                           int maxAttempts) {
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("multiplier must not be less than 1: " + multiplier);
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be 0 - 1: " + jitter);
+        }
+        this.initialDelayNanos = unit.toNanos(initialDelay);
+        this.maxDelayNanos = Math.max(initialDelayNanos, unit.toNanos(maxDelay));
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Should retry after the failed attempt.
+     *
+     * @param attempt the retry count already made, 0 before the first retry
+     * @return the boolean
+     */
+    public boolean shouldRetry(int attempt) {
+        return maxAttempts < 0 || attempt < maxAttempts;
+    }
+
+    /**
+     * Gets delay in nanoseconds before the retry.
+     *
+     * @param attempt the retry count already made, 0 before the first retry
+     * @return the delay nanos
+     */
+    public long getDelayNanos(int attempt) {
+        double delay = Math.min(maxDelayNanos, initialDelayNanos * Math.pow(multiplier, attempt));
+        if (jitter > 0) {
+            double factor;
+            synchronized (random) {
+                factor = 1 + (random.nextDouble() * 2 - 1) * jitter;
+            }
+            delay *= factor;
+        }
+        return (long) delay;
+    }
+
+    /**
+     * Gets max attempts.
+     *
+     * @return the max attempts
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+}
@@ -10,28 +10,50 @@ import android.util.Log;
 import cn.featherfly.android.serialport.EasySerialPort;
 import cn.featherfly.android.serialport.EasySerialPortImpl;
 import cn.featherfly.android.serialport.SerialPortDescriptor;
+import cn.featherfly.android.serialport.SerialPortFinder;
+import cn.featherfly.android.serialport.metrics.SerialPortMetrics;
 import cn.featherfly.android.service.LocalBinderService;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
  * The type Serial port service.
+ * <p>
+ * 多个串口并行打开(打开串口时的su chmod很慢)，打开失败或运行中出错的串口按{@link ReconnectPolicy}指数退避重连.
+ * 监听/dev的设备插入，等待重连的串口设备出现时立即重连.
  */
 public class SerialPortService extends LocalBinderService {
 
     private static final String TAG = "Service[SerialPortService]";
 
-    private ScheduledExecutorService executorService;
+    private ScheduledExecutorService scheduler;
 
-    private final Map<String, EasySerialPort> serialPortMap = new HashMap<>(0);
+    private ExecutorService openExecutor;
 
-    private final Map<Context, ServiceConnection> serviceConnectionMap = new HashMap<>(0);
+    private SerialPortFinder deviceFinder;
+
+    private volatile ReconnectPolicy reconnectPolicy = ReconnectPolicy.DEFAULT;
+
+    private final Map<String, PortEntry> serialPortMap = new ConcurrentHashMap<>();
+
+    private final Map<Context, ServiceConnection> serviceConnectionMap = new ConcurrentHashMap<>();
+
+    private final CopyOnWriteArrayList<PortStateListener> portStateListeners = new CopyOnWriteArrayList<>();
 
     /**
      * bind serial port service.
@@ -79,9 +101,8 @@ public class SerialPortService extends LocalBinderService {
     public static void bind(Context context, BiConsumer<SerialPortService, ComponentName> connected, Consumer<ComponentName> disconnected
             , SerialPortDescriptor... descriptors) {
         bind(context, (s, n) -> {
-            for (SerialPortDescriptor descriptor : descriptors) {
-                s.openSerialPort(descriptor);
-            }
+            // 并行打开，等待每个串口的第一次尝试完成，失败的串口在后台重连
+            s.openSerialPorts(descriptors).join();
             connected.accept(s, n);
         }, disconnected);
     }
@@ -109,38 +130,53 @@ public class SerialPortService extends LocalBinderService {
     }
 
     /**
-     * Open serial port.
+     * Open serial port in background, retry with the reconnect policy if failed.
      *
      * @param descriptor the descriptor
+     * @return the future completed when the port is opened the first time
      */
-    public void openSerialPort(SerialPortDescriptor descriptor) {
-        try {
-            if (!serialPortMap.containsKey(descriptor.getName())) {
-                EasySerialPortImpl serialPort = EasySerialPortImpl.open(descriptor);
-                serialPort.startReceive();
-                serialPortMap.put(descriptor.getName(), serialPort);
-            } else {
-                Log.i("SerialPortService", String.format("port[%s] already opened", descriptor.getName()));
-            }
-        } catch (Exception e) {
-//            Log.e(this.getClass().getSimpleName(), e.getMessage());
-//            throw new RuntimeException(e);
-            executorService.schedule(() -> {
-                openSerialPort(descriptor);
-            }, 3000, TimeUnit.SECONDS);
+    public CompletableFuture<EasySerialPort> openSerialPort(SerialPortDescriptor descriptor) {
+        return open(descriptor).opened;
+    }
+
+    /**
+     * Open serial ports in parallel.
+     *
+     * @param descriptors the descriptors
+     * @return the future completed when the first attempt of every port finished, successful or not
+     */
+    public CompletableFuture<Void> openSerialPorts(SerialPortDescriptor... descriptors) {
+        CompletableFuture<?>[] attempts = new CompletableFuture<?>[descriptors.length];
+        for (int i = 0; i < descriptors.length; i++) {
+            attempts[i] = open(descriptors[i]).firstAttempt;
         }
+        return CompletableFuture.allOf(attempts);
     }
 
     /**
-     * Close serial port.
+     * Close serial port and stop reconnecting.
      *
      * @param portName the port name
      */
     public void closeSerialPort(String portName) {
-        EasySerialPort easySerialPort = serialPortMap.get(portName);
-        if (easySerialPort != null) {
-            easySerialPort.close();
-            serialPortMap.remove(portName);
+        PortEntry entry = serialPortMap.remove(portName);
+        if (entry == null) {
+            return;
+        }
+        EasySerialPortImpl port;
+        synchronized (entry) {
+            entry.closed = true;
+            if (entry.retry != null) {
+                entry.retry.cancel(false);
+            }
+            port = entry.port;
+            entry.port = null;
+        }
+        entry.firstAttempt.complete(null);
+        entry.opened.completeExceptionally(new IOException("port closed"));
+        if (port != null) {
+            port.close();
+            firePortDown(portName, null);
         }
     }
 
@@ -148,21 +184,202 @@ public class SerialPortService extends LocalBinderService {
      * Gets serial port.
      *
      * @param portName the port name
-     * @return the serial port
+     * @return the serial port, null if not opened or reconnecting
      */
     public EasySerialPort getSerialPort(String portName) {
-        EasySerialPort easySerialPort = serialPortMap.get(portName);
-        if (easySerialPort != null) {
-            return new EasySerialPortServiceProxy(this, easySerialPort);
+        PortEntry entry = serialPortMap.get(portName);
+        EasySerialPortImpl port = entry != null ? entry.port : null;
+        if (port != null) {
+            return new EasySerialPortServiceProxy(this, port);
         } else {
             return null;
         }
     }
 
+    /**
+     * Sets reconnect policy, applied to the next retry.
+     *
+     * @param reconnectPolicy the reconnect policy
+     */
+    public void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+        this.reconnectPolicy = reconnectPolicy != null ? reconnectPolicy : ReconnectPolicy.NONE;
+    }
+
+    /**
+     * Gets reconnect policy.
+     *
+     * @return the reconnect policy
+     */
+    public ReconnectPolicy getReconnectPolicy() {
+        return reconnectPolicy;
+    }
+
+    /**
+     * Add port state listener.
+     *
+     * @param listener the listener
+     */
+    public void addPortStateListener(PortStateListener listener) {
+        portStateListeners.add(listener);
+    }
+
+    /**
+     * Remove port state listener.
+     *
+     * @param listener the listener
+     * @return true if removed
+     */
+    public boolean removePortStateListener(PortStateListener listener) {
+        return portStateListeners.remove(listener);
+    }
+
+    private PortEntry open(SerialPortDescriptor descriptor) {
+        PortEntry entry = new PortEntry(descriptor);
+        PortEntry existing = serialPortMap.putIfAbsent(descriptor.getName(), entry);
+        if (existing != null) {
+            Log.i(TAG, String.format("port[%s] already opened", descriptor.getName()));
+            return existing;
+        }
+        openExecutor.execute(() -> connect(entry));
+        return entry;
+    }
+
+    private void connect(PortEntry entry) {
+        String name = entry.descriptor.getName();
+        EasySerialPortImpl port = null;
+        try {
+            port = EasySerialPortImpl.open(entry.descriptor);
+            EasySerialPortImpl opened = port;
+            port.setReceiveErrorListener(e -> onReceiveError(entry, opened, e));
+            port.startReceive();
+        } catch (Exception e) {
+            Log.e(TAG, String.format("open port[%s] failed: %s", name, e.getMessage()));
+            if (port != null) {
+                port.close();
+            }
+            scheduleReconnect(entry, e);
+            entry.firstAttempt.complete(null);
+            return;
+        }
+        synchronized (entry) {
+            if (entry.closed) {
+                port.close();
+                return;
+            }
+            entry.port = port;
+            entry.attempt = 0;
+            entry.retry = null;
+        }
+        entry.firstAttempt.complete(null);
+        entry.opened.complete(port);
+        EasySerialPort proxy = new EasySerialPortServiceProxy(this, port);
+        for (PortStateListener listener : portStateListeners) {
+            listener.onPortUp(name, proxy);
+        }
+    }
+
+    private void onReceiveError(PortEntry entry, EasySerialPortImpl port, IOException e) {
+        synchronized (entry) {
+            if (entry.port != port) {
+                return;
+            }
+            entry.port = null;
+        }
+        // 在reactor线程上回调，关闭和重连都交给其它线程
+        openExecutor.execute(port::close);
+        firePortDown(entry.descriptor.getName(), e);
+        scheduleReconnect(entry, e);
+    }
+
+    private void scheduleReconnect(PortEntry entry, Exception cause) {
+        ReconnectPolicy policy = reconnectPolicy;
+        synchronized (entry) {
+            if (entry.closed) {
+                return;
+            }
+            if (!policy.shouldRetry(entry.attempt)) {
+                Log.e(TAG, String.format("port[%s] give up after %d retries", entry.descriptor.getName(),
+                        entry.attempt));
+                serialPortMap.remove(entry.descriptor.getName(), entry);
+                entry.opened.completeExceptionally(cause);
+                return;
+            }
+            long delay = policy.getDelayNanos(entry.attempt++);
+            entry.retry = scheduler.schedule(() -> openExecutor.execute(() -> connect(entry)), delay,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void reconnectNow(PortEntry entry) {
+        synchronized (entry) {
+            // 只提前等待中的重连，正在打开或已打开的不处理
+            if (entry.closed || entry.retry == null || !entry.retry.cancel(false)) {
+                return;
+            }
+            entry.retry = null;
+        }
+        Log.i(TAG, String.format("device of port[%s] added, reconnect now", entry.descriptor.getName()));
+        openExecutor.execute(() -> connect(entry));
+    }
+
+    private void firePortDown(String portName, Exception cause) {
+        for (PortStateListener listener : portStateListeners) {
+            listener.onPortDown(portName, cause);
+        }
+    }
+
+    /**
+     * Gets metrics snapshots of opened serial ports.
+     *
+     * @return the metrics snapshots keyed by port name
+     */
+    public Map<String, SerialPortMetrics.Snapshot> getMetrics() {
+        Map<String, SerialPortMetrics.Snapshot> snapshots = new HashMap<>();
+        for (Map.Entry<String, PortEntry> entry : serialPortMap.entrySet()) {
+            EasySerialPortImpl port = entry.getValue().port;
+            if (port != null) {
+                snapshots.put(entry.getKey(), port.getMetrics().snapshot());
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Gets metrics aggregated over all opened serial ports.
+     *
+     * @return the aggregated metrics snapshot, null if no port opened
+     */
+    public SerialPortMetrics.Snapshot getAggregatedMetrics() {
+        SerialPortMetrics.Snapshot aggregated = null;
+        for (SerialPortMetrics.Snapshot snapshot : getMetrics().values()) {
+            aggregated = aggregated == null ? snapshot : aggregated.merge("all", snapshot);
+        }
+        return aggregated;
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
-        executorService = Executors.newSingleThreadScheduledExecutor();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("serial-port-reconnect"));
+        openExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("serial-port-open"));
+        deviceFinder = new SerialPortFinder();
+        deviceFinder.addDeviceListener(new SerialPortFinder.DeviceListener() {
+            @Override
+            public void onDeviceAdded(File device, String driverName) {
+                PortEntry entry = serialPortMap.get(device.getAbsolutePath());
+                if (entry != null) {
+                    reconnectNow(entry);
+                }
+            }
+
+            @Override
+            public void onDeviceRemoved(File device, String driverName) {
+                // 设备拔出时接收出错，由onReceiveError安排重连
+            }
+        });
+        deviceFinder.startWatching();
+        // 扫描一次之后的变化才会通知，扫描读取/proc和/dev，不在主线程上执行
+        openExecutor.execute(deviceFinder::getAllDevicesPath);
     }
 
     @Override
@@ -179,6 +396,71 @@ public class SerialPortService extends LocalBinderService {
     public void onDestroy() {
         super.onDestroy();
         serviceConnectionMap.clear();
-        serialPortMap.clear();
+        deviceFinder.stopWatching();
+        for (String portName : serialPortMap.keySet()) {
+            closeSerialPort(portName);
+        }
+        scheduler.shutdownNow();
+        openExecutor.shutdown();
+    }
+
+    /**
+     * The interface Port state listener.
+     */
+    public interface PortStateListener {
+        /**
+         * Called when port opened or reconnected.
+         *
+         * @param portName the port name
+         * @param port     the port
+         */
+        void onPortUp(String portName, EasySerialPort port);
+
+        /**
+         * Called when an opened port stopped.
+         *
+         * @param portName the port name
+         * @param cause    the cause, null if closed by {@link #closeSerialPort(String)}
+         */
+        void onPortDown(String portName, Exception cause);
+    }
+
+    private static final class PortEntry {
+
+        private final SerialPortDescriptor descriptor;
+
+        private final CompletableFuture<EasySerialPort> opened = new CompletableFuture<>();
+
+        private final CompletableFuture<Void> firstAttempt = new CompletableFuture<>();
+
+        private volatile EasySerialPortImpl port;
+
+        private int attempt;
+
+        private ScheduledFuture<?> retry;
+
+        private boolean closed;
+
+        private PortEntry(SerialPortDescriptor descriptor) {
+            this.descriptor = descriptor;
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+
+        private final String name;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 }
@@ -0,0 +1,163 @@
+package cn.featherfly.android.serialport.trace;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The type Flight recorder.
+ * <p>
+ * 在固定大小的环形缓冲区中保留最近的收发数据，出错时输出，平时只有一次内存拷贝.
+ * 每条记录为: 方向(1字节) + 时间(8字节) + 长度(4字节) + 数据，空间不足时覆盖最旧的记录.
+ */
+public class FlightRecorder implements TraceSink {
+
+    private static final String TAG = "FlightRecorder";
+
+    private static final int HEADER_LENGTH = 13;
+
+    private final byte[] ring;
+
+    private final boolean dumpOnError;
+
+    private long head;
+
+    private long tail;
+
+    /**
+     * Instantiates a new Flight recorder dumping to log on error.
+     *
+     * @param capacity the capacity in bytes
+     */
+    public FlightRecorder(int capacity) {
+        this(capacity, true);
+    }
+
+    /**
+     * Instantiates a new Flight recorder.
+     *
+     * @param capacity    the capacity in bytes
+     * @param dumpOnError dump to log on error or not
+     */
+    public FlightRecorder(int capacity, boolean dumpOnError) {
+        if (capacity <= HEADER_LENGTH) {
+            throw new IllegalArgumentException("capacity must be greater than " + HEADER_LENGTH);
+        }
+        this.ring = new byte[capacity];
+        this.dumpOnError = dumpOnError;
+    }
+
+    @Override
+    public synchronized void trace(String port, Direction direction, ByteBuffer data, int length) {
+        int recorded = data == null ? 0 : Math.min(length, ring.length - HEADER_LENGTH);
+        int recordLength = HEADER_LENGTH + recorded;
+        while (ring.length - (tail - head) < recordLength) {
+            head += HEADER_LENGTH + readInt(head + 9);
+        }
+        put(tail, (byte) direction.ordinal());
+        putLong(tail + 1, System.currentTimeMillis());
+        putInt(tail + 9, recorded);
+        long position = tail + HEADER_LENGTH;
+        if (data != null) {
+            // 只保留超长数据的末尾
+            for (int i = data.limit() - recorded; i < data.limit(); i++) {
+                put(position++, data.get(i));
+            }
+        }
+        tail += recordLength;
+    }
+
+    @Override
+    public void onError(String port, Exception e) {
+        if (dumpOnError) {
+            dump(port);
+        }
+    }
+
+    /**
+     * Dump recorded traffic to log.
+     *
+     * @param port the port
+     */
+    public void dump(String port) {
+        StringBuilder sb = new StringBuilder();
+        dump(sb);
+        Log.e(TAG, "port " + port + " recent traffic:\n" + sb);
+    }
+
+    /**
+     * Dump recorded traffic, one record per line.
+     *
+     * @param sb the string builder
+     * @return the string builder
+     */
+    public synchronized StringBuilder dump(StringBuilder sb) {
+        long position = head;
+        while (position < tail) {
+            Direction direction = Direction.values()[ring[index(position)]];
+            long time = readLong(position + 1);
+            int length = readInt(position + 9);
+            sb.append(time).append(' ').append(direction).append(' ');
+            position += HEADER_LENGTH;
+            int index = index(position);
+            int first = Math.min(length, ring.length - index);
+            HexEncoder.append(ring, index, first, sb);
+            HexEncoder.append(ring, 0, length - first, sb);
+            sb.append('\n');
+            position += length;
+        }
+        return sb;
+    }
+
+    /**
+     * Clear recorded traffic.
+     */
+    public synchronized void clear() {
+        head = tail = 0;
+    }
+
+    /**
+     * Gets recorded bytes include record headers.
+     *
+     * @return the size
+     */
+    public synchronized int size() {
+        return (int) (tail - head);
+    }
+
+    private int index(long position) {
+        return (int) (position % ring.length);
+    }
+
+    private void put(long position, byte b) {
+        ring[index(position)] = b;
+    }
+
+    private void putInt(long position, int value) {
+        for (int i = 3; i >= 0; i--) {
+            put(position++, (byte) (value >>> (i * 8)));
+        }
+    }
+
+    private void putLong(long position, long value) {
+        for (int i = 7; i >= 0; i--) {
+            put(position++, (byte) (value >>> (i * 8)));
+        }
+    }
+
+    private int readInt(long position) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (ring[index(position++)] & 0xff);
+        }
+        return value;
+    }
+
+    private long readLong(long position) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (ring[index(position++)] & 0xff);
+        }
+        return value;
+    }
+}
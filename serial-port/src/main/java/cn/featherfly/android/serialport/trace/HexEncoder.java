@@ -0,0 +1,89 @@
+package cn.featherfly.android.serialport.trace;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The type Hex encoder.
+ * <p>
+ * 查表方式的十六进制编码，不创建中间字符串.
+ */
+public final class HexEncoder {
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final char[] TABLE = new char[512];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            TABLE[i << 1] = DIGITS[i >>> 4];
+            TABLE[(i << 1) + 1] = DIGITS[i & 0xf];
+        }
+    }
+
+    private HexEncoder() {
+    }
+
+    /**
+     * Append bytes between position and limit of data as hex separated by space, position of data is not changed.
+     *
+     * @param data the data
+     * @param sb   the string builder
+     * @return the string builder
+     */
+    public static StringBuilder append(ByteBuffer data, StringBuilder sb) {
+        int limit = data.limit();
+        for (int i = data.position(); i < limit; i++) {
+            int b = data.get(i) & 0xff;
+            sb.append(TABLE[b << 1]).append(TABLE[(b << 1) + 1]).append(' ');
+        }
+        return sb;
+    }
+
+    /**
+     * Append bytes as hex separated by space.
+     *
+     * @param bytes  the bytes
+     * @param offset the offset
+     * @param length the length
+     * @param sb     the string builder
+     * @return the string builder
+     */
+    public static StringBuilder append(byte[] bytes, int offset, int length, StringBuilder sb) {
+        for (int i = offset; i < offset + length; i++) {
+            int b = bytes[i] & 0xff;
+            sb.append(TABLE[b << 1]).append(TABLE[(b << 1) + 1]).append(' ');
+        }
+        return sb;
+    }
+
+    /**
+     * Encode bytes into dst without separator.
+     *
+     * @param bytes  the bytes
+     * @param offset the offset
+     * @param length the length
+     * @param dst    the dst, at least length * 2 from dstOffset
+     * @param dstOffset the dst offset
+     * @return the chars written
+     */
+    public static int encode(byte[] bytes, int offset, int length, char[] dst, int dstOffset) {
+        for (int i = 0; i < length; i++) {
+            int b = bytes[offset + i] & 0xff;
+            dst[dstOffset++] = TABLE[b << 1];
+            dst[dstOffset++] = TABLE[(b << 1) + 1];
+        }
+        return length << 1;
+    }
+
+    /**
+     * To hex string.
+     *
+     * @param bytes  the bytes
+     * @param offset the offset
+     * @param length the length
+     * @return the hex string
+     */
+    public static String toHexString(byte[] bytes, int offset, int length) {
+        return append(bytes, offset, length, new StringBuilder(length * 3)).toString();
+    }
+}
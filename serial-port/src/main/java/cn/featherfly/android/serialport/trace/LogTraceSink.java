@@ -0,0 +1,32 @@
+package cn.featherfly.android.serialport.trace;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The type Log trace sink.
+ */
+public class LogTraceSink implements TraceSink {
+
+    private static final String TAG_FORMAT = "SerialPort[%s]";
+
+    private final StringBuilder sb = new StringBuilder(256);
+
+    @Override
+    public synchronized void trace(String port, Direction direction, ByteBuffer data, int length) {
+        sb.setLength(0);
+        sb.append(direction == Direction.RX ? "read -> " : "write -> ");
+        if (data != null) {
+            HexEncoder.append(data, sb);
+        } else {
+            sb.append(length).append(" bytes");
+        }
+        Log.i(String.format(TAG_FORMAT, port), sb.toString());
+    }
+
+    @Override
+    public void onError(String port, Exception e) {
+        Log.e(String.format(TAG_FORMAT, port), e.getMessage(), e);
+    }
+}
@@ -0,0 +1,42 @@
+package cn.featherfly.android.serialport.trace;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The interface Trace sink.
+ */
+public interface TraceSink {
+
+    /**
+     * The enum Direction.
+     */
+    enum Direction {
+        /**
+         * Received.
+         */
+        RX,
+        /**
+         * Transmitted.
+         */
+        TX
+    }
+
+    /**
+     * Trace traffic.
+     *
+     * @param port      the port
+     * @param direction the direction
+     * @param data      the bytes between position and limit, null when only length is traced. only valid during the call
+     * @param length    the length
+     */
+    void trace(String port, Direction direction, ByteBuffer data, int length);
+
+    /**
+     * Called when port read or write failed.
+     *
+     * @param port the port
+     * @param e    the exception
+     */
+    default void onError(String port, Exception e) {
+    }
+}
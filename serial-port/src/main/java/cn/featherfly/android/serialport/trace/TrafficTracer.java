@@ -0,0 +1,159 @@
+package cn.featherfly.android.serialport.trace;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The type Traffic tracer.
+ * <p>
+ * 按级别和采样率把串口收发数据转给{@link TraceSink}. 串口默认没有tracer，收发路径上只有一次null判断.
+ */
+public class TrafficTracer {
+
+    /**
+     * The enum Level.
+     */
+    public enum Level {
+        /**
+         * 不记录.
+         */
+        OFF,
+        /**
+         * 只记录长度.
+         */
+        LENGTH,
+        /**
+         * 记录数据.
+         */
+        DATA
+    }
+
+    private final TraceSink sink;
+
+    private final Level level;
+
+    private final int sampleEvery;
+
+    private final AtomicLong counter = new AtomicLong();
+
+    /**
+     * Instantiates a new Traffic tracer trace every frame.
+     *
+     * @param sink  the sink
+     * @param level the level
+     */
+    public TrafficTracer(TraceSink sink, Level level) {
+        this(sink, level, 1);
+    }
+
+    /**
+     * Instantiates a new Traffic tracer.
+     *
+     * @param sink        the sink
+     * @param level       the level
+     * @param sampleEvery trace 1 in sampleEvery frames
+     */
+    public TrafficTracer(TraceSink sink, Level level, int sampleEvery) {
+        if (sampleEvery <= 0) {
+            throw new IllegalArgumentException("sampleEvery must be positive");
+        }
+        this.sink = sink;
+        this.level = level;
+        this.sampleEvery = sampleEvery;
+    }
+
+    /**
+     * Trace.
+     *
+     * @param port      the port
+     * @param direction the direction
+     * @param data      the bytes between position and limit
+     */
+    public void trace(String port, TraceSink.Direction direction, ByteBuffer data) {
+        if (!sample()) {
+            return;
+        }
+        int position = data.position();
+        int limit = data.limit();
+        try {
+            sink.trace(port, direction, level == Level.DATA ? data : null, limit - position);
+        } finally {
+            data.limit(limit).position(position);
+        }
+    }
+
+    /**
+     * Trace.
+     *
+     * @param port      the port
+     * @param direction the direction
+     * @param b         the b
+     * @param off       the off
+     * @param len       the len
+     */
+    public void trace(String port, TraceSink.Direction direction, byte[] b, int off, int len) {
+        if (!sample()) {
+            return;
+        }
+        // 采样命中才包装数组
+        sink.trace(port, direction, level == Level.DATA ? ByteBuffer.wrap(b, off, len) : null, len);
+    }
+
+    /**
+     * Trace a single byte, the byte is put in scratch only when it is sampled.
+     *
+     * @param port      the port
+     * @param direction the direction
+     * @param b         the b
+     * @param scratch   the scratch buffer of the port, capacity at least 1
+     */
+    public void trace(String port, TraceSink.Direction direction, int b, ByteBuffer scratch) {
+        if (!sample()) {
+            return;
+        }
+        if (level != Level.DATA) {
+            sink.trace(port, direction, null, 1);
+            return;
+        }
+        synchronized (scratch) {
+            scratch.clear();
+            scratch.put((byte) b).flip();
+            sink.trace(port, direction, scratch, 1);
+        }
+    }
+
+    private boolean sample() {
+        if (level == Level.OFF) {
+            return false;
+        }
+        return sampleEvery == 1 || counter.getAndIncrement() % sampleEvery == 0;
+    }
+
+    /**
+     * On error.
+     *
+     * @param port the port
+     * @param e    the e
+     */
+    public void onError(String port, Exception e) {
+        sink.onError(port, e);
+    }
+
+    /**
+     * Gets sink.
+     *
+     * @return the sink
+     */
+    public TraceSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Gets level.
+     *
+     * @return the level
+     */
+    public Level getLevel() {
+        return level;
+    }
+}
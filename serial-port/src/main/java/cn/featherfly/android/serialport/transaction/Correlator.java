@@ -0,0 +1,50 @@
+package cn.featherfly.android.serialport.transaction;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The interface Correlator.
+ * <p>
+ * 从请求和响应帧中取出关联键(如序列号)，键相同的请求和响应配对. 返回null表示按顺序关联:
+ * 响应交给最早发出且{@link ResponseMatcher}匹配的请求.
+ */
+public interface Correlator {
+
+    /**
+     * Correlate responses in request order.
+     */
+    Correlator ORDERED = frame -> null;
+
+    /**
+     * Gets correlation key of a request or response frame, the frame is between position and limit and must
+     * not be modified.
+     *
+     * @param frame the frame
+     * @return the key, null when correlated by order
+     */
+    Object key(ByteBuffer frame);
+
+    /**
+     * Correlate by an unsigned big endian sequence id field at the same offset of request and response.
+     *
+     * @param offset the offset of the field from frame start
+     * @param length the length of the field, 1 - 4
+     * @return the correlator
+     */
+    static Correlator sequenceId(int offset, int length) {
+        if (length < 1 || length > 4) {
+            throw new IllegalArgumentException("length must be 1 - 4: " + length);
+        }
+        return frame -> {
+            if (frame.remaining() < offset + length) {
+                return null;
+            }
+            int position = frame.position() + offset;
+            int id = 0;
+            for (int i = 0; i < length; i++) {
+                id = id << 8 | frame.get(position + i) & 0xff;
+            }
+            return id;
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package cn.featherfly.android.serialport.transaction;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The interface Response matcher.
+ * <p>
+ * 判断收到的帧是否是某个请求的响应.
+ */
+public interface ResponseMatcher {
+
+    /**
+     * Matches every frame.
+     */
+    ResponseMatcher ANY = frame -> true;
+
+    /**
+     * Matches boolean, the frame is between position and limit and must not be modified.
+     *
+     * @param frame the frame
+     * @return the boolean
+     */
+    boolean matches(ByteBuffer frame);
+
+    /**
+     * Matches frames starting with the prefix.
+     *
+     * @param prefix the prefix
+     * @return the response matcher
+     */
+    static ResponseMatcher prefix(byte... prefix) {
+        byte[] p = prefix.clone();
+        return frame -> {
+            if (frame.remaining() < p.length) {
+                return false;
+            }
+            int position = frame.position();
+            for (int i = 0; i < p.length; i++) {
+                if (frame.get(position + i) != p[i]) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+}
@@ -0,0 +1,352 @@
+package cn.featherfly.android.serialport.transaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import cn.featherfly.android.serialport.EasySerialPort;
+import cn.featherfly.android.serialport.EasySerialPort.SerialBufferReadListener;
+import cn.featherfly.android.serialport.EasySerialPort.SerialPortBufferEvent;
+
+/**
+ * The type Transaction manager.
+ * <p>
+ * 在{@link EasySerialPort}上实现请求/响应事务. 请求通过{@link EasySerialPort#writeAsync(ByteBuffer)}发送，
+ * 最多maxInFlight个请求同时等待响应，超出的请求排队，有响应或超时后按提交顺序依次发出.
+ * 响应按{@link Correlator}关联，maxInFlight为1时就是一问一答.
+ * <p>
+ * 端口需要设置{@link cn.featherfly.android.serialport.decoder.FrameDecoder}，每次回调必须是一个完整的帧.
+ * 返回的future在接收线程中完成，耗时的后续处理请使用*Async方法.
+ */
+public class TransactionManager implements Closeable {
+
+    private static final ScheduledExecutorService TIMER;
+
+    static {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "serial-port-transaction-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        TIMER = timer;
+    }
+
+    private final EasySerialPort port;
+
+    private final Correlator correlator;
+
+    private final int maxInFlight;
+
+    private final Object lock = new Object();
+
+    private final ArrayDeque<Transaction> waiting = new ArrayDeque<>();
+
+    private final List<Transaction> inFlight = new ArrayList<>();
+
+    private final Map<Object, Transaction> inFlightByKey = new HashMap<>();
+
+    private final SerialBufferReadListener frameListener = this::onFrame;
+
+    private volatile SerialBufferReadListener unmatchedListener;
+
+    private volatile boolean closed;
+
+    /**
+     * Instantiates a new stop-and-wait Transaction manager.
+     *
+     * @param port the port
+     */
+    public TransactionManager(EasySerialPort port) {
+        this(port, Correlator.ORDERED, 1);
+    }
+
+    /**
+     * Instantiates a new Transaction manager.
+     *
+     * @param port        the port
+     * @param correlator  the correlator
+     * @param maxInFlight the max requests waiting for response at the same time
+     */
+    public TransactionManager(EasySerialPort port, Correlator correlator, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.port = port;
+        this.correlator = correlator != null ? correlator : Correlator.ORDERED;
+        this.maxInFlight = maxInFlight;
+        port.addBufferListener(frameListener);
+    }
+
+    /**
+     * Send request, the first frame received after it is the response.
+     *
+     * @param request the request
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return the future of response frame
+     */
+    public CompletableFuture<ByteBuffer> request(byte[] request, long timeout, TimeUnit unit) {
+        return request(ByteBuffer.wrap(request), ResponseMatcher.ANY, timeout, unit);
+    }
+
+    /**
+     * Send request.
+     *
+     * @param request the request
+     * @param matcher the response matcher
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return the future of response frame
+     */
+    public CompletableFuture<ByteBuffer> request(byte[] request, ResponseMatcher matcher, long timeout, TimeUnit unit) {
+        return request(ByteBuffer.wrap(request), matcher, timeout, unit);
+    }
+
+    /**
+     * Send request, bytes between position and limit are sent, the buffer must not be modified until the
+     * future completes. The timeout starts when the request has been written to the port.
+     *
+     * @param request the request
+     * @param matcher the response matcher
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return the future of response frame, a copy owned by the caller
+     */
+    public CompletableFuture<ByteBuffer> request(ByteBuffer request, ResponseMatcher matcher, long timeout,
+                                                 TimeUnit unit) {
+        Transaction transaction = new Transaction(request, matcher != null ? matcher : ResponseMatcher.ANY,
+                correlator.key(request.duplicate()), unit.toNanos(timeout));
+        synchronized (lock) {
+            if (closed) {
+                transaction.future.completeExceptionally(new IOException("transaction manager closed"));
+                return transaction.future;
+            }
+            waiting.add(transaction);
+            admit();
+        }
+        transaction.future.whenComplete((response, e) -> {
+            if (transaction.future.isCancelled()) {
+                abandon(transaction);
+            }
+        });
+        return transaction.future;
+    }
+
+    /**
+     * Sets listener of frames which are not response of any request.
+     *
+     * @param unmatchedListener the unmatched listener
+     * @return the transaction manager
+     */
+    public TransactionManager setUnmatchedListener(SerialBufferReadListener unmatchedListener) {
+        this.unmatchedListener = unmatchedListener;
+        return this;
+    }
+
+    /**
+     * Gets count of requests waiting for response.
+     *
+     * @return the in flight count
+     */
+    public int getInFlightCount() {
+        synchronized (lock) {
+            return inFlight.size();
+        }
+    }
+
+    /**
+     * Gets count of requests not sent yet.
+     *
+     * @return the waiting count
+     */
+    public int getWaitingCount() {
+        synchronized (lock) {
+            return waiting.size();
+        }
+    }
+
+    /**
+     * Gets max in flight.
+     *
+     * @return the max in flight
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Fail all pending requests and stop listening to the port.
+     */
+    @Override
+    public void close() {
+        List<Transaction> pending;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending = new ArrayList<>(inFlight);
+            pending.addAll(waiting);
+            inFlight.clear();
+            inFlightByKey.clear();
+            waiting.clear();
+        }
+        port.removeBufferListener(frameListener);
+        IOException e = new IOException("transaction manager closed");
+        for (Transaction transaction : pending) {
+            transaction.cancelTimer();
+            transaction.future.completeExceptionally(e);
+        }
+    }
+
+    private void admit() {
+        // 持有锁发送，保证写出顺序与inFlight顺序一致
+        while (!waiting.isEmpty() && inFlight.size() < maxInFlight) {
+            Transaction transaction = waiting.peek();
+            if (transaction.key != null && inFlightByKey.containsKey(transaction.key)) {
+                // 相同序列号的请求还在等待响应
+                return;
+            }
+            waiting.poll();
+            inFlight.add(transaction);
+            if (transaction.key != null) {
+                inFlightByKey.put(transaction.key, transaction);
+            }
+            // 失败处理和超时计时放到定时线程，避免在持有锁时重入
+            port.writeAsync(transaction.request).whenCompleteAsync((v, e) -> {
+                if (e != null) {
+                    fail(transaction, e);
+                } else {
+                    startTimer(transaction);
+                }
+            }, TIMER);
+        }
+    }
+
+    /**
+     * 请求写出后开始计时，写入队列中排队和在线路上发送的时间不计入超时
+     */
+    private void startTimer(Transaction transaction) {
+        synchronized (lock) {
+            // 写完成前已经收到响应、被取消或关闭
+            if (!inFlight.contains(transaction)) {
+                return;
+            }
+            transaction.timer = TIMER.schedule(() -> fail(transaction, new TimeoutException(
+                    "no response in " + TimeUnit.NANOSECONDS.toMillis(transaction.timeoutNanos) + "ms")),
+                    transaction.timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void onFrame(SerialPortBufferEvent event) {
+        if (closed) {
+            return;
+        }
+        ByteBuffer frame = event.getBuffer();
+        Transaction matched = null;
+        synchronized (lock) {
+            Object key = correlator.key(frame);
+            if (key != null) {
+                Transaction transaction = inFlightByKey.get(key);
+                if (transaction != null && transaction.matcher.matches(frame)) {
+                    matched = transaction;
+                }
+            } else {
+                for (Transaction transaction : inFlight) {
+                    if (transaction.matcher.matches(frame)) {
+                        matched = transaction;
+                        break;
+                    }
+                }
+            }
+            if (matched != null) {
+                remove(matched);
+                admit();
+            }
+        }
+        if (matched != null) {
+            ByteBuffer response = ByteBuffer.allocate(frame.remaining());
+            response.put(frame.duplicate()).flip();
+            matched.future.complete(response);
+        } else {
+            SerialBufferReadListener listener = unmatchedListener;
+            if (listener != null) {
+                listener.onReadComplete(event);
+            }
+        }
+    }
+
+    private void fail(Transaction transaction, Throwable e) {
+        synchronized (lock) {
+            if (!remove(transaction)) {
+                return;
+            }
+            admit();
+        }
+        transaction.future.completeExceptionally(e);
+    }
+
+    private void abandon(Transaction transaction) {
+        synchronized (lock) {
+            if (!waiting.remove(transaction) && remove(transaction)) {
+                admit();
+            }
+        }
+    }
+
+    private boolean remove(Transaction transaction) {
+        Iterator<Transaction> iterator = inFlight.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == transaction) {
+                iterator.remove();
+                if (transaction.key != null) {
+                    inFlightByKey.remove(transaction.key);
+                }
+                transaction.cancelTimer();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Transaction {
+
+        private final ByteBuffer request;
+
+        private final ResponseMatcher matcher;
+
+        private final Object key;
+
+        private final long timeoutNanos;
+
+        private final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+
+        private ScheduledFuture<?> timer;
+
+        private Transaction(ByteBuffer request, ResponseMatcher matcher, Object key, long timeoutNanos) {
+            this.request = request;
+            this.matcher = matcher;
+            this.key = key;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        private void cancelTimer() {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+    }
+}
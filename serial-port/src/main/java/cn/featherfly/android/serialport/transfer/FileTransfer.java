@@ -0,0 +1,536 @@
+package cn.featherfly.android.serialport.transfer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import cn.featherfly.android.serialport.EasySerialPort;
+import cn.featherfly.android.serialport.checksum.Crc16Ccitt;
+
+/**
+ * The type File transfer.
+ * <p>
+ * 在{@link EasySerialPort}上发送文件，支持XMODEM-1K、YMODEM批量传输和窗口化的原始块传输.
+ * 文件按段内存映射，每个块的帧头、文件数据和CRC用一次{@link EasySerialPort#write(ByteBuffer...)}聚集写出，
+ * 文件数据不复制到Java堆.
+ * <p>
+ * XMODEM/YMODEM只支持CRC模式，接收方发送'C'开始传输，每块等待ACK，NAK或超时重发.
+ * <p>
+ * 窗口模式面向能一次确认多个块的设备，最多windowSize个块未确认，回退N重传. 帧格式:
+ * <pre>
+ * SOH seq(2) length(2) data(length) crc(2)
+ * </pre>
+ * seq是块序号的低16位，length是数据长度，crc是seq、length和data的CRC-16/XMODEM，多字节字段为大端.
+ * 接收方就绪时发送'C'，确认为ACK seq(2)，表示seq及之前的块都已收到；NAK seq(2)表示从seq开始重发.
+ * 所有块确认后发送EOT，接收方回复ACK.
+ * <p>
+ * 传输使用同步读取接收应答，传输期间端口不能通过监听器接收，也不能设置帧解码器. 传输方法阻塞到传输结束.
+ */
+public class FileTransfer {
+
+    /**
+     * Start of 128 byte block.
+     */
+    public static final int SOH = 0x01;
+    /**
+     * Start of 1024 byte block.
+     */
+    public static final int STX = 0x02;
+    /**
+     * End of transmission.
+     */
+    public static final int EOT = 0x04;
+    /**
+     * Acknowledge.
+     */
+    public static final int ACK = 0x06;
+    /**
+     * Negative acknowledge.
+     */
+    public static final int NAK = 0x15;
+    /**
+     * Cancel.
+     */
+    public static final int CAN = 0x18;
+    /**
+     * Receiver ready in crc mode.
+     */
+    public static final int CRC_REQUEST = 'C';
+
+    /**
+     * The default timeout of a response in milliseconds.
+     */
+    public static final long DEFAULT_TIMEOUT = 10000;
+
+    /**
+     * The default timeout waiting for the receiver to start in milliseconds.
+     */
+    public static final long DEFAULT_START_TIMEOUT = 60000;
+
+    /**
+     * The default max retries of a block.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 10;
+
+    /**
+     * The default window size of windowed transfer.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 8;
+
+    /**
+     * The default block size of windowed transfer.
+     */
+    public static final int DEFAULT_WINDOW_BLOCK_SIZE = 1024;
+
+    /**
+     * The max window size, the 16 bit sequence of a block in the window is not ambiguous.
+     */
+    public static final int MAX_WINDOW_SIZE = 0x7fff;
+
+    private static final int BLOCK_SIZE = 128;
+
+    private static final int BLOCK_SIZE_1K = 1024;
+
+    private static final int CPMEOF = 0x1a;
+
+    private static final int CANCEL_COUNT = 5;
+
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final ByteBuffer PADDING;
+
+    static {
+        byte[] padding = new byte[BLOCK_SIZE_1K];
+        Arrays.fill(padding, (byte) CPMEOF);
+        PADDING = ByteBuffer.wrap(padding).asReadOnlyBuffer();
+    }
+
+    private final EasySerialPort port;
+
+    private final ByteBuffer header = ByteBuffer.allocate(5);
+
+    private final ByteBuffer crc = ByteBuffer.allocate(2);
+
+    private final ByteBuffer response = ByteBuffer.allocate(64);
+
+    private long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIMEOUT);
+
+    private long startTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_START_TIMEOUT);
+
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    private TransferListener listener;
+
+    private volatile boolean cancelled;
+
+    // 当前传输的统计
+
+    private String fileName;
+
+    private long transferred;
+
+    private long total;
+
+    private long lineBytes;
+
+    private int retransmits;
+
+    private long startNanos;
+
+    /**
+     * Instantiates a new File transfer.
+     *
+     * @param port the port
+     */
+    public FileTransfer(EasySerialPort port) {
+        this.port = port;
+    }
+
+    /**
+     * Set timeout of a response, a block is sent again if not acknowledged in time.
+     *
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return this file transfer
+     */
+    public FileTransfer setTimeout(long timeout, TimeUnit unit) {
+        this.timeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Set timeout waiting for the receiver to start.
+     *
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return this file transfer
+     */
+    public FileTransfer setStartTimeout(long timeout, TimeUnit unit) {
+        this.startTimeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Set max retries of a block.
+     *
+     * @param maxRetries the max retries
+     * @return this file transfer
+     */
+    public FileTransfer setMaxRetries(int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must not be negative: " + maxRetries);
+        }
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Set progress listener, called on the sending thread after each acknowledged block.
+     *
+     * @param listener the listener
+     * @return this file transfer
+     */
+    public FileTransfer setListener(TransferListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Cancel the running transfer, the receiver is notified with CAN and the sending thread throws
+     * {@link TransferException}.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Send file with XMODEM-1K, the last block is 128 bytes if no more than 128 bytes are left.
+     *
+     * @param file the file
+     * @return the progress when completed
+     * @throws IOException the io exception, {@link TransferException} if cancelled or retries exhausted
+     */
+    public synchronized TransferProgress sendXmodem(File file) throws IOException {
+        reset(file.length());
+        try (MappedFile mapped = new MappedFile(file, BLOCK_SIZE_1K)) {
+            fileName = file.getName();
+            awaitReceiver();
+            sendData(mapped);
+            sendEot();
+        }
+        return progress();
+    }
+
+    /**
+     * Send files with YMODEM batch transfer, block 0 of each file carries the name, size and modification time.
+     *
+     * @param files the files
+     * @return the progress when completed
+     * @throws IOException the io exception, {@link TransferException} if cancelled or retries exhausted
+     */
+    public synchronized TransferProgress sendYmodem(File... files) throws IOException {
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        reset(size);
+        for (File file : files) {
+            try (MappedFile mapped = new MappedFile(file, BLOCK_SIZE_1K)) {
+                fileName = file.getName();
+                awaitReceiver();
+                sendBlock(0, fileHeader(file, mapped.size()), 0);
+                awaitReceiver();
+                sendData(mapped);
+                sendEot();
+            }
+        }
+        // 空文件名的块0结束批量传输
+        awaitReceiver();
+        sendBlock(0, ByteBuffer.allocate(BLOCK_SIZE), 0);
+        return progress();
+    }
+
+    /**
+     * Send file with windowed transfer of {@link #DEFAULT_WINDOW_SIZE} blocks of
+     * {@link #DEFAULT_WINDOW_BLOCK_SIZE} bytes.
+     *
+     * @param file the file
+     * @return the progress when completed
+     * @throws IOException the io exception, {@link TransferException} if cancelled or retries exhausted
+     */
+    public TransferProgress sendWindowed(File file) throws IOException {
+        return sendWindowed(file, DEFAULT_WINDOW_SIZE, DEFAULT_WINDOW_BLOCK_SIZE);
+    }
+
+    /**
+     * Send file with windowed transfer, see the frame format of {@link FileTransfer}.
+     *
+     * @param file       the file
+     * @param windowSize the max unacknowledged blocks, [1, {@link #MAX_WINDOW_SIZE}]
+     * @param blockSize  the block size, [1, 65535]
+     * @return the progress when completed
+     * @throws IOException the io exception, {@link TransferException} if cancelled or retries exhausted
+     */
+    public synchronized TransferProgress sendWindowed(File file, int windowSize, int blockSize) throws IOException {
+        if (windowSize < 1 || windowSize > MAX_WINDOW_SIZE) {
+            throw new IllegalArgumentException("windowSize must be in [1, " + MAX_WINDOW_SIZE + "]: " + windowSize);
+        }
+        if (blockSize < 1 || blockSize > 0xffff) {
+            throw new IllegalArgumentException("blockSize must be in [1, 65535]: " + blockSize);
+        }
+        reset(file.length());
+        try (MappedFile mapped = new MappedFile(file, blockSize)) {
+            fileName = file.getName();
+            long size = mapped.size();
+            long blocks = (size + blockSize - 1) / blockSize;
+            long base = 0;
+            long next = 0;
+            int retries = 0;
+            awaitReceiver();
+            while (base < blocks) {
+                while (next < blocks && next - base < windowSize) {
+                    sendFrame(mapped, next, blockSize);
+                    next++;
+                }
+                checkCancelled();
+                int c = readByte(timeoutNanos);
+                long index = -1;
+                if (c == ACK || c == NAK) {
+                    int seq = readSequence();
+                    if (seq < 0) {
+                        c = -1;
+                    } else {
+                        // 窗口内块序号的低16位唯一
+                        index = base + ((seq - base) & 0xffff);
+                        if (index >= next) {
+                            continue;
+                        }
+                    }
+                }
+                if (c == ACK) {
+                    base = index + 1;
+                    retries = 0;
+                    transferred = Math.min(size, base * blockSize);
+                    fireProgress();
+                } else if (c == NAK) {
+                    if (++retries > maxRetries) {
+                        throw abort("block " + index + " rejected");
+                    }
+                    base = index;
+                    transferred = Math.min(size, base * blockSize);
+                    retransmits += next - index;
+                    next = index;
+                    purge();
+                } else if (c == CAN) {
+                    checkReceiverCancelled();
+                } else if (c < 0) {
+                    if (++retries > maxRetries) {
+                        throw abort("block " + base + " not acknowledged");
+                    }
+                    retransmits += next - base;
+                    next = base;
+                    purge();
+                }
+            }
+            sendEot();
+        }
+        return progress();
+    }
+
+    private void reset(long size) {
+        cancelled = false;
+        fileName = null;
+        transferred = 0;
+        total = size;
+        lineBytes = 0;
+        retransmits = 0;
+        startNanos = 0;
+    }
+
+    private void awaitReceiver() throws IOException {
+        long deadline = System.nanoTime() + startTimeoutNanos;
+        for (; ; ) {
+            checkCancelled();
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw abort("receiver not ready");
+            }
+            int c = readByte(Math.min(remaining, POLL_NANOS));
+            if (c == CRC_REQUEST) {
+                if (startNanos == 0) {
+                    startNanos = System.nanoTime();
+                }
+                return;
+            }
+            if (c == CAN) {
+                checkReceiverCancelled();
+            }
+        }
+    }
+
+    private void sendData(MappedFile mapped) throws IOException {
+        long size = mapped.size();
+        int seq = 1;
+        for (long position = 0; position < size; seq++) {
+            long remaining = size - position;
+            // 剩余不超过128字节时用128字节的块，减少填充
+            int blockSize = remaining > BLOCK_SIZE ? BLOCK_SIZE_1K : BLOCK_SIZE;
+            int length = (int) Math.min(remaining, blockSize);
+            sendBlock(seq, mapped.slice(position, length), blockSize - length);
+            position += length;
+            transferred += length;
+            fireProgress();
+        }
+    }
+
+    private void sendBlock(int seq, ByteBuffer data, int padding) throws IOException {
+        int blockSize = data.remaining() + padding;
+        header.clear();
+        header.put((byte) (blockSize == BLOCK_SIZE_1K ? STX : SOH)).put((byte) seq).put((byte) ~seq).flip();
+        ByteBuffer pad = (ByteBuffer) PADDING.duplicate().limit(padding);
+        int value = Crc16Ccitt.compute(Crc16Ccitt.XMODEM, data);
+        value = Crc16Ccitt.compute(value, pad);
+        crc.clear();
+        crc.putShort((short) value).flip();
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            checkCancelled();
+            if (attempt > 0) {
+                retransmits++;
+                purge();
+            }
+            if (padding > 0) {
+                port.write(header.duplicate(), data.duplicate(), pad.duplicate(), crc.duplicate());
+            } else {
+                port.write(header.duplicate(), data.duplicate(), crc.duplicate());
+            }
+            lineBytes += header.remaining() + blockSize + crc.remaining();
+            int c = readByte(timeoutNanos);
+            if (c == ACK) {
+                return;
+            }
+            if (c == CAN) {
+                checkReceiverCancelled();
+            }
+        }
+        throw abort("block " + seq + " not acknowledged");
+    }
+
+    private void sendFrame(MappedFile mapped, long index, int blockSize) throws IOException {
+        long position = index * blockSize;
+        int length = (int) Math.min(blockSize, mapped.size() - position);
+        ByteBuffer data = mapped.slice(position, length);
+        header.clear();
+        header.put((byte) SOH).putShort((short) index).putShort((short) length).flip();
+        int value = Crc16Ccitt.compute(Crc16Ccitt.XMODEM, header.array(), 1, 4);
+        value = Crc16Ccitt.compute(value, data);
+        crc.clear();
+        crc.putShort((short) value).flip();
+        checkCancelled();
+        port.write(header.duplicate(), data, crc.duplicate());
+        lineBytes += header.remaining() + length + crc.remaining();
+    }
+
+    private void sendEot() throws IOException {
+        // YMODEM接收方对第一个EOT回复NAK，重发EOT后回复ACK
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            checkCancelled();
+            port.write(EOT);
+            lineBytes++;
+            int c = readByte(timeoutNanos);
+            if (c == ACK) {
+                return;
+            }
+            if (c == CAN) {
+                checkReceiverCancelled();
+            }
+        }
+        throw abort("end of transmission not acknowledged");
+    }
+
+    private static ByteBuffer fileHeader(File file, long size) {
+        byte[] name = file.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] info = (size + " " + Long.toOctalString(file.lastModified() / 1000)).getBytes(StandardCharsets.US_ASCII);
+        int length = name.length + 1 + info.length + 1;
+        if (length > BLOCK_SIZE_1K) {
+            throw new IllegalArgumentException("file name too long: " + file.getName());
+        }
+        // 块0为128字节，文件名太长时用1024字节的块，不足部分补0
+        ByteBuffer block = ByteBuffer.allocate(length > BLOCK_SIZE ? BLOCK_SIZE_1K : BLOCK_SIZE);
+        block.put(name).put((byte) 0).put(info).clear();
+        return block;
+    }
+
+    private int readByte(long timeout) throws IOException {
+        response.clear().limit(1);
+        return port.read(response, timeout, TimeUnit.NANOSECONDS) > 0 ? response.get(0) & 0xff : -1;
+    }
+
+    private int readSequence() throws IOException {
+        response.clear().limit(2);
+        try {
+            port.readFully(response, timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedIOException e) {
+            return -1;
+        }
+        return response.getShort(0) & 0xffff;
+    }
+
+    private void purge() throws IOException {
+        // 丢弃重发前收到的残留应答
+        do {
+            response.clear();
+        } while (port.read(response, 0, TimeUnit.NANOSECONDS) > 0);
+    }
+
+    private void checkReceiverCancelled() throws IOException {
+        // 连续两个CAN才是取消，单个CAN可能是线路噪声
+        if (readByte(Math.min(timeoutNanos, TimeUnit.SECONDS.toNanos(1))) == CAN) {
+            throw new TransferException("cancelled by receiver", progress());
+        }
+    }
+
+    private void checkCancelled() throws IOException {
+        if (cancelled) {
+            throw abort("cancelled");
+        }
+    }
+
+    private TransferException abort(String message) {
+        try {
+            for (int i = 0; i < CANCEL_COUNT; i++) {
+                port.write(CAN);
+            }
+        } catch (IOException e) {
+            // 端口已不可用，接收方会超时
+        }
+        return new TransferException(message, progress());
+    }
+
+    private TransferProgress progress() {
+        long elapsed = startNanos == 0 ? 0 : System.nanoTime() - startNanos;
+        return new TransferProgress(fileName, transferred, total, lineBytes, retransmits, elapsed);
+    }
+
+    private void fireProgress() {
+        TransferListener l = listener;
+        if (l != null) {
+            l.onProgress(progress());
+        }
+    }
+
+    /**
+     * The interface Transfer listener.
+     */
+    public interface TransferListener {
+        /**
+         * Called after a block is acknowledged.
+         *
+         * @param progress the progress
+         */
+        void onProgress(TransferProgress progress);
+    }
+}
@@ -0,0 +1,82 @@
+package cn.featherfly.android.serialport.transfer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The type Mapped file.
+ * <p>
+ * 按段只读映射文件，段大小是块大小的整数倍，块不会跨段. 同时只保留一个段的映射，大文件不会占满地址空间，
+ * 数据不经过Java堆.
+ */
+class MappedFile implements Closeable {
+
+    /**
+     * The default segment size.
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final int segmentSize;
+
+    private MappedByteBuffer segment;
+
+    private long segmentStart = -1;
+
+    /**
+     * Instantiates a new Mapped file.
+     *
+     * @param file      the file
+     * @param blockSize the block size
+     * @throws IOException the io exception
+     */
+    MappedFile(File file, int blockSize) throws IOException {
+        this.channel = new FileInputStream(file).getChannel();
+        this.size = channel.size();
+        this.segmentSize = Math.max(1, DEFAULT_SEGMENT_SIZE / blockSize) * blockSize;
+    }
+
+    /**
+     * Gets size.
+     *
+     * @return the size
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Get a view of the file, position and limit of the view are the bytes.
+     *
+     * @param position the position, a multiple of block size
+     * @param length   the length, no more than block size
+     * @return the view
+     * @throws IOException the io exception
+     */
+    ByteBuffer slice(long position, int length) throws IOException {
+        long start = position / segmentSize * segmentSize;
+        if (start != segmentStart) {
+            // 旧段的映射在GC时释放
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, size - start));
+            segmentStart = start;
+        }
+        ByteBuffer view = segment.duplicate();
+        int offset = (int) (position - start);
+        view.limit(offset + length).position(offset);
+        return view;
+    }
+
+    @Override
+    public void close() throws IOException {
+        segment = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,33 @@
+package cn.featherfly.android.serialport.transfer;
+
+import java.io.IOException;
+
+/**
+ * The type Transfer exception, the transfer was cancelled or a block was not acknowledged within the retries.
+ */
+public class TransferException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TransferProgress progress;
+
+    /**
+     * Instantiates a new Transfer exception.
+     *
+     * @param message  the message
+     * @param progress the progress when the transfer stopped
+     */
+    public TransferException(String message, TransferProgress progress) {
+        super(message);
+        this.progress = progress;
+    }
+
+    /**
+     * Gets progress when the transfer stopped.
+     *
+     * @return the progress
+     */
+    public TransferProgress getProgress() {
+        return progress;
+    }
+}
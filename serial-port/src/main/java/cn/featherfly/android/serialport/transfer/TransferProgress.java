@@ -0,0 +1,137 @@
+package cn.featherfly.android.serialport.transfer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type Transfer progress.
+ * <p>
+ * 某一时刻的传输进度快照，transferred只统计接收方确认的文件字节，不含帧头、填充和重传.
+ */
+public class TransferProgress {
+
+    private final String fileName;
+
+    private final long transferred;
+
+    private final long total;
+
+    private final long lineBytes;
+
+    private final int retransmits;
+
+    private final long elapsedNanos;
+
+    /**
+     * Instantiates a new Transfer progress.
+     *
+     * @param fileName     the file name
+     * @param transferred  the file bytes acknowledged by the receiver
+     * @param total        the total file bytes
+     * @param lineBytes    the bytes written to the port including framing and retransmits
+     * @param retransmits  the retransmitted blocks
+     * @param elapsedNanos the elapsed nanos since the receiver started
+     */
+    public TransferProgress(String fileName, long transferred, long total, long lineBytes, int retransmits,
+                            long elapsedNanos) {
+        this.fileName = fileName;
+        this.transferred = transferred;
+        this.total = total;
+        this.lineBytes = lineBytes;
+        this.retransmits = retransmits;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets file name, the file being sent.
+     *
+     * @return the file name
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Gets transferred.
+     *
+     * @return the transferred
+     */
+    public long getTransferred() {
+        return transferred;
+    }
+
+    /**
+     * Gets total.
+     *
+     * @return the total
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Gets line bytes.
+     *
+     * @return the line bytes
+     */
+    public long getLineBytes() {
+        return lineBytes;
+    }
+
+    /**
+     * Gets retransmits.
+     *
+     * @return the retransmits
+     */
+    public int getRetransmits() {
+        return retransmits;
+    }
+
+    /**
+     * Gets elapsed.
+     *
+     * @param unit the unit
+     * @return the elapsed
+     */
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets fraction of total transferred, 1 for empty files.
+     *
+     * @return the fraction
+     */
+    public double getFraction() {
+        return total == 0 ? 1 : (double) transferred / total;
+    }
+
+    /**
+     * Gets effective throughput, acknowledged file bytes per second.
+     *
+     * @return the bytes per second
+     */
+    public double getBytesPerSecond() {
+        return elapsedNanos <= 0 ? 0 : transferred * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Gets efficiency, acknowledged file bytes to bytes written to the port.
+     *
+     * @return the efficiency
+     */
+    public double getEfficiency() {
+        return lineBytes == 0 ? 0 : (double) transferred / lineBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferProgress{" +
+                "fileName='" + fileName + '\'' +
+                ", transferred=" + transferred +
+                ", total=" + total +
+                ", lineBytes=" + lineBytes +
+                ", retransmits=" + retransmits +
+                ", bytesPerSecond=" + (long) getBytesPerSecond() +
+                '}';
+    }
+}
@@ -0,0 +1,194 @@
+package cn.featherfly.android.serialport;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The type Async writer test.
+ */
+public class AsyncWriterTest {
+
+    private final GatedSink sink = new GatedSink();
+
+    private AsyncWriter writer;
+
+    @After
+    public void tearDown() {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    /**
+     * 每次写入需要一个许可，写线程停在sink中时排队的请求按通道顺序写出
+     */
+    private static class GatedSink implements AsyncWriter.Sink {
+
+        private final Semaphore entered = new Semaphore(0);
+
+        private final Semaphore permits = new Semaphore(0);
+
+        private final BlockingQueue<String> writes = new LinkedBlockingQueue<>();
+
+        private boolean interruptible = true;
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            entered.release();
+            if (!interruptible) {
+                // 与写文件描述符一样不响应中断
+                permits.acquireUninterruptibly();
+            } else {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("closed");
+                }
+            }
+            writes.add(new String(b, off, len, StandardCharsets.ISO_8859_1));
+        }
+
+        private void awaitEntered() throws InterruptedException {
+            assertTrue("writer did not write", entered.tryAcquire(1, TimeUnit.SECONDS));
+        }
+
+        private String next() throws InterruptedException {
+            return writes.poll(1, TimeUnit.SECONDS);
+        }
+    }
+
+    private static ByteBuffer text(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void assertClosed(CompletableFuture<Void> future) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("write completed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void higherLanesFirstAndSameLaneBatched() throws Exception {
+        writer = new AsyncWriter("test-writer", sink, 16, 0, TimeUnit.MILLISECONDS).setBulkChunkSize(4);
+        writer.write(text("a"));
+        sink.awaitEntered();
+        writer.write(text("0123456789"), WritePriority.BULK);
+        writer.write(text("b"));
+        writer.write(text("u"), WritePriority.URGENT);
+        CompletableFuture<Void> last = writer.write(text("c"));
+        assertEquals(4, writer.getQueuedCount());
+        sink.permits.release(Integer.MAX_VALUE / 2);
+
+        assertEquals("a", sink.next());
+        assertEquals("u", sink.next());
+        assertEquals("bc", sink.next());
+        assertEquals("0123", sink.next());
+        assertEquals("4567", sink.next());
+        assertEquals("89", sink.next());
+        assertNull(last.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void urgentWriteBetweenBulkChunks() throws Exception {
+        writer = new AsyncWriter("test-writer", sink, 16, 0, TimeUnit.MILLISECONDS).setBulkChunkSize(4);
+        CompletableFuture<Void> bulk = writer.write(text("0123456789ab"), WritePriority.BULK);
+        sink.awaitEntered();
+        CompletableFuture<Void> urgent = writer.write(text("u"), WritePriority.URGENT);
+        sink.permits.release(Integer.MAX_VALUE / 2);
+
+        assertEquals("0123", sink.next());
+        assertEquals("u", sink.next());
+        assertEquals("4567", sink.next());
+        assertEquals("89ab", sink.next());
+        assertNull(urgent.get(1, TimeUnit.SECONDS));
+        assertNull(bulk.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void batchLimitedByBatchSize() throws Exception {
+        writer = new AsyncWriter("test-writer", sink, 4, 0, TimeUnit.MILLISECONDS);
+        writer.write(text("x"));
+        sink.awaitEntered();
+        writer.write(text("ab"));
+        writer.write(text("cd"));
+        writer.write(text("ef"));
+        // 超过批大小的请求单独写出
+        writer.write(text("0123456789"));
+        sink.permits.release(Integer.MAX_VALUE / 2);
+
+        assertEquals("x", sink.next());
+        assertEquals("abcd", sink.next());
+        assertEquals("ef", sink.next());
+        assertEquals("0123456789", sink.next());
+    }
+
+    @Test
+    public void directBufferBulkChunks() throws Exception {
+        writer = new AsyncWriter("test-writer", sink, 16, 0, TimeUnit.MILLISECONDS).setBulkChunkSize(3);
+        ByteBuffer direct = ByteBuffer.allocateDirect(8);
+        direct.put(text("abcdefgh")).flip();
+        sink.permits.release(Integer.MAX_VALUE / 2);
+        writer.write(direct, WritePriority.BULK).get(1, TimeUnit.SECONDS);
+        assertEquals("abc", sink.next());
+        assertEquals("def", sink.next());
+        assertEquals("gh", sink.next());
+    }
+
+    @Test
+    public void closeFailsPendingWrites() throws Exception {
+        writer = new AsyncWriter("test-writer", sink, 16, 0, TimeUnit.MILLISECONDS);
+        writer.write(text("a"));
+        sink.awaitEntered();
+        CompletableFuture<Void> pending = writer.write(text("b"));
+        writer.close();
+        assertClosed(pending);
+        assertTrue(writer.write(text("c")).isCompletedExceptionally());
+    }
+
+    @Test
+    public void closeDuringLingerFailsTakenWrites() throws Exception {
+        writer = new AsyncWriter("test-writer", sink, 16, 10, TimeUnit.SECONDS);
+        CompletableFuture<Void> first = writer.write(text("a"));
+        CompletableFuture<Void> second = writer.write(text("b"));
+        // 写线程取出请求后在等待时间内等待更多数据
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (writer.getQueuedCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, writer.getQueuedCount());
+        writer.close();
+        assertClosed(first);
+        assertClosed(second);
+    }
+
+    @Test
+    public void closeDuringBulkChunkFailsRequest() throws Exception {
+        sink.interruptible = false;
+        writer = new AsyncWriter("test-writer", sink, 16, 0, TimeUnit.MILLISECONDS).setBulkChunkSize(4);
+        CompletableFuture<Void> bulk = writer.write(text("0123456789"), WritePriority.BULK);
+        sink.awaitEntered();
+        writer.close();
+        sink.permits.release(Integer.MAX_VALUE / 2);
+        assertClosed(bulk);
+        assertEquals("0123", sink.next());
+    }
+}
@@ -0,0 +1,201 @@
+package cn.featherfly.android.serialport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import cn.featherfly.android.serialport.ByteRingBuffer.ByteSource;
+import cn.featherfly.android.serialport.ByteRingBuffer.OverflowPolicy;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The type Byte ring buffer test.
+ */
+public class ByteRingBufferTest {
+
+    /**
+     * 产生连续递增字节的数据源
+     */
+    private static class CountingSource implements ByteSource {
+
+        private int next;
+
+        private int reads;
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            for (int i = 0; i < len; i++) {
+                b[off + i] = (byte) next++;
+            }
+            reads++;
+            return len;
+        }
+    }
+
+    private static byte[] readAll(ByteRingBuffer ring) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while (ring.readTo((frame, nanoTime) -> {
+            while (frame.hasRemaining()) {
+                out.write(frame.get());
+            }
+        }, Integer.MAX_VALUE) > 0) {
+            // 读到空为止
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] sequence(int from, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (from + i);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void capacityRoundedUpToPowerOfTwo() {
+        assertEquals(16, new ByteRingBuffer(10, OverflowPolicy.BLOCK).capacity());
+        assertEquals(8, new ByteRingBuffer(8, OverflowPolicy.BLOCK).capacity());
+    }
+
+    @Test
+    public void wrapAroundKeepsOrder() throws IOException {
+        ByteRingBuffer ring = new ByteRingBuffer(8, OverflowPolicy.BLOCK);
+        CountingSource source = new CountingSource();
+        assertEquals(6, ring.writeFrom(source, 6));
+        assertArrayEquals(sequence(0, 6), readAll(ring));
+        // 写入跨越数组末尾时分两次读取
+        assertEquals(2, ring.writeFrom(source, 6));
+        assertEquals(4, ring.writeFrom(source, 4));
+        assertEquals(6, ring.size());
+        assertArrayEquals(sequence(6, 6), readAll(ring));
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void blockReturnsFullWithoutReading() throws IOException {
+        ByteRingBuffer ring = new ByteRingBuffer(8, OverflowPolicy.BLOCK);
+        CountingSource source = new CountingSource();
+        assertEquals(8, ring.writeFrom(source, 16));
+        assertFalse(ring.isWritable());
+        assertEquals(ByteRingBuffer.FULL, ring.writeFrom(source, 16));
+        assertEquals(1, source.reads);
+        assertEquals(0, ring.getDroppedBytes());
+        assertArrayEquals(sequence(0, 8), readAll(ring));
+        assertTrue(ring.isWritable());
+    }
+
+    @Test
+    public void endOfStreamIsNotFull() throws IOException {
+        ByteRingBuffer ring = new ByteRingBuffer(8, OverflowPolicy.BLOCK);
+        assertEquals(-1, ring.writeFrom((b, off, len) -> -1, 8));
+    }
+
+    @Test
+    public void dropOldestKeepsNewestBytes() throws IOException {
+        ByteRingBuffer ring = new ByteRingBuffer(8, OverflowPolicy.DROP_OLDEST);
+        CountingSource source = new CountingSource();
+        assertEquals(8, ring.writeFrom(source, 8));
+        assertEquals(3, ring.writeFrom(source, 3));
+        assertEquals(1, ring.getOverflowCount());
+        assertEquals(3, ring.getDroppedBytes());
+        assertArrayEquals(sequence(3, 8), readAll(ring));
+    }
+
+    @Test
+    public void dropNewestKeepsOldestBytes() throws IOException {
+        ByteRingBuffer ring = new ByteRingBuffer(8, OverflowPolicy.DROP_NEWEST);
+        CountingSource source = new CountingSource();
+        assertEquals(8, ring.writeFrom(source, 8));
+        // 新数据从数据源读出后丢弃，内核缓冲区不会被塞满
+        assertEquals(3, ring.writeFrom(source, 3));
+        assertEquals(1, ring.getOverflowCount());
+        assertEquals(3, ring.getDroppedBytes());
+        assertArrayEquals(sequence(0, 8), readAll(ring));
+    }
+
+    @Test
+    public void growToLimitThenDropNewest() throws IOException {
+        ByteRingBuffer ring = new ByteRingBuffer(8, OverflowPolicy.GROW_TO_LIMIT, 16);
+        CountingSource source = new CountingSource();
+        assertEquals(8, ring.writeFrom(source, 8));
+        assertEquals(8, ring.writeFrom(source, 8));
+        assertEquals(1, ring.getGrowCount());
+        assertEquals(16, ring.size());
+        assertEquals(4, ring.writeFrom(source, 4));
+        assertEquals(4, ring.getDroppedBytes());
+        assertArrayEquals(sequence(0, 16), readAll(ring));
+        // 读完的分段被回收，可以再次增长
+        assertEquals(8, ring.writeFrom(source, 8));
+        assertArrayEquals(sequence(20, 8), readAll(ring));
+    }
+
+    /**
+     * 每次分发的长度和读取时间
+     */
+    private static List<long[]> readChunks(ByteRingBuffer ring) {
+        List<long[]> chunks = new ArrayList<>();
+        while (ring.readTo((frame, nanoTime) -> chunks.add(new long[]{frame.remaining(), nanoTime}),
+                Integer.MAX_VALUE) > 0) {
+            // 读到空为止
+        }
+        return chunks;
+    }
+
+    @Test
+    public void readsKeepTheirTimestamps() throws Exception {
+        ByteRingBuffer ring = new ByteRingBuffer(16, OverflowPolicy.BLOCK);
+        CountingSource source = new CountingSource();
+        long before = System.nanoTime();
+        ring.writeFrom(source, 3);
+        Thread.sleep(5);
+        ring.writeFrom(source, 2);
+        // 分发晚于读取，仍按读取边界带上读取时间
+        Thread.sleep(5);
+        List<long[]> chunks = readChunks(ring);
+        assertEquals(2, chunks.size());
+        assertEquals(3, chunks.get(0)[0]);
+        assertEquals(2, chunks.get(1)[0]);
+        assertTrue(chunks.get(0)[1] - before >= 0);
+        assertTrue(chunks.get(1)[1] - chunks.get(0)[1] >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(System.nanoTime() - chunks.get(1)[1] >= TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    @Test
+    public void grownSegmentKeepsReadBoundaries() throws Exception {
+        ByteRingBuffer ring = new ByteRingBuffer(8, OverflowPolicy.GROW_TO_LIMIT, 16);
+        CountingSource source = new CountingSource();
+        ring.writeFrom(source, 5);
+        ring.writeFrom(source, 3);
+        ring.writeFrom(source, 4);
+        List<long[]> chunks = readChunks(ring);
+        assertEquals(3, chunks.size());
+        assertEquals(5, chunks.get(0)[0]);
+        assertEquals(3, chunks.get(1)[0]);
+        assertEquals(4, chunks.get(2)[0]);
+        assertTrue(chunks.get(2)[1] - chunks.get(1)[1] >= 0);
+    }
+
+    @Test
+    public void readsMergedWhenMarksFull() throws Exception {
+        // 容量2时最多记录两次读取
+        ByteRingBuffer ring = new ByteRingBuffer(2, OverflowPolicy.DROP_OLDEST);
+        CountingSource source = new CountingSource();
+        ring.writeFrom(source, 1);
+        ring.writeFrom(source, 1);
+        Thread.sleep(2);
+        ring.writeFrom(source, 1);
+        List<long[]> chunks = readChunks(ring);
+        assertEquals(2, chunks.size());
+        // 第三次读取并入第二次的记录
+        assertEquals(chunks.get(0)[1], chunks.get(1)[1]);
+    }
+}
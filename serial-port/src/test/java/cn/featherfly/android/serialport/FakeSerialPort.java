@@ -0,0 +1,355 @@
+package cn.featherfly.android.serialport;
+
+import org.reactivestreams.Publisher;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import cn.featherfly.android.serialport.decoder.FrameDecoder;
+import cn.featherfly.android.serialport.metrics.SerialPortMetrics;
+import cn.featherfly.android.serialport.trace.TrafficTracer;
+
+/**
+ * The type Fake serial port.
+ * <p>
+ * 内存中的串口，不需要设备和native库. 写入的数据记录在队列中并交给对端，收到的数据经过帧解码器分发给监听器，
+ * 没有缓冲区监听器时留给同步读取.
+ */
+public class FakeSerialPort implements EasySerialPort {
+
+    private final String name;
+
+    private final BlockingQueue<byte[]> written = new LinkedBlockingQueue<>();
+
+    private final BlockingQueue<Byte> readable = new LinkedBlockingQueue<>();
+
+    private final ListenerRegistry<SerialReadListener> readListeners = new ListenerRegistry<>();
+
+    private final ListenerRegistry<SerialBufferReadListener> bufferListeners = new ListenerRegistry<>();
+
+    private final SerialPortBufferEvent bufferEvent;
+
+    private final SerialPortMetrics metrics;
+
+    private final FrameDecoder.FrameSink frameSink = this::dispatch;
+
+    private volatile FrameDecoder frameDecoder;
+
+    private volatile Consumer<byte[]> peer;
+
+    private ExecutorService receiveExecutor;
+
+    /**
+     * Instantiates a new Fake serial port.
+     *
+     * @param name the name
+     */
+    public FakeSerialPort(String name) {
+        this.name = name;
+        this.bufferEvent = new SerialPortBufferEvent(name);
+        this.metrics = new SerialPortMetrics(name);
+    }
+
+    /**
+     * Connect two ports like a null-modem cable, each port receives on a thread of its own.
+     *
+     * @param a the a
+     * @param b the b
+     */
+    public static void connect(FakeSerialPort a, FakeSerialPort b) {
+        a.peer = b.receiveAsync();
+        b.peer = a.receiveAsync();
+    }
+
+    /**
+     * Set peer called with the bytes of each write on the writing thread, e.g. to queue a response.
+     *
+     * @param peer the peer
+     * @return this port
+     */
+    public FakeSerialPort setPeer(Consumer<byte[]> peer) {
+        this.peer = peer;
+        return this;
+    }
+
+    /**
+     * Receive bytes on the calling thread, through the frame decoder when set.
+     *
+     * @param data the data
+     */
+    public synchronized void receive(byte... data) {
+        FrameDecoder decoder = frameDecoder;
+        if (decoder != null) {
+            decoder.decode(ByteBuffer.wrap(data), System.nanoTime(), frameSink);
+        } else {
+            dispatch(ByteBuffer.wrap(data));
+        }
+    }
+
+    /**
+     * Receive a complete frame on the calling thread, the frame decoder is bypassed.
+     *
+     * @param frame the frame
+     */
+    public synchronized void receiveFrame(byte... frame) {
+        dispatch(ByteBuffer.wrap(frame));
+    }
+
+    /**
+     * Take the bytes of the next write.
+     *
+     * @param timeout the timeout
+     * @param unit    the unit
+     * @return the bytes, null if nothing written in time
+     * @throws InterruptedException the interrupted exception
+     */
+    public byte[] takeWritten(long timeout, TimeUnit unit) throws InterruptedException {
+        return written.poll(timeout, unit);
+    }
+
+    /**
+     * Gets count of writes not taken.
+     *
+     * @return the written count
+     */
+    public int getWrittenCount() {
+        return written.size();
+    }
+
+    private synchronized Consumer<byte[]> receiveAsync() {
+        if (receiveExecutor == null) {
+            receiveExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "fake-receive[" + name + "]");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        ExecutorService executor = receiveExecutor;
+        return data -> executor.execute(() -> receive(data));
+    }
+
+    private void dispatch(ByteBuffer data) {
+        int offset = data.position();
+        int length = data.remaining();
+        if (bufferListeners.isEmpty() && readListeners.isEmpty()) {
+            for (int i = 0; i < length; i++) {
+                readable.add(data.get(offset + i));
+            }
+            return;
+        }
+        ListenerRegistry.dispatchBuffer(bufferListeners, bufferEvent, data, offset, length);
+        ListenerRegistry.dispatchRead(readListeners, name, data, offset, length);
+    }
+
+    private void send(byte[] data) {
+        written.add(data);
+        Consumer<byte[]> p = peer;
+        if (p != null) {
+            p.accept(data);
+        }
+    }
+
+    @Override
+    public EasySerialPort open() {
+        return this;
+    }
+
+    @Override
+    public synchronized EasySerialPort close() {
+        if (receiveExecutor != null) {
+            receiveExecutor.shutdownNow();
+        }
+        return this;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getBaudrate() {
+        return SerialPortDescriptor.DEFAULT_BAUD;
+    }
+
+    @Override
+    public SerialPortMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void write(int b) {
+        send(new byte[]{(byte) b});
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        byte[] data = new byte[len];
+        System.arraycopy(b, off, data, 0, len);
+        send(data);
+    }
+
+    @Override
+    public void write(byte[] b) {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(ByteBuffer... parts) {
+        int length = 0;
+        for (ByteBuffer part : parts) {
+            length += part.remaining();
+        }
+        ByteBuffer data = ByteBuffer.allocate(length);
+        for (ByteBuffer part : parts) {
+            data.put(part.duplicate());
+            part.position(part.limit());
+        }
+        send(data.array());
+    }
+
+    @Override
+    public CompletableFuture<Void> writeAsync(ByteBuffer src) {
+        write(src);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> writeAsync(ByteBuffer src, WritePriority priority) {
+        return writeAsync(src);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void drain() {
+    }
+
+    @Override
+    public CompletableFuture<Void> drainAsync() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException {
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        Byte first;
+        try {
+            first = readable.poll(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while reading");
+        }
+        if (first == null) {
+            return 0;
+        }
+        dst.put(first);
+        int n = 1;
+        Byte next;
+        while (dst.hasRemaining() && (next = readable.poll()) != null) {
+            dst.put(next);
+            n++;
+        }
+        return n;
+    }
+
+    @Override
+    public int readFully(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int n = 0;
+        while (dst.hasRemaining()) {
+            long remaining = deadline - System.nanoTime();
+            int read = remaining > 0 ? read(dst, remaining, TimeUnit.NANOSECONDS) : 0;
+            if (read == 0) {
+                InterruptedIOException e = new InterruptedIOException("read timeout");
+                e.bytesTransferred = n;
+                throw e;
+            }
+            n += read;
+        }
+        return n;
+    }
+
+    @Override
+    public int readUntil(ByteBuffer dst, byte delimiter, long timeout, TimeUnit unit) throws IOException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int n = 0;
+        while (dst.hasRemaining()) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || read(one, remaining, TimeUnit.NANOSECONDS) == 0) {
+                InterruptedIOException e = new InterruptedIOException("read timeout");
+                e.bytesTransferred = n;
+                throw e;
+            }
+            byte b = one.get(0);
+            dst.put(b);
+            n++;
+            if (b == delimiter) {
+                break;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public EasySerialPort addListener(SerialReadListener serialReadListener) {
+        return addListener(serialReadListener, null);
+    }
+
+    @Override
+    public EasySerialPort addListener(SerialReadListener serialReadListener, Executor executor) {
+        readListeners.add(serialReadListener, executor);
+        return this;
+    }
+
+    @Override
+    public boolean removeListener(SerialReadListener serialReadListener) {
+        return readListeners.remove(serialReadListener);
+    }
+
+    @Override
+    public EasySerialPort addBufferListener(SerialBufferReadListener serialBufferReadListener) {
+        return addBufferListener(serialBufferReadListener, null);
+    }
+
+    @Override
+    public EasySerialPort addBufferListener(SerialBufferReadListener serialBufferReadListener, Executor executor) {
+        bufferListeners.add(serialBufferReadListener, executor);
+        return this;
+    }
+
+    @Override
+    public boolean removeBufferListener(SerialBufferReadListener serialBufferReadListener) {
+        return bufferListeners.remove(serialBufferReadListener);
+    }
+
+    @Override
+    public Publisher<ByteBuffer> getPublisher() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EasySerialPort setFrameDecoder(FrameDecoder frameDecoder) {
+        this.frameDecoder = frameDecoder;
+        return this;
+    }
+
+    @Override
+    public EasySerialPort setTracer(TrafficTracer tracer) {
+        return this;
+    }
+}
@@ -0,0 +1,42 @@
+package cn.featherfly.android.serialport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The type Serial port finder test.
+ */
+public class SerialPortFinderTest {
+
+    private final SerialPortFinder finder = new SerialPortFinder();
+
+    @Before
+    public void setUp() throws Exception {
+        // /proc/tty/drivers格式，短前缀的驱动在前
+        finder.loadDrivers(new StringReader(""
+                + "/dev/tty             /dev/tty        5       0 system:/dev/tty\n"
+                + "serial               /dev/ttyS       4 64-111 serial\n"
+                + "samsung-uart         /dev/ttySAC   204 64-67 serial\n"
+                + "usbserial            /dev/ttyUSB   188 0-253 serial\n"
+                + "pty_slave            /dev/pts      136 0-1048575 pty:slave\n"));
+    }
+
+    @Test
+    public void longestRootMatched() {
+        assertEquals("samsung-uart", finder.match("/dev/ttySAC0").getName());
+        assertEquals("serial", finder.match("/dev/ttyS0").getName());
+        assertEquals("usbserial", finder.match("/dev/ttyUSB1").getName());
+    }
+
+    @Test
+    public void nonSerialDevicesNotMatched() {
+        assertNull(finder.match("/dev/tty"));
+        assertNull(finder.match("/dev/pts/0"));
+        assertNull(finder.match("/dev/null"));
+    }
+}
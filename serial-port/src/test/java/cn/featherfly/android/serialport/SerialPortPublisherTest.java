@@ -0,0 +1,183 @@
+package cn.featherfly.android.serialport;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The type Serial port publisher test.
+ */
+public class SerialPortPublisherTest {
+
+    private final List<Boolean> pauses = new ArrayList<>();
+
+    private final SerialPortPublisher publisher = new SerialPortPublisher(pauses::add, 4);
+
+    /**
+     * 记录收到的信号，只在发布线程上调用
+     */
+    private static class RecordingSubscriber implements Subscriber<ByteBuffer> {
+
+        private final List<ByteBuffer> elements = new ArrayList<>();
+
+        private Subscription subscription;
+
+        private Throwable error;
+
+        private boolean completed;
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+        }
+
+        @Override
+        public void onNext(ByteBuffer element) {
+            elements.add(element);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private RecordingSubscriber subscribe() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        return subscriber;
+    }
+
+    private void publish(int... values) {
+        for (int value : values) {
+            publisher.publish(ByteBuffer.wrap(new byte[]{(byte) value}));
+        }
+    }
+
+    @Test
+    public void elementsWaitForDemand() {
+        RecordingSubscriber subscriber = subscribe();
+        publish(1, 2, 3);
+        assertTrue(subscriber.elements.isEmpty());
+        subscriber.subscription.request(2);
+        assertEquals(2, subscriber.elements.size());
+        assertEquals(1, subscriber.elements.get(0).get(0));
+        assertEquals(2, subscriber.elements.get(1).get(0));
+        subscriber.subscription.request(5);
+        publish(4);
+        assertEquals(4, subscriber.elements.size());
+        assertEquals(4, subscriber.elements.get(3).get(0));
+    }
+
+    @Test
+    public void elementsAreReadOnlyCopies() {
+        RecordingSubscriber subscriber = subscribe();
+        subscriber.subscription.request(Long.MAX_VALUE);
+        byte[] data = {7};
+        publisher.publish(ByteBuffer.wrap(data));
+        data[0] = 8;
+        ByteBuffer element = subscriber.elements.get(0);
+        assertTrue(element.isReadOnly());
+        assertEquals(7, element.get(0));
+    }
+
+    @Test
+    public void pauseAtHighWatermarkResumeAtHalf() {
+        RecordingSubscriber subscriber = subscribe();
+        publish(1, 2, 3);
+        assertTrue(pauses.isEmpty());
+        publish(4);
+        assertEquals(1, pauses.size());
+        assertTrue(pauses.get(0));
+        // 积压3个，仍高于低水位2
+        subscriber.subscription.request(1);
+        assertEquals(1, pauses.size());
+        subscriber.subscription.request(1);
+        assertEquals(2, pauses.size());
+        assertFalse(pauses.get(1));
+    }
+
+    @Test
+    public void slowestSubscriberPausesReading() {
+        RecordingSubscriber fast = subscribe();
+        RecordingSubscriber slow = subscribe();
+        fast.subscription.request(Long.MAX_VALUE);
+        publish(1, 2, 3, 4);
+        assertEquals(4, fast.elements.size());
+        assertEquals(1, pauses.size());
+        assertTrue(pauses.get(0));
+        // 慢订阅者取消后不再限制读取
+        slow.subscription.cancel();
+        assertEquals(2, pauses.size());
+        assertFalse(pauses.get(1));
+        assertEquals(1, publisher.getSubscriberCount());
+    }
+
+    @Test
+    public void completeAfterQueuedElements() {
+        RecordingSubscriber subscriber = subscribe();
+        publish(1, 2);
+        publisher.complete();
+        assertFalse(subscriber.completed);
+        subscriber.subscription.request(2);
+        assertEquals(2, subscriber.elements.size());
+        assertTrue(subscriber.completed);
+        assertEquals(0, publisher.getSubscriberCount());
+        // 终止后订阅立即完成
+        RecordingSubscriber late = subscribe();
+        assertTrue(late.completed);
+    }
+
+    @Test
+    public void errorTerminatesSubscribers() {
+        RecordingSubscriber subscriber = subscribe();
+        IOException e = new IOException("end of stream");
+        publisher.error(e);
+        assertSame(e, subscriber.error);
+        assertFalse(subscriber.completed);
+        publish(1);
+        subscriber.subscription.request(1);
+        assertTrue(subscriber.elements.isEmpty());
+    }
+
+    @Test
+    public void nonPositiveRequestSignalsError() {
+        RecordingSubscriber subscriber = subscribe();
+        publish(1);
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertEquals(0, publisher.getSubscriberCount());
+        subscriber.subscription.request(1);
+        assertTrue(subscriber.elements.isEmpty());
+        publisher.complete();
+        assertFalse(subscriber.completed);
+    }
+
+    @Test
+    public void cancelledSubscriberReceivesNothing() {
+        RecordingSubscriber subscriber = subscribe();
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.subscription.cancel();
+        publish(1);
+        publisher.complete();
+        assertTrue(subscriber.elements.isEmpty());
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+}
@@ -0,0 +1,118 @@
+package cn.featherfly.android.serialport.checksum;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The type Checksum test.
+ * <p>
+ * 校验值取自各算法对"123456789"的标准check值.
+ */
+public class ChecksumTest {
+
+    private static final byte[] CHECK = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+    private static ByteBuffer direct(byte[] b) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(b.length + 3);
+        buffer.position(3);
+        buffer.put(b);
+        buffer.position(3);
+        return buffer;
+    }
+
+    private static long update(FrameChecksum checksum, byte[] b) {
+        // 分成不对齐的几段更新，结果与一次计算相同
+        checksum.update(b, 0, 1);
+        checksum.update(b[1]);
+        checksum.update(ByteBuffer.wrap(b, 2, b.length - 2));
+        return checksum.getValue();
+    }
+
+    private static int referenceCrc16Modbus(byte[] b) {
+        int crc = 0xffff;
+        for (byte x : b) {
+            crc ^= x & 0xff;
+            for (int i = 0; i < 8; i++) {
+                crc = (crc & 1) != 0 ? crc >>> 1 ^ 0xa001 : crc >>> 1;
+            }
+        }
+        return crc;
+    }
+
+    private static int referenceCrc16Ccitt(int crc, byte[] b) {
+        for (byte x : b) {
+            crc ^= (x & 0xff) << 8;
+            for (int i = 0; i < 8; i++) {
+                crc = (crc & 0x8000) != 0 ? crc << 1 ^ 0x1021 : crc << 1;
+            }
+        }
+        return crc & 0xffff;
+    }
+
+    private static int referenceCrc32c(byte[] b) {
+        int crc = ~0;
+        for (byte x : b) {
+            crc ^= x & 0xff;
+            for (int i = 0; i < 8; i++) {
+                crc = (crc & 1) != 0 ? crc >>> 1 ^ 0x82f63b78 : crc >>> 1;
+            }
+        }
+        return ~crc;
+    }
+
+    @Test
+    public void crc16Modbus() {
+        assertEquals(0x4B37, Crc16Modbus.compute(CHECK, 0, CHECK.length));
+        assertEquals(0x4B37, Crc16Modbus.compute(ByteBuffer.wrap(CHECK)));
+        assertEquals(0x4B37, Crc16Modbus.compute(direct(CHECK)));
+        assertEquals(0x4B37, update(new Crc16Modbus(), CHECK));
+    }
+
+    @Test
+    public void crc16Xmodem() {
+        assertEquals(0x31C3, Crc16Ccitt.compute(Crc16Ccitt.XMODEM, CHECK, 0, CHECK.length));
+        assertEquals(0x31C3, Crc16Ccitt.compute(Crc16Ccitt.XMODEM, direct(CHECK)));
+        assertEquals(0x31C3, update(new Crc16Ccitt(Crc16Ccitt.XMODEM), CHECK));
+    }
+
+    @Test
+    public void crc16CcittFalse() {
+        assertEquals(0x29B1, Crc16Ccitt.compute(Crc16Ccitt.CCITT_FALSE, CHECK, 0, CHECK.length));
+        assertEquals(0x29B1, update(new Crc16Ccitt(), CHECK));
+    }
+
+    @Test
+    public void crc32c() {
+        assertEquals(0xE3069283, Crc32c.compute(CHECK, 0, CHECK.length));
+        assertEquals(0xE3069283, Crc32c.compute(direct(CHECK)));
+        assertEquals(0xE3069283L, update(new Crc32c(), CHECK));
+    }
+
+    @Test
+    public void lrcAndXor() {
+        // 0x31 + ... + 0x39 = 0x1DD
+        assertEquals(0x23, Lrc.compute(CHECK, 0, CHECK.length));
+        assertEquals(0x23, Lrc.compute(direct(CHECK)));
+        assertEquals(0x31, XorChecksum.compute(CHECK, 0, CHECK.length));
+        assertEquals(0x31, XorChecksum.compute(direct(CHECK)));
+    }
+
+    @Test
+    public void slicingMatchesBitwiseForAllLengths() {
+        Random random = new Random(1);
+        for (int length = 0; length < 64; length++) {
+            byte[] b = new byte[length];
+            random.nextBytes(b);
+            assertEquals(referenceCrc16Modbus(b), Crc16Modbus.compute(b, 0, length));
+            assertEquals(referenceCrc16Modbus(b), Crc16Modbus.compute(direct(b)));
+            assertEquals(referenceCrc16Ccitt(0, b), Crc16Ccitt.compute(Crc16Ccitt.XMODEM, direct(b)));
+            assertEquals(referenceCrc32c(b), Crc32c.compute(b, 0, length));
+            assertEquals(referenceCrc32c(b), Crc32c.compute(direct(b)));
+        }
+    }
+}
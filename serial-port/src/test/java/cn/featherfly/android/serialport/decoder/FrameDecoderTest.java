@@ -0,0 +1,131 @@
+package cn.featherfly.android.serialport.decoder;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The type Frame decoder test.
+ */
+public class FrameDecoderTest {
+
+    private final List<String> frames = new ArrayList<>();
+
+    private final FrameDecoder.FrameSink sink = frame -> {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        frames.add(new String(bytes, StandardCharsets.ISO_8859_1));
+    };
+
+    private void decode(FrameDecoder decoder, String data) {
+        decoder.decode(ByteBuffer.wrap(data.getBytes(StandardCharsets.ISO_8859_1)), System.nanoTime(), sink);
+    }
+
+    private void decode(FrameDecoder decoder, int... data) {
+        byte[] bytes = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            bytes[i] = (byte) data[i];
+        }
+        decoder.decode(ByteBuffer.wrap(bytes), System.nanoTime(), sink);
+    }
+
+    @Test
+    public void delimiterFramesInOneRead() {
+        DelimiterFrameDecoder decoder = DelimiterFrameDecoder.lines(16);
+        decode(decoder, "a\nbc\n\ndef\n");
+        assertEquals(4, frames.size());
+        assertEquals("a", frames.get(0));
+        assertEquals("bc", frames.get(1));
+        assertEquals("", frames.get(2));
+        assertEquals("def", frames.get(3));
+    }
+
+    @Test
+    public void delimiterFrameAcrossReads() {
+        DelimiterFrameDecoder decoder = new DelimiterFrameDecoder(16, false, (byte) '\r', (byte) '\n');
+        decode(decoder, "hel");
+        decode(decoder, "lo\r");
+        assertTrue(frames.isEmpty());
+        // 分隔符跨越两次读取，剩余的字节属于下一帧
+        decode(decoder, "\nwor");
+        decode(decoder, "ld\r\n");
+        assertEquals(2, frames.size());
+        assertEquals("hello\r\n", frames.get(0));
+        assertEquals("world\r\n", frames.get(1));
+        assertEquals(0, decoder.getDiscardedBytes());
+    }
+
+    @Test
+    public void delimiterResyncAfterMaxFrameLength() {
+        DelimiterFrameDecoder decoder = DelimiterFrameDecoder.lines(4);
+        // 超过最大长度的字节逐个丢弃，直到能在最大长度内找到分隔符
+        decode(decoder, "abcdef");
+        decode(decoder, "\nok\n");
+        assertEquals(2, frames.size());
+        assertEquals("def", frames.get(0));
+        assertEquals("ok", frames.get(1));
+        assertEquals(3, decoder.getDiscardedBytes());
+    }
+
+    @Test
+    public void lengthFieldFrames() {
+        // 1字节头 + 1字节长度 + 数据
+        LengthFieldFrameDecoder decoder = new LengthFieldFrameDecoder(8, 1, 1);
+        decode(decoder, 0x55, 2, 'a', 'b', 0x55, 1);
+        assertEquals(1, frames.size());
+        decode(decoder, 'c');
+        assertEquals(2, frames.size());
+        assertEquals("U\u0002ab", frames.get(0));
+        assertEquals("U\u0001c", frames.get(1));
+    }
+
+    @Test
+    public void lengthFieldAdjustmentAndLittleEndian() {
+        // 2字节小端长度，长度之后还有1字节校验
+        LengthFieldFrameDecoder decoder = new LengthFieldFrameDecoder(16, 0, 2, 1, false);
+        decode(decoder, 3, 0, 'x', 'y', 'z', 0x7f);
+        assertEquals(1, frames.size());
+        assertEquals("\u0003\u0000xyz\u007f", frames.get(0));
+    }
+
+    @Test
+    public void lengthFieldResyncOnInvalidLength() {
+        LengthFieldFrameDecoder decoder = new LengthFieldFrameDecoder(4, 0, 1);
+        // 长度9超过最大长度，丢弃一个字节后从下一个字节重新同步
+        decode(decoder, 9, 1, 'a');
+        assertEquals(1, frames.size());
+        assertEquals("\u0001a", frames.get(0));
+        assertEquals(1, decoder.getDiscardedBytes());
+    }
+
+    @Test
+    public void delimiterResyncInsideCumulation() {
+        DelimiterFrameDecoder decoder = DelimiterFrameDecoder.lines(4);
+        decode(decoder, "ab");
+        // 累积到最大长度仍没有分隔符，丢弃累积的第一个字节后剩余字节重新解析
+        decode(decoder, "cd");
+        decode(decoder, "\n");
+        assertEquals(1, frames.size());
+        assertEquals("bcd", frames.get(0));
+        assertEquals(1, decoder.getDiscardedBytes());
+    }
+
+    @Test
+    public void fixedLengthFramesAcrossReads() {
+        FixedLengthFrameDecoder decoder = new FixedLengthFrameDecoder(3);
+        decode(decoder, "ab");
+        decode(decoder, "cdefg");
+        assertEquals(2, frames.size());
+        assertEquals("abc", frames.get(0));
+        assertEquals("def", frames.get(1));
+        decoder.reset();
+        decode(decoder, "xyz");
+        assertEquals("xyz", frames.get(2));
+    }
+}
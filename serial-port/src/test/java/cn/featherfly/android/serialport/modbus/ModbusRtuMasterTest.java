@@ -0,0 +1,124 @@
+package cn.featherfly.android.serialport.modbus;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import cn.featherfly.android.serialport.FakeSerialPort;
+import cn.featherfly.android.serialport.modbus.RegisterReadPlanner.RegisterRead;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The type Modbus rtu master test.
+ */
+public class ModbusRtuMasterTest {
+
+    private final FakeSerialPort port = new FakeSerialPort("/dev/ttyTEST");
+
+    private final ModbusRtuMaster master = new ModbusRtuMaster(port, 9600);
+
+    @After
+    public void tearDown() {
+        master.close();
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] b = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            b[i] = (byte) values[i];
+        }
+        return b;
+    }
+
+    /**
+     * 追加CRC，低字节在前
+     */
+    private static byte[] frame(int... values) {
+        byte[] b = Arrays.copyOf(bytes(values), values.length + 2);
+        int crc = ModbusCrc.compute(b, 0, values.length);
+        b[values.length] = (byte) crc;
+        b[values.length + 1] = (byte) (crc >>> 8);
+        return b;
+    }
+
+    private static Throwable cause(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("future completed normally");
+        return null;
+    }
+
+    @Test
+    public void requestFrameEndsWithCrcLowByteFirst() throws Exception {
+        CompletableFuture<int[]> values = master.readHoldingRegisters(1, 0, 10);
+        assertArrayEquals(bytes(0x01, 0x03, 0x00, 0x00, 0x00, 0x0A, 0xC5, 0xCD),
+                port.takeWritten(0, TimeUnit.SECONDS));
+        port.receiveFrame(frame(0x01, 0x03, 20, 0, 1, 0, 2, 0, 3, 0, 4, 0, 5, 0, 6, 0, 7, 0, 8, 0, 9, 0xff, 0xff));
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 0xffff}, values.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void batchReadIsOneRequest() throws Exception {
+        CompletableFuture<List<int[]>> values = master.read(Arrays.asList(
+                new RegisterRead(1, ModbusRtuMaster.READ_INPUT_REGISTERS, 4, 2),
+                new RegisterRead(1, ModbusRtuMaster.READ_INPUT_REGISTERS, 0, 1)));
+        assertArrayEquals(frame(0x01, 0x04, 0x00, 0x00, 0x00, 0x06), port.takeWritten(0, TimeUnit.SECONDS));
+        assertNull(port.takeWritten(0, TimeUnit.SECONDS));
+        port.receiveFrame(frame(0x01, 0x04, 12, 0, 10, 0, 11, 0, 12, 0, 13, 0, 14, 0, 15));
+        List<int[]> result = values.get(1, TimeUnit.SECONDS);
+        assertArrayEquals(new int[]{14, 15}, result.get(0));
+        assertArrayEquals(new int[]{10}, result.get(1));
+    }
+
+    @Test
+    public void crcErrorFailsRead() throws Exception {
+        CompletableFuture<int[]> values = master.readHoldingRegisters(1, 0, 1);
+        byte[] response = frame(0x01, 0x03, 2, 0, 1);
+        response[response.length - 1] ^= 1;
+        port.receiveFrame(response);
+        Throwable e = cause(values);
+        assertTrue(e instanceof IOException);
+        assertEquals("crc error", e.getMessage());
+    }
+
+    @Test
+    public void exceptionResponseFailsWithModbusException() throws Exception {
+        CompletableFuture<int[]> values = master.readHoldingRegisters(7, 100, 1);
+        port.receiveFrame(frame(0x07, 0x83, ModbusException.ILLEGAL_DATA_ADDRESS));
+        Throwable e = cause(values);
+        assertTrue(e instanceof ModbusException);
+        assertEquals(7, ((ModbusException) e).getUnit());
+        assertEquals(ModbusRtuMaster.READ_HOLDING_REGISTERS, ((ModbusException) e).getFunction());
+        assertEquals(ModbusException.ILLEGAL_DATA_ADDRESS, ((ModbusException) e).getExceptionCode());
+    }
+
+    @Test
+    public void writesAreSentInOrderAfterReads() throws Exception {
+        CompletableFuture<int[]> read = master.readHoldingRegisters(1, 0, 1);
+        CompletableFuture<Void> write = master.writeSingleRegister(1, 0x0102, 0x0304);
+        assertArrayEquals(frame(0x01, 0x03, 0x00, 0x00, 0x00, 0x01), port.takeWritten(0, TimeUnit.SECONDS));
+        assertNull(port.takeWritten(0, TimeUnit.SECONDS));
+        port.receiveFrame(frame(0x01, 0x03, 2, 0, 9));
+        assertArrayEquals(new int[]{9}, read.get(1, TimeUnit.SECONDS));
+
+        byte[] request = port.takeWritten(1, TimeUnit.SECONDS);
+        assertArrayEquals(frame(0x01, 0x06, 0x01, 0x02, 0x03, 0x04), request);
+        // 写单个寄存器的响应是请求的回显
+        port.receiveFrame(request);
+        assertNull(write.get(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,84 @@
+package cn.featherfly.android.serialport.modbus;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import cn.featherfly.android.serialport.modbus.RegisterReadPlanner.Block;
+import cn.featherfly.android.serialport.modbus.RegisterReadPlanner.RegisterRead;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * The type Register read planner test.
+ */
+public class RegisterReadPlannerTest {
+
+    private static RegisterRead holding(int unit, int address, int quantity) {
+        return new RegisterRead(unit, ModbusRtuMaster.READ_HOLDING_REGISTERS, address, quantity);
+    }
+
+    private static void assertBlock(Block<RegisterRead> block, int unit, int function, int address, int quantity) {
+        assertEquals(unit, block.getUnit());
+        assertEquals(function, block.getFunction());
+        assertEquals(address, block.getAddress());
+        assertEquals(quantity, block.getQuantity());
+    }
+
+    @Test
+    public void mergesReadsWithinGapInAddressOrder() {
+        RegisterRead c = holding(1, 19, 2);
+        RegisterRead a = holding(1, 0, 2);
+        RegisterRead b = holding(1, 5, 4);
+        List<Block<RegisterRead>> blocks = new RegisterReadPlanner(125, 10).plan(Arrays.asList(c, a, b));
+        assertEquals(1, blocks.size());
+        assertBlock(blocks.get(0), 1, ModbusRtuMaster.READ_HOLDING_REGISTERS, 0, 21);
+        assertEquals(Arrays.asList(a, b, c), blocks.get(0).getReads());
+    }
+
+    @Test
+    public void overlappingReadsShareRegisters() {
+        List<Block<RegisterRead>> blocks = new RegisterReadPlanner().plan(Arrays.asList(holding(1, 10, 10),
+                holding(1, 12, 3), holding(1, 15, 10)));
+        assertEquals(1, blocks.size());
+        assertBlock(blocks.get(0), 1, ModbusRtuMaster.READ_HOLDING_REGISTERS, 10, 15);
+    }
+
+    @Test
+    public void splitsWhenGapTooLarge() {
+        List<Block<RegisterRead>> blocks = new RegisterReadPlanner(125, 3).plan(Arrays.asList(holding(1, 0, 2),
+                holding(1, 5, 1), holding(1, 10, 1)));
+        // 2到5之间空3个寄存器可以合并，6到10之间空4个不能
+        assertEquals(2, blocks.size());
+        assertBlock(blocks.get(0), 1, ModbusRtuMaster.READ_HOLDING_REGISTERS, 0, 6);
+        assertBlock(blocks.get(1), 1, ModbusRtuMaster.READ_HOLDING_REGISTERS, 10, 1);
+    }
+
+    @Test
+    public void splitsAtMaxRegisters() {
+        List<Block<RegisterRead>> blocks = new RegisterReadPlanner(10, 10).plan(Arrays.asList(holding(1, 0, 6),
+                holding(1, 6, 4), holding(1, 10, 1)));
+        assertEquals(2, blocks.size());
+        assertBlock(blocks.get(0), 1, ModbusRtuMaster.READ_HOLDING_REGISTERS, 0, 10);
+        assertBlock(blocks.get(1), 1, ModbusRtuMaster.READ_HOLDING_REGISTERS, 10, 1);
+    }
+
+    @Test
+    public void neverMergesAcrossUnitOrFunction() {
+        RegisterRead input = new RegisterRead(1, ModbusRtuMaster.READ_INPUT_REGISTERS, 2, 1);
+        RegisterRead otherUnit = holding(2, 1, 1);
+        List<Block<RegisterRead>> blocks = new RegisterReadPlanner().plan(Arrays.asList(otherUnit, input,
+                holding(1, 0, 1)));
+        assertEquals(3, blocks.size());
+        assertBlock(blocks.get(0), 1, ModbusRtuMaster.READ_HOLDING_REGISTERS, 0, 1);
+        assertBlock(blocks.get(1), 1, ModbusRtuMaster.READ_INPUT_REGISTERS, 2, 1);
+        assertSame(otherUnit, blocks.get(2).getReads().get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsReadLargerThanMaxRegisters() {
+        new RegisterReadPlanner(10, 0).plan(Arrays.asList(holding(1, 0, 11)));
+    }
+}
@@ -0,0 +1,181 @@
+package cn.featherfly.android.serialport.mux;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import cn.featherfly.android.serialport.FakeSerialPort;
+import cn.featherfly.android.serialport.checksum.Crc16Ccitt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The type Channel multiplexer test.
+ */
+public class ChannelMultiplexerTest {
+
+    private final FakeSerialPort port = new FakeSerialPort("/dev/ttyTEST");
+
+    private ChannelMultiplexer multiplexer;
+
+    @After
+    public void tearDown() {
+        if (multiplexer != null) {
+            multiplexer.close();
+        }
+    }
+
+    /**
+     * 构造带CRC的帧
+     */
+    private static byte[] frame(int id, int type, int offset, byte... payload) {
+        ByteBuffer frame = ByteBuffer.allocate(ChannelMultiplexer.HEADER_LENGTH + payload.length
+                + ChannelMultiplexer.CRC_LENGTH);
+        frame.put((byte) id).put((byte) type).putShort((short) payload.length).putShort((short) offset).put(payload);
+        frame.putShort((short) Crc16Ccitt.compute(Crc16Ccitt.XMODEM, frame.array(), 0, frame.position()));
+        return frame.array();
+    }
+
+    private static byte[] data(int length) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = (byte) i;
+        }
+        return b;
+    }
+
+    private static byte[] range(byte[] b, int from, int to) {
+        byte[] range = new byte[to - from];
+        System.arraycopy(b, from, range, 0, range.length);
+        return range;
+    }
+
+    @Test
+    public void openGrantsWindowAsCredit() throws Exception {
+        multiplexer = new ChannelMultiplexer(port, 16, 10, TimeUnit.SECONDS);
+        multiplexer.openChannel(3, 100);
+        assertArrayEquals(frame(3, ChannelMultiplexer.TYPE_CREDIT, 100), port.takeWritten(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void dataWaitsForCredit() throws Exception {
+        multiplexer = new ChannelMultiplexer(port, 16, 10, TimeUnit.SECONDS);
+        LogicalChannel channel = multiplexer.openChannel(3, 100);
+        port.takeWritten(0, TimeUnit.SECONDS);
+        byte[] b = data(10);
+        CompletableFuture<Void> future = channel.writeAsync(ByteBuffer.wrap(b));
+        assertNull(port.takeWritten(0, TimeUnit.SECONDS));
+        assertEquals(10, channel.getQueuedBytes());
+
+        port.receive(frame(3, ChannelMultiplexer.TYPE_CREDIT, 4));
+        assertArrayEquals(frame(3, ChannelMultiplexer.TYPE_DATA, 0, range(b, 0, 4)),
+                port.takeWritten(0, TimeUnit.SECONDS));
+        assertNull(port.takeWritten(0, TimeUnit.SECONDS));
+        assertEquals(0, channel.getSendCredit());
+        assertFalse(future.isDone());
+
+        port.receive(frame(3, ChannelMultiplexer.TYPE_CREDIT, 4 + 100));
+        assertArrayEquals(frame(3, ChannelMultiplexer.TYPE_DATA, 4, range(b, 4, 10)),
+                port.takeWritten(0, TimeUnit.SECONDS));
+        assertNull(future.get(1, TimeUnit.SECONDS));
+        assertEquals(94, channel.getSendCredit());
+    }
+
+    @Test
+    public void creditLimitWrapsAt16Bits() throws Exception {
+        multiplexer = new ChannelMultiplexer(port, 64, 10, TimeUnit.SECONDS);
+        multiplexer.openChannel(3, 100);
+        port.takeWritten(0, TimeUnit.SECONDS);
+        // 每帧消费半个窗口，授予的上限随偏移回绕
+        int offset = 0;
+        for (int i = 0; i < 0x10000 / 50 + 10; i++) {
+            port.receive(frame(3, ChannelMultiplexer.TYPE_DATA, offset, data(50)));
+            offset = (offset + 50) & 0xffff;
+            assertArrayEquals(frame(3, ChannelMultiplexer.TYPE_CREDIT, (offset + 100) & 0xffff),
+                    port.takeWritten(0, TimeUnit.SECONDS));
+        }
+        // 不到半个窗口不授予信用
+        port.receive(frame(3, ChannelMultiplexer.TYPE_DATA, offset, data(10)));
+        assertNull(port.takeWritten(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void creditRequestedWhenStalled() throws Exception {
+        multiplexer = new ChannelMultiplexer(port, 16, 50, TimeUnit.MILLISECONDS);
+        LogicalChannel channel = multiplexer.openChannel(3, 100);
+        port.takeWritten(0, TimeUnit.SECONDS);
+        channel.writeAsync(ByteBuffer.wrap(data(1)));
+        assertArrayEquals(frame(3, ChannelMultiplexer.TYPE_CREDIT_REQUEST, 0), port.takeWritten(1, TimeUnit.SECONDS));
+        // 收到信用请求时重新授予窗口
+        port.receive(frame(3, ChannelMultiplexer.TYPE_CREDIT_REQUEST, 0));
+        assertArrayEquals(frame(3, ChannelMultiplexer.TYPE_CREDIT, 100), port.takeWritten(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void badFramesDropped() throws Exception {
+        multiplexer = new ChannelMultiplexer(port, 16, 10, TimeUnit.SECONDS);
+        LogicalChannel channel = multiplexer.openChannel(3, 100);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        channel.addBufferListener(event -> {
+            ByteBuffer buffer = event.getBuffer();
+            received.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        });
+        byte[] corrupted = frame(3, ChannelMultiplexer.TYPE_DATA, 0, data(8));
+        corrupted[ChannelMultiplexer.HEADER_LENGTH] ^= 1;
+        port.receive(corrupted);
+        assertEquals(1, multiplexer.getCrcErrors());
+        port.receive(frame(4, ChannelMultiplexer.TYPE_DATA, 0, data(8)));
+        assertEquals(1, multiplexer.getDroppedFrames());
+        assertEquals(0, received.size());
+
+        port.receive(frame(3, ChannelMultiplexer.TYPE_DATA, 0, data(8)));
+        assertArrayEquals(data(8), received.toByteArray());
+    }
+
+    @Test
+    public void loopbackTransferWrapsOffsets() throws Exception {
+        FakeSerialPort other = new FakeSerialPort("/dev/ttyPEER");
+        multiplexer = new ChannelMultiplexer(port, 64, 50, TimeUnit.MILLISECONDS);
+        ChannelMultiplexer peer = new ChannelMultiplexer(other, 64, 50, TimeUnit.MILLISECONDS);
+        try {
+            LogicalChannel sender = multiplexer.openChannel(1, 1024);
+            LogicalChannel receiver = peer.openChannel(1, 1024);
+            byte[] b = new byte[200000];
+            new Random(1).nextBytes(b);
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            CountDownLatch done = new CountDownLatch(1);
+            receiver.addBufferListener(event -> {
+                ByteBuffer buffer = event.getBuffer();
+                received.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                if (received.size() == b.length) {
+                    done.countDown();
+                }
+            });
+            // 打开通道时的信用帧没有送达，发送方停顿后请求信用
+            FakeSerialPort.connect(port, other);
+            for (int off = 0; off < b.length; off += 10000) {
+                sender.write(b, off, 10000);
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertArrayEquals(b, received.toByteArray());
+            assertEquals(0, multiplexer.getCrcErrors());
+            assertEquals(0, peer.getCrcErrors());
+            assertEquals(0, multiplexer.getDroppedFrames());
+            assertEquals(0, peer.getDroppedFrames());
+        } finally {
+            peer.close();
+            other.close();
+            port.close();
+        }
+    }
+}
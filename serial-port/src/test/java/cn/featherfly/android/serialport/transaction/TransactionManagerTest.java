@@ -0,0 +1,181 @@
+package cn.featherfly.android.serialport.transaction;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cn.featherfly.android.serialport.FakeSerialPort;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The type Transaction manager test.
+ */
+public class TransactionManagerTest {
+
+    private final FakeSerialPort port = new FakeSerialPort("/dev/ttyTEST");
+
+    private static byte[] bytes(int... values) {
+        byte[] b = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            b[i] = (byte) values[i];
+        }
+        return b;
+    }
+
+    private static byte[] array(ByteBuffer buffer) {
+        byte[] b = new byte[buffer.remaining()];
+        buffer.duplicate().get(b);
+        return b;
+    }
+
+    private static Throwable cause(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (TimeoutException e) {
+            fail("future not completed");
+        }
+        fail("future completed normally");
+        return null;
+    }
+
+    @Test
+    public void stopAndWaitSendsNextAfterResponse() throws Exception {
+        TransactionManager manager = new TransactionManager(port);
+        CompletableFuture<ByteBuffer> first = manager.request(bytes(1), 1, TimeUnit.SECONDS);
+        CompletableFuture<ByteBuffer> second = manager.request(bytes(2), 1, TimeUnit.SECONDS);
+        assertArrayEquals(bytes(1), port.takeWritten(0, TimeUnit.SECONDS));
+        assertEquals(0, port.getWrittenCount());
+        assertEquals(1, manager.getWaitingCount());
+
+        port.receiveFrame(bytes(0x81));
+        assertArrayEquals(bytes(0x81), array(first.get(1, TimeUnit.SECONDS)));
+        assertArrayEquals(bytes(2), port.takeWritten(0, TimeUnit.SECONDS));
+        assertFalse(second.isDone());
+        port.receiveFrame(bytes(0x82));
+        assertArrayEquals(bytes(0x82), array(second.get(1, TimeUnit.SECONDS)));
+        assertEquals(0, manager.getInFlightCount());
+    }
+
+    @Test
+    public void orderedResponsesGoToEarliestMatchingRequest() throws Exception {
+        TransactionManager manager = new TransactionManager(port, Correlator.ORDERED, 3);
+        CompletableFuture<ByteBuffer> a = manager.request(bytes(0x0a), ResponseMatcher.prefix((byte) 0x0a),
+                1, TimeUnit.SECONDS);
+        CompletableFuture<ByteBuffer> b1 = manager.request(bytes(0x0b), ResponseMatcher.prefix((byte) 0x0b),
+                1, TimeUnit.SECONDS);
+        CompletableFuture<ByteBuffer> b2 = manager.request(bytes(0x0b), ResponseMatcher.prefix((byte) 0x0b),
+                1, TimeUnit.SECONDS);
+        assertEquals(3, port.getWrittenCount());
+
+        // b的响应先到，交给最早发出的b请求，a不受影响
+        port.receiveFrame(bytes(0x0b, 1));
+        assertArrayEquals(bytes(0x0b, 1), array(b1.get(1, TimeUnit.SECONDS)));
+        assertFalse(a.isDone());
+        assertFalse(b2.isDone());
+        port.receiveFrame(bytes(0x0b, 2));
+        port.receiveFrame(bytes(0x0a, 3));
+        assertArrayEquals(bytes(0x0b, 2), array(b2.get(1, TimeUnit.SECONDS)));
+        assertArrayEquals(bytes(0x0a, 3), array(a.get(1, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void sequenceIdCorrelatesOutOfOrderResponses() throws Exception {
+        TransactionManager manager = new TransactionManager(port, Correlator.sequenceId(0, 1), 4);
+        CompletableFuture<ByteBuffer> one = manager.request(bytes(1, 0x10), 1, TimeUnit.SECONDS);
+        CompletableFuture<ByteBuffer> two = manager.request(bytes(2, 0x20), 1, TimeUnit.SECONDS);
+        // 相同序列号的请求等前一个完成后才发出
+        CompletableFuture<ByteBuffer> again = manager.request(bytes(1, 0x30), 1, TimeUnit.SECONDS);
+        assertEquals(2, port.getWrittenCount());
+        assertEquals(1, manager.getWaitingCount());
+
+        port.receiveFrame(bytes(2, 0x21));
+        assertArrayEquals(bytes(2, 0x21), array(two.get(1, TimeUnit.SECONDS)));
+        assertFalse(one.isDone());
+
+        port.receiveFrame(bytes(1, 0x11));
+        assertArrayEquals(bytes(1, 0x11), array(one.get(1, TimeUnit.SECONDS)));
+        assertEquals(0, manager.getWaitingCount());
+        port.takeWritten(0, TimeUnit.SECONDS);
+        port.takeWritten(0, TimeUnit.SECONDS);
+        assertArrayEquals(bytes(1, 0x30), port.takeWritten(0, TimeUnit.SECONDS));
+
+        port.receiveFrame(bytes(1, 0x31));
+        assertArrayEquals(bytes(1, 0x31), array(again.get(1, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void timeoutFailsRequestAndAdmitsNext() throws Exception {
+        TransactionManager manager = new TransactionManager(port);
+        CompletableFuture<ByteBuffer> lost = manager.request(bytes(1), 50, TimeUnit.MILLISECONDS);
+        CompletableFuture<ByteBuffer> next = manager.request(bytes(2), 1, TimeUnit.SECONDS);
+        assertTrue(cause(lost) instanceof TimeoutException);
+        assertArrayEquals(bytes(1), port.takeWritten(0, TimeUnit.SECONDS));
+        assertArrayEquals(bytes(2), port.takeWritten(1, TimeUnit.SECONDS));
+        // 超时请求迟到的响应交给下一个请求
+        port.receiveFrame(bytes(0x81));
+        assertArrayEquals(bytes(0x81), array(next.get(1, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void timeoutStartsWhenRequestWritten() throws Exception {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        // 写入完成前请求还在写入队列或线路上，不计入超时
+        FakeSerialPort slowPort = new FakeSerialPort("/dev/ttySLOW") {
+            @Override
+            public CompletableFuture<Void> writeAsync(ByteBuffer src) {
+                super.writeAsync(src);
+                return written;
+            }
+        };
+        TransactionManager manager = new TransactionManager(slowPort);
+        CompletableFuture<ByteBuffer> request = manager.request(bytes(1), 50, TimeUnit.MILLISECONDS);
+        Thread.sleep(200);
+        assertFalse(request.isDone());
+
+        written.complete(null);
+        long start = System.nanoTime();
+        assertTrue(cause(request) instanceof TimeoutException);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    public void unmatchedFramesGoToListener() throws Exception {
+        AtomicInteger unmatched = new AtomicInteger();
+        TransactionManager manager = new TransactionManager(port, Correlator.ORDERED, 1)
+                .setUnmatchedListener(event -> unmatched.addAndGet(event.getLength()));
+        port.receiveFrame(bytes(1, 2, 3));
+        assertEquals(3, unmatched.get());
+        CompletableFuture<ByteBuffer> request = manager.request(bytes(1), ResponseMatcher.prefix((byte) 0x55),
+                1, TimeUnit.SECONDS);
+        port.receiveFrame(bytes(0x66));
+        assertEquals(4, unmatched.get());
+        assertFalse(request.isDone());
+    }
+
+    @Test
+    public void closeFailsPendingRequests() throws Exception {
+        TransactionManager manager = new TransactionManager(port);
+        CompletableFuture<ByteBuffer> inFlight = manager.request(bytes(1), 1, TimeUnit.SECONDS);
+        CompletableFuture<ByteBuffer> waiting = manager.request(bytes(2), 1, TimeUnit.SECONDS);
+        manager.close();
+        assertTrue(cause(inFlight) instanceof IOException);
+        assertTrue(cause(waiting) instanceof IOException);
+        assertTrue(cause(manager.request(bytes(3), 1, TimeUnit.SECONDS)) instanceof IOException);
+        // 关闭后不再监听端口，收到的数据留给同步读取
+        port.receiveFrame(bytes(0x81));
+        assertEquals(1, port.read(ByteBuffer.allocate(4), 0, TimeUnit.SECONDS));
+    }
+}
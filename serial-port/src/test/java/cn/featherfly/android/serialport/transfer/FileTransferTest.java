@@ -0,0 +1,263 @@
+package cn.featherfly.android.serialport.transfer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cn.featherfly.android.serialport.FakeSerialPort;
+import cn.featherfly.android.serialport.checksum.Crc16Ccitt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The type File transfer test.
+ */
+public class FileTransferTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final FakeSerialPort port = new FakeSerialPort("/dev/ttyTEST");
+
+    private final FileTransfer transfer = new FileTransfer(port)
+            .setTimeout(200, TimeUnit.MILLISECONDS)
+            .setStartTimeout(200, TimeUnit.MILLISECONDS);
+
+    private File file(int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        File file = folder.newFile();
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    private static byte[] content(File file) throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private TransferException assertAborted(File file) throws IOException {
+        try {
+            transfer.sendXmodem(file);
+        } catch (TransferException e) {
+            return e;
+        }
+        fail("transfer completed");
+        return null;
+    }
+
+    /**
+     * XMODEM-CRC接收方，在写入线程上校验每个块并应答
+     */
+    private class XmodemReceiver {
+
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        private int expected = 1;
+
+        private int nakBlock;
+
+        private boolean cancel;
+
+        private void accept(byte[] frame) {
+            if (frame.length == 1) {
+                if (frame[0] == FileTransfer.EOT) {
+                    port.receive((byte) FileTransfer.ACK);
+                }
+                return;
+            }
+            int size = frame[0] == FileTransfer.STX ? 1024 : 128;
+            assertTrue(frame[0] == FileTransfer.STX || frame[0] == FileTransfer.SOH);
+            assertEquals(3 + size + 2, frame.length);
+            int seq = frame[1] & 0xff;
+            assertEquals(expected & 0xff, seq);
+            assertEquals(0xff, seq ^ (frame[2] & 0xff));
+            // CRC高字节在前
+            int crc = ((frame[frame.length - 2] & 0xff) << 8) | (frame[frame.length - 1] & 0xff);
+            assertEquals(Crc16Ccitt.compute(Crc16Ccitt.XMODEM, frame, 3, size), crc);
+            if (cancel) {
+                port.receive((byte) FileTransfer.CAN, (byte) FileTransfer.CAN);
+            } else if (seq == nakBlock) {
+                nakBlock = -1;
+                port.receive((byte) FileTransfer.NAK);
+            } else {
+                data.write(frame, 3, size);
+                expected++;
+                port.receive((byte) FileTransfer.ACK);
+            }
+        }
+    }
+
+    /**
+     * 窗口模式接收方，丢弃指定的块一次，之后对第一个乱序块回复NAK，不回复NAK时等发送方超时重发
+     */
+    private class WindowedReceiver {
+
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        private long expected;
+
+        private long dropIndex = -1;
+
+        private boolean nak = true;
+
+        private boolean nakSent;
+
+        private boolean eot;
+
+        private void accept(byte[] frame) {
+            if (frame.length == 1 && frame[0] == FileTransfer.EOT) {
+                eot = true;
+                port.receive((byte) FileTransfer.ACK);
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(frame);
+            assertEquals(FileTransfer.SOH, buffer.get());
+            int seq = buffer.getShort() & 0xffff;
+            int length = buffer.getShort() & 0xffff;
+            assertEquals(5 + length + 2, frame.length);
+            int crc = buffer.getShort(5 + length) & 0xffff;
+            assertEquals(Crc16Ccitt.compute(Crc16Ccitt.XMODEM, frame, 1, 4 + length), crc);
+            if (seq == (expected & 0xffff) && expected == dropIndex) {
+                dropIndex = -1;
+                return;
+            }
+            if (seq != (expected & 0xffff)) {
+                if (nak && !nakSent) {
+                    nakSent = true;
+                    port.receive((byte) FileTransfer.NAK, (byte) (expected >>> 8), (byte) expected);
+                }
+                return;
+            }
+            data.write(frame, 5, length);
+            nakSent = false;
+            port.receive((byte) FileTransfer.ACK, (byte) (seq >>> 8), (byte) seq);
+            expected++;
+        }
+    }
+
+    @Test
+    public void xmodemBlocksAcknowledgedAndRetransmittedOnNak() throws Exception {
+        File file = file(2148);
+        XmodemReceiver receiver = new XmodemReceiver();
+        receiver.nakBlock = 2;
+        port.setPeer(receiver::accept);
+        port.receive((byte) FileTransfer.CRC_REQUEST);
+
+        TransferProgress progress = transfer.sendXmodem(file);
+
+        byte[] received = receiver.data.toByteArray();
+        // 两个1K块和一个填充到128字节的块
+        assertEquals(1024 + 1024 + 128, received.length);
+        assertArrayEquals(content(file), Arrays.copyOf(received, 2148));
+        for (int i = 2148; i < received.length; i++) {
+            assertEquals(0x1a, received[i]);
+        }
+        assertEquals(2148, progress.getTransferred());
+        assertEquals(1, progress.getRetransmits());
+        assertEquals(1029 * 3 + 133 + 1, progress.getLineBytes());
+        assertEquals(file.getName(), progress.getFileName());
+    }
+
+    @Test
+    public void xmodemCancelledByReceiver() throws Exception {
+        XmodemReceiver receiver = new XmodemReceiver();
+        receiver.cancel = true;
+        port.setPeer(receiver::accept);
+        port.receive((byte) FileTransfer.CRC_REQUEST);
+
+        TransferException e = assertAborted(file(100));
+        assertEquals("cancelled by receiver", e.getMessage());
+        assertEquals(0, e.getProgress().getTransferred());
+    }
+
+    @Test
+    public void xmodemRetriesExhausted() throws Exception {
+        port.setPeer(frame -> {
+            if (frame.length > 1) {
+                port.receive((byte) FileTransfer.NAK);
+            }
+        });
+        port.receive((byte) FileTransfer.CRC_REQUEST);
+        transfer.setMaxRetries(2);
+
+        TransferException e = assertAborted(file(100));
+        assertEquals("block 1 not acknowledged", e.getMessage());
+        assertEquals(2, e.getProgress().getRetransmits());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(133, port.takeWritten(0, TimeUnit.SECONDS).length);
+        }
+        // 放弃传输时通知接收方
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(new byte[]{FileTransfer.CAN}, port.takeWritten(0, TimeUnit.SECONDS));
+        }
+        assertEquals(0, port.getWrittenCount());
+    }
+
+    @Test
+    public void receiverNotReady() throws Exception {
+        TransferException e = assertAborted(file(100));
+        assertEquals("receiver not ready", e.getMessage());
+    }
+
+    @Test
+    public void windowedGoBackNOnNak() throws Exception {
+        File file = file(10 * 16 - 5);
+        WindowedReceiver receiver = new WindowedReceiver();
+        receiver.dropIndex = 3;
+        port.setPeer(receiver::accept);
+        port.receive((byte) FileTransfer.CRC_REQUEST);
+
+        TransferProgress progress = transfer.sendWindowed(file, 4, 16);
+
+        assertTrue(receiver.eot);
+        assertArrayEquals(content(file), receiver.data.toByteArray());
+        assertEquals(file.length(), progress.getTransferred());
+        // 丢弃块3时块4到6已在途，从块3开始重发窗口
+        assertEquals(4, progress.getRetransmits());
+    }
+
+    @Test
+    public void windowedResendsWindowOnTimeout() throws Exception {
+        File file = file(8 * 16);
+        WindowedReceiver receiver = new WindowedReceiver();
+        receiver.dropIndex = 2;
+        receiver.nak = false;
+        port.setPeer(receiver::accept);
+        port.receive((byte) FileTransfer.CRC_REQUEST);
+
+        TransferProgress progress = transfer.sendWindowed(file, 2, 16);
+
+        assertArrayEquals(content(file), receiver.data.toByteArray());
+        // 块2和在途的块3超时后重发
+        assertEquals(2, progress.getRetransmits());
+    }
+
+    @Test
+    public void windowedSequenceWrapsAt16Bits() throws Exception {
+        File file = file(70000);
+        WindowedReceiver receiver = new WindowedReceiver();
+        // 序号回绕后丢弃一个块，NAK的16位序号还原为回绕后的块
+        receiver.dropIndex = 0x10000 + 4;
+        port.setPeer(receiver::accept);
+        port.receive((byte) FileTransfer.CRC_REQUEST);
+
+        TransferProgress progress = transfer.sendWindowed(file, 8, 1);
+
+        assertTrue(receiver.eot);
+        assertEquals(70000, receiver.expected);
+        assertArrayEquals(content(file), receiver.data.toByteArray());
+        assertEquals(8, progress.getRetransmits());
+    }
+}